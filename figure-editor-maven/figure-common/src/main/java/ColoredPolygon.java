@@ -0,0 +1,139 @@
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+// Представление фигуры из FigureStore: собственных вершин не хранит
+public class ColoredPolygon extends Polygon implements Serializable{
+    private final FigureStore store;
+    private final int index;
+
+    // Кэш для отрисовки (создаётся при первом обращении)
+    private transient java.awt.Shape shapeView;
+
+    public ColoredPolygon(int[][] coordinates, String name, String lineColor, String fillColor, double opacity)
+            throws InvalidPolygonException {
+        this(single(coordinates, name, lineColor, fillColor, opacity), 0); // валидация
+    }
+
+    ColoredPolygon(FigureStore store, int index) {
+        super(store.area(index), store.perimeter(index), store.vertexCount(index));
+        this.store = store;
+        this.index = index;
+    }
+
+    // Отдельная фигура получает собственное хранилище точного размера
+    private static FigureStore single(int[][] coordinates, String name, String lineColor, String fillColor, double opacity)
+            throws InvalidPolygonException {
+        FigureStore store = new FigureStore(1, coordinates == null ? 3 : coordinates.length, false);
+        store.add(coordinates, name, lineColor, fillColor, opacity);
+        return store;
+    }
+
+    @Override
+    protected double sideLength(int i) {
+        return store.sideLength(index, i);
+    }
+
+    // Проверка попадания точки в многоугольник
+    public boolean contains(int x, int y) {
+        return store.contains(index, x, y);
+    }
+
+    // Получить копию AWT-полигона
+    public java.awt.Polygon getAWTPolygon() {
+        return store.toAWTPolygon(index);
+    }
+
+    // Форма для отрисовки без копирования (только чтение)
+    public java.awt.Shape getShape() {
+        if (shapeView == null) {
+            shapeView = store.shape(index);
+        }
+        return shapeView;
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(store.minX(index), store.minY(index),
+            store.maxX(index) - store.minX(index), store.maxY(index) - store.minY(index));
+    }
+
+    // Пересекает ли ограничивающий прямоугольник (вершины включительно) область r
+    public boolean intersects(Rectangle r) {
+        return store.maxX(index) >= r.x && store.minX(index) < r.x + r.width
+            && store.maxY(index) >= r.y && store.minY(index) < r.y + r.height;
+    }
+
+    public Point2D getCentroid() {
+        return new Point2D.Double(store.centroidX(index), store.centroidY(index));
+    }
+
+    // Переместить фигуру на (dx, dy)
+    public void moveBy(int dx, int dy) {
+        store.translate(index, dx, dy);
+    }
+
+    // Геттеры; цвета интернированы и включают прозрачность в альфа-канале
+    public Color getLineColor() { return FigureColors.color(store.lineColor(index)); }
+    public Color getFillColor() { return FigureColors.color(store.fillColor(index)); }
+    public int getLineArgb() { return store.lineColor(index); }
+    public int getFillArgb() { return store.fillColor(index); }
+    public int getLineRgb() { return store.lineColor(index) & 0xFFFFFF; }
+    public int getFillRgb() { return store.fillColor(index) & 0xFFFFFF; }
+    public double getOpacity() { return store.opacity(index); }
+    public String getName() { return store.name(index); }
+    public int getVertexCount() { return store.vertexCount(index); }
+    public int getX(int vertex) { return store.x(index, vertex); }
+    public int getY(int vertex) { return store.y(index, vertex); }
+    public FigureStore getStore() { return store; }
+    public int getStoreIndex() { return index; }
+
+    public int[][] getCoordinates() {
+        int n = store.vertexCount(index);
+        int[][] copy = new int[n][];
+        for (int i = 0; i < n; i++) {
+            copy[i] = new int[]{store.x(index, i), store.y(index, i)};
+        }
+        return copy;
+    }
+
+    // Сериализация (прежний протокол /figures): передаётся только эта фигура, без всего хранилища.
+    // Polygon не сериализуем, поэтому ColoredPolygon напрямую не восстанавливается
+    private Object writeReplace() {
+        int n = getVertexCount();
+        int[] xs = new int[n], ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = getX(i);
+            ys[i] = getY(i);
+        }
+        return new Serialized(xs, ys, getName(), getLineRgb(), getFillRgb(), getOpacity());
+    }
+
+    private static final class Serialized implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int[] xs;
+        private final int[] ys;
+        private final String name;
+        private final int lineRgb;
+        private final int fillRgb;
+        private final double opacity;
+
+        Serialized(int[] xs, int[] ys, String name, int lineRgb, int fillRgb, double opacity) {
+            this.xs = xs;
+            this.ys = ys;
+            this.name = name;
+            this.lineRgb = lineRgb;
+            this.fillRgb = fillRgb;
+            this.opacity = opacity;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            try {
+                return new FigureStore(1, xs.length, false).add(xs, ys, 0, xs.length, name, lineRgb, fillRgb, opacity);
+            } catch (InvalidPolygonException | RuntimeException e) {
+                throw new InvalidObjectException("Некорректная фигура: " + e.getMessage());
+            }
+        }
+    }
+}
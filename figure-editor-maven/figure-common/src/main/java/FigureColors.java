@@ -0,0 +1,146 @@
+import java.awt.Color;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Упакованные цвета фигур (0xAARRGGBB): разбор и запись #RRGGBB без регулярных выражений
+// и общий кэш интернированных java.awt.Color, чтобы отрисовка не создавала объектов.
+public final class FigureColors {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_INTERNED = 1 << 16;
+
+    // Открытая адресация; чтение без блокировки, запись под монитором класса.
+    // Ячейки — AtomicReferenceArray: поля Color не final, и только запись через set()
+    // гарантирует читателю без блокировки полностью построенный объект.
+    private static volatile AtomicReferenceArray<Color> table = new AtomicReferenceArray<>(256);
+    private static int interned = 0;
+
+    private FigureColors() {}
+
+    // Разобрать "#RRGGBB" в 0xRRGGBB; -1, если формат неверный
+    public static int parseHex(CharSequence s) {
+        return s == null ? -1 : parseHex(s, 0, s.length());
+    }
+
+    public static int parseHex(CharSequence s, int start, int end) {
+        if (end - start != 7 || s.charAt(start) != '#') {
+            return -1;
+        }
+        int rgb = 0;
+        for (int i = start + 1; i < end; i++) {
+            int d = hexDigit(s.charAt(i));
+            if (d < 0) {
+                return -1;
+            }
+            rgb = (rgb << 4) | d;
+        }
+        return rgb;
+    }
+
+    public static int parseHex(char[] s, int start, int end) {
+        if (end - start != 7 || s[start] != '#') {
+            return -1;
+        }
+        int rgb = 0;
+        for (int i = start + 1; i < end; i++) {
+            int d = hexDigit(s[i]);
+            if (d < 0) {
+                return -1;
+            }
+            rgb = (rgb << 4) | d;
+        }
+        return rgb;
+    }
+
+    // Разобрать с проверкой; сообщение об ошибке как у прежней проверки формата
+    public static int parseHex(String color, String fieldName) {
+        int rgb = parseHex(color);
+        if (rgb < 0) {
+            throw new IllegalArgumentException("Некорректный формат цвета в " + fieldName + ": " + color + " (ожидается #RRGGBB)");
+        }
+        return rgb;
+    }
+
+    // Дописать "#RRGGBB" (альфа-канал игнорируется)
+    public static StringBuilder appendHex(StringBuilder sb, int rgb) {
+        sb.append('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            sb.append(HEX[(rgb >>> shift) & 0xF]);
+        }
+        return sb;
+    }
+
+    public static String toHex(int rgb) {
+        char[] chars = new char[7];
+        chars[0] = '#';
+        for (int i = 1, shift = 20; i < 7; i++, shift -= 4) {
+            chars[i] = HEX[(rgb >>> shift) & 0xF];
+        }
+        return new String(chars);
+    }
+
+    // Цвет с альфа-каналом из прозрачности [0.0, 1.0]
+    public static int withOpacity(int rgb, double opacity) {
+        int alpha = (int) Math.round(opacity * 255);
+        return (alpha << 24) | (rgb & 0xFFFFFF);
+    }
+
+    // Общий экземпляр Color для упакованного ARGB
+    public static Color color(int argb) {
+        AtomicReferenceArray<Color> t = table;
+        int mask = t.length() - 1;
+        for (int i = mix(argb) & mask; ; i = (i + 1) & mask) {
+            Color c = t.get(i);
+            if (c == null) {
+                break;
+            }
+            if (c.getRGB() == argb) {
+                return c;
+            }
+        }
+        return intern(argb);
+    }
+
+    private static synchronized Color intern(int argb) {
+        AtomicReferenceArray<Color> t = table;
+        int mask = t.length() - 1;
+        int i = mix(argb) & mask;
+        for (Color c; (c = t.get(i)) != null; i = (i + 1) & mask) {
+            if (c.getRGB() == argb) {
+                return c;
+            }
+        }
+        Color color = new Color(argb, true);
+        if (interned >= MAX_INTERNED) {
+            return color; // кэш заполнен: сцена с очень большим числом разных цветов
+        }
+        t.set(i, color);
+        interned++;
+        if (interned * 2 > t.length()) {
+            AtomicReferenceArray<Color> grown = new AtomicReferenceArray<>(t.length() * 2);
+            int m = grown.length() - 1;
+            for (int k = 0; k < t.length(); k++) {
+                Color c = t.get(k);
+                if (c != null) {
+                    int j = mix(c.getRGB()) & m;
+                    while (grown.get(j) != null) {
+                        j = (j + 1) & m;
+                    }
+                    grown.set(j, c);
+                }
+            }
+            table = grown;
+        }
+        return color;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        return -1;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,43 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Общие правила отрисовки фигур (панель, экспорт PNG, /render и /tiles веб-модуля)
+public final class FigureRenderer {
+    // На столько контур выходит за вершины: у острого угла скос OUTLINE_STROKE длиной до
+    // miterLimit (10) полуширин линии (1). Фигуры в этой полосе за краем области тоже видны
+    public static final int OUTLINE_MARGIN = 10;
+
+    private static final Stroke OUTLINE_STROKE = new BasicStroke(2);
+    private static final Stroke SELECTION_STROKE =
+        new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5}, 0);
+
+    private FigureRenderer() {}
+
+    // Белый фон и сглаживание, как у изображения сцены
+    public static Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return g2d;
+    }
+
+    // Заливка и контур фигуры; не создаёт объектов на каждую фигуру
+    public static void paint(Graphics2D g2d, ColoredPolygon fig) {
+        java.awt.Shape shape = fig.getShape();
+
+        g2d.setColor(fig.getFillColor());
+        g2d.fill(shape);
+
+        g2d.setColor(fig.getLineColor());
+        g2d.setStroke(OUTLINE_STROKE);
+        g2d.draw(shape);
+    }
+
+    // Пунктирная рамка вокруг выбранной фигуры
+    public static void paintSelection(Graphics2D g2d, ColoredPolygon fig) {
+        g2d.setColor(Color.BLUE);
+        g2d.setStroke(SELECTION_STROKE);
+        g2d.draw(fig.getBounds());
+    }
+}
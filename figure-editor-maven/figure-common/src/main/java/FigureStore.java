@@ -0,0 +1,453 @@
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Колоночное хранилище фигур: вершины всех фигур лежат в общих примитивных буферах,
+// фигура i занимает вершины [offsets[i], offsets[i + 1]). Объекты ColoredPolygon
+// являются лёгкими представлениями (store, index) над этими колонками.
+// Геометрия (вершины, смещения, границы) может храниться вне кучи: см. -Dfigures.offheap=true.
+public class FigureStore implements Serializable {
+    private static final int DEFAULT_FIGURES = 16;
+    private static final int DEFAULT_VERTICES = 64;
+    private static final boolean DEFAULT_OFF_HEAP = Boolean.getBoolean("figures.offheap");
+
+    private final boolean offHeap;
+    private int size;
+    private int vertexCount;
+
+    // Вершины
+    private IntColumn xs;
+    private IntColumn ys;
+    private IntColumn offsets;
+
+    // Производная геометрия (обновляется при translate)
+    private IntColumn minX, minY, maxX, maxY;
+    private double[] centroidX, centroidY;
+    private double[] areas;
+    private double[] perimeters;
+
+    // Атрибуты
+    private String[] names;
+    private int[] lineColors; // 0xAARRGGBB, альфа = прозрачность
+    private int[] fillColors; // 0xAARRGGBB
+    private float[] opacities;
+
+    public FigureStore() {
+        this(DEFAULT_FIGURES, DEFAULT_VERTICES);
+    }
+
+    // Режим хранения берётся из -Dfigures.offheap. Хранилище на одну фигуру создавайте с offHeap = false:
+    // вне кучи каждая колонка — отдельный прямой ByteBuffer, и на фигуру их пришлось бы около семи.
+    public FigureStore(int figureCapacity, int vertexCapacity) {
+        this(figureCapacity, vertexCapacity, DEFAULT_OFF_HEAP);
+    }
+
+    public FigureStore(int figureCapacity, int vertexCapacity, boolean offHeap) {
+        figureCapacity = Math.max(1, figureCapacity);
+        vertexCapacity = Math.max(3, vertexCapacity);
+        this.offHeap = offHeap;
+        xs = IntColumn.allocate(vertexCapacity, offHeap);
+        ys = IntColumn.allocate(vertexCapacity, offHeap);
+        offsets = IntColumn.allocate(figureCapacity + 1, offHeap);
+        minX = IntColumn.allocate(figureCapacity, offHeap);
+        minY = IntColumn.allocate(figureCapacity, offHeap);
+        maxX = IntColumn.allocate(figureCapacity, offHeap);
+        maxY = IntColumn.allocate(figureCapacity, offHeap);
+        centroidX = new double[figureCapacity];
+        centroidY = new double[figureCapacity];
+        areas = new double[figureCapacity];
+        perimeters = new double[figureCapacity];
+        names = new String[figureCapacity];
+        lineColors = new int[figureCapacity];
+        fillColors = new int[figureCapacity];
+        opacities = new float[figureCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    // Добавить фигуру, заданную массивом точек {x, y}
+    public ColoredPolygon add(int[][] coordinates, String name, String lineColor, String fillColor, double opacity)
+            throws InvalidPolygonException {
+        if (coordinates == null || coordinates.length < 3) {
+            throw new InvalidPolygonException("Многоугольник должен иметь минимум 3 вершины.");
+        }
+        int n = coordinates.length;
+        int[] px = new int[n];
+        int[] py = new int[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = coordinates[i][0];
+            py[i] = coordinates[i][1];
+        }
+        return add(px, py, 0, n, name, lineColor, fillColor, opacity);
+    }
+
+    // Добавить фигуру из плоских буферов вершин; вершины копируются в хранилище
+    public ColoredPolygon add(int[] px, int[] py, int offset, int n,
+                              String name, String lineColor, String fillColor, double opacity)
+            throws InvalidPolygonException {
+        double perimeter = Polygon.validateCoordinates(px, py, offset, n);
+        int lineRgb = FigureColors.parseHex(lineColor, "lineColor");
+        int fillRgb = FigureColors.parseHex(fillColor, "fillColor");
+        return add(px, py, offset, n, name, lineRgb, fillRgb, opacity, perimeter);
+    }
+
+    // Добавить фигуру с уже упакованными цветами 0xRRGGBB
+    public ColoredPolygon add(int[] px, int[] py, int offset, int n,
+                              String name, int lineRgb, int fillRgb, double opacity)
+            throws InvalidPolygonException {
+        double perimeter = Polygon.validateCoordinates(px, py, offset, n);
+        return add(px, py, offset, n, name, lineRgb, fillRgb, opacity, perimeter);
+    }
+
+    // Вершины уже проверены Polygon.validateCoordinates, perimeter - её результат
+    ColoredPolygon add(int[] px, int[] py, int offset, int n,
+                       String name, int lineRgb, int fillRgb, double opacity, double perimeter) {
+        if (opacity < 0.0 || opacity > 1.0) {
+            throw new IllegalArgumentException("Прозрачность должна быть в диапазоне [0.0, 1.0]");
+        }
+
+        ensureCapacity(size + 1, vertexCount + n);
+        int i = size;
+        xs.put(vertexCount, px, offset, n);
+        ys.put(vertexCount, py, offset, n);
+        vertexCount += n;
+        offsets.set(i + 1, vertexCount);
+
+        names[i] = (name == null || name.trim().isEmpty()) ? "Безымянный" : name.trim();
+        lineColors[i] = FigureColors.withOpacity(lineRgb, opacity);
+        fillColors[i] = FigureColors.withOpacity(fillRgb, opacity);
+        opacities[i] = (float) opacity;
+        areas[i] = Polygon.computeArea(px, py, offset, n);
+        perimeters[i] = perimeter;
+        computeBounds(i, px, py, offset, n);
+        computeCentroid(i, px, py, offset, n);
+        size++;
+        return new ColoredPolygon(this, i);
+    }
+
+    // Представление фигуры i
+    public ColoredPolygon get(int i) {
+        checkIndex(i);
+        return new ColoredPolygon(this, i);
+    }
+
+    // Представления всех фигур хранилища
+    public List<ColoredPolygon> figures() {
+        List<ColoredPolygon> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(new ColoredPolygon(this, i));
+        }
+        return list;
+    }
+
+    // --- Доступ к колонкам ---
+    public int vertexCount(int i) { return offsets.get(i + 1) - offsets.get(i); }
+    public int x(int i, int v) { return xs.get(offsets.get(i) + v); }
+    public int y(int i, int v) { return ys.get(offsets.get(i) + v); }
+    public String name(int i) { return names[i]; }
+    public int lineColor(int i) { return lineColors[i]; }
+    public int fillColor(int i) { return fillColors[i]; }
+    public double area(int i) { return areas[i]; }
+    public double perimeter(int i) { return perimeters[i]; }
+    public double centroidX(int i) { return centroidX[i]; }
+    public double centroidY(int i) { return centroidY[i]; }
+    public int minX(int i) { return minX.get(i); }
+    public int minY(int i) { return minY.get(i); }
+    public int maxX(int i) { return maxX.get(i); }
+    public int maxY(int i) { return maxY.get(i); }
+
+    // Прозрачность хранится как float; округление до 6 знаков возвращает исходное десятичное значение
+    public double opacity(int i) {
+        return Math.round(opacities[i] * 1e6) / 1e6;
+    }
+
+    double sideLength(int i, int side) {
+        int start = offsets.get(i);
+        int next = side + 1 == vertexCount(i) ? 0 : side + 1;
+        double dx = xs.get(start + next) - xs.get(start + side);
+        double dy = ys.get(start + next) - ys.get(start + side);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Сдвиг фигуры i на (dx, dy) вместе с границами и центром масс
+    public void translate(int i, int dx, int dy) {
+        for (int v = offsets.get(i), end = offsets.get(i + 1); v < end; v++) {
+            xs.add(v, dx);
+            ys.add(v, dy);
+        }
+        minX.add(i, dx);
+        maxX.add(i, dx);
+        minY.add(i, dy);
+        maxY.add(i, dy);
+        centroidX[i] += dx;
+        centroidY[i] += dy;
+    }
+
+    // Проверка попадания точки (тот же алгоритм, что и java.awt.Polygon.contains)
+    public boolean contains(int i, double x, double y) {
+        if (x < minX.get(i) || y < minY.get(i) || x >= maxX.get(i) || y >= maxY.get(i)) {
+            return false;
+        }
+        int start = offsets.get(i), end = offsets.get(i + 1);
+        int hits = 0;
+        int lastx = xs.get(end - 1);
+        int lasty = ys.get(end - 1);
+        int curx, cury;
+        for (int v = start; v < end; lastx = curx, lasty = cury, v++) {
+            curx = xs.get(v);
+            cury = ys.get(v);
+            if (cury == lasty) {
+                continue;
+            }
+            int leftx;
+            if (curx < lastx) {
+                if (x >= lastx) continue;
+                leftx = curx;
+            } else {
+                if (x >= curx) continue;
+                leftx = lastx;
+            }
+            double test1, test2;
+            if (cury < lasty) {
+                if (y < cury || y >= lasty) continue;
+                if (x < leftx) {
+                    hits++;
+                    continue;
+                }
+                test1 = x - curx;
+                test2 = y - cury;
+            } else {
+                if (y < lasty || y >= cury) continue;
+                if (x < leftx) {
+                    hits++;
+                    continue;
+                }
+                test1 = x - lastx;
+                test2 = y - lasty;
+            }
+            if (test1 < (test2 / (lasty - cury) * (lastx - curx))) {
+                hits++;
+            }
+        }
+        return (hits & 1) != 0;
+    }
+
+    // Копия вершин фигуры в виде java.awt.Polygon
+    public java.awt.Polygon toAWTPolygon(int i) {
+        int start = offsets.get(i);
+        int n = vertexCount(i);
+        int[] px = new int[n];
+        int[] py = new int[n];
+        for (int v = 0; v < n; v++) {
+            px[v] = xs.get(start + v);
+            py[v] = ys.get(start + v);
+        }
+        return new java.awt.Polygon(px, py, n);
+    }
+
+    // Форма фигуры i, читающая вершины прямо из хранилища
+    public java.awt.Shape shape(int i) {
+        checkIndex(i);
+        return new FigureShape(i);
+    }
+
+    private void computeBounds(int i, int[] px, int[] py, int start, int n) {
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (int v = start; v < start + n; v++) {
+            x0 = Math.min(x0, px[v]);
+            y0 = Math.min(y0, py[v]);
+            x1 = Math.max(x1, px[v]);
+            y1 = Math.max(y1, py[v]);
+        }
+        minX.set(i, x0);
+        minY.set(i, y0);
+        maxX.set(i, x1);
+        maxY.set(i, y1);
+    }
+
+    private void computeCentroid(int i, int[] px, int[] py, int start, int n) {
+        double cross = 0, cx = 0, cy = 0;
+        for (int k = 0; k < n; k++) {
+            int a = start + k;
+            int b = start + (k + 1 == n ? 0 : k + 1);
+            double c = (double) px[a] * py[b] - (double) px[b] * py[a];
+            cross += c;
+            cx += ((double) px[a] + px[b]) * c;
+            cy += ((double) py[a] + py[b]) * c;
+        }
+        if (cross != 0) {
+            centroidX[i] = cx / (3 * cross);
+            centroidY[i] = cy / (3 * cross);
+        } else {
+            // вырожденный случай: среднее вершин
+            cx = 0;
+            cy = 0;
+            for (int v = start; v < start + n; v++) {
+                cx += px[v];
+                cy += py[v];
+            }
+            centroidX[i] = cx / n;
+            centroidY[i] = cy / n;
+        }
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Фигура #" + i + " вне хранилища размером " + size);
+        }
+    }
+
+    private void ensureCapacity(int figures, int vertices) {
+        if (vertices > xs.capacity()) {
+            int cap = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(vertices, xs.capacity() * 2L));
+            xs = xs.grow(cap);
+            ys = ys.grow(cap);
+        }
+        if (figures > names.length) {
+            int cap = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(figures, names.length * 2L));
+            offsets = offsets.grow(cap + 1);
+            minX = minX.grow(cap);
+            minY = minY.grow(cap);
+            maxX = maxX.grow(cap);
+            maxY = maxY.grow(cap);
+            centroidX = Arrays.copyOf(centroidX, cap);
+            centroidY = Arrays.copyOf(centroidY, cap);
+            areas = Arrays.copyOf(areas, cap);
+            perimeters = Arrays.copyOf(perimeters, cap);
+            names = Arrays.copyOf(names, cap);
+            lineColors = Arrays.copyOf(lineColors, cap);
+            fillColors = Arrays.copyOf(fillColors, cap);
+            opacities = Arrays.copyOf(opacities, cap);
+        }
+    }
+
+    // Форма фигуры поверх колонок хранилища (только чтение)
+    private final class FigureShape implements java.awt.Shape {
+        private final int index;
+
+        FigureShape(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Rectangle getBounds() {
+            return new Rectangle(minX(index), minY(index), maxX(index) - minX(index), maxY(index) - minY(index));
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            return getBounds();
+        }
+
+        @Override
+        public boolean contains(double x, double y) {
+            return FigureStore.this.contains(index, x, y);
+        }
+
+        @Override
+        public boolean contains(Point2D p) {
+            return contains(p.getX(), p.getY());
+        }
+
+        // Редкие прямоугольные запросы делегируются копии java.awt.Polygon
+        @Override
+        public boolean intersects(double x, double y, double w, double h) {
+            return toAWTPolygon(index).intersects(x, y, w, h);
+        }
+
+        @Override
+        public boolean intersects(Rectangle2D r) {
+            return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        }
+
+        @Override
+        public boolean contains(double x, double y, double w, double h) {
+            return toAWTPolygon(index).contains(x, y, w, h);
+        }
+
+        @Override
+        public boolean contains(Rectangle2D r) {
+            return contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at) {
+            return new FigurePathIterator(index, at);
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return getPathIterator(at);
+        }
+    }
+
+    private final class FigurePathIterator implements PathIterator {
+        private final int start;
+        private final int n;
+        private final AffineTransform transform;
+        private int pos = 0;
+
+        FigurePathIterator(int index, AffineTransform transform) {
+            this.start = offsets.get(index);
+            this.n = vertexCount(index);
+            this.transform = transform;
+        }
+
+        @Override
+        public int getWindingRule() {
+            return WIND_EVEN_ODD;
+        }
+
+        @Override
+        public boolean isDone() {
+            return pos > n;
+        }
+
+        @Override
+        public void next() {
+            pos++;
+        }
+
+        @Override
+        public int currentSegment(float[] coords) {
+            if (pos >= n) {
+                return SEG_CLOSE;
+            }
+            coords[0] = xs.get(start + pos);
+            coords[1] = ys.get(start + pos);
+            if (transform != null) {
+                transform.transform(coords, 0, coords, 0, 1);
+            }
+            return pos == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+
+        @Override
+        public int currentSegment(double[] coords) {
+            if (pos >= n) {
+                return SEG_CLOSE;
+            }
+            coords[0] = xs.get(start + pos);
+            coords[1] = ys.get(start + pos);
+            if (transform != null) {
+                transform.transform(coords, 0, coords, 0, 1);
+            }
+            return pos == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+    }
+}
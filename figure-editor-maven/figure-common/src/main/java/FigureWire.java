@@ -0,0 +1,345 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Потоковый двоичный формат фигур для /figures (Content-Type/Accept: application/x-figures):
+//   заголовок  "FIGS", u8 версия (2; поток версии 1 читается, в нём нет id фигур)
+//   фигура     varint имя: 1 — новое (varint длина, UTF-8), k >= 2 — ранее переданное имя номер k - 2,
+//              varint id строки сцены на сервере (0 — фигура без id, новая),
+//              u24 цвет линии, u24 цвет заливки, varint прозрачность в миллионных,
+//              varint число вершин, вершины разностями с предыдущей в zig-zag varint (как в FIGB)
+//   конец      varint 0
+// Фигуры пишутся и читаются по одной через буфер фиксированного размера, список целиком
+// не собирается ни на одной стороне. Общий для редактора и веб-модуля.
+public final class FigureWire {
+    public static final String CONTENT_TYPE = "application/x-figures";
+    // Прежний формат: ObjectOutputStream со списком ColoredPolygon
+    public static final String LEGACY_CONTENT_TYPE = "application/octet-stream";
+
+    private static final int MAGIC = 0x46494753; // "FIGS"
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_IDS = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Словарь имён ограничен: дальше новые имена передаются каждый раз целиком
+    private static final int MAX_NAMES = 4096;
+    private static final int MAX_NAME_BYTES = 1 << 16;
+    private static final int MAX_VERTICES = 1 << 24;
+    // Прежний формат читается только через этот фильтр: список, фигуры и массивы вершин
+    // (массивы примитивов проверяются только по maxarray); остальные классы отклоняются.
+    // Object[] — внутренний массив ArrayList, его длина — число фигур; ColoredPolygon фильтр видит
+    // как результат readResolve у ColoredPolygon$Serialized, его собственные поля (FigureStore) не пропускаются
+    private static final ObjectInputFilter LEGACY_FILTER = ObjectInputFilter.Config.createFilter(
+        "java.util.ArrayList;ColoredPolygon$Serialized;ColoredPolygon;java.lang.Object;" +
+        "maxdepth=4;maxarray=" + (1 << 20) + ";maxrefs=" + (8 << 20) + ";!*");
+
+    private FigureWire() {
+    }
+
+    // Список фигур прежнего формата (LEGACY_CONTENT_TYPE). Чужой класс, превышение пределов фильтра
+    // или не список фигур — StreamCorruptedException
+    public static List<ColoredPolygon> readLegacy(InputStream in) throws IOException {
+        Object read;
+        try {
+            ObjectInputStream ois = new ObjectInputStream(in);
+            ois.setObjectInputFilter(LEGACY_FILTER);
+            read = ois.readObject();
+        } catch (InvalidClassException | ClassNotFoundException e) {
+            throw new StreamCorruptedException("Недопустимый объект в списке фигур: " + e.getMessage());
+        }
+        if (!(read instanceof List)) {
+            throw new StreamCorruptedException("Ожидается список фигур");
+        }
+        List<ColoredPolygon> figures = new ArrayList<>();
+        for (Object fig : (List<?>) read) {
+            if (!(fig instanceof ColoredPolygon)) {
+                throw new StreamCorruptedException("Ожидается список фигур");
+            }
+            figures.add((ColoredPolygon) fig);
+        }
+        return figures;
+    }
+
+    // Запрос или ответ в этом формате (по Content-Type или Accept)
+    public static boolean accepts(String header) {
+        return header != null && header.toLowerCase().contains(CONTENT_TYPE);
+    }
+
+    public static final class Writer {
+        private final OutputStream out;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos = 0;
+        private final Map<String, Integer> names = new HashMap<>();
+
+        public Writer(OutputStream out) throws IOException {
+            this.out = out;
+            putInt(MAGIC);
+            buf[pos++] = (byte) VERSION;
+        }
+
+        public void write(ColoredPolygon fig) throws IOException {
+            write(0, fig);
+        }
+
+        // figureId — строка фигуры в сцене сервера, 0 — фигура без id
+        public void write(long figureId, ColoredPolygon fig) throws IOException {
+            String name = fig.getName();
+            Integer index = names.get(name);
+            if (index != null) {
+                putVarint(index + 2);
+            } else {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                putVarint(1);
+                putVarint(bytes.length);
+                putBytes(bytes);
+                if (names.size() < MAX_NAMES) {
+                    names.put(name, names.size());
+                }
+            }
+            putVarlong(figureId);
+            putRgb(fig.getLineRgb());
+            putRgb(fig.getFillRgb());
+            putVarint((int) Math.round(fig.getOpacity() * 1e6));
+            int n = fig.getVertexCount();
+            putVarint(n);
+            int px = 0, py = 0;
+            for (int i = 0; i < n; i++) {
+                int x = fig.getX(i), y = fig.getY(i);
+                putVarint(zigzag(x - px));
+                putVarint(zigzag(y - py));
+                px = x;
+                py = y;
+            }
+        }
+
+        // Маркер конца и сброс буфера; поток не закрывается
+        public void finish() throws IOException {
+            putVarint(0);
+            drain();
+            out.flush();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (pos + bytes > buf.length) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+
+        private void putInt(int v) throws IOException {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        private void putRgb(int rgb) throws IOException {
+            ensure(3);
+            buf[pos++] = (byte) (rgb >>> 16);
+            buf[pos++] = (byte) (rgb >>> 8);
+            buf[pos++] = (byte) rgb;
+        }
+
+        private void putVarint(int v) throws IOException {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void putVarlong(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            if (bytes.length > buf.length - pos) {
+                drain();
+                if (bytes.length > buf.length) {
+                    out.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+    }
+
+    public static final class Reader {
+        private final InputStream in;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos = 0;
+        private int limit = 0;
+        private final List<String> names = new ArrayList<>();
+        private int[] xs = new int[64];
+        private int[] ys = new int[64];
+        private boolean finished = false;
+        private final boolean withIds;
+        private long id = 0;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = in;
+            if (getInt() != MAGIC) {
+                throw new StreamCorruptedException("Не поток фигур: нет заголовка FIGS");
+            }
+            int version = getByte();
+            if (version != VERSION && version != VERSION_WITHOUT_IDS) {
+                throw new StreamCorruptedException("Неподдерживаемая версия потока фигур: " + version);
+            }
+            withIds = version >= VERSION;
+        }
+
+        // id последней прочитанной фигуры; 0 — фигура без id
+        public long id() {
+            return id;
+        }
+
+        // Следующая фигура в store (null — у каждой фигуры своё хранилище); null — конец потока
+        public ColoredPolygon next(FigureStore store) throws IOException, InvalidPolygonException {
+            if (finished) return null;
+            int tag = getVarint();
+            if (tag == 0) {
+                finished = true;
+                return null;
+            }
+            String name;
+            if (tag == 1) {
+                int length = getVarint();
+                if (length < 0 || length > MAX_NAME_BYTES) {
+                    throw new StreamCorruptedException("Некорректная длина имени: " + length);
+                }
+                name = new String(getBytes(length), StandardCharsets.UTF_8);
+                if (names.size() < MAX_NAMES) {
+                    names.add(name);
+                }
+            } else {
+                int index = tag - 2;
+                if (index < 0 || index >= names.size()) {
+                    throw new StreamCorruptedException("Ссылка на неизвестное имя: " + index);
+                }
+                name = names.get(index);
+            }
+            id = withIds ? getVarlong() : 0;
+            if (id < 0) {
+                throw new StreamCorruptedException("Некорректный id фигуры: " + id);
+            }
+            int lineRgb = getRgb();
+            int fillRgb = getRgb();
+            double opacity = getVarint() / 1e6;
+            int n = getVarint();
+            if (n < 0 || n > MAX_VERTICES) {
+                throw new StreamCorruptedException("Некорректное число вершин: " + n);
+            }
+            if (n > xs.length) {
+                xs = new int[Math.max(n, xs.length * 2)];
+                ys = new int[xs.length];
+            }
+            int x = 0, y = 0;
+            for (int i = 0; i < n; i++) {
+                x += unzigzag(getVarint());
+                y += unzigzag(getVarint());
+                xs[i] = x;
+                ys[i] = y;
+            }
+            FigureStore target = store != null ? store : new FigureStore(1, Math.max(n, 1), false);
+            try {
+                return target.add(xs, ys, 0, n, name, lineRgb, fillRgb, opacity);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidPolygonException(e.getMessage());
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if (pos < limit) return true;
+            limit = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return false;
+            }
+            return true;
+        }
+
+        private int getByte() throws IOException {
+            if (!fill()) {
+                throw new EOFException("Поток фигур оборван");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        private int getInt() throws IOException {
+            return (getByte() << 24) | (getByte() << 16) | (getByte() << 8) | getByte();
+        }
+
+        private int getRgb() throws IOException {
+            return (getByte() << 16) | (getByte() << 8) | getByte();
+        }
+
+        private int getVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = pos < limit ? buf[pos++] & 0xFF : getByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Слишком длинное число в потоке фигур");
+        }
+
+        private long getVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = pos < limit ? buf[pos++] & 0xFF : getByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Слишком длинное число в потоке фигур");
+        }
+
+        private byte[] getBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int done = 0;
+            while (done < length) {
+                if (!fill()) {
+                    throw new EOFException("Поток фигур оборван");
+                }
+                int chunk = Math.min(length - done, limit - pos);
+                System.arraycopy(buf, pos, bytes, done, chunk);
+                pos += chunk;
+                done += chunk;
+            }
+            return bytes;
+        }
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
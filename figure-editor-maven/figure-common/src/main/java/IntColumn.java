@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// Колонка int-значений для FigureStore: в куче (int[]) или вне кучи (direct ByteBuffer)
+public abstract class IntColumn implements Serializable {
+
+    public static IntColumn allocate(int capacity, boolean offHeap) {
+        return offHeap ? new Direct(capacity) : new Heap(capacity);
+    }
+
+    public abstract int capacity();
+
+    public abstract int get(int i);
+
+    public abstract void set(int i, int value);
+
+    public abstract void add(int i, int delta);
+
+    // Скопировать n значений из массива src[srcOffset..] в позиции [dstOffset..]
+    public abstract void put(int dstOffset, int[] src, int srcOffset, int n);
+
+    public abstract boolean isOffHeap();
+
+    // Новая колонка большей ёмкости с тем же содержимым
+    public abstract IntColumn grow(int capacity);
+
+    private static final class Heap extends IntColumn {
+        private final int[] data;
+
+        Heap(int capacity) {
+            this.data = new int[capacity];
+        }
+
+        private Heap(int[] data) {
+            this.data = data;
+        }
+
+        @Override public int capacity() { return data.length; }
+        @Override public int get(int i) { return data[i]; }
+        @Override public void set(int i, int value) { data[i] = value; }
+        @Override public void add(int i, int delta) { data[i] += delta; }
+        @Override public boolean isOffHeap() { return false; }
+
+        @Override
+        public void put(int dstOffset, int[] src, int srcOffset, int n) {
+            System.arraycopy(src, srcOffset, data, dstOffset, n);
+        }
+
+        @Override
+        public IntColumn grow(int capacity) {
+            return new Heap(Arrays.copyOf(data, capacity));
+        }
+    }
+
+    private static final class Direct extends IntColumn {
+        private transient IntBuffer data;
+
+        Direct(int capacity) {
+            this.data = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, Integer.BYTES))
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        }
+
+        @Override public int capacity() { return data.capacity(); }
+        @Override public int get(int i) { return data.get(i); }
+        @Override public void set(int i, int value) { data.put(i, value); }
+        @Override public void add(int i, int delta) { data.put(i, data.get(i) + delta); }
+        @Override public boolean isOffHeap() { return true; }
+
+        @Override
+        public void put(int dstOffset, int[] src, int srcOffset, int n) {
+            IntBuffer view = data.duplicate();
+            view.position(dstOffset);
+            view.put(src, srcOffset, n);
+        }
+
+        @Override
+        public IntColumn grow(int capacity) {
+            Direct grown = new Direct(capacity);
+            IntBuffer src = data.duplicate();
+            src.clear();
+            grown.data.duplicate().put(src);
+            return grown;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            int n = data.capacity();
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                out.writeInt(data.get(i));
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int n = in.readInt();
+            data = ByteBuffer.allocateDirect(Math.multiplyExact(n, Integer.BYTES))
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+            for (int i = 0; i < n; i++) {
+                data.put(i, in.readInt());
+            }
+        }
+    }
+}
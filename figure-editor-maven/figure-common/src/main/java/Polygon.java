@@ -1,13 +1,17 @@
 import java.util.Arrays;
 
 public class Polygon implements Shape, Comparable<Polygon> {
-    protected final double[] sides;
+    protected final double[] sides; // null, если стороны вычисляются подклассом (см. sideLength)
     protected final double area;
+    protected final double perimeter;
+    protected final int sideCount;
 
     public Polygon(double[] sides) throws InvalidPolygonException {
         validateSides(sides);
         this.sides = sides.clone();
         this.area = computeAreaFromSides(sides);
+        this.perimeter = Arrays.stream(sides).sum();
+        this.sideCount = sides.length;
     }
 
     public Polygon(int[][] coordinates) throws InvalidPolygonException {
@@ -28,6 +32,55 @@ public class Polygon implements Shape, Comparable<Polygon> {
         validateSides(computedSides);
         this.sides = computedSides;
         this.area = computeAreaFromCoordinates(coordinates);
+        this.perimeter = Arrays.stream(computedSides).sum();
+        this.sideCount = n;
+    }
+
+    // Для подклассов, хранящих вершины вне объекта: параметры уже проверены и вычислены
+    protected Polygon(double area, double perimeter, int sideCount) {
+        this.sides = null;
+        this.area = area;
+        this.perimeter = perimeter;
+        this.sideCount = sideCount;
+    }
+
+    // Проверка многоугольника, заданного вершинами в плоских буферах; возвращает периметр
+    static double validateCoordinates(int[] xs, int[] ys, int offset, int n) throws InvalidPolygonException {
+        if (n < 3) {
+            throw new InvalidPolygonException("Многоугольник должен иметь минимум 3 вершины.");
+        }
+        double perim = 0;
+        for (int i = 0; i < n; i++) {
+            double side = sideLength(xs, ys, offset, n, i);
+            if (side <= 0) {
+                throw new InvalidPolygonException("Сторона #" + (i + 1) + " <= 0.");
+            }
+            perim += side;
+        }
+        for (int i = 0; i < n; i++) {
+            double side = sideLength(xs, ys, offset, n, i);
+            if (side >= perim - side) {
+                throw new InvalidPolygonException("Сторона #" + (i + 1) + " нарушает неравенство многоугольника.");
+            }
+        }
+        return perim;
+    }
+
+    static double sideLength(int[] xs, int[] ys, int offset, int n, int i) {
+        int j = i + 1 == n ? 0 : i + 1;
+        double dx = xs[offset + j] - xs[offset + i];
+        double dy = ys[offset + j] - ys[offset + i];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    static double computeArea(int[] xs, int[] ys, int offset, int n) {
+        double area = 0.0;
+        for (int i = 0; i < n; i++) {
+            int j = i + 1 == n ? 0 : i + 1;
+            area += (double) xs[offset + i] * ys[offset + j];
+            area -= (double) xs[offset + j] * ys[offset + i];
+        }
+        return Math.abs(area) / 2.0;
     }
 
     private void validateSides(double[] sides) throws InvalidPolygonException {
@@ -70,7 +123,7 @@ public class Polygon implements Shape, Comparable<Polygon> {
 
     @Override
     public double getPerimeter() {
-        return Arrays.stream(sides).sum();
+        return perimeter;
     }
 
     @Override
@@ -79,18 +132,30 @@ public class Polygon implements Shape, Comparable<Polygon> {
     }
 
     public double[] getSides() {
-        return sides.clone();
+        if (sides != null) {
+            return sides.clone();
+        }
+        double[] result = new double[sideCount];
+        for (int i = 0; i < sideCount; i++) {
+            result[i] = sideLength(i);
+        }
+        return result;
     }
 
     public int getSideCount() {
-        return sides.length;
+        return sideCount;
+    }
+
+    // Длина i-й стороны; подклассы без массива sides переопределяют
+    protected double sideLength(int i) {
+        return sides[i];
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Polygon{");
-        sb.append("sides=").append(Arrays.toString(sides));
+        sb.append("sides=").append(Arrays.toString(getSides()));
         sb.append(", perimeter=").append(String.format("%.2f", getPerimeter()));
         if (area >= 0) {
             sb.append(", area=").append(String.format("%.2f", area));
@@ -0,0 +1,511 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Общий доступ к файлу SQLite для редактора и веб-модуля: один экземпляр на путь,
+// схема создаётся один раз при открытии, соединения живут до завершения программы.
+// Запись идёт через единственное соединение-писатель под блокировкой, чтение — через
+// пул соединений (в режиме WAL читатели не ждут писателя). У каждого соединения свой
+// кэш подготовленных запросов.
+public final class SqliteDatabase {
+    // Значения по умолчанию; переопределяются свойствами figures.db.pragma.<имя>
+    // в редакторе или context-param db.pragma.<имя> в веб-модуле
+    private static final Map<String, String> DEFAULT_PRAGMAS = new LinkedHashMap<>();
+    static {
+        DEFAULT_PRAGMAS.put("journal_mode", "WAL");
+        DEFAULT_PRAGMAS.put("synchronous", "NORMAL");
+        DEFAULT_PRAGMAS.put("busy_timeout", "5000");
+        DEFAULT_PRAGMAS.put("cache_size", "-65536");   // 64 МБ
+        DEFAULT_PRAGMAS.put("mmap_size", "268435456"); // 256 МБ
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("SQLite JDBC не найден", e);
+        }
+    }
+
+    private static final Map<String, SqliteDatabase> OPEN = new HashMap<>();
+    private static boolean shutdownHookInstalled = false;
+
+    private final String url;
+    private final Map<String, String> pragmas;
+    private final int maxReaders;
+    private final PooledConnection writer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ArrayDeque<PooledConnection> idleReaders = new ArrayDeque<>();
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private boolean closed = false;
+
+    private SqliteDatabase(String path, Map<String, String> pragmas) throws SQLException {
+        this.url = "jdbc:sqlite:" + path;
+        this.pragmas = pragmas;
+        this.maxReaders = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.writer = connect();
+        initSchema();
+    }
+
+    // Экземпляр для пути; PRAGMA берутся из системных свойств figures.db.pragma.*
+    public static SqliteDatabase get(String path) throws SQLException {
+        return get(path, pragmasFrom(System.getProperties(), "figures.db.pragma."));
+    }
+
+    // Настройки применяются при первом открытии пути, последующие вызовы возвращают тот же экземпляр
+    public static synchronized SqliteDatabase get(String path, Map<String, String> pragmaOverrides) throws SQLException {
+        SqliteDatabase db = OPEN.get(path);
+        if (db == null) {
+            Map<String, String> pragmas = new LinkedHashMap<>(DEFAULT_PRAGMAS);
+            pragmas.putAll(pragmaOverrides);
+            db = new SqliteDatabase(path, pragmas);
+            OPEN.put(path, db);
+            if (!shutdownHookInstalled) {
+                Runtime.getRuntime().addShutdownHook(new Thread(SqliteDatabase::closeAll, "SqliteDatabase-close"));
+                shutdownHookInstalled = true;
+            }
+        }
+        return db;
+    }
+
+    // Выбрать PRAGMA из свойств с префиксом: "<префикс>synchronous" -> synchronous
+    public static Map<String, String> pragmasFrom(Properties properties, String prefix) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                result.put(name.substring(prefix.length()), properties.getProperty(name).trim());
+            }
+        }
+        return result;
+    }
+
+    public static synchronized void closeAll() {
+        for (SqliteDatabase db : OPEN.values()) {
+            db.close();
+        }
+        OPEN.clear();
+    }
+
+    // Сеанс чтения: соединение из пула в режиме автокоммита
+    public Session read() throws SQLException {
+        return new Session(this, takeReader(), false, false);
+    }
+
+    // Сеанс чтения одной транзакцией: все запросы сеанса видят один снимок БД (WAL), даже если
+    // писатель между ними фиксирует изменения. Снимок берётся при первом запросе
+    public Session readSnapshot() throws SQLException {
+        PooledConnection pc = takeReader();
+        try {
+            pc.connection.setAutoCommit(false);
+        } catch (SQLException | RuntimeException e) {
+            releaseReader(pc);
+            throw e;
+        }
+        return new Session(this, pc, false, true);
+    }
+
+    private PooledConnection takeReader() throws SQLException {
+        PooledConnection pc;
+        synchronized (idleReaders) {
+            while (true) {
+                if (closed) {
+                    throw new SQLException("База данных закрыта: " + url);
+                }
+                pc = idleReaders.poll();
+                if (pc != null) break;
+                if (allReaders.size() < maxReaders) {
+                    pc = connect();
+                    allReaders.add(pc);
+                    break;
+                }
+                try {
+                    idleReaders.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Ожидание соединения прервано", e);
+                }
+            }
+        }
+        return pc;
+    }
+
+    // Сеанс записи: единственное соединение-писатель, открытая транзакция.
+    // Без commit() изменения откатываются при закрытии сеанса.
+    public Session write() throws SQLException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new SQLException("База данных закрыта: " + url);
+            }
+            writer.connection.setAutoCommit(false);
+            return new Session(this, writer, true, true);
+        } catch (SQLException | RuntimeException e) {
+            writeLock.unlock();
+            throw e;
+        }
+    }
+
+    // Перенести WAL в основной файл с синхронизацией на диск. При synchronous=NORMAL последние
+    // транзакции в WAL могут пропасть при сбое питания, после контрольной точки — нет
+    public void checkpoint() throws SQLException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new SQLException("База данных закрыта: " + url);
+            }
+            try (Statement stmt = writer.connection.createStatement()) {
+                stmt.execute("PRAGMA wal_checkpoint(FULL)");
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void release(Session session) {
+        if (session.write) {
+            writeLock.unlock();
+        } else {
+            releaseReader(session.pc);
+        }
+    }
+
+    private void releaseReader(PooledConnection pc) {
+        synchronized (idleReaders) {
+            idleReaders.push(pc);
+            idleReaders.notify();
+        }
+    }
+
+    private PooledConnection connect() throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            for (Map.Entry<String, String> pragma : pragmas.entrySet()) {
+                stmt.execute("PRAGMA " + pragma.getKey() + " = " + pragma.getValue());
+            }
+        }
+        return new PooledConnection(conn);
+    }
+
+    // Текущая версия схемы (PRAGMA user_version):
+    // 1 — столбец z (порядок отрисовки);
+    // 2 — вершины в BLOB (см. SqliteFigureRow), границы, площадь и периметр;
+    // 3 — R*Tree figures_rtree по границам, поддерживается триггерами;
+    // 4 — индекс (z, id) для чтения в порядке отрисовки курсором, без сортировки всей таблицы;
+    // 5 — несколько сцен: таблица scenes, scene_id у фигур и изображений, индексы по (scene_id, ...);
+    //     figures_rtree получает измерение сцены (min_s = max_s = scene_id);
+    // 6 — scenes.figure_count поддерживается триггерами (без подсчёта всей сцены при каждой записи);
+    // 7 — изображения по хэшу содержимого с уменьшенными копиями (image_data, см. SqliteImages);
+    // 8 — scenes.version: номер изменения сцены, растёт при каждой записи (ETag в веб-модуле);
+    // 9 — figures.content_hash (SqliteFigureRow.contentHash) для сравнения без чтения вершин;
+    //     запись содержимого без нового хэша сбрасывает его в NULL
+    static final int SCHEMA_VERSION = 9;
+
+    // Таблица figures в формате версии 2; следующие версии добавляют к ней столбцы
+    private static final String FIGURES_TABLE_V2 =
+        "(" +
+        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+        "name TEXT NOT NULL, " +
+        "vertices BLOB NOT NULL, " +
+        "line_color TEXT NOT NULL, " +
+        "fill_color TEXT NOT NULL, " +
+        "opacity REAL NOT NULL, " +
+        "min_x INTEGER NOT NULL, " +
+        "min_y INTEGER NOT NULL, " +
+        "max_x INTEGER NOT NULL, " +
+        "max_y INTEGER NOT NULL, " +
+        "area REAL NOT NULL, " +
+        "perimeter REAL NOT NULL, " +
+        "z INTEGER NOT NULL DEFAULT 0" +
+        ")";
+
+    private void initSchema() throws SQLException {
+        Connection conn = writer.connection;
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            int version;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+            boolean hasFigures;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'figures'")) {
+                hasFigures = rs.next();
+            }
+            if (version > SCHEMA_VERSION) {
+                throw new SQLException("Схема БД версии " + version + " новее поддерживаемой (" + SCHEMA_VERSION + ")");
+            }
+            if (!hasFigures) {
+                stmt.execute("CREATE TABLE figures " + FIGURES_TABLE_V2);
+                version = 2; // таблица создана сразу в формате версии 2, дальше — общие шаги
+            }
+            // Таблица изображений (до версии 5 — одно изображение с id = 1)
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS images (" +
+                "id INTEGER PRIMARY KEY, " +
+                "raster_image BLOB NOT NULL, " +
+                "FOREIGN KEY(id) REFERENCES figures(id)" +
+                ");");
+            migrate(stmt, version);
+            stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Обновление существующей таблицы figures до SCHEMA_VERSION в транзакции initSchema
+    private void migrate(Statement stmt, int version) throws SQLException {
+        if (version < 1) {
+            // 1: порядок отрисовки отдельно от id, чтобы id фигуры не менялся между сохранениями
+            stmt.execute("ALTER TABLE figures ADD COLUMN z INTEGER NOT NULL DEFAULT 0");
+            stmt.execute("UPDATE figures SET z = id");
+        }
+        if (version < 2) {
+            // 2: координаты из текста "[[x,y],...]" в BLOB; таблица пересоздаётся, id и z сохраняются
+            stmt.execute("CREATE TABLE figures_v2 " + FIGURES_TABLE_V2);
+            Connection conn = stmt.getConnection();
+            try (Statement select = conn.createStatement();
+                 ResultSet rs = select.executeQuery(
+                     "SELECT id, name, coordinates, line_color, fill_color, opacity, z FROM figures");
+                 PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO figures_v2 (id, " + SqliteFigureRow.COLUMNS + ", z) VALUES (?, " +
+                     SqliteFigureRow.PLACEHOLDERS + ", ?)")) {
+                int[][] buffers = {new int[64], new int[64]};
+                int pending = 0;
+                while (rs.next()) {
+                    int n = SqliteFigureRow.parseLegacyCoordinates(rs.getString(3), buffers);
+                    insert.setLong(1, rs.getLong(1));
+                    SqliteFigureRow.bind(insert, 2, rs.getString(2), buffers[0], buffers[1], n,
+                        rs.getString(4), rs.getString(5), rs.getDouble(6));
+                    insert.setLong(2 + SqliteFigureRow.COLUMN_COUNT, rs.getLong(7));
+                    insert.addBatch();
+                    if (++pending >= 1000) {
+                        insert.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    insert.executeBatch();
+                }
+            }
+            stmt.execute("DROP TABLE figures");
+            stmt.execute("ALTER TABLE figures_v2 RENAME TO figures");
+        }
+        if (version < 3) {
+            // 3: пространственный индекс; границы включительно, целые координаты (rtree_i32)
+            stmt.execute("CREATE VIRTUAL TABLE figures_rtree USING rtree_i32(id, min_x, max_x, min_y, max_y)");
+            stmt.execute("INSERT INTO figures_rtree SELECT id, min_x, max_x, min_y, max_y FROM figures");
+            stmt.execute(
+                "CREATE TRIGGER figures_rtree_insert AFTER INSERT ON figures BEGIN " +
+                "INSERT INTO figures_rtree VALUES (new.id, new.min_x, new.max_x, new.min_y, new.max_y); END");
+            stmt.execute(
+                "CREATE TRIGGER figures_rtree_update AFTER UPDATE OF id, min_x, min_y, max_x, max_y ON figures BEGIN " +
+                "DELETE FROM figures_rtree WHERE id = old.id; " +
+                "INSERT INTO figures_rtree VALUES (new.id, new.min_x, new.max_x, new.min_y, new.max_y); END");
+            stmt.execute(
+                "CREATE TRIGGER figures_rtree_delete AFTER DELETE ON figures BEGIN " +
+                "DELETE FROM figures_rtree WHERE id = old.id; END");
+        }
+        if (version < 4) {
+            stmt.execute("CREATE INDEX figures_z ON figures (z, id)");
+        }
+        if (version < 5) {
+            // 5: прежний единственный рисунок становится сценой по умолчанию (id 1)
+            stmt.execute(
+                "CREATE TABLE scenes (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "name TEXT NOT NULL, " +
+                "figure_count INTEGER NOT NULL DEFAULT 0, " +
+                "updated_at INTEGER NOT NULL DEFAULT 0" +
+                ")");
+            stmt.execute("INSERT INTO scenes (id, name, figure_count) VALUES (1, 'Основная', (SELECT COUNT(*) FROM figures))");
+            stmt.execute("ALTER TABLE figures ADD COLUMN scene_id INTEGER NOT NULL DEFAULT 1");
+            // окно одной сцены не должно перебирать узлы R*Tree остальных: сцена — вырожденное измерение
+            stmt.execute("DROP TRIGGER figures_rtree_insert");
+            stmt.execute("DROP TRIGGER figures_rtree_update");
+            stmt.execute("DROP TRIGGER figures_rtree_delete");
+            stmt.execute("DROP TABLE figures_rtree");
+            stmt.execute(
+                "CREATE VIRTUAL TABLE figures_rtree USING rtree_i32(id, min_s, max_s, min_x, max_x, min_y, max_y)");
+            stmt.execute(
+                "INSERT INTO figures_rtree SELECT id, scene_id, scene_id, min_x, max_x, min_y, max_y FROM figures");
+            stmt.execute(
+                "CREATE TRIGGER figures_rtree_insert AFTER INSERT ON figures BEGIN " +
+                "INSERT INTO figures_rtree VALUES " +
+                "(new.id, new.scene_id, new.scene_id, new.min_x, new.max_x, new.min_y, new.max_y); END");
+            stmt.execute(
+                "CREATE TRIGGER figures_rtree_update AFTER UPDATE OF id, scene_id, min_x, min_y, max_x, max_y ON figures BEGIN " +
+                "DELETE FROM figures_rtree WHERE id = old.id; " +
+                "INSERT INTO figures_rtree VALUES " +
+                "(new.id, new.scene_id, new.scene_id, new.min_x, new.max_x, new.min_y, new.max_y); END");
+            stmt.execute(
+                "CREATE TRIGGER figures_rtree_delete AFTER DELETE ON figures BEGIN " +
+                "DELETE FROM figures_rtree WHERE id = old.id; END");
+            stmt.execute("DROP INDEX figures_z");
+            stmt.execute("CREATE INDEX figures_scene ON figures (scene_id, id)");
+            stmt.execute("CREATE INDEX figures_scene_z ON figures (scene_id, z, id)");
+            stmt.execute(
+                "CREATE TABLE images_v5 (" +
+                "scene_id INTEGER PRIMARY KEY REFERENCES scenes(id), " +
+                "raster_image BLOB NOT NULL" +
+                ")");
+            stmt.execute("INSERT INTO images_v5 (scene_id, raster_image) SELECT 1, raster_image FROM images WHERE id = 1");
+            stmt.execute("DROP TABLE images");
+            stmt.execute("ALTER TABLE images_v5 RENAME TO images");
+        }
+        if (version < 6) {
+            stmt.execute(
+                "CREATE TRIGGER figures_count_insert AFTER INSERT ON figures BEGIN " +
+                "UPDATE scenes SET figure_count = figure_count + 1 WHERE id = new.scene_id; END");
+            stmt.execute(
+                "CREATE TRIGGER figures_count_delete AFTER DELETE ON figures BEGIN " +
+                "UPDATE scenes SET figure_count = figure_count - 1 WHERE id = old.scene_id; END");
+            stmt.execute("UPDATE scenes SET figure_count = (SELECT COUNT(*) FROM figures WHERE scene_id = scenes.id)");
+        }
+        if (version < 7) {
+            stmt.execute("ALTER TABLE images RENAME TO images_v6");
+            stmt.execute(
+                "CREATE TABLE image_data (" +
+                "hash TEXT NOT NULL, " +
+                "size INTEGER NOT NULL, " +
+                "width INTEGER NOT NULL, " +
+                "height INTEGER NOT NULL, " +
+                "png BLOB NOT NULL, " +
+                "PRIMARY KEY (hash, size)" +
+                ")");
+            stmt.execute(
+                "CREATE TABLE images (" +
+                "scene_id INTEGER PRIMARY KEY REFERENCES scenes(id), " +
+                "hash TEXT NOT NULL" +
+                ")");
+            stmt.execute("CREATE INDEX images_hash ON images (hash)");
+            SqliteImages.migrateLegacy(stmt.getConnection());
+            stmt.execute("DROP TABLE images_v6");
+        }
+        if (version < 8) {
+            stmt.execute("ALTER TABLE scenes ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+        }
+        if (version < 9) {
+            // NULL — хэш неизвестен: строку писал редактор, сравнение по хэшу её не пропустит
+            stmt.execute("ALTER TABLE figures ADD COLUMN content_hash INTEGER");
+            stmt.execute(
+                "CREATE TRIGGER figures_hash_reset AFTER UPDATE OF name, vertices, line_color, fill_color, opacity " +
+                "ON figures WHEN new.content_hash IS old.content_hash BEGIN " +
+                "UPDATE figures SET content_hash = NULL WHERE id = new.id; END");
+        }
+    }
+
+    private void close() {
+        writeLock.lock();
+        try {
+            synchronized (idleReaders) {
+                closed = true;
+                for (PooledConnection pc : allReaders) {
+                    pc.close();
+                }
+                allReaders.clear();
+                idleReaders.clear();
+                idleReaders.notifyAll();
+            }
+            writer.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    private static final class PooledConnection {
+        final Connection connection;
+        final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        void close() {
+            try {
+                for (PreparedStatement ps : statements.values()) {
+                    ps.close();
+                }
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Соединение, взятое из пула на время работы; закрытие возвращает его обратно
+    public static final class Session implements AutoCloseable {
+        private final SqliteDatabase db;
+        private final PooledConnection pc;
+        private final boolean write;
+        private final boolean transaction; // открыта транзакция: запись или снимок для чтения
+        private boolean committed = false;
+        private boolean released = false;
+
+        private Session(SqliteDatabase db, PooledConnection pc, boolean write, boolean transaction) {
+            this.db = db;
+            this.pc = pc;
+            this.write = write;
+            this.transaction = transaction;
+        }
+
+        // Подготовленный запрос из кэша соединения; закрывать его не нужно
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = pc.statements.get(sql);
+            if (ps == null) {
+                ps = pc.connection.prepareStatement(sql);
+                pc.statements.put(sql, ps);
+            } else {
+                ps.clearParameters();
+                ps.clearBatch();
+            }
+            return ps;
+        }
+
+        public Connection connection() {
+            return pc.connection;
+        }
+
+        public void commit() throws SQLException {
+            if (!write) {
+                throw new IllegalStateException("Сеанс только для чтения");
+            }
+            pc.connection.commit();
+            committed = true;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (released) return;
+            released = true;
+            try {
+                if (transaction) {
+                    try {
+                        // снимок для чтения завершается откатом: изменений в нём нет
+                        if (!committed) {
+                            pc.connection.rollback();
+                        }
+                    } finally {
+                        pc.connection.setAutoCommit(true);
+                    }
+                }
+            } finally {
+                db.release(this);
+            }
+        }
+    }
+}
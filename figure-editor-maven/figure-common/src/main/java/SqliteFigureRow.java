@@ -0,0 +1,272 @@
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+// Строка таблицы figures (схема версии 2): вершины — BLOB, рядом границы, площадь и периметр.
+// Формат BLOB: varint n, затем n пар (x, y) — разности с предыдущей вершиной в zigzag-varint,
+// как в FIGB. Общий для редактора и веб-модуля.
+public final class SqliteFigureRow {
+    // Столбцы содержимого фигуры в порядке привязки bind(...)
+    public static final String COLUMNS =
+        "name, vertices, line_color, fill_color, opacity, min_x, min_y, max_x, max_y, area, perimeter";
+    public static final int COLUMN_COUNT = 11;
+    public static final String PLACEHOLDERS = "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?";
+
+    // Условие WHERE: фигура сцены, чьи границы пересекают прямоугольник (включительно), отбор по R*Tree.
+    // Сцена — вырожденное измерение [scene_id, scene_id], поэтому чужие сцены отсекает сам индекс;
+    // шесть параметров привязывает bindRect
+    public static final String IN_RECT =
+        "id IN (SELECT id FROM figures_rtree WHERE min_s <= ? AND max_s >= ? " +
+        "AND max_x >= ? AND min_x <= ? AND max_y >= ? AND min_y <= ?)";
+
+    private SqliteFigureRow() {
+    }
+
+    // Привязать содержимое фигуры к параметрам first .. first + COLUMN_COUNT - 1
+    public static void bind(PreparedStatement ps, int first, ColoredPolygon fig) throws SQLException {
+        bind(ps, first, fig, encode(fig));
+    }
+
+    // То же с уже закодированными вершинами
+    public static void bind(PreparedStatement ps, int first, ColoredPolygon fig, byte[] vertices) throws SQLException {
+        Rectangle bounds = fig.getBounds();
+        ps.setString(first, fig.getName());
+        ps.setBytes(first + 1, vertices);
+        ps.setString(first + 2, FigureColors.toHex(fig.getLineRgb()));
+        ps.setString(first + 3, FigureColors.toHex(fig.getFillRgb()));
+        ps.setDouble(first + 4, fig.getOpacity());
+        ps.setInt(first + 5, bounds.x);
+        ps.setInt(first + 6, bounds.y);
+        ps.setInt(first + 7, bounds.x + bounds.width);
+        ps.setInt(first + 8, bounds.y + bounds.height);
+        ps.setDouble(first + 9, fig.getArea());
+        ps.setDouble(first + 10, fig.getPerimeter());
+    }
+
+    // Наибольший выданный id фигуры. id общие для всех сцен и не используются повторно: новые берутся
+    // после него, с учётом sqlite_sequence (AUTOINCREMENT). Вызывать в сеансе записи
+    public static long lastId(SqliteDatabase.Session s) throws SQLException {
+        try (ResultSet rs = s.prepare(
+                "SELECT MAX(COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'figures'), 0), " +
+                "COALESCE((SELECT MAX(id) FROM figures), 0))").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Параметры IN_RECT начиная с first; углы могут быть в любом порядке
+    public static void bindRect(PreparedStatement ps, int first, long sceneId, int x0, int y0, int x1, int y1)
+            throws SQLException {
+        ps.setLong(first, sceneId);
+        ps.setLong(first + 1, sceneId);
+        ps.setInt(first + 2, Math.min(x0, x1));
+        ps.setInt(first + 3, Math.max(x0, x1));
+        ps.setInt(first + 4, Math.min(y0, y1));
+        ps.setInt(first + 5, Math.max(y0, y1));
+    }
+
+    // То же для вершин в плоских буферах (миграция старых строк)
+    static void bind(PreparedStatement ps, int first, String name, int[] xs, int[] ys, int n,
+                     String lineColor, String fillColor, double opacity) throws SQLException {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        double perimeter = 0;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+            perimeter += Polygon.sideLength(xs, ys, 0, n, i);
+        }
+        ps.setString(first, name);
+        ps.setBytes(first + 1, encode(xs, ys, n));
+        ps.setString(first + 2, lineColor);
+        ps.setString(first + 3, fillColor);
+        ps.setDouble(first + 4, opacity);
+        ps.setInt(first + 5, minX);
+        ps.setInt(first + 6, minY);
+        ps.setInt(first + 7, maxX);
+        ps.setInt(first + 8, maxY);
+        ps.setDouble(first + 9, Polygon.computeArea(xs, ys, 0, n));
+        ps.setDouble(first + 10, perimeter);
+    }
+
+    // Хэш содержимого фигуры для столбца content_hash (схема версии 9): имя, цвета, прозрачность
+    // и закодированные вершины; первые 8 байт SHA-256
+    public static long contentHash(ColoredPolygon fig, byte[] vertices) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(fig.getName().getBytes(StandardCharsets.UTF_8));
+        digest.update(ByteBuffer.allocate(17).put((byte) 0).putInt(fig.getLineRgb()).putInt(fig.getFillRgb())
+            .putDouble(fig.getOpacity()).array());
+        digest.update(vertices);
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    public static byte[] encode(ColoredPolygon fig) {
+        int n = fig.getVertexCount();
+        byte[] blob = new byte[5 + 10 * n];
+        int pos = putVarint(blob, 0, n);
+        int px = 0, py = 0;
+        for (int i = 0; i < n; i++) {
+            int x = fig.getX(i), y = fig.getY(i);
+            pos = putVarint(blob, pos, zigzag(x - px));
+            pos = putVarint(blob, pos, zigzag(y - py));
+            px = x;
+            py = y;
+        }
+        return Arrays.copyOf(blob, pos);
+    }
+
+    public static byte[] encode(int[] xs, int[] ys, int n) {
+        byte[] blob = new byte[5 + 10 * n];
+        int pos = putVarint(blob, 0, n);
+        int px = 0, py = 0;
+        for (int i = 0; i < n; i++) {
+            pos = putVarint(blob, pos, zigzag(xs[i] - px));
+            pos = putVarint(blob, pos, zigzag(ys[i] - py));
+            px = xs[i];
+            py = ys[i];
+        }
+        return Arrays.copyOf(blob, pos);
+    }
+
+    // Чтение строк в хранилище: вершины декодируются из BLOB в переиспользуемые буферы
+    // и копируются в колонки хранилища один раз, без промежуточных int[][] и строк.
+    // Без хранилища (null) каждая фигура получает собственное — для потокового чтения без накопления.
+    public static final class Reader {
+        private final FigureStore store;
+        private int[] xs = new int[64];
+        private int[] ys = new int[64];
+        private int pos;
+
+        public Reader(FigureStore store) {
+            this.store = store;
+        }
+
+        // Фигура из текущей строки; нужны столбцы COLUMNS (имена, не позиции)
+        public ColoredPolygon read(ResultSet rs) throws SQLException, InvalidPolygonException {
+            int n = decode(rs.getBytes("vertices"));
+            FigureStore target = store != null ? store : new FigureStore(1, n, false);
+            return target.add(xs, ys, 0, n, rs.getString("name"),
+                FigureColors.parseHex(rs.getString("line_color"), "lineColor"),
+                FigureColors.parseHex(rs.getString("fill_color"), "fillColor"),
+                rs.getDouble("opacity"));
+        }
+
+        private int decode(byte[] blob) throws InvalidPolygonException {
+            if (blob == null) {
+                throw new InvalidPolygonException("Нет вершин");
+            }
+            pos = 0;
+            int n = getVarint(blob);
+            // каждая вершина занимает не меньше двух байт
+            if (n < 0 || n > (blob.length - pos) / 2) {
+                throw new InvalidPolygonException("Некорректные вершины: n=" + n);
+            }
+            if (n > xs.length) {
+                xs = new int[Math.max(n, xs.length * 2)];
+                ys = new int[xs.length];
+            }
+            int x = 0, y = 0;
+            for (int i = 0; i < n; i++) {
+                x += unzigzag(getVarint(blob));
+                y += unzigzag(getVarint(blob));
+                xs[i] = x;
+                ys[i] = y;
+            }
+            return n;
+        }
+
+        private int getVarint(byte[] buf) throws InvalidPolygonException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (pos >= buf.length) {
+                    throw new InvalidPolygonException("Некорректные вершины: обрыв данных");
+                }
+                byte b = buf[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new InvalidPolygonException("Некорректные вершины: слишком длинное число");
+        }
+    }
+
+    // Разбор координат схемы версии 1 ("[[x,y],[x,y],...]") за один проход; возвращает число вершин,
+    // буферы растут по необходимости и возвращаются в out
+    static int parseLegacyCoordinates(String text, int[][] out) {
+        int[] xs = out[0], ys = out[1];
+        int n = 0;
+        int len = text.length();
+        int i = 0;
+        int[] value = new int[2];
+        int part = 0;
+        while (i < len) {
+            char c = text.charAt(i);
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                boolean negative = c == '-';
+                if (negative) i++;
+                long v = 0;
+                int start = i;
+                while (i < len && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    v = v * 10 + (text.charAt(i) - '0');
+                    if (v > Integer.MAX_VALUE + 1L) {
+                        throw new IllegalArgumentException("Слишком большая координата");
+                    }
+                    i++;
+                }
+                if (i == start) {
+                    throw new IllegalArgumentException("Некорректный JSON координат");
+                }
+                value[part++] = (int) (negative ? -v : v);
+                if (part == 2) {
+                    if (n == xs.length) {
+                        xs = Arrays.copyOf(xs, n * 2 + 4);
+                        ys = Arrays.copyOf(ys, xs.length);
+                    }
+                    xs[n] = value[0];
+                    ys[n] = value[1];
+                    n++;
+                    part = 0;
+                }
+            } else if (c == '[' || c == ']' || c == ',' || Character.isWhitespace(c)) {
+                i++;
+            } else {
+                throw new IllegalArgumentException("Некорректный JSON координат");
+            }
+        }
+        if (part != 0) {
+            throw new IllegalArgumentException("Некорректный JSON координат");
+        }
+        out[0] = xs;
+        out[1] = ys;
+        return n;
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int putVarint(byte[] buf, int pos, int v) {
+        while ((v & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return pos;
+    }
+}
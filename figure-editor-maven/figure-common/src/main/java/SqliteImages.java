@@ -0,0 +1,270 @@
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Изображения сцен по содержимому (схема версии 7). Ключ — SHA-256 пикселей, поэтому одинаковая
+// картинка хранится один раз, а повторное сохранение без визуальных изменений не кодирует PNG заново.
+// Для каждой картинки хранятся оригинал (size = 0) и уменьшенные копии по THUMBNAIL_SIZES
+// (наибольшая сторона); images связывает сцену с хэшем. Общий для редактора и веб-модуля.
+public final class SqliteImages {
+    public static final int ORIGINAL = 0;
+    // Уменьшенные копии не больше оригинала: для 800×600 это 64 и 256
+    public static final int[] THUMBNAIL_SIZES = {64, 256, 1024};
+
+    // Картинка, подготовленная к записи вне транзакции
+    public static final class Prepared {
+        final String hash;
+        final BufferedImage image;
+        List<Variant> variants; // null — картинка уже есть в БД, кодировать не нужно
+
+        private Prepared(String hash, BufferedImage image) {
+            this.hash = hash;
+            this.image = image;
+        }
+    }
+
+    // Один размер картинки в формате PNG
+    public static final class Variant {
+        public final int size;
+        public final int width;
+        public final int height;
+        public final byte[] png;
+
+        Variant(int size, int width, int height, byte[] png) {
+            this.size = size;
+            this.width = width;
+            this.height = height;
+            this.png = png;
+        }
+    }
+
+    private SqliteImages() {
+    }
+
+    // Хэш пикселей и, если такой картинки ещё нет, PNG всех размеров; вызывается до сеанса записи,
+    // чтобы кодирование не держало блокировку
+    public static Prepared prepare(SqliteDatabase db, BufferedImage image) throws SQLException, IOException {
+        Prepared prepared = new Prepared(hash(image), image);
+        boolean stored;
+        try (SqliteDatabase.Session s = db.read()) {
+            stored = exists(s, prepared.hash);
+        }
+        if (!stored) {
+            prepared.variants = encode(image);
+        }
+        return prepared;
+    }
+
+    // Связать сцену с картинкой в сеансе записи; картинка, на которую больше не ссылается
+    // ни одна сцена, удаляется
+    public static void attach(SqliteDatabase.Session s, long sceneId, Prepared prepared) throws SQLException, IOException {
+        if (prepared.variants == null && !exists(s, prepared.hash)) {
+            // удалена другим сохранением после prepare: кодируем под блокировкой, случай редкий
+            prepared.variants = encode(prepared.image);
+        }
+        if (prepared.variants != null) {
+            insert(s, prepared.hash, prepared.variants);
+        }
+        String previous = null;
+        PreparedStatement current = s.prepare("SELECT hash FROM images WHERE scene_id = ?");
+        current.setLong(1, sceneId);
+        try (ResultSet rs = current.executeQuery()) {
+            if (rs.next()) {
+                previous = rs.getString(1);
+            }
+        }
+        if (prepared.hash.equals(previous)) {
+            return;
+        }
+        PreparedStatement link = s.prepare("INSERT OR REPLACE INTO images (scene_id, hash) VALUES (?, ?)");
+        link.setLong(1, sceneId);
+        link.setString(2, prepared.hash);
+        link.executeUpdate();
+        if (previous != null) {
+            PreparedStatement orphan = s.prepare(
+                "DELETE FROM image_data WHERE hash = ? AND NOT EXISTS (SELECT 1 FROM images WHERE hash = ?)");
+            orphan.setString(1, previous);
+            orphan.setString(2, previous);
+            orphan.executeUpdate();
+        }
+    }
+
+    // PNG сцены: наименьшая копия, у которой наибольшая сторона не меньше size; size = ORIGINAL
+    // или больше всех копий — оригинал. null — у сцены нет изображения
+    public static byte[] load(SqliteDatabase.Session s, long sceneId, int size) throws SQLException {
+        PreparedStatement ps = s.prepare(
+            "SELECT d.png FROM images i JOIN image_data d ON d.hash = i.hash " +
+            "WHERE i.scene_id = ? AND (d.size >= ? OR d.size = 0) " +
+            "ORDER BY d.size = 0, d.size LIMIT 1");
+        ps.setLong(1, sceneId);
+        ps.setInt(2, size <= 0 ? Integer.MAX_VALUE : size);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getBytes(1) : null;
+        }
+    }
+
+    // SHA-256 размеров и пикселей (ARGB по строкам): не зависит от типа растра и настроек PNG
+    public static String hash(BufferedImage image) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        int w = image.getWidth(), h = image.getHeight();
+        digest.update((w + "x" + h).getBytes(StandardCharsets.US_ASCII));
+        int type = image.getType();
+        // растр редактора (INT_RGB) читается как есть, без пересчёта цвета в getRGB
+        boolean packed = type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB;
+        int opaque = type == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+        int[] row = new int[w];
+        ByteBuffer bytes = ByteBuffer.allocate(w * 4);
+        IntBuffer ints = bytes.asIntBuffer();
+        for (int y = 0; y < h; y++) {
+            if (packed) {
+                image.getRaster().getDataElements(0, y, w, 1, row);
+                for (int x = 0; x < w; x++) {
+                    row[x] |= opaque;
+                }
+            } else {
+                image.getRGB(0, y, w, 1, row, 0, w);
+            }
+            ints.clear();
+            ints.put(row);
+            digest.update(bytes.array());
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // Оригинал и уменьшенные копии в PNG
+    static List<Variant> encode(BufferedImage image) throws IOException {
+        List<Variant> variants = new ArrayList<>();
+        variants.add(new Variant(ORIGINAL, image.getWidth(), image.getHeight(), toPng(image)));
+        int longest = Math.max(image.getWidth(), image.getHeight());
+        for (int size : THUMBNAIL_SIZES) {
+            if (size >= longest) break;
+            BufferedImage thumbnail = scale(image, size);
+            variants.add(new Variant(size, thumbnail.getWidth(), thumbnail.getHeight(), toPng(thumbnail)));
+        }
+        return variants;
+    }
+
+    // Миграция на версию 7: PNG из прежней таблицы images_v6 (scene_id, raster_image)
+    static void migrateLegacy(Connection conn) throws SQLException {
+        List<Long> scenes = new ArrayList<>();
+        List<byte[]> pngs = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT scene_id, raster_image FROM images_v6");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                scenes.add(rs.getLong(1));
+                pngs.add(rs.getBytes(2));
+            }
+        }
+        try (PreparedStatement link = conn.prepareStatement("INSERT INTO images (scene_id, hash) VALUES (?, ?)");
+             PreparedStatement data = conn.prepareStatement(
+                 "INSERT OR IGNORE INTO image_data (hash, size, width, height, png) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < scenes.size(); i++) {
+                BufferedImage image;
+                try {
+                    image = pngs.get(i) != null ? ImageIO.read(new ByteArrayInputStream(pngs.get(i))) : null;
+                } catch (IOException e) {
+                    image = null;
+                }
+                if (image == null) {
+                    continue; // нечитаемое изображение не переносится
+                }
+                String hash = hash(image);
+                List<Variant> variants;
+                try {
+                    variants = encode(image);
+                } catch (IOException e) {
+                    throw new SQLException("Не удалось перекодировать изображение сцены " + scenes.get(i), e);
+                }
+                // оригинал остаётся прежним PNG, копии создаются заново
+                variants.set(0, new Variant(ORIGINAL, image.getWidth(), image.getHeight(), pngs.get(i)));
+                for (Variant v : variants) {
+                    bindVariant(data, hash, v);
+                    data.executeUpdate();
+                }
+                link.setLong(1, scenes.get(i));
+                link.setString(2, hash);
+                link.executeUpdate();
+            }
+        }
+    }
+
+    private static boolean exists(SqliteDatabase.Session s, String hash) throws SQLException {
+        PreparedStatement ps = s.prepare("SELECT 1 FROM image_data WHERE hash = ? AND size = 0");
+        ps.setString(1, hash);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    private static void insert(SqliteDatabase.Session s, String hash, List<Variant> variants) throws SQLException {
+        PreparedStatement ps = s.prepare(
+            "INSERT OR IGNORE INTO image_data (hash, size, width, height, png) VALUES (?, ?, ?, ?, ?)");
+        for (Variant v : variants) {
+            bindVariant(ps, hash, v);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+    }
+
+    private static void bindVariant(PreparedStatement ps, String hash, Variant v) throws SQLException {
+        ps.setString(1, hash);
+        ps.setInt(2, v.size);
+        ps.setInt(3, v.width);
+        ps.setInt(4, v.height);
+        ps.setBytes(5, v.png);
+    }
+
+    // Уменьшение до наибольшей стороны size: пополам, пока больше чем вдвое, затем билинейно
+    private static BufferedImage scale(BufferedImage image, int size) {
+        int w = image.getWidth(), h = image.getHeight();
+        double factor = (double) size / Math.max(w, h);
+        int targetW = Math.max(1, (int) Math.round(w * factor));
+        int targetH = Math.max(1, (int) Math.round(h * factor));
+        BufferedImage current = image;
+        while (w / 2 >= targetW && h / 2 >= targetH) {
+            w /= 2;
+            h /= 2;
+            current = resize(current, w, h);
+        }
+        return w == targetW && h == targetH ? current : resize(current, targetW, targetH);
+    }
+
+    private static BufferedImage resize(BufferedImage image, int w, int h) {
+        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, w, h, null);
+        g.dispose();
+        return result;
+    }
+
+    private static byte[] toPng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", baos);
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,100 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Таблица scenes: рисунки в одной БД. Фигуры и изображения ссылаются на сцену через scene_id,
+// число фигур сцены поддерживается триггерами. Сцена DEFAULT есть всегда.
+// Общий для редактора и веб-модуля; методы работают в переданном сеансе.
+public final class SqliteScenes {
+    public static final long DEFAULT = 1;
+
+    public static final class Scene {
+        public final long id;
+        public final String name;
+        public final long figureCount;
+        public final long updatedAt; // мс с эпохи, 0 — не сохранялась
+        public final long version;   // растёт при каждой записи сцены
+
+        Scene(long id, String name, long figureCount, long updatedAt, long version) {
+            this.id = id;
+            this.name = name;
+            this.figureCount = figureCount;
+            this.updatedAt = updatedAt;
+            this.version = version;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (фигур: " + figureCount + ")";
+        }
+    }
+
+    private static final String SELECT = "SELECT id, name, figure_count, updated_at, version FROM scenes ";
+
+    private SqliteScenes() {
+    }
+
+    public static List<Scene> list(SqliteDatabase.Session s) throws SQLException {
+        List<Scene> scenes = new ArrayList<>();
+        try (ResultSet rs = s.prepare(SELECT + "ORDER BY id").executeQuery()) {
+            while (rs.next()) {
+                scenes.add(read(rs));
+            }
+        }
+        return scenes;
+    }
+
+    // Сцена по номеру или null
+    public static Scene find(SqliteDatabase.Session s, long id) throws SQLException {
+        PreparedStatement ps = s.prepare(SELECT + "WHERE id = ?");
+        ps.setLong(1, id);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? read(rs) : null;
+        }
+    }
+
+    // Первая сцена с таким именем или null
+    public static Scene findByName(SqliteDatabase.Session s, String name) throws SQLException {
+        PreparedStatement ps = s.prepare(SELECT + "WHERE name = ? ORDER BY id LIMIT 1");
+        ps.setString(1, name);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? read(rs) : null;
+        }
+    }
+
+    // Сцена должна существовать (сеанс записи: сохранение в удалённую сцену не создаёт «висячих» строк)
+    public static void require(SqliteDatabase.Session s, long id) throws SQLException {
+        if (find(s, id) == null) {
+            throw new SQLException("Сцена " + id + " не найдена");
+        }
+    }
+
+    // Новая пустая сцена в сеансе записи; возвращает её номер
+    public static long create(SqliteDatabase.Session s, String name) throws SQLException {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Имя сцены не может быть пустым");
+        }
+        PreparedStatement ps = s.prepare("INSERT INTO scenes (name, updated_at) VALUES (?, ?)");
+        ps.setString(1, name.trim());
+        ps.setLong(2, System.currentTimeMillis());
+        ps.executeUpdate();
+        try (ResultSet rs = s.prepare("SELECT last_insert_rowid()").executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // Отметить изменение сцены (в той же транзакции, что и запись её фигур или изображения)
+    public static void touch(SqliteDatabase.Session s, long id) throws SQLException {
+        PreparedStatement ps = s.prepare("UPDATE scenes SET updated_at = ?, version = version + 1 WHERE id = ?");
+        ps.setLong(1, System.currentTimeMillis());
+        ps.setLong(2, id);
+        ps.executeUpdate();
+    }
+
+    private static Scene read(ResultSet rs) throws SQLException {
+        return new Scene(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getLong(4), rs.getLong(5));
+    }
+}
@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ColoredPolygonTest {
+
+    private static ColoredPolygon square() throws InvalidPolygonException {
+        int[][] coords = {{0, 0}, {10, 0}, {10, 10}, {0, 10}};
+        return new ColoredPolygon(coords, "square", "#FF0000", "#00FF00", 0.5);
+    }
+
+    @Test
+    void moveByShiftsCachedGeometry() throws Exception {
+        ColoredPolygon p = square();
+        // прогреть кэши до сдвига
+        assertEquals(new Rectangle(0, 0, 10, 10), p.getBounds());
+        assertTrue(p.contains(5, 5));
+        assertTrue(p.getShape().contains(5, 5));
+
+        p.moveBy(100, 50);
+
+        assertEquals(new Rectangle(100, 50, 10, 10), p.getBounds());
+        assertEquals(new Rectangle(100, 50, 10, 10), p.getShape().getBounds());
+        assertEquals(new Rectangle(100, 50, 10, 10), p.getAWTPolygon().getBounds());
+        assertFalse(p.contains(5, 5));
+        assertTrue(p.contains(105, 55));
+        assertTrue(p.getShape().contains(105, 55));
+        assertEquals(new Point2D.Double(105, 55), p.getCentroid());
+        assertArrayEquals(new int[][]{{100, 50}, {110, 50}, {110, 60}, {100, 60}}, p.getCoordinates());
+    }
+
+    @Test
+    void returnedGeometryIsACopy() throws Exception {
+        ColoredPolygon p = square();
+        p.getAWTPolygon().translate(1000, 1000);
+        p.getBounds().translate(1000, 1000);
+        p.getCoordinates()[0][0] = 1000;
+
+        assertEquals(new Rectangle(0, 0, 10, 10), p.getBounds());
+        assertTrue(p.contains(5, 5));
+        assertEquals(0, p.getCoordinates()[0][0]);
+    }
+
+    @Test
+    void perimeterAndColorsAreKept() throws Exception {
+        ColoredPolygon p = square();
+        p.moveBy(-7, 3);
+        assertEquals(40.0, p.getPerimeter(), 1e-9);
+        assertEquals(0xFF0000, p.getLineColor().getRGB() & 0xFFFFFF);
+        assertEquals(0x00FF00, p.getFillColor().getRGB() & 0xFFFFFF);
+    }
+
+    @Test
+    void rejectsBadColor() {
+        int[][] coords = {{0, 0}, {10, 0}, {10, 10}};
+        assertThrows(IllegalArgumentException.class,
+                () -> new ColoredPolygon(coords, "bad", "red", "#000000", 1.0));
+    }
+
+    // Прежний формат /figures: фигура сериализуется сама, без хранилища, в котором лежит
+    @Test
+    void serializesWithoutBackingStore() throws Exception {
+        FigureStore store = new FigureStore();
+        for (int i = 0; i < 1000; i++) {
+            store.add(new int[][]{{i, 0}, {i + 5, 0}, {i, 5}}, "f" + i, "#000000", "#FFFFFF", 1.0);
+        }
+        ColoredPolygon p = square();
+        p.moveBy(3, 4);
+        List<ColoredPolygon> list = new ArrayList<>(List.of(p, store.get(999)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(list);
+        }
+        assertTrue(bytes.size() < 2000, "размер: " + bytes.size());
+
+        List<?> read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (List<?>) in.readObject();
+        }
+        ColoredPolygon q = (ColoredPolygon) read.get(0);
+        assertEquals("square", q.getName());
+        assertEquals(0.5, q.getOpacity());
+        assertEquals(0xFF0000, q.getLineRgb());
+        assertArrayEquals(p.getCoordinates(), q.getCoordinates());
+        assertEquals(new Rectangle(3, 4, 10, 10), q.getBounds());
+        assertEquals("f999", ((ColoredPolygon) read.get(1)).getName());
+    }
+}
@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.jupiter.api.Test;
+
+class FigureColorsTest {
+
+    @Test
+    void parsesHex() {
+        assertEquals(0x00AAFF, FigureColors.parseHex("#00aaFF"));
+        assertEquals(0xFFFFFF, FigureColors.parseHex("#FFFFFF"));
+        assertEquals(0x123456, FigureColors.parseHex("x=#123456;", 2, 9));
+        assertEquals(-1, FigureColors.parseHex((CharSequence) null));
+        assertEquals(-1, FigureColors.parseHex("123456"));
+        assertEquals(-1, FigureColors.parseHex("#12345"));
+        assertEquals(-1, FigureColors.parseHex("#1234567"));
+        assertEquals(-1, FigureColors.parseHex("#12345G"));
+    }
+
+    @Test
+    void checkedParseKeepsOldMessage() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> FigureColors.parseHex("red", "lineColor"));
+        assertEquals("Некорректный формат цвета в lineColor: red (ожидается #RRGGBB)", e.getMessage());
+    }
+
+    @Test
+    void formatsHexIgnoringAlpha() {
+        assertEquals("#00AAFF", FigureColors.toHex(0x8000AAFF));
+        assertEquals("x#0000FF", FigureColors.appendHex(new StringBuilder("x"), 0xFF).toString());
+        for (int rgb : new int[]{0, 0xFFFFFF, 0x123456, 0xABCDEF}) {
+            assertEquals(rgb, FigureColors.parseHex(FigureColors.toHex(rgb)));
+            assertEquals(String.format("#%06X", rgb), FigureColors.toHex(rgb));
+        }
+    }
+
+    @Test
+    void opacityBecomesAlpha() {
+        assertEquals(0xFF123456, FigureColors.withOpacity(0x123456, 1.0));
+        assertEquals(0x00123456, FigureColors.withOpacity(0xFF123456, 0.0));
+        assertEquals(0x80123456, FigureColors.withOpacity(0x123456, 0.5));
+    }
+
+    @Test
+    void internsColors() {
+        Color c = FigureColors.color(0x80102030);
+        assertEquals(new Color(0x10, 0x20, 0x30, 0x80), c);
+        assertSame(c, FigureColors.color(0x80102030));
+        assertNotSame(c, FigureColors.color(0x81102030));
+    }
+
+    // Рост таблицы при одновременных чтениях не должен терять и дублировать цвета
+    @Test
+    void internsConcurrently() throws Exception {
+        ConcurrentMap<Integer, Color> seen = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int argb = 0x7F000000; argb < 0x7F000000 + 5000; argb++) {
+                    Color c = FigureColors.color(argb);
+                    Color first = seen.putIfAbsent(argb, c);
+                    if (c.getRGB() != argb || (first != null && first != c)) {
+                        synchronized (errors) {
+                            errors.add(new AssertionError("цвет " + Integer.toHexString(argb)));
+                        }
+                        return;
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), errors);
+    }
+}
@@ -0,0 +1,165 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.PathIterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FigureStoreTest {
+
+    private static int[][] square(int x, int y, int size) {
+        return new int[][]{{x, y}, {x + size, y}, {x + size, y + size}, {x, y + size}};
+    }
+
+    @Test
+    void keepsFiguresAndAttributes() throws Exception {
+        FigureStore store = new FigureStore();
+        store.add(square(0, 0, 10), "a", "#FF0000", "#00FF00", 0.3);
+        store.add(new int[][]{{0, 0}, {30, 0}, {0, 40}}, "  ", "#000000", "#FFFFFF", 1.0);
+
+        assertEquals(2, store.size());
+        assertEquals(7, store.getVertexCount());
+
+        ColoredPolygon a = store.get(0);
+        assertEquals("a", a.getName());
+        assertEquals(0x4DFF0000, store.lineColor(0));
+        assertEquals(0x4D00FF00, store.fillColor(0));
+        assertEquals(0.3, a.getOpacity());
+        assertEquals(100.0, a.getArea(), 1e-9);
+        assertEquals(40.0, a.getPerimeter(), 1e-9);
+        assertArrayEquals(square(0, 0, 10), a.getCoordinates());
+
+        ColoredPolygon b = store.get(1);
+        assertEquals("Безымянный", b.getName());
+        assertEquals(600.0, b.getArea(), 1e-9);
+        assertEquals(120.0, b.getPerimeter(), 1e-9);
+        assertArrayEquals(new double[]{30, 50, 40}, b.getSides(), 1e-9);
+        assertEquals(new Rectangle(0, 0, 30, 40), b.getBounds());
+    }
+
+    @Test
+    void growsPastInitialCapacity() throws Exception {
+        FigureStore store = new FigureStore(1, 3);
+        for (int i = 0; i < 100; i++) {
+            store.add(square(i * 20, i, 10 + i), "f" + i, "#000000", "#FFFFFF", 1.0);
+        }
+        assertEquals(100, store.size());
+        assertEquals(400, store.getVertexCount());
+        List<ColoredPolygon> figures = store.figures();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("f" + i, figures.get(i).getName());
+            assertArrayEquals(square(i * 20, i, 10 + i), figures.get(i).getCoordinates());
+        }
+    }
+
+    // Вне кучи хранилище должно вести себя так же, как в куче
+    @Test
+    void offHeapStoreMatchesHeapStore() throws Exception {
+        FigureStore heap = new FigureStore(1, 3, false);
+        FigureStore direct = new FigureStore(1, 3, true);
+        assertFalse(heap.isOffHeap());
+        assertTrue(direct.isOffHeap());
+
+        Random rnd = new Random(3);
+        for (int i = 0; i < 50; i++) {
+            int[][] coords = square(rnd.nextInt(500), rnd.nextInt(500), 5 + rnd.nextInt(50));
+            heap.add(coords, "f" + i, "#123456", "#ABCDEF", 0.5);
+            direct.add(coords, "f" + i, "#123456", "#ABCDEF", 0.5);
+        }
+        direct.get(10).moveBy(7, 8);
+        heap.get(10).moveBy(7, 8);
+
+        assertEquals(heap.getVertexCount(), direct.getVertexCount());
+        for (int i = 0; i < heap.size(); i++) {
+            assertArrayEquals(heap.get(i).getCoordinates(), direct.get(i).getCoordinates());
+            assertEquals(heap.get(i).getBounds(), direct.get(i).getBounds());
+            assertEquals(heap.get(i).getArea(), direct.get(i).getArea());
+            for (int x = 0; x < 560; x += 37) {
+                assertEquals(heap.contains(i, x, x), direct.contains(i, x, x));
+            }
+        }
+    }
+
+    @Test
+    void translateMovesOnlyOneFigure() throws Exception {
+        FigureStore store = new FigureStore();
+        store.add(square(0, 0, 10), "a", "#000000", "#FFFFFF", 1.0);
+        store.add(square(50, 50, 10), "b", "#000000", "#FFFFFF", 1.0);
+
+        store.get(0).moveBy(5, -5);
+
+        assertArrayEquals(square(5, -5, 10), store.get(0).getCoordinates());
+        assertEquals(new Rectangle(5, -5, 10, 10), store.get(0).getBounds());
+        assertEquals(10.0, store.centroidX(0), 1e-9);
+        assertEquals(0.0, store.centroidY(0), 1e-9);
+        assertArrayEquals(square(50, 50, 10), store.get(1).getCoordinates());
+    }
+
+    // Попадание в точку должно совпадать с java.awt.Polygon, в том числе на границах
+    @Test
+    void containsMatchesAwtPolygon() throws Exception {
+        Random rnd = new Random(7);
+        FigureStore store = new FigureStore();
+        for (int f = 0; f < 20; f++) {
+            int n = 3 + rnd.nextInt(6);
+            int[][] coords = new int[n][];
+            for (int v = 0; v < n; v++) {
+                coords[v] = new int[]{rnd.nextInt(100), rnd.nextInt(100)};
+            }
+            try {
+                store.add(coords, "f" + f, "#000000", "#FFFFFF", 1.0);
+            } catch (InvalidPolygonException e) {
+                // вырожденный случайный многоугольник пропускаем
+            }
+        }
+        for (int i = 0; i < store.size(); i++) {
+            java.awt.Polygon awt = store.toAWTPolygon(i);
+            for (int x = -2; x <= 102; x += 3) {
+                for (int y = -2; y <= 102; y += 3) {
+                    assertEquals(awt.contains(x, y), store.contains(i, x, y), "фигура " + i + ", точка " + x + "," + y);
+                    assertEquals(awt.contains(x, y), store.shape(i).contains(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    void shapeIteratesVertices() throws Exception {
+        FigureStore store = new FigureStore();
+        store.add(new int[][]{{1, 2}, {30, 4}, {5, 60}}, "t", "#000000", "#FFFFFF", 1.0);
+
+        PathIterator it = store.shape(0).getPathIterator(null);
+        double[] c = new double[6];
+        assertEquals(PathIterator.SEG_MOVETO, it.currentSegment(c));
+        assertArrayEquals(new double[]{1, 2}, new double[]{c[0], c[1]});
+        it.next();
+        assertEquals(PathIterator.SEG_LINETO, it.currentSegment(c));
+        assertArrayEquals(new double[]{30, 4}, new double[]{c[0], c[1]});
+        it.next();
+        assertEquals(PathIterator.SEG_LINETO, it.currentSegment(c));
+        it.next();
+        assertEquals(PathIterator.SEG_CLOSE, it.currentSegment(c));
+        it.next();
+        assertEquals(true, it.isDone());
+    }
+
+    @Test
+    void rejectsInvalidInputWithoutAdding() throws Exception {
+        FigureStore store = new FigureStore();
+        assertThrows(InvalidPolygonException.class,
+                () -> store.add(new int[][]{{0, 0}, {1, 1}}, "x", "#000000", "#FFFFFF", 1.0));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.add(square(0, 0, 10), "x", "#00000", "#FFFFFF", 1.0));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.add(square(0, 0, 10), "x", "#000000", "#FFFFFF", 1.5));
+        assertEquals(0, store.size());
+        assertEquals(0, store.getVertexCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(0));
+    }
+}
@@ -0,0 +1,200 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FigureWireTest {
+
+    private static byte[] write(List<ColoredPolygon> figures) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FigureWire.Writer writer = new FigureWire.Writer(bytes);
+        for (ColoredPolygon fig : figures) {
+            writer.write(fig);
+        }
+        writer.finish();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void roundTripKeepsFigures() throws Exception {
+        List<ColoredPolygon> figures = Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "треугольник", "#FF0000", "#00FF00", 1.0),
+            new ColoredPolygon(new int[][]{{-5, -5}, {5, -5}, {5, 5}, {-5, 5}}, "треугольник", "#123456", "#ABCDEF", 0.25),
+            // разности соседних вершин не помещаются в int: zig-zag должен пережить переполнение
+            new ColoredPolygon(new int[][]{{-1_000_000_000, 0}, {1_000_000_000, 7}, {0, -1_000_000_000}}, "огромный", "#000000", "#FFFFFF", 0.3));
+
+        FigureWire.Reader reader = new FigureWire.Reader(new ByteArrayInputStream(write(figures)));
+        FigureStore store = new FigureStore();
+        List<ColoredPolygon> read = new ArrayList<>();
+        for (ColoredPolygon fig; (fig = reader.next(store)) != null; ) {
+            read.add(fig);
+        }
+        assertEquals(figures.size(), read.size());
+        for (int i = 0; i < figures.size(); i++) {
+            assertSameFigure(figures.get(i), read.get(i));
+        }
+        assertEquals(3, store.size());
+        assertNull(reader.next(store), "после маркера конца фигур нет");
+    }
+
+    // Повторное имя уходит ссылкой на словарь: запись заметно короче первой
+    @Test
+    void repeatedNamesAreSentOnce() throws Exception {
+        String name = "очень длинное имя фигуры, которое повторяется";
+        ColoredPolygon fig = new ColoredPolygon(new int[][]{{0, 0}, {1, 0}, {0, 1}}, name, "#000000", "#000000", 1.0);
+        int one = write(List.of(fig)).length;
+        int two = write(List.of(fig, fig)).length;
+        assertTrue(two - one < 20, "вторая запись: " + (two - one) + " байт");
+
+        FigureWire.Reader reader = new FigureWire.Reader(new ByteArrayInputStream(write(List.of(fig, fig))));
+        assertEquals(name, reader.next(null).getName());
+        assertEquals(name, reader.next(null).getName());
+        assertNull(reader.next(null));
+    }
+
+    @Test
+    void carriesFigureIds() throws Exception {
+        ColoredPolygon fig = new ColoredPolygon(new int[][]{{0, 0}, {1, 0}, {0, 1}}, "a", "#000000", "#000000", 1.0);
+        long[] ids = {42, 0, 5_000_000_000L};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FigureWire.Writer writer = new FigureWire.Writer(bytes);
+        for (long id : ids) {
+            writer.write(id, fig);
+        }
+        writer.write(fig);
+        writer.finish();
+
+        FigureWire.Reader reader = new FigureWire.Reader(new ByteArrayInputStream(bytes.toByteArray()));
+        for (long id : ids) {
+            assertSameFigure(fig, reader.next(null));
+            assertEquals(id, reader.id());
+        }
+        assertNotNull(reader.next(null));
+        assertEquals(0, reader.id(), "write без id передаёт 0");
+        assertNull(reader.next(null));
+    }
+
+    @Test
+    void rejectsNegativeId() {
+        // id из 10 байт varint со старшим битом long
+        byte[] stream = {'F', 'I', 'G', 'S', 2,
+            1, 1, 'a',
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01,
+            0, 0, 0, 0, 0, 0, 0, 3, 0, 0, 2, 0, 1, 2, 0};
+        assertThrows(StreamCorruptedException.class,
+            () -> new FigureWire.Reader(new ByteArrayInputStream(stream)).next(null));
+    }
+
+    @Test
+    void readsHandWrittenStream() throws Exception {
+        // "FIGS", версия 1; имя "a"; цвета; прозрачность 1.0 (1000000 — varint C0 84 3D);
+        // вершины (0,0) (10,0) (-10,10): разности в zig-zag (0,0) (20,0) (39,20); конец
+        byte[] v1 = {'F', 'I', 'G', 'S', 1,
+            1, 1, 'a',
+            (byte) 0xFF, 0, 0, 0, (byte) 0xFF, 0,
+            (byte) 0xC0, (byte) 0x84, 0x3D,
+            3, 0, 0, 20, 0, 39, 20,
+            0};
+        FigureWire.Reader reader = new FigureWire.Reader(new ByteArrayInputStream(v1));
+        ColoredPolygon fig = reader.next(null);
+        assertNotNull(fig);
+        assertEquals(0, reader.id(), "в версии 1 id нет");
+        assertEquals("a", fig.getName());
+        assertEquals(0xFF0000, fig.getLineRgb());
+        assertEquals(0x00FF00, fig.getFillRgb());
+        assertEquals(1.0, fig.getOpacity());
+        assertArrayEquals(new int[][]{{0, 0}, {10, 0}, {-10, 10}}, fig.getCoordinates());
+        assertNull(reader.next(null));
+    }
+
+    @Test
+    void rejectsForeignHeaderAndVersion() {
+        byte[] notFigures = {'P', 'N', 'G', ' ', 1, 0};
+        assertThrows(StreamCorruptedException.class, () -> new FigureWire.Reader(new ByteArrayInputStream(notFigures)));
+        byte[] future = {'F', 'I', 'G', 'S', 99, 0};
+        assertThrows(StreamCorruptedException.class, () -> new FigureWire.Reader(new ByteArrayInputStream(future)));
+    }
+
+    @Test
+    void truncatedStreamIsAnError() throws Exception {
+        byte[] whole = write(List.of(
+            new ColoredPolygon(new int[][]{{0, 0}, {100, 0}, {0, 100}}, "обрыв", "#000000", "#000000", 1.0)));
+        byte[] cut = Arrays.copyOf(whole, whole.length - 4);
+
+        FigureWire.Reader reader = new FigureWire.Reader(new ByteArrayInputStream(cut));
+        assertThrows(EOFException.class, () -> reader.next(null));
+    }
+
+    private static byte[] serialize(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ColoredPolygon> readLegacy(Object object) throws Exception {
+        return FigureWire.readLegacy(new ByteArrayInputStream(serialize(object)));
+    }
+
+    private static void assertRejected(Object object) {
+        StreamCorruptedException e = assertThrows(StreamCorruptedException.class, () -> readLegacy(object));
+        assertTrue(e.getMessage().contains("REJECTED"), e.getMessage());
+    }
+
+    @Test
+    void readsLegacyList() throws Exception {
+        List<ColoredPolygon> figures = new ArrayList<>(List.of(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "a", "#FF0000", "#00FF00", 0.5),
+            new ColoredPolygon(new int[][]{{-5, -5}, {5, -5}, {5, 5}, {-5, 5}}, "b", "#123456", "#ABCDEF", 1.0)));
+        List<ColoredPolygon> read = readLegacy(figures);
+        assertEquals(2, read.size());
+        assertSameFigure(figures.get(0), read.get(0));
+        assertSameFigure(figures.get(1), read.get(1));
+        assertEquals(0, readLegacy(new ArrayList<>()).size());
+    }
+
+    // Фильтр пропускает только список фигур: чужие классы, огромные массивы и глубокая вложенность отклоняются
+    @Test
+    void legacyFilterRejectsOtherObjects() {
+        assertRejected(new HashMap<>());
+        assertRejected(new ArrayList<>(List.of(new Date())));
+        List<Object> huge = new ArrayList<>();
+        huge.add(new int[2_000_000]);
+        assertRejected(huge);
+        List<Object> nested = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            List<Object> outer = new ArrayList<>();
+            outer.add(nested);
+            nested = outer;
+        }
+        assertRejected(nested);
+        // классы допустимы, но это не фигуры
+        assertThrows(StreamCorruptedException.class, () -> readLegacy(new ArrayList<>(List.of("a"))));
+        assertThrows(StreamCorruptedException.class, () -> readLegacy(new ArrayList<>(List.of(new int[3]))));
+    }
+
+    static void assertSameFigure(ColoredPolygon expected, ColoredPolygon actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLineRgb(), actual.getLineRgb());
+        assertEquals(expected.getFillRgb(), actual.getFillRgb());
+        assertEquals(expected.getOpacity(), actual.getOpacity(), 1e-6);
+        assertArrayEquals(expected.getCoordinates(), actual.getCoordinates());
+    }
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class IntColumnTest {
+
+    private static void checkColumn(boolean offHeap) {
+        IntColumn column = IntColumn.allocate(4, offHeap);
+        assertEquals(offHeap, column.isOffHeap());
+        assertEquals(4, column.capacity());
+
+        column.set(0, 7);
+        column.add(0, -10);
+        column.put(1, new int[]{100, 1, 2, 3}, 1, 3);
+        assertEquals(-3, column.get(0));
+        assertEquals(1, column.get(1));
+        assertEquals(3, column.get(3));
+
+        IntColumn grown = column.grow(10);
+        assertEquals(offHeap, grown.isOffHeap());
+        assertEquals(10, grown.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(column.get(i), grown.get(i));
+        }
+        assertEquals(0, grown.get(9));
+    }
+
+    @Test
+    void heapColumn() {
+        checkColumn(false);
+    }
+
+    @Test
+    void directColumn() {
+        checkColumn(true);
+    }
+
+    @Test
+    void directColumnSurvivesSerialization() throws Exception {
+        IntColumn column = IntColumn.allocate(3, true);
+        column.put(0, new int[]{5, -6, Integer.MAX_VALUE}, 0, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(column);
+        }
+        IntColumn copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (IntColumn) in.readObject();
+        }
+
+        assertTrue(copy.isOffHeap());
+        assertEquals(3, copy.capacity());
+        assertEquals(5, copy.get(0));
+        assertEquals(-6, copy.get(1));
+        assertEquals(Integer.MAX_VALUE, copy.get(2));
+        assertFalse(copy == column);
+    }
+}
@@ -0,0 +1,157 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Открытие БД старой схемы (исходной или версии 1) проводит её через все шаги migrate
+class SqliteDatabaseMigrationTest {
+
+    private static final BufferedImage PICTURE = new BufferedImage(300, 100, BufferedImage.TYPE_INT_RGB);
+
+    static {
+        PICTURE.setRGB(3, 4, 0xFF8800);
+    }
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeDatabases() {
+        SqliteDatabase.closeAll();
+    }
+
+    @Test
+    void migratesOriginalDatabase() throws Exception {
+        String path = dir.resolve("v0.db").toString();
+        createOriginal(path, false);
+        checkMigrated(path, List.of(3L, 7L));
+    }
+
+    @Test
+    void migratesVersion1Database() throws Exception {
+        String path = dir.resolve("v1.db").toString();
+        createOriginal(path, true);
+        checkMigrated(path, List.of(7L, 3L));
+    }
+
+    @Test
+    void refusesNewerSchema() throws Exception {
+        String path = dir.resolve("future.db").toString();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA user_version = " + (SqliteDatabase.SCHEMA_VERSION + 1));
+        }
+        assertThrows(SQLException.class, () -> SqliteDatabase.get(path));
+    }
+
+    // id сохраняются; порядок отрисовки — по z (в исходной схеме z = id)
+    private static void checkMigrated(String path, List<Long> expectedOrder) throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(path);
+        try (SqliteDatabase.Session s = db.read()) {
+            try (ResultSet rs = s.prepare("PRAGMA user_version").executeQuery()) {
+                assertEquals(SqliteDatabase.SCHEMA_VERSION, rs.getInt(1));
+            }
+
+            PreparedStatement ps = s.prepare("SELECT id, min_x, min_y, max_x, max_y, " + SqliteFigureRow.COLUMNS
+                + " FROM figures ORDER BY z, id");
+            List<Long> ids = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(new FigureStore());
+                while (rs.next()) {
+                    long id = rs.getLong("id");
+                    ids.add(id);
+                    ColoredPolygon fig = reader.read(rs);
+                    if (id == 7) {
+                        assertArrayEquals(new int[]{-20, 5, 30, 45},
+                            new int[]{rs.getInt("min_x"), rs.getInt("min_y"), rs.getInt("max_x"), rs.getInt("max_y")});
+                        SqliteFigureRowTest.assertSameFigure(
+                            new ColoredPolygon(new int[][]{{-20, 5}, {30, 5}, {30, 45}}, "верхняя", "#112233", "#445566", 0.5), fig);
+                    } else {
+                        SqliteFigureRowTest.assertSameFigure(
+                            new ColoredPolygon(new int[][]{{0, 0}, {100, 0}, {100, 100}, {0, 100}}, "нижняя", "#FF0000", "#00FF00", 1.0), fig);
+                    }
+                }
+            }
+            assertEquals(expectedOrder, ids);
+            try (ResultSet rs = s.prepare("SELECT figure_count FROM scenes WHERE id = " + SqliteScenes.DEFAULT).executeQuery()) {
+                assertEquals(2, rs.getLong(1));
+            }
+            // хэш содержимого перенесённых строк неизвестен
+            try (ResultSet rs = s.prepare("SELECT COUNT(*) FROM figures WHERE content_hash IS NULL").executeQuery()) {
+                assertEquals(2, rs.getLong(1));
+            }
+
+            // R*Tree построен по границам перенесённых строк
+            PreparedStatement inRect = s.prepare("SELECT id FROM figures WHERE " + SqliteFigureRow.IN_RECT);
+            SqliteFigureRow.bindRect(inRect, 1, SqliteScenes.DEFAULT, -30, 0, -25, 10);
+            try (ResultSet rs = inRect.executeQuery()) {
+                assertFalse(rs.next());
+            }
+            SqliteFigureRow.bindRect(inRect, 1, SqliteScenes.DEFAULT, -20, 0, -20, 10);
+            try (ResultSet rs = inRect.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(7, rs.getLong(1));
+            }
+
+            // прежнее изображение стало оригиналом сцены по умолчанию, копии созданы заново
+            byte[] png = SqliteImages.load(s, SqliteScenes.DEFAULT, SqliteImages.ORIGINAL);
+            assertNotNull(png);
+            assertEquals(SqliteImages.hash(PICTURE), SqliteImages.hash(ImageIO.read(new ByteArrayInputStream(png))));
+            BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(SqliteImages.load(s, SqliteScenes.DEFAULT, 64)));
+            assertEquals(64, thumbnail.getWidth());
+        }
+    }
+
+    // Исходная таблица figures (координаты "[[x,y],...]") и images с id = 1; версия 1 добавляет столбец z
+    private static void createOriginal(String path, boolean version1) throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE figures (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "name TEXT NOT NULL, " +
+                "coordinates TEXT NOT NULL, " +
+                "line_color TEXT NOT NULL, " +
+                "fill_color TEXT NOT  NULL, " +
+                "opacity REAL NOT NULL" +
+                (version1 ? ", z INTEGER NOT NULL DEFAULT 0" : "") + ")");
+            stmt.execute("INSERT INTO figures (id, name, coordinates, line_color, fill_color, opacity) VALUES " +
+                "(3, 'нижняя', '[[0,0],[100,0],[100,100],[0,100]]', '#FF0000', '#00FF00', 1.0), " +
+                "(7, 'верхняя', '[[-20, 5], [30, 5], [30, 45]]', '#112233', '#445566', 0.5)");
+            stmt.execute("CREATE TABLE images (" +
+                "id INTEGER PRIMARY KEY, " +
+                "raster_image BLOB NOT NULL, " +
+                "FOREIGN KEY(id) REFERENCES figures(id))");
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(PICTURE, "png", png);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO images (id, raster_image) VALUES (1, ?)")) {
+                ps.setBytes(1, png.toByteArray());
+                ps.executeUpdate();
+            }
+            if (version1) {
+                stmt.execute("UPDATE figures SET z = CASE id WHEN 3 THEN 1 ELSE 0 END");
+                stmt.execute("PRAGMA user_version = 1");
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SqliteDatabaseTest {
+
+    @TempDir
+    Path dir;
+
+    private static String pragma(SqliteDatabase.Session s, String name) throws SQLException {
+        try (ResultSet rs = s.connection().createStatement().executeQuery("PRAGMA " + name)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    private static int count(SqliteDatabase db) throws SQLException {
+        try (SqliteDatabase.Session s = db.read();
+             ResultSet rs = s.prepare("SELECT COUNT(*) FROM notes").executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Отдельная таблица, чтобы проверки не зависели от схемы figures
+    private static SqliteDatabase open(Path file) throws SQLException {
+        SqliteDatabase db = SqliteDatabase.get(file.toString());
+        try (SqliteDatabase.Session s = db.write()) {
+            s.prepare("CREATE TABLE IF NOT EXISTS notes (name TEXT NOT NULL)").executeUpdate();
+            s.commit();
+        }
+        return db;
+    }
+
+    private static void insert(SqliteDatabase.Session s, String name) throws SQLException {
+        PreparedStatement ps = s.prepare("INSERT INTO notes (name) VALUES (?)");
+        ps.setString(1, name);
+        ps.executeUpdate();
+    }
+
+    @Test
+    void oneInstancePerPathWithPragmas() throws Exception {
+        String path = dir.resolve("a.db").toString();
+        SqliteDatabase db = SqliteDatabase.get(path, Collections.singletonMap("cache_size", "-1024"));
+        assertSame(db, SqliteDatabase.get(path));
+        assertNotSame(db, SqliteDatabase.get(dir.resolve("b.db").toString()));
+        assertEquals("jdbc:sqlite:" + path, db.getUrl());
+
+        try (SqliteDatabase.Session s = db.read()) {
+            assertEquals("wal", pragma(s, "journal_mode"));
+            assertEquals("1", pragma(s, "synchronous")); // NORMAL
+            assertEquals("-1024", pragma(s, "cache_size"));
+        }
+    }
+
+    @Test
+    void writeWithoutCommitRollsBack() throws Exception {
+        SqliteDatabase db = open(dir.resolve("rollback.db"));
+        try (SqliteDatabase.Session s = db.write()) {
+            insert(s, "отменена");
+        }
+        assertEquals(0, count(db));
+
+        try (SqliteDatabase.Session s = db.write()) {
+            insert(s, "сохранена");
+            s.commit();
+        }
+        assertEquals(1, count(db));
+    }
+
+    @Test
+    void readSessionCannotCommit() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("ro.db").toString());
+        try (SqliteDatabase.Session s = db.read()) {
+            assertThrows(IllegalStateException.class, s::commit);
+        }
+    }
+
+    // Подготовленный запрос берётся из кэша соединения и приходит без старых параметров
+    @Test
+    void preparedStatementsAreCached() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("cache.db").toString());
+        try (SqliteDatabase.Session s = db.write()) {
+            PreparedStatement first = s.prepare("SELECT ?");
+            first.setInt(1, 5);
+            assertSame(first, s.prepare("SELECT ?"));
+            try (ResultSet rs = s.prepare("SELECT ?").executeQuery()) {
+                assertTrue(rs.next());
+                assertNull(rs.getObject(1));
+            }
+        }
+    }
+
+    // Писатель один: второй сеанс записи ждёт, пока первый не закроется
+    @Test
+    void writersAreSerialized() throws Exception {
+        SqliteDatabase db = open(dir.resolve("lock.db"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        Thread other;
+        try (SqliteDatabase.Session s = db.write()) {
+            other = new Thread(() -> {
+                started.countDown();
+                try (SqliteDatabase.Session s2 = db.write()) {
+                    insert(s2, "второй");
+                    s2.commit();
+                    written.countDown();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            other.start();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+            insert(s, "первый");
+            s.commit();
+        }
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        other.join();
+        assertEquals(2, count(db));
+    }
+
+    @Test
+    void pragmasFromProperties() {
+        Properties props = new Properties();
+        props.setProperty("figures.db.pragma.synchronous", " FULL ");
+        props.setProperty("figures.db.path", "x.db");
+        Map<String, String> pragmas = SqliteDatabase.pragmasFrom(props, "figures.db.pragma.");
+        assertEquals(Collections.singletonMap("synchronous", "FULL"), pragmas);
+    }
+}
@@ -0,0 +1,207 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqliteFigureRowTest {
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeDatabases() {
+        SqliteDatabase.closeAll();
+    }
+
+    @Test
+    void rowsRoundTripThroughTheDatabase() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("rows.db").toString());
+        List<ColoredPolygon> figures = Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "первая", "#FF0000", "#00FF00", 1.0),
+            new ColoredPolygon(new int[][]{{-300, 40}, {-100, 40}, {-100, 90}, {-300, 90}}, "вторая", "#0000FF", "#FFFF00", 0.5),
+            new ColoredPolygon(new int[][]{{2_000_000_000, 0}, {-2_000_000_000, 5}, {0, 1}}, "широкая", "#010203", "#040506", 0.75));
+        insert(db, figures);
+
+        List<ColoredPolygon> read = new ArrayList<>();
+        try (SqliteDatabase.Session s = db.read()) {
+            PreparedStatement ps = s.prepare("SELECT " + SqliteFigureRow.COLUMNS + " FROM figures ORDER BY z, id");
+            try (ResultSet rs = ps.executeQuery()) {
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(new FigureStore());
+                while (rs.next()) {
+                    read.add(reader.read(rs));
+                }
+            }
+        }
+        assertEquals(figures.size(), read.size());
+        for (int i = 0; i < figures.size(); i++) {
+            assertSameFigure(figures.get(i), read.get(i));
+        }
+    }
+
+    @Test
+    void storedBoundsFindFiguresInRect() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("rect.db").toString());
+        insert(db, Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "слева", "#000000", "#000000", 1.0),
+            new ColoredPolygon(new int[][]{{100, 100}, {110, 100}, {100, 110}}, "справа", "#000000", "#000000", 1.0)));
+
+        try (SqliteDatabase.Session s = db.read()) {
+            PreparedStatement ps = s.prepare("SELECT name FROM figures WHERE " + SqliteFigureRow.IN_RECT);
+            // углы в любом порядке, границы включительно
+            SqliteFigureRow.bindRect(ps, 1, SqliteScenes.DEFAULT, 110, 110, 50, 50);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals("справа", rs.getString(1));
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    // Триггеры держат R*Tree в согласии с таблицей при UPDATE и DELETE
+    @Test
+    void rtreeFollowsUpdatesAndDeletes() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("triggers.db").toString());
+        insert(db, Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "a", "#000000", "#000000", 1.0),
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "b", "#000000", "#000000", 1.0)));
+        try (SqliteDatabase.Session s = db.write()) {
+            PreparedStatement update = s.prepare("UPDATE figures SET " + SqliteFigureRow.COLUMNS.replace(",", " = ?,") + " = ? WHERE name = 'a'");
+            SqliteFigureRow.bind(update, 1, new ColoredPolygon(new int[][]{{500, 500}, {510, 500}, {500, 510}}, "a", "#000000", "#000000", 1.0));
+            update.executeUpdate();
+            s.prepare("DELETE FROM figures WHERE name = 'b'").executeUpdate();
+            s.commit();
+        }
+        try (SqliteDatabase.Session s = db.read()) {
+            PreparedStatement ps = s.prepare("SELECT name FROM figures WHERE " + SqliteFigureRow.IN_RECT);
+            SqliteFigureRow.bindRect(ps, 1, SqliteScenes.DEFAULT, 0, 0, 10, 10);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertFalse(rs.next());
+            }
+            SqliteFigureRow.bindRect(ps, 1, SqliteScenes.DEFAULT, 505, 505, 505, 505);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals("a", rs.getString(1));
+            }
+            try (ResultSet rs = s.prepare("SELECT COUNT(*) FROM figures_rtree").executeQuery()) {
+                assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    // Сцена — измерение R*Tree: окно одной сцены не видит фигур другой, перенос строки переносит и запись индекса
+    @Test
+    void rtreeSeparatesScenes() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("scenes.db").toString());
+        insert(db, Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "основная", "#000000", "#000000", 1.0),
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "вторая", "#000000", "#000000", 1.0)));
+        long second;
+        try (SqliteDatabase.Session s = db.write()) {
+            second = SqliteScenes.create(s, "Вторая");
+            PreparedStatement move = s.prepare("UPDATE figures SET scene_id = ? WHERE name = 'вторая'");
+            move.setLong(1, second);
+            move.executeUpdate();
+            s.commit();
+        }
+        try (SqliteDatabase.Session s = db.read()) {
+            PreparedStatement ps = s.prepare("SELECT name FROM figures WHERE " + SqliteFigureRow.IN_RECT);
+            for (long scene : new long[]{SqliteScenes.DEFAULT, second}) {
+                SqliteFigureRow.bindRect(ps, 1, scene, 0, 0, 5, 5);
+                try (ResultSet rs = ps.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals(scene == second ? "вторая" : "основная", rs.getString(1));
+                    assertFalse(rs.next());
+                }
+            }
+            SqliteFigureRow.bindRect(ps, 1, second + 1, 0, 0, 5, 5);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    @Test
+    void lastIdNeverReusesDeletedIds() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("ids.db").toString());
+        insert(db, Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {1, 0}, {0, 1}}, "a", "#000000", "#000000", 1.0),
+            new ColoredPolygon(new int[][]{{0, 0}, {1, 0}, {0, 1}}, "b", "#000000", "#000000", 1.0)));
+        try (SqliteDatabase.Session s = db.write()) {
+            long last = SqliteFigureRow.lastId(s);
+            assertEquals(2, last);
+            s.prepare("DELETE FROM figures").executeUpdate();
+            assertEquals(last, SqliteFigureRow.lastId(s), "id удалённых фигур не выдаются снова");
+            s.commit();
+        }
+    }
+
+    @Test
+    void blobIsCompactAndChecked() throws Exception {
+        ColoredPolygon fig = new ColoredPolygon(new int[][]{{1000, 1000}, {1001, 1000}, {1001, 1002}}, "x", "#000000", "#000000", 1.0);
+        byte[] blob = SqliteFigureRow.encode(fig);
+        // n + первая вершина (по 2 байта на координату) + две разности по байту
+        assertEquals(1 + 4 + 4, blob.length);
+        assertArrayEquals(blob, SqliteFigureRow.encode(new int[]{1000, 1001, 1001}, new int[]{1000, 1000, 1002}, 3));
+
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("broken.db").toString());
+        try (SqliteDatabase.Session s = db.write()) {
+            PreparedStatement ps = s.prepare("INSERT INTO figures (" + SqliteFigureRow.COLUMNS + ", z) VALUES ("
+                + SqliteFigureRow.PLACEHOLDERS + ", 1)");
+            SqliteFigureRow.bind(ps, 1, fig, Arrays.copyOf(blob, blob.length - 1));
+            ps.executeUpdate();
+            SqliteFigureRow.bind(ps, 1, fig, new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+            ps.executeUpdate();
+            s.commit();
+        }
+        try (SqliteDatabase.Session s = db.read();
+             ResultSet rs = s.prepare("SELECT " + SqliteFigureRow.COLUMNS + " FROM figures").executeQuery()) {
+            SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(new FigureStore());
+            while (rs.next()) {
+                assertThrows(InvalidPolygonException.class, () -> reader.read(rs));
+            }
+        }
+    }
+
+    @Test
+    void parsesLegacyCoordinates() {
+        int[][] buffers = {new int[1], new int[1]};
+        int n = SqliteFigureRow.parseLegacyCoordinates(" [[0,0], [-2147483648, 7],[ 30 , -45 ]] ", buffers);
+        assertEquals(3, n);
+        assertArrayEquals(new int[]{0, Integer.MIN_VALUE, 30}, Arrays.copyOf(buffers[0], n));
+        assertArrayEquals(new int[]{0, 7, -45}, Arrays.copyOf(buffers[1], n));
+
+        assertThrows(IllegalArgumentException.class, () -> SqliteFigureRow.parseLegacyCoordinates("[[1,2],[3]]", buffers));
+        assertThrows(IllegalArgumentException.class, () -> SqliteFigureRow.parseLegacyCoordinates("[[1,x]]", buffers));
+        assertThrows(IllegalArgumentException.class, () -> SqliteFigureRow.parseLegacyCoordinates("[[1,2147483649]]", buffers));
+    }
+
+    static void assertSameFigure(ColoredPolygon expected, ColoredPolygon actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLineRgb(), actual.getLineRgb());
+        assertEquals(expected.getFillRgb(), actual.getFillRgb());
+        assertEquals(expected.getOpacity(), actual.getOpacity(), 1e-6);
+        assertArrayEquals(expected.getCoordinates(), actual.getCoordinates());
+        assertEquals(expected.getBounds(), actual.getBounds());
+    }
+
+    private static void insert(SqliteDatabase db, List<ColoredPolygon> figures) throws Exception {
+        try (SqliteDatabase.Session s = db.write()) {
+            PreparedStatement ps = s.prepare("INSERT INTO figures (" + SqliteFigureRow.COLUMNS + ", z) VALUES ("
+                + SqliteFigureRow.PLACEHOLDERS + ", ?)");
+            for (int i = 0; i < figures.size(); i++) {
+                SqliteFigureRow.bind(ps, 1, figures.get(i));
+                ps.setLong(SqliteFigureRow.COLUMN_COUNT + 1, i + 1);
+                ps.executeUpdate();
+            }
+            s.commit();
+        }
+    }
+}
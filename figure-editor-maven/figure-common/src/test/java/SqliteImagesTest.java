@@ -0,0 +1,118 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SqliteImagesTest {
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeDatabases() {
+        SqliteDatabase.closeAll();
+    }
+
+    private static BufferedImage picture(int type, int w, int h, int rgb) {
+        BufferedImage image = new BufferedImage(w, h, type);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.BLACK); // непрозрачный фон и у ARGB
+        g.fillRect(0, 0, w, h);
+        g.dispose();
+        image.setRGB(w / 2, h / 3, rgb);
+        return image;
+    }
+
+    private static void attach(SqliteDatabase db, long sceneId, BufferedImage image) throws Exception {
+        SqliteImages.Prepared prepared = SqliteImages.prepare(db, image);
+        try (SqliteDatabase.Session s = db.write()) {
+            SqliteImages.attach(s, sceneId, prepared);
+            s.commit();
+        }
+    }
+
+    private static int rows(SqliteDatabase db) throws Exception {
+        try (SqliteDatabase.Session s = db.read();
+             ResultSet rs = s.prepare("SELECT COUNT(*) FROM image_data").executeQuery()) {
+            return rs.getInt(1);
+        }
+    }
+
+    private static BufferedImage load(SqliteDatabase db, long sceneId, int size) throws Exception {
+        try (SqliteDatabase.Session s = db.read()) {
+            byte[] png = SqliteImages.load(s, sceneId, size);
+            return png != null ? ImageIO.read(new ByteArrayInputStream(png)) : null;
+        }
+    }
+
+    // Хэш зависит от пикселей, а не от типа растра
+    @Test
+    void hashIgnoresRasterType() {
+        String rgb = SqliteImages.hash(picture(BufferedImage.TYPE_INT_RGB, 30, 20, 0x123456));
+        assertEquals(rgb, SqliteImages.hash(picture(BufferedImage.TYPE_INT_ARGB, 30, 20, 0xFF123456)));
+        assertEquals(rgb, SqliteImages.hash(picture(BufferedImage.TYPE_3BYTE_BGR, 30, 20, 0x123456)));
+        assertNotEquals(rgb, SqliteImages.hash(picture(BufferedImage.TYPE_INT_RGB, 30, 20, 0x123457)));
+        assertNotEquals(rgb, SqliteImages.hash(picture(BufferedImage.TYPE_INT_RGB, 20, 30, 0x123456)));
+    }
+
+    // Одинаковая картинка хранится один раз; осиротевшая удаляется, когда её больше никто не использует
+    @Test
+    void sameImageIsStoredOnce() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("images.db").toString());
+        long second;
+        try (SqliteDatabase.Session s = db.write()) {
+            second = SqliteScenes.create(s, "Вторая");
+            s.commit();
+        }
+        BufferedImage first = picture(BufferedImage.TYPE_INT_RGB, 300, 200, 0xFF0000);
+        attach(db, SqliteScenes.DEFAULT, first);
+        int stored = rows(db);
+        assertEquals(3, stored); // оригинал, 64 и 256
+
+        SqliteImages.Prepared again = SqliteImages.prepare(db, picture(BufferedImage.TYPE_INT_RGB, 300, 200, 0xFF0000));
+        assertNull(again.variants, "известная картинка не кодируется заново");
+        try (SqliteDatabase.Session s = db.write()) {
+            SqliteImages.attach(s, second, again);
+            s.commit();
+        }
+        assertEquals(stored, rows(db));
+
+        BufferedImage other = picture(BufferedImage.TYPE_INT_RGB, 40, 40, 0x00FF00);
+        attach(db, SqliteScenes.DEFAULT, other);
+        assertEquals(stored + 1, rows(db)); // первая картинка ещё нужна второй сцене
+        attach(db, second, other);
+        assertEquals(1, rows(db));
+        assertEquals(SqliteImages.hash(other), SqliteImages.hash(load(db, second, SqliteImages.ORIGINAL)));
+    }
+
+    // Выдаётся наименьшая копия не меньше запрошенной, иначе оригинал; копии больше оригинала не создаются
+    @Test
+    void picksSmallestSufficientThumbnail() throws Exception {
+        SqliteDatabase db = SqliteDatabase.get(dir.resolve("thumbs.db").toString());
+        assertNull(load(db, SqliteScenes.DEFAULT, SqliteImages.ORIGINAL));
+        attach(db, SqliteScenes.DEFAULT, picture(BufferedImage.TYPE_INT_RGB, 800, 600, 0x0000FF));
+
+        assertEquals(64, load(db, SqliteScenes.DEFAULT, 1).getWidth());
+        assertEquals(48, load(db, SqliteScenes.DEFAULT, 64).getHeight());
+        assertEquals(256, load(db, SqliteScenes.DEFAULT, 65).getWidth());
+        assertEquals(800, load(db, SqliteScenes.DEFAULT, 300).getWidth());
+        assertEquals(800, load(db, SqliteScenes.DEFAULT, 5000).getWidth());
+        BufferedImage original = load(db, SqliteScenes.DEFAULT, SqliteImages.ORIGINAL);
+        assertNotNull(original);
+        assertEquals(600, original.getHeight());
+        assertEquals(0x0000FF, original.getRGB(400, 200) & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,171 @@
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Файл .figb, отображённый в память, с произвольным доступом к фигурам.
+// Открытие читает только заголовок и хвост; границы фигур берутся из индекса без декодирования,
+// сама фигура декодируется при первом обращении и попадает в ограниченный LRU-кэш.
+public class FigbArchive {
+    private static final int DEFAULT_CACHE_SIZE = Integer.getInteger("figures.archive.cache", 16_384);
+
+    private final MappedByteBuffer data;
+    private final int figureCount;
+    private final int indexOffset;
+    private final int stringCount;
+    private final int stringOffsetsOffset;
+    private final int stringBytesOffset;
+    private final Map<Integer, ColoredPolygon> cache;
+
+    private FigbArchive(MappedByteBuffer data, FigbFigureIO.Layout layout, int cacheSize) {
+        this.data = data;
+        this.figureCount = layout.figureCount;
+        this.indexOffset = (int) layout.indexOffset;
+        this.stringCount = data.getInt((int) layout.stringsOffset);
+        this.stringOffsetsOffset = (int) layout.stringsOffset + 4;
+        this.stringBytesOffset = stringOffsetsOffset + 4 * (stringCount + 1);
+        this.cache = new LinkedHashMap<Integer, ColoredPolygon>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ColoredPolygon> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public static FigbArchive open(String filename) throws IOException {
+        return open(filename, DEFAULT_CACHE_SIZE);
+    }
+
+    // Канал закрывается сразу: отображение остаётся действительным до сборки буфера
+    public static FigbArchive open(String filename, int cacheSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            FigbFigureIO.Layout layout = FigbFigureIO.readLayout(channel);
+            if (layout.size > Integer.MAX_VALUE) {
+                throw new IOException("Файл FIGB больше 2 ГБ нельзя отобразить в память");
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, layout.size);
+            int stringCount = data.getInt((int) layout.stringsOffset);
+            if (stringCount < 0 || layout.stringsOffset + 4 + 4L * (stringCount + 1) > layout.indexOffset) {
+                throw new IOException("Некорректный файл FIGB: повреждена таблица строк");
+            }
+            return new FigbArchive(data, layout, Math.max(cacheSize, 1));
+        }
+    }
+
+    public int size() {
+        return figureCount;
+    }
+
+    // Границы из индекса (включительно), без декодирования фигуры
+    public int minX(int i) { return data.getInt(entry(i) + 4); }
+    public int minY(int i) { return data.getInt(entry(i) + 8); }
+    public int maxX(int i) { return data.getInt(entry(i) + 12); }
+    public int maxY(int i) { return data.getInt(entry(i) + 16); }
+
+    public Rectangle getBounds(int i) {
+        int e = entry(i);
+        int minX = data.getInt(e + 4), minY = data.getInt(e + 8);
+        return new Rectangle(minX, minY, data.getInt(e + 12) - minX, data.getInt(e + 16) - minY);
+    }
+
+    public boolean intersects(int i, Rectangle r) {
+        int e = entry(i);
+        return data.getInt(e + 12) >= r.x && data.getInt(e + 4) < r.x + r.width
+            && data.getInt(e + 16) >= r.y && data.getInt(e + 8) < r.y + r.height;
+    }
+
+    // Фигура из кэша или декодированная из файла; каждая фигура в собственном хранилище
+    public ColoredPolygon figure(int i) {
+        synchronized (cache) {
+            ColoredPolygon fig = cache.get(i);
+            if (fig != null) {
+                return fig;
+            }
+        }
+        ColoredPolygon fig = decode(i);
+        synchronized (cache) {
+            ColoredPolygon raced = cache.putIfAbsent(i, fig);
+            return raced != null ? raced : fig;
+        }
+    }
+
+    public int cachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private int entry(int i) {
+        if (i < 0 || i >= figureCount) {
+            throw new IndexOutOfBoundsException("Фигура " + i + " из " + figureCount);
+        }
+        return indexOffset + i * FigbFigureIO.INDEX_ENTRY_SIZE;
+    }
+
+    private ColoredPolygon decode(int i) {
+        ByteBuffer in = data.duplicate();
+        try {
+            in.position(data.getInt(entry(i)));
+            String name = string(getVarint(in));
+            int lineRgb = getRgb(in);
+            int fillRgb = getRgb(in);
+            double opacity = getVarint(in) / 1e6;
+            int n = getVarint(in);
+            if (n < 0 || n > in.remaining() / 2) {
+                throw new IOException("неверное число вершин " + n);
+            }
+            int[] xs = new int[n];
+            int[] ys = new int[n];
+            int x = 0, y = 0;
+            for (int v = 0; v < n; v++) {
+                x += FigbFigureIO.unzigzag(getVarint(in));
+                y += FigbFigureIO.unzigzag(getVarint(in));
+                xs[v] = x;
+                ys[v] = y;
+            }
+            return new FigureStore(1, Math.max(n, 1), false).add(xs, ys, 0, n, name, lineRgb, fillRgb, opacity);
+        } catch (IOException | InvalidPolygonException | IllegalArgumentException | BufferUnderflowException e) {
+            throw new UncheckedIOException(new IOException("Некорректная фигура " + i + " в файле FIGB: " + e.getMessage(), e));
+        }
+    }
+
+    private String string(int id) throws IOException {
+        if (id < 0 || id >= stringCount) {
+            throw new IOException("неизвестное имя " + id);
+        }
+        int start = data.getInt(stringOffsetsOffset + 4 * id);
+        int end = data.getInt(stringOffsetsOffset + 4 * (id + 1));
+        if (start < 0 || end < start || (long) stringBytesOffset + end > indexOffset) {
+            throw new IOException("повреждена таблица строк");
+        }
+        byte[] bytes = new byte[end - start];
+        ByteBuffer in = data.duplicate();
+        in.position(stringBytesOffset + start);
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int getVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("слишком длинное число");
+    }
+
+    private static int getRgb(ByteBuffer in) {
+        return ((in.get() & 0xFF) << 16) | ((in.get() & 0xFF) << 8) | (in.get() & 0xFF);
+    }
+}
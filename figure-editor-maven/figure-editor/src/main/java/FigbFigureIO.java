@@ -0,0 +1,414 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Двоичный формат сцены .figb:
+//   заголовок   "FIGB", u16 версия, u16 резерв
+//   фигуры      varint номер имени, u24 цвет линии, u24 цвет заливки,
+//               varint прозрачность в миллионных, varint число вершин,
+//               вершины: первая абсолютно, остальные разностями, всё zig-zag varint
+//   строки      u32 число, u32 смещения начала каждой строки и конца последней, UTF-8 байты
+//   индекс      на каждую фигуру: u32 смещение от начала файла, i32 minX, minY, maxX, maxY
+//   хвост       i64 смещение строк, i64 смещение индекса, i32 число фигур,
+//               i64 число вершин, "FIGB"
+// Хвост фиксированной длины позволяет найти таблицу строк и индекс, не читая фигуры;
+// индекс и таблица строк фиксированной ширины дают произвольный доступ (см. FigbArchive).
+public class FigbFigureIO {
+    public static final String EXTENSION = ".figb";
+
+    static final int MAGIC = 0x46494742; // "FIGB"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 32;
+    static final int INDEX_ENTRY_SIZE = 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAX_FIGURE_OFFSET = 0xFFFFFFFFL;
+
+    // Запись во временный файл с последующей заменой: файл может быть открыт как FigbArchive,
+    // и усечение отображённого в память файла на месте привело бы к сбою при чтении
+    public static void saveFiguresToFigb(List<ColoredPolygon> figures, String filename) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            write(figures, temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void write(List<ColoredPolygon> figures, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            out.putShort(0);
+
+            Map<String, Integer> nameIds = new HashMap<>();
+            List<byte[]> names = new ArrayList<>();
+            int[] index = new int[figures.size() * 5];
+            long vertexCount = 0;
+            for (int i = 0; i < figures.size(); i++) {
+                ColoredPolygon fig = figures.get(i);
+                long offset = out.position();
+                if (offset > MAX_FIGURE_OFFSET) {
+                    throw new IOException("Слишком большая сцена для формата FIGB");
+                }
+                Integer id = nameIds.get(fig.getName());
+                if (id == null) {
+                    id = names.size();
+                    nameIds.put(fig.getName(), id);
+                    names.add(fig.getName().getBytes(StandardCharsets.UTF_8));
+                }
+                out.putVarint(id);
+                out.putRgb(fig.getLineRgb());
+                out.putRgb(fig.getFillRgb());
+                out.putVarint((int) Math.round(fig.getOpacity() * 1e6));
+
+                int n = fig.getVertexCount();
+                out.putVarint(n);
+                int px = 0, py = 0;
+                int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+                for (int v = 0; v < n; v++) {
+                    int x = fig.getX(v), y = fig.getY(v);
+                    out.putVarint(zigzag(x - px));
+                    out.putVarint(zigzag(y - py));
+                    px = x;
+                    py = y;
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+                vertexCount += n;
+
+                int e = i * 5;
+                index[e] = (int) offset;
+                index[e + 1] = minX;
+                index[e + 2] = minY;
+                index[e + 3] = maxX;
+                index[e + 4] = maxY;
+            }
+
+            long stringsOffset = out.position();
+            out.putInt(names.size());
+            int stringOffset = 0;
+            for (byte[] name : names) {
+                out.putInt(stringOffset);
+                stringOffset += name.length;
+            }
+            out.putInt(stringOffset);
+            for (byte[] name : names) {
+                out.putBytes(name);
+            }
+
+            long indexOffset = out.position();
+            for (int value : index) {
+                out.putInt(value);
+            }
+
+            out.putLong(stringsOffset);
+            out.putLong(indexOffset);
+            out.putInt(figures.size());
+            out.putLong(vertexCount);
+            out.putInt(MAGIC);
+            out.flush();
+        }
+    }
+
+    public static List<ColoredPolygon> loadFiguresFromFigb(String filename) throws IOException, InvalidPolygonException {
+        return loadFiguresFromFigb(filename, null);
+    }
+
+    // Загрузить фигуры в переданное хранилище; если store == null, создаётся хранилище
+    // точного размера по счётчикам из хвоста файла
+    public static List<ColoredPolygon> loadFiguresFromFigb(String filename, FigureStore store) throws IOException, InvalidPolygonException {
+        List<ColoredPolygon> figures = new ArrayList<>();
+        read(filename, store, true, figures::add);
+        return figures;
+    }
+
+    // Потоковый разбор: каждая фигура в собственном хранилище передаётся обработчику и не накапливается
+    public static void forEachFigure(String filename, FigureHandler handler) throws IOException, InvalidPolygonException {
+        read(filename, null, false, handler);
+    }
+
+    private static void read(String filename, FigureStore store, boolean shared, FigureHandler handler)
+            throws IOException, InvalidPolygonException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            Layout layout = readLayout(channel);
+            long stringsOffset = layout.stringsOffset;
+            long indexOffset = layout.indexOffset;
+            int figureCount = layout.figureCount;
+            long vertexCount = layout.vertexCount;
+
+            Input strings = new Input(channel, stringsOffset, indexOffset);
+            String[] names = new String[strings.checkCount(strings.getInt(), 4)];
+            int[] stringOffsets = new int[names.length + 1];
+            for (int i = 0; i <= names.length; i++) {
+                stringOffsets[i] = strings.getInt();
+                if (stringOffsets[i] < (i == 0 ? 0 : stringOffsets[i - 1])) {
+                    throw new IOException("Некорректный файл FIGB: повреждена таблица строк");
+                }
+            }
+            byte[] bytes = strings.getBytes(strings.checkCount(stringOffsets[names.length], 1));
+            for (int i = 0; i < names.length; i++) {
+                names[i] = new String(bytes, stringOffsets[i], stringOffsets[i + 1] - stringOffsets[i], StandardCharsets.UTF_8);
+            }
+
+            if (shared && store == null) {
+                store = new FigureStore(Math.max(figureCount, 1), Math.max((int) vertexCount, 3));
+            }
+            Input in = new Input(channel, HEADER_SIZE, stringsOffset);
+            int[] xs = new int[64];
+            int[] ys = new int[64];
+            for (int i = 0; i < figureCount; i++) {
+                int nameId = in.getVarint();
+                if (nameId < 0 || nameId >= names.length) {
+                    throw new IOException("Некорректный файл FIGB: неизвестное имя " + nameId);
+                }
+                int lineRgb = in.getRgb();
+                int fillRgb = in.getRgb();
+                double opacity = in.getVarint() / 1e6;
+                int n = in.checkCount(in.getVarint(), 2);
+                if (n > xs.length) {
+                    xs = new int[Math.max(n, xs.length * 2)];
+                    ys = new int[xs.length];
+                }
+                int x = 0, y = 0;
+                for (int v = 0; v < n; v++) {
+                    x += unzigzag(in.getVarint());
+                    y += unzigzag(in.getVarint());
+                    xs[v] = x;
+                    ys[v] = y;
+                }
+                FigureStore target = shared ? store : new FigureStore(1, Math.max(n, 1));
+                handler.accept(target.add(xs, ys, 0, n, names[nameId], lineRgb, fillRgb, opacity));
+            }
+        }
+    }
+
+    // Расположение разделов файла по заголовку и хвосту
+    static final class Layout {
+        long size;
+        long stringsOffset;
+        long indexOffset;
+        int figureCount;
+        long vertexCount;
+    }
+
+    static Layout readLayout(FileChannel channel) throws IOException {
+        Layout layout = new Layout();
+        long size = channel.size();
+        if (size < HEADER_SIZE + TRAILER_SIZE) {
+            throw new IOException("Некорректный файл FIGB: слишком короткий");
+        }
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Некорректный файл FIGB: неверная сигнатура");
+        }
+        int version = header.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия FIGB: " + version);
+        }
+
+        ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        layout.size = size;
+        layout.stringsOffset = trailer.getLong();
+        layout.indexOffset = trailer.getLong();
+        layout.figureCount = trailer.getInt();
+        layout.vertexCount = trailer.getLong();
+        if (trailer.getInt() != MAGIC || layout.stringsOffset < HEADER_SIZE || layout.indexOffset < layout.stringsOffset + 8
+                || layout.figureCount < 0
+                || layout.indexOffset + (long) INDEX_ENTRY_SIZE * layout.figureCount != size - TRAILER_SIZE
+                || layout.vertexCount < 0 || layout.vertexCount > Integer.MAX_VALUE
+                // фигура занимает не меньше 9 байт, вершина не меньше 2
+                || 9L * layout.figureCount + 2 * layout.vertexCount > layout.stringsOffset - HEADER_SIZE) {
+            throw new IOException("Некорректный файл FIGB: повреждён хвост");
+        }
+        return layout;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Неожиданный конец файла FIGB");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // Буферизованная запись в канал со счётчиком позиции
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        private long flushed = 0;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buf.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                flushed += channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        void putVarint(int v) throws IOException {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        void putRgb(int rgb) throws IOException {
+            ensure(3);
+            buf.put((byte) (rgb >>> 16));
+            buf.put((byte) (rgb >>> 8));
+            buf.put((byte) rgb);
+        }
+
+        void putShort(int v) throws IOException {
+            ensure(2);
+            buf.putShort((short) v);
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            ensure(8);
+            buf.putLong(v);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int off = 0; off < bytes.length; ) {
+                ensure(1);
+                int len = Math.min(buf.remaining(), bytes.length - off);
+                buf.put(bytes, off, len);
+                off += len;
+            }
+        }
+    }
+
+    // Буферизованное чтение участка [position, end) канала
+    private static final class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        private long position;
+        private final long end;
+
+        Input(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+            buf.limit(0);
+        }
+
+        private byte get() throws IOException {
+            if (!buf.hasRemaining()) {
+                fill();
+            }
+            return buf.get();
+        }
+
+        private void fill() throws IOException {
+            if (position >= end) {
+                throw new EOFException("Неожиданный конец данных FIGB");
+            }
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - position));
+            while (buf.hasRemaining()) {
+                int read = channel.read(buf, position + buf.position());
+                if (read < 0) {
+                    throw new EOFException("Неожиданный конец файла FIGB");
+                }
+            }
+            position += buf.position();
+            buf.flip();
+        }
+
+        int getVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Некорректный файл FIGB: слишком длинное число");
+        }
+
+        // Число элементов по minBytes байт и более не может превышать остаток участка
+        int checkCount(int count, int minBytes) throws IOException {
+            if (count < 0 || (long) count * minBytes > end - position + buf.remaining()) {
+                throw new IOException("Некорректный файл FIGB: неверная длина " + count);
+            }
+            return count;
+        }
+
+        int getInt() throws IOException {
+            return ((get() & 0xFF) << 24) | ((get() & 0xFF) << 16) | ((get() & 0xFF) << 8) | (get() & 0xFF);
+        }
+
+        int getRgb() throws IOException {
+            return ((get() & 0xFF) << 16) | ((get() & 0xFF) << 8) | (get() & 0xFF);
+        }
+
+        byte[] getBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            for (int off = 0; off < length; ) {
+                if (!buf.hasRemaining()) {
+                    fill();
+                }
+                int len = Math.min(buf.remaining(), length - off);
+                buf.get(bytes, off, len);
+                off += len;
+            }
+            return bytes;
+        }
+    }
+}
@@ -1,104 +1,208 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class FigureFileParser {
 
-    public static List<ColoredPolygon> loadFiguresFromFile(String filename) throws IOException, InvalidPolygonException {
-        List<ColoredPolygon> figures = new ArrayList<>();
-        List<String> lines = readAllLines(filename);
+    private static final String FIGURE_MARKER = "--- FIGURE ---";
+    private static final byte[] FIGURE_MARKER_BYTES = FIGURE_MARKER.getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 1 << 16;
 
-        List<String> currentBlock = new ArrayList<>();
-        boolean inBlock = false;
+    // Параллельная загрузка: размеры фрагментов файла
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 64L << 20;
 
-        for (String line : lines) {
-            line = line.trim();
-            if (line.equals("--- FIGURE ---")) {
-                if (inBlock && !currentBlock.isEmpty()) {
-                    ColoredPolygon poly = parseFigureBlock(currentBlock);
-                    if (poly != null) figures.add(poly);
-                }
-                currentBlock.clear();
-                inBlock = true;
-            } else if (inBlock) {
-                if (!line.isEmpty()) {
-                    currentBlock.add(line);
-                }
-            }
+    public static List<ColoredPolygon> loadFiguresFromFile(String filename) throws IOException, InvalidPolygonException {
+        return loadFiguresFromFile(filename, new FigureStore());
+    }
+
+    // Загрузить фигуры в переданное хранилище; возвращает представления добавленных фигур
+    public static List<ColoredPolygon> loadFiguresFromFile(String filename, FigureStore store) throws IOException, InvalidPolygonException {
+        List<ColoredPolygon> figures = new ArrayList<>();
+        try (Reader reader = new FileReader(filename)) {
+            parseFigures(reader, store, figures::add);
         }
+        return figures;
+    }
 
-        if (inBlock && !currentBlock.isEmpty()) {
-            ColoredPolygon poly = parseFigureBlock(currentBlock);
-            if (poly != null) figures.add(poly);
+    // Потоковый разбор файла: каждая фигура передаётся обработчику сразу после своего блока.
+    // Фигуры не накапливаются, поэтому память не зависит от размера файла.
+    public static void forEachFigure(String filename, FigureHandler handler) throws IOException, InvalidPolygonException {
+        try (Reader reader = new FileReader(filename)) {
+            parseFigures(reader, null, handler);
         }
+    }
 
-        return figures;
+    // Разбор блоков "--- FIGURE ---" из потока (см. FigureTextScanner). Если store == null,
+    // каждая фигура получает собственное хранилище и может быть освобождена обработчиком.
+    public static void parseFigures(Reader reader, FigureStore store, FigureHandler handler)
+            throws IOException, InvalidPolygonException {
+        new FigureTextScanner(reader).scan(store, handler);
     }
 
-    private static List<String> readAllLines(String filename) throws IOException {
-        List<String> lines = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                lines.add(line);
+    // Параллельная загрузка: файл отображается в память и делится на фрагменты по границам
+    // "--- FIGURE ---"; каждый фрагмент разбирается в ForkJoin-пуле в собственное хранилище,
+    // результаты объединяются в порядке следования в файле.
+    public static List<ColoredPolygon> loadFiguresParallel(String filename) throws IOException, InvalidPolygonException {
+        return loadFiguresParallel(filename, ForkJoinPool.commonPool());
+    }
+
+    public static List<ColoredPolygon> loadFiguresParallel(String filename, ForkJoinPool pool)
+            throws IOException, InvalidPolygonException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= MIN_CHUNK || pool.getParallelism() < 2) {
+                return loadFiguresFromFile(filename);
             }
+
+            long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (pool.getParallelism() * 4L)));
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(0L);
+            long pos = target;
+            while (pos < size) {
+                long next = findFigureStart(channel, pos, size);
+                if (next >= size) break;
+                if (next > bounds.get(bounds.size() - 1)) {
+                    bounds.add(next);
+                }
+                pos = next + target;
+            }
+            bounds.add(size);
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.size(); i++) {
+                long start = bounds.get(i);
+                ChunkTask task = new ChunkTask(channel.map(FileChannel.MapMode.READ_ONLY, start, bounds.get(i + 1) - start));
+                tasks.add(task);
+                pool.execute(task);
+            }
+
+            List<ColoredPolygon> figures = new ArrayList<>();
+            for (ChunkTask task : tasks) {
+                ChunkResult result = task.join();
+                if (result.ioError != null) throw result.ioError;
+                if (result.polygonError != null) throw result.polygonError;
+                figures.addAll(result.figures);
+            }
+            return figures;
         }
-        return lines;
     }
 
-    private static ColoredPolygon parseFigureBlock(List<String> block) throws InvalidPolygonException {
-        Map<String, String> props = new HashMap<>();
-        for (String line : block) {
-            int colon = line.indexOf(':');
-            if (colon > 0) {
-                String key = line.substring(0, colon).trim();
-                String value = line.substring(colon + 1).trim();
-                props.put(key, value);
+    // Начало первой строки-маркера не раньше from (или size, если маркеров больше нет)
+    private static long findFigureStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] line = new byte[FIGURE_MARKER_BYTES.length + 64];
+        int lineLen = 0;
+        boolean lineTooLong = false;
+        boolean atLineStart = false;
+        long lineStart = from;
+        long pos = from;
+
+        // from может попасть в середину строки: пропускаем её до первого '\n'
+        while (pos < size) {
+            buf.clear();
+            int read = channel.read(buf, pos);
+            if (read <= 0) break;
+            buf.flip();
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                pos++;
+                if (b == '\n') {
+                    if (atLineStart && !lineTooLong && isMarkerLine(line, lineLen)) {
+                        return lineStart;
+                    }
+                    atLineStart = true;
+                    lineStart = pos;
+                    lineLen = 0;
+                    lineTooLong = false;
+                } else if (atLineStart && !lineTooLong) {
+                    if (lineLen < line.length) {
+                        line[lineLen++] = b;
+                    } else {
+                        lineTooLong = true;
+                    }
+                }
             }
         }
+        if (atLineStart && !lineTooLong && isMarkerLine(line, lineLen)) {
+            return lineStart;
+        }
+        return size;
+    }
 
-        // Проверка обязательных полей
-        if (!"ColoredPolygon".equals(props.get("class"))) {
-            System.err.println("Пропущена фигура: поддерживается только ColoredPolygon");
-            return null;
+    // Строка совпадает с маркером после trim()
+    private static boolean isMarkerLine(byte[] line, int len) {
+        int start = 0, end = len;
+        while (start < end && (line[start] & 0xFF) <= ' ') start++;
+        while (end > start && (line[end - 1] & 0xFF) <= ' ') end--;
+        if (end - start != FIGURE_MARKER_BYTES.length) return false;
+        for (int i = 0; i < FIGURE_MARKER_BYTES.length; i++) {
+            if (line[start + i] != FIGURE_MARKER_BYTES[i]) return false;
         }
+        return true;
+    }
 
-        String name = props.getOrDefault("name", "Безымянный");
-        String lineColor = props.get("lineColor");
-        String fillColor = props.get("fillColor");
-        String opacityStr = props.get("opacity");
-        String coordsStr = props.get("coordinates");
+    private static final class ChunkResult {
+        final List<ColoredPolygon> figures = new ArrayList<>();
+        IOException ioError;
+        InvalidPolygonException polygonError;
+    }
+
+    private static final class ChunkTask extends RecursiveTask<ChunkResult> {
+        private final MappedByteBuffer chunk;
 
-        if (coordsStr == null) {
-            throw new InvalidPolygonException("Отсутствуют координаты");
+        ChunkTask(MappedByteBuffer chunk) {
+            this.chunk = chunk;
         }
 
-        // Парсинг координат: (x1,y1) (x2,y2) ...
-        List<int[]> coordList = new ArrayList<>();
-        Pattern p = Pattern.compile("\\((\\d+),\\s*(\\d+)\\)");
-        Matcher m = p.matcher(coordsStr);
-        while (m.find()) {
-            int x = Integer.parseInt(m.group(1));
-            int y = Integer.parseInt(m.group(2));
-            coordList.add(new int[]{x, y});
+        @Override
+        protected ChunkResult compute() {
+            ChunkResult result = new ChunkResult();
+            FigureStore store = new FigureStore();
+            try (Reader reader = new InputStreamReader(new ByteBufferInputStream(chunk), Charset.defaultCharset())) {
+                parseFigures(reader, store, result.figures::add);
+            } catch (IOException e) {
+                result.ioError = e;
+            } catch (InvalidPolygonException e) {
+                result.polygonError = e;
+            }
+            return result;
         }
+    }
 
-        if (coordList.size() < 3) {
-            throw new InvalidPolygonException("Недостаточно вершин: " + coordList.size());
+    // Чтение отображённого фрагмента как InputStream без копирования файла в кучу целиком
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
         }
 
-        int[][] coordinates = coordList.toArray(new int[0][]);
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
 
-        double opacity = 1.0;
-        if (opacityStr != null) {
-            try {
-                opacity = Double.parseDouble(opacityStr.trim());
-            } catch (NumberFormatException e) {
-                throw new InvalidPolygonException("Некорректная прозрачность: " + opacityStr);
-            }
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
         }
 
-        return new ColoredPolygon(coordinates, name, lineColor, fillColor, opacity);
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
     }
 }
@@ -0,0 +1,5 @@
+// Получатель фигур при потоковой загрузке
+@FunctionalInterface
+public interface FigureHandler {
+    void accept(ColoredPolygon figure) throws InvalidPolygonException;
+}
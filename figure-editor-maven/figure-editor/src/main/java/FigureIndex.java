@@ -0,0 +1,278 @@
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Пространственный индекс фигур (квадродерево MX-CIF по ограничивающим прямоугольникам).
+// Каждая фигура хранится в самом глубоком узле, квадрант которого целиком её содержит,
+// поэтому поиск по точке проходит один путь от корня и проверяет только кандидатов на нём.
+// Порядок отрисовки (z-order) хранится в индексе: чем больше z, тем выше фигура.
+public class FigureIndex {
+    private static final int MIN_CELL = 16;      // минимальный размер ячейки, px
+    private static final int INITIAL_ROOT = 1024; // начальный размер корня, px
+    private static final int BUILD_BATCH = 4096;  // фигур за один захват блокировки при фоновом построении
+
+    private final Map<FigureItem, Entry> entries = new IdentityHashMap<>();
+    private Node root;
+    private long zCounter = 0;
+
+    // Фоновое построение: фигуры pending[pendingFrom..] ещё не в дереве
+    private List<FigureItem> pending;
+    private int pendingFrom;
+    private int addedEarly; // подняты на передний план до того, как до них дошло построение
+    private long generation = 0;
+
+    private static final class Entry {
+        final FigureItem item;
+        int minX, minY, maxX, maxY; // включительно
+        long z;
+        Node node;
+        int slot; // позиция в node.entries
+
+        Entry(FigureItem item) {
+            this.item = item;
+        }
+
+        boolean covers(int x, int y) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        }
+    }
+
+    private static final class Node {
+        final long x, y, size;
+        final List<Entry> entries = new ArrayList<>(2);
+        Node[] children;
+
+        Node(long x, long y, long size) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        boolean encloses(Entry e) {
+            return e.minX >= x && e.maxX < x + size && e.minY >= y && e.maxY < y + size;
+        }
+
+        int quadrantOf(Entry e) {
+            long half = size / 2;
+            long midX = x + half, midY = y + half;
+            int q;
+            if (e.maxX < midX) q = 0;
+            else if (e.minX >= midX) q = 1;
+            else return -1;
+            if (e.maxY < midY) return q;
+            if (e.minY >= midY) return q + 2;
+            return -1;
+        }
+
+        Node child(int q) {
+            if (children == null) children = new Node[4];
+            Node c = children[q];
+            if (c == null) {
+                long half = size / 2;
+                c = new Node(x + ((q & 1) == 0 ? 0 : half), y + ((q & 2) == 0 ? 0 : half), half);
+                children[q] = c;
+            }
+            return c;
+        }
+
+        void add(Entry e) {
+            e.node = this;
+            e.slot = entries.size();
+            entries.add(e);
+        }
+
+        void remove(Entry e) {
+            int last = entries.size() - 1;
+            Entry moved = entries.get(last);
+            entries.set(e.slot, moved);
+            moved.slot = e.slot;
+            entries.remove(last);
+            e.node = null;
+        }
+    }
+
+    // Перестроить индекс по списку фигур; порядок списка задаёт z-order (последняя сверху)
+    public synchronized void rebuild(List<FigureItem> items) {
+        clear();
+        for (FigureItem item : items) {
+            add(item);
+        }
+    }
+
+    // Перестроить индекс в фоновом потоке. Фигуры добавляются пачками под блокировкой индекса,
+    // поэтому поиск, перемещение и подъём на передний план работают сразу: ещё не добавленные
+    // фигуры поиск проверяет перебором, а z-order у них равен позиции в списке.
+    public synchronized void rebuildInBackground(List<FigureItem> items) {
+        clear();
+        pending = items;
+        pendingFrom = 0;
+        addedEarly = 0;
+        zCounter = items.size();
+        long gen = generation;
+        Thread builder = new Thread(() -> build(items, gen), "FigureIndex-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void build(List<FigureItem> items, long gen) {
+        for (int from = 0; from < items.size(); from += BUILD_BATCH) {
+            synchronized (this) {
+                if (generation != gen) {
+                    return; // индекс очищен или перестроен заново
+                }
+                int to = Math.min(items.size(), from + BUILD_BATCH);
+                for (int i = from; i < to; i++) {
+                    FigureItem item = items.get(i);
+                    if (!entries.containsKey(item)) {
+                        add(item, i);
+                    }
+                }
+                pendingFrom = to;
+            }
+        }
+        synchronized (this) {
+            if (generation == gen) {
+                pending = null;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        root = null;
+        zCounter = 0;
+        pending = null;
+        generation++;
+    }
+
+    // Добавить фигуру поверх остальных
+    public synchronized void add(FigureItem item) {
+        add(item, ++zCounter);
+    }
+
+    // Добавить порцию поверх уже добавленных (в порядке списка) под одной блокировкой
+    public synchronized void addAll(List<FigureItem> items) {
+        for (FigureItem item : items) {
+            add(item, ++zCounter);
+        }
+    }
+
+    private void add(FigureItem item, long z) {
+        Entry e = new Entry(item);
+        e.z = z;
+        entries.put(item, e);
+        readBounds(e);
+        insert(e);
+    }
+
+    public synchronized void remove(FigureItem item) {
+        Entry e = entries.remove(item);
+        if (e != null && e.node != null) {
+            e.node.remove(e);
+        }
+    }
+
+    // Обновить положение фигуры после moveBy
+    public synchronized void update(FigureItem item) {
+        Entry e = entries.get(item);
+        if (e == null) return;
+        readBounds(e);
+        if (e.node.encloses(e) && (e.node.size <= MIN_CELL || e.node.quadrantOf(e) < 0)) {
+            return; // узел не изменился
+        }
+        e.node.remove(e);
+        insert(e);
+    }
+
+    // Поднять фигуру на передний план (ещё не добавленная фоновым построением добавляется сразу)
+    public synchronized void bringToFront(FigureItem item) {
+        Entry e = entries.get(item);
+        if (e != null) {
+            e.z = ++zCounter;
+        } else if (pending != null) {
+            add(item);
+            addedEarly++;
+        }
+    }
+
+    // Верхняя видимая фигура, содержащая точку, или null
+    public synchronized FigureItem findTopmostAt(int x, int y) {
+        List<Entry> candidates = new ArrayList<>();
+        Node node = root;
+        while (node != null && x >= node.x && x < node.x + node.size && y >= node.y && y < node.y + node.size) {
+            for (Entry e : node.entries) {
+                if (e.covers(x, y) && e.item.isVisible()) {
+                    candidates.add(e);
+                }
+            }
+            if (node.children == null) break;
+            long half = node.size / 2;
+            int q = (x < node.x + half ? 0 : 1) + (y < node.y + half ? 0 : 2);
+            node = node.children[q];
+        }
+        if (pending != null) {
+            Rectangle point = new Rectangle(x, y, 1, 1);
+            for (int i = pendingFrom; i < pending.size(); i++) {
+                FigureItem item = pending.get(i);
+                if (item.isVisible() && item.intersects(point) && (addedEarly == 0 || !entries.containsKey(item))) {
+                    Entry e = new Entry(item);
+                    e.z = i;
+                    candidates.add(e);
+                }
+            }
+        }
+
+        candidates.sort((a, b) -> Long.compare(b.z, a.z));
+        for (Entry e : candidates) {
+            if (e.item.getFigure().contains(x, y)) {
+                return e.item;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void readBounds(Entry e) {
+        Rectangle b = e.item.getBounds(); // для фигур архива — из индекса, без декодирования
+        e.minX = b.x;
+        e.minY = b.y;
+        e.maxX = b.x + b.width;
+        e.maxY = b.y + b.height;
+    }
+
+    private void insert(Entry e) {
+        if (root == null) {
+            long x = Math.floorDiv(e.minX, INITIAL_ROOT) * (long) INITIAL_ROOT;
+            long y = Math.floorDiv(e.minY, INITIAL_ROOT) * (long) INITIAL_ROOT;
+            root = new Node(x, y, INITIAL_ROOT);
+        }
+        while (!root.encloses(e)) {
+            growRoot(e);
+        }
+
+        Node node = root;
+        while (node.size > MIN_CELL) {
+            int q = node.quadrantOf(e);
+            if (q < 0) break;
+            node = node.child(q);
+        }
+        node.add(e);
+    }
+
+    // Удвоить корень в сторону фигуры; старый корень становится одним из квадрантов
+    private void growRoot(Entry e) {
+        long size = root.size;
+        long x = e.minX < root.x ? root.x - size : root.x;
+        long y = e.minY < root.y ? root.y - size : root.y;
+        Node grown = new Node(x, y, size * 2);
+        int q = (root.x == x ? 0 : 1) + (root.y == y ? 0 : 2);
+        grown.children = new Node[4];
+        grown.children[q] = root;
+        root = grown;
+    }
+}
@@ -1,14 +1,73 @@
+import java.awt.Rectangle;
+
 public class FigureItem {
-    private final ColoredPolygon figure;
+    private final FigbArchive archive; // null, если фигура загружена целиком
+    private final int index;
+    private volatile ColoredPolygon figure; // для архива: фигура, закреплённая после изменения
     private boolean visible;
+    private long id;  // строка в таблице figures; 0 — фигура ещё не сохранялась в БД
+    private long z;   // порядок отрисовки в БД (больше — выше)
+    private volatile long webId; // строка сцены на веб-сервере (/figures); 0 — фигура не с сервера
 
     public FigureItem(ColoredPolygon figure) {
+        this.archive = null;
+        this.index = -1;
         this.figure = figure;
         this.visible = true; // по умолчанию показывать
     }
 
+    // Фигура из архива: декодируется при обращении и может быть вытеснена из кэша, пока не изменена
+    public FigureItem(FigbArchive archive, int index) {
+        this.archive = archive;
+        this.index = index;
+        this.visible = true;
+    }
+
     public ColoredPolygon getFigure() {
-        return figure;
+        ColoredPolygon fig = figure;
+        return fig != null ? fig : archive.figure(index);
+    }
+
+    // Сдвинуть фигуру; фигура из архива закрепляется, чтобы изменение не потерялось при вытеснении
+    public synchronized void moveBy(int dx, int dy) {
+        if (figure == null) {
+            figure = archive.figure(index);
+        }
+        figure.moveBy(dx, dy);
+    }
+
+    public Rectangle getBounds() {
+        ColoredPolygon fig = figure;
+        return fig != null ? fig.getBounds() : archive.getBounds(index);
+    }
+
+    public boolean intersects(Rectangle r) {
+        ColoredPolygon fig = figure;
+        return fig != null ? fig.intersects(r) : archive.intersects(index, r);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    public long getWebId() {
+        return webId;
+    }
+
+    void setWebId(long webId) {
+        this.webId = webId;
+    }
+
+    public long getZ() {
+        return z;
+    }
+
+    void setZ(long z) {
+        this.z = z;
     }
 
     public boolean isVisible() {
@@ -21,6 +80,7 @@ public class FigureItem {
 
     @Override
     public String toString() {
-        return figure.getName() + " (P=" + String.format("%.2f", figure.getPerimeter()) + ")";
+        ColoredPolygon fig = getFigure();
+        return fig.getName() + " (P=" + String.format("%.2f", fig.getPerimeter()) + ")";
     }
 }
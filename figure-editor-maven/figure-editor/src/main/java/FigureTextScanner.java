@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Однопроходный разбор текстового формата фигур без регулярных выражений и подстрок.
+// Строки блока копируются в общий буфер, для известных ключей запоминаются границы значений,
+// координаты читаются прямо в примитивные буферы. Семантика совпадает с прежним разбором:
+// строки обрезаются, "--- FIGURE ---" начинает блок, при повторе ключа побеждает последний.
+public class FigureTextScanner {
+    private static final char[] MARKER = "--- FIGURE ---".toCharArray();
+    private static final char[] KEY_CLASS = "class".toCharArray();
+    private static final char[] KEY_NAME = "name".toCharArray();
+    private static final char[] KEY_LINE_COLOR = "lineColor".toCharArray();
+    private static final char[] KEY_FILL_COLOR = "fillColor".toCharArray();
+    private static final char[] KEY_OPACITY = "opacity".toCharArray();
+    private static final char[] KEY_COORDINATES = "coordinates".toCharArray();
+    private static final char[] COLORED_POLYGON = "ColoredPolygon".toCharArray();
+
+    private static final int F_CLASS = 0, F_NAME = 1, F_LINE = 2, F_FILL = 3, F_OPACITY = 4, F_COORDS = 5;
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader reader;
+    private final char[] readBuf = new char[1 << 16];
+    private int readPos = 0;
+    private int readLen = 0;
+    private boolean skipLF = false;
+
+    // Текущий блок
+    private char[] block = new char[1024];
+    private int blockLen = 0;
+    private boolean inBlock = false;
+    private boolean blockHasLines = false;
+    private final int[] valueStart = new int[6];
+    private final int[] valueEnd = new int[6];
+
+    // Вершины текущей фигуры
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+
+    public FigureTextScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Разобрать все блоки; если store == null, каждая фигура получает собственное хранилище
+    public void scan(FigureStore store, FigureHandler handler) throws IOException, InvalidPolygonException {
+        resetFields();
+        int lineStart = 0;
+        while (true) {
+            if (readPos == readLen) {
+                readLen = reader.read(readBuf, 0, readBuf.length);
+                readPos = 0;
+                if (readLen <= 0) {
+                    break;
+                }
+            }
+            char c = readBuf[readPos++];
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') continue;
+            }
+            if (c == '\n' || c == '\r') {
+                skipLF = c == '\r';
+                endLine(lineStart, store, handler);
+                lineStart = blockLen;
+            } else {
+                if (blockLen == block.length) {
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+                block[blockLen++] = c;
+            }
+        }
+        if (blockLen > lineStart) {
+            endLine(lineStart, store, handler);
+        }
+        if (inBlock && blockHasLines) {
+            emit(store, handler);
+        }
+    }
+
+    // Строка block[lineStart, blockLen) прочитана целиком
+    private void endLine(int lineStart, FigureStore store, FigureHandler handler) throws InvalidPolygonException {
+        int start = lineStart, end = blockLen;
+        while (start < end && block[start] <= ' ') start++;
+        while (end > start && block[end - 1] <= ' ') end--;
+
+        if (equals(block, start, end, MARKER)) {
+            blockLen = lineStart;
+            if (inBlock && blockHasLines) {
+                emit(store, handler);
+            }
+            blockLen = 0;
+            resetFields();
+            inBlock = true;
+            return;
+        }
+        if (!inBlock || start == end) {
+            blockLen = lineStart; // строка вне блока или пустая: не храним
+            return;
+        }
+
+        blockHasLines = true;
+        int colon = -1;
+        for (int i = start; i < end; i++) {
+            if (block[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon <= start) {
+            return;
+        }
+        int keyEnd = colon;
+        while (keyEnd > start && block[keyEnd - 1] <= ' ') keyEnd--;
+        int valStart = colon + 1;
+        while (valStart < end && block[valStart] <= ' ') valStart++;
+
+        int field = fieldOf(start, keyEnd);
+        if (field >= 0) {
+            valueStart[field] = valStart;
+            valueEnd[field] = end;
+        }
+    }
+
+    private int fieldOf(int start, int end) {
+        if (equals(block, start, end, KEY_CLASS)) return F_CLASS;
+        if (equals(block, start, end, KEY_NAME)) return F_NAME;
+        if (equals(block, start, end, KEY_LINE_COLOR)) return F_LINE;
+        if (equals(block, start, end, KEY_FILL_COLOR)) return F_FILL;
+        if (equals(block, start, end, KEY_OPACITY)) return F_OPACITY;
+        if (equals(block, start, end, KEY_COORDINATES)) return F_COORDS;
+        return -1;
+    }
+
+    private void resetFields() {
+        Arrays.fill(valueStart, -1);
+        Arrays.fill(valueEnd, -1);
+        blockHasLines = false;
+    }
+
+    private void emit(FigureStore store, FigureHandler handler) throws InvalidPolygonException {
+        if (!has(F_CLASS) || !equals(block, valueStart[F_CLASS], valueEnd[F_CLASS], COLORED_POLYGON)) {
+            System.err.println("Пропущена фигура: поддерживается только ColoredPolygon");
+            return;
+        }
+        if (!has(F_COORDS)) {
+            throw new InvalidPolygonException("Отсутствуют координаты");
+        }
+
+        int n = parseCoordinates(valueStart[F_COORDS], valueEnd[F_COORDS]);
+        if (n < 3) {
+            throw new InvalidPolygonException("Недостаточно вершин: " + n);
+        }
+
+        double opacity = 1.0;
+        if (has(F_OPACITY)) {
+            opacity = parseDouble(valueStart[F_OPACITY], valueEnd[F_OPACITY]);
+        }
+
+        // порядок проверок как в конструкторе ColoredPolygon: вершины, цвета, прозрачность
+        double perimeter = Polygon.validateCoordinates(xs, ys, 0, n);
+        String name = has(F_NAME) ? new String(block, valueStart[F_NAME], valueEnd[F_NAME] - valueStart[F_NAME]) : "Безымянный";
+        int lineRgb = parseColor(F_LINE, "lineColor");
+        int fillRgb = parseColor(F_FILL, "fillColor");
+
+        FigureStore target = store != null ? store : new FigureStore(1, n, false);
+        handler.accept(target.add(xs, ys, 0, n, name, lineRgb, fillRgb, opacity, perimeter));
+    }
+
+    private boolean has(int field) {
+        return valueStart[field] >= 0;
+    }
+
+    // Пары "(x,y)" или "(x, y)" из неотрицательных целых; прочий текст пропускается
+    private int parseCoordinates(int start, int end) {
+        int n = 0;
+        int i = start;
+        while (i < end) {
+            if (block[i] != '(') {
+                i++;
+                continue;
+            }
+            int p = i + 1;
+            int xStart = p;
+            while (p < end && isDigit(block[p])) p++;
+            if (p == xStart || p >= end || block[p] != ',') {
+                i++;
+                continue;
+            }
+            int xEnd = p++;
+            while (p < end && isSpace(block[p])) p++;
+            int yStart = p;
+            while (p < end && isDigit(block[p])) p++;
+            if (p == yStart || p >= end || block[p] != ')') {
+                i++;
+                continue;
+            }
+            if (n == xs.length) {
+                xs = Arrays.copyOf(xs, n * 2);
+                ys = Arrays.copyOf(ys, n * 2);
+            }
+            xs[n] = parseInt(xStart, xEnd);
+            ys[n] = parseInt(yStart, p);
+            n++;
+            i = p + 1;
+        }
+        return n;
+    }
+
+    private int parseInt(int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (block[i] - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("For input string: \"" + new String(block, start, end - start) + "\"");
+            }
+        }
+        return (int) value;
+    }
+
+    // Быстрый путь для "d.ddd": мантисса < 2^53 и не более 22 знаков после точки дают
+    // точно округлённый результат; остальные формы разбирает Double.parseDouble
+    private double parseDouble(int start, int end) throws InvalidPolygonException {
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        boolean simple = end > start;
+        for (int i = start; i < end && simple; i++) {
+            char c = block[i];
+            if (isDigit(c)) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (scale >= 0) scale++;
+                simple = ++digits <= 15;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && digits > 0) {
+            return scale > 0 ? mantissa / POW10[scale] : mantissa;
+        }
+        String text = new String(block, start, end - start);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new InvalidPolygonException("Некорректная прозрачность: " + text);
+        }
+    }
+
+    private int parseColor(int field, String fieldName) {
+        int rgb = has(field) ? FigureColors.parseHex(block, valueStart[field], valueEnd[field]) : -1;
+        if (rgb < 0) {
+            String color = has(field) ? new String(block, valueStart[field], valueEnd[field] - valueStart[field]) : null;
+            FigureColors.parseHex(color, fieldName); // бросает исключение с сообщением о формате
+        }
+        return rgb;
+    }
+
+    private static boolean equals(char[] buf, int start, int end, char[] expected) {
+        if (end - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (buf[start + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Как \s в регулярных выражениях Java
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -1,67 +1,50 @@
-import org.json.JSONArray;
-import org.json.JSONObject;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
+// Чтение и запись фигур в JSON без построения DOM всего файла (см. JsonFigureReader/JsonFigureWriter).
+// Файл всегда в UTF-8, независимо от кодировки платформы: иначе имена не на латинице не переживают сохранения
 public class JsonFigureIO {
+    private static final int BUFFER_SIZE = 1 << 16;
 
     public static void saveFiguresToJson(List<ColoredPolygon> figures, String filename) throws IOException {
-        JSONArray array = new JSONArray();
-        for (ColoredPolygon fig : figures) {
-            JSONObject obj = new JSONObject();
-            obj.put("name", fig.getName());
-
-            // Преобразуем Color в #RRGGBB
-            obj.put("lineColor", String.format("#%06X", (0xFFFFFF & fig.getLineColor().getRGB())));
-            obj.put("fillColor", String.format("#%06X", (0xFFFFFF & fig.getFillColor().getRGB())));
-
-            obj.put("opacity", fig.getOpacity());
-
-            JSONArray coords = new JSONArray();
-            int[][] points = fig.getCoordinates();
-            for (int[] pt : points) {
-                JSONArray point = new JSONArray();
-                point.put(pt[0]);
-                point.put(pt[1]);
-                coords.put(point);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(filename)), StandardCharsets.UTF_8), BUFFER_SIZE);
+        try (JsonFigureWriter out = new JsonFigureWriter(writer)) {
+            for (ColoredPolygon fig : figures) {
+                out.write(fig);
             }
-            obj.put("coordinates", coords);
-
-            array.put(obj);
-        }
-
-        try (FileWriter fw = new FileWriter(filename)) {
-            fw.write(array.toString(2));
         }
     }
 
     public static List<ColoredPolygon> loadFiguresFromJson(String filename) throws IOException, InvalidPolygonException {
-        String content = new String(Files.readAllBytes(Paths.get(filename)));
-        JSONArray array = new JSONArray(content);
-        List<ColoredPolygon> figures = new ArrayList<>();
-
-        for (int i = 0; i < array.length(); i++) {
-            JSONObject obj = array.getJSONObject(i);
-            String name = obj.getString("name");
-            String lineColor = obj.getString("lineColor");  // ← теперь это строка вида "#FF0000"
-            String fillColor = obj.getString("fillColor");
-            double opacity = obj.getDouble("opacity");
+        return loadFiguresFromJson(filename, new FigureStore());
+    }
 
-            JSONArray coordsArr = obj.getJSONArray("coordinates");
-            int[][] coords = new int[coordsArr.length()][2];
-            for (int j = 0; j < coordsArr.length(); j++) {
-                JSONArray point = coordsArr.getJSONArray(j);
-                coords[j][0] = point.getInt(0);
-                coords[j][1] = point.getInt(1);
+    // Загрузить фигуры в переданное хранилище; возвращает представления добавленных фигур
+    public static List<ColoredPolygon> loadFiguresFromJson(String filename, FigureStore store) throws IOException, InvalidPolygonException {
+        List<ColoredPolygon> figures = new ArrayList<>();
+        try (JsonFigureReader in = open(filename, store)) {
+            for (ColoredPolygon fig; (fig = in.next()) != null; ) {
+                figures.add(fig);
             }
+        }
+        return figures;
+    }
 
-            ColoredPolygon fig = new ColoredPolygon(coords, name, lineColor, fillColor, opacity);
-            figures.add(fig);
+    // Потоковый разбор: каждая фигура в собственном хранилище передаётся обработчику и не накапливается
+    public static void forEachFigure(String filename, FigureHandler handler) throws IOException, InvalidPolygonException {
+        try (JsonFigureReader in = open(filename, null)) {
+            for (ColoredPolygon fig; (fig = in.next()) != null; ) {
+                handler.accept(fig);
+            }
         }
+    }
 
-        return figures;
+    private static JsonFigureReader open(String filename, FigureStore store) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(filename)), StandardCharsets.UTF_8), BUFFER_SIZE);
+        return new JsonFigureReader(reader, store);
     }
 }
@@ -0,0 +1,80 @@
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+// Потоковое чтение JSON-массива фигур: объекты разбираются по одному через общий JSONTokener,
+// поэтому в памяти находится только текущая фигура, а не DOM всего файла
+public class JsonFigureReader implements Closeable {
+    private final Reader reader;
+    private final JSONTokener tokener;
+    private final FigureStore store;
+    private int index = 0;
+    private boolean started = false;
+    private boolean finished = false;
+
+    // Если store == null, каждая фигура получает собственное хранилище
+    public JsonFigureReader(Reader reader, FigureStore store) {
+        this.reader = reader;
+        this.tokener = new JSONTokener(reader);
+        this.store = store;
+    }
+
+    // Следующая фигура или null в конце массива
+    public ColoredPolygon next() throws InvalidPolygonException {
+        if (finished) {
+            return null;
+        }
+        char c = tokener.nextClean();
+        if (!started) {
+            if (c != '[') {
+                throw tokener.syntaxError("A JSONArray text must start with '['");
+            }
+            started = true;
+            c = tokener.nextClean();
+        } else if (c == ',') {
+            c = tokener.nextClean(); // после запятой допускается закрывающая скобка, как в JSONArray
+        } else if (c != ']') {
+            throw tokener.syntaxError("Expected a ',' or ']'");
+        }
+        if (c == ']') {
+            finished = true;
+            return null;
+        }
+        if (c != '{') {
+            throw new JSONException("JSONArray[" + index + "] is not a JSONObject.");
+        }
+        tokener.back();
+        JSONObject obj = new JSONObject(tokener);
+        index++;
+        return toFigure(obj);
+    }
+
+    private ColoredPolygon toFigure(JSONObject obj) throws InvalidPolygonException {
+        String name = obj.getString("name");
+        String lineColor = obj.getString("lineColor");
+        String fillColor = obj.getString("fillColor");
+        double opacity = obj.getDouble("opacity");
+
+        JSONArray coordsArr = obj.getJSONArray("coordinates");
+        int n = coordsArr.length();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int j = 0; j < n; j++) {
+            JSONArray point = coordsArr.getJSONArray(j);
+            xs[j] = point.getInt(0);
+            ys[j] = point.getInt(1);
+        }
+
+        FigureStore target = store != null ? store : new FigureStore(1, Math.max(n, 1), false);
+        return target.add(xs, ys, 0, n, name, lineColor, fillColor, opacity);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,122 @@
+import org.json.JSONObject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+// Потоковая запись JSON-массива фигур. Вывод побайтно совпадает с прежним
+// JSONArray.toString(2): тот же порядок ключей (порядок обхода HashMap в JSONObject),
+// те же отступы и особый случай массива из одного элемента, который пишется без переносов.
+public class JsonFigureWriter implements Closeable {
+    private static final int INDENT = 2;
+
+    private final Writer out;
+    private ColoredPolygon first; // единственная фигура пишется иначе, поэтому ждём вторую
+    private int count = 0;
+
+    public JsonFigureWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(ColoredPolygon fig) throws IOException {
+        if (count == 0) {
+            first = fig;
+        } else {
+            if (count == 1) {
+                out.write('[');
+                newline(INDENT);
+                writeFigure(first, INDENT);
+                first = null;
+            }
+            out.write(',');
+            newline(INDENT);
+            writeFigure(fig, INDENT);
+        }
+        count++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (count == 0) {
+                out.write("[]");
+            } else if (count == 1) {
+                out.write('[');
+                writeFigure(first, 0);
+                out.write(']');
+            } else {
+                newline(0);
+                out.write(']');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeFigure(ColoredPolygon fig, int indent) throws IOException {
+        int inner = indent + INDENT;
+        out.write('{');
+        newline(inner);
+        out.write("\"fillColor\": ");
+        writeColor(fig.getFillRgb());
+        out.write(',');
+        newline(inner);
+        out.write("\"name\": ");
+        JSONObject.quote(fig.getName(), out);
+        out.write(',');
+        newline(inner);
+        out.write("\"coordinates\": ");
+        writeCoordinates(fig, inner);
+        out.write(',');
+        newline(inner);
+        out.write("\"lineColor\": ");
+        writeColor(fig.getLineRgb());
+        out.write(',');
+        newline(inner);
+        out.write("\"opacity\": ");
+        out.write(JSONObject.numberToString(fig.getOpacity()));
+        newline(indent);
+        out.write('}');
+    }
+
+    private void writeCoordinates(ColoredPolygon fig, int indent) throws IOException {
+        int n = fig.getVertexCount();
+        out.write('[');
+        if (n == 1) {
+            writePoint(fig, 0, indent);
+        } else if (n > 1) {
+            for (int v = 0; v < n; v++) {
+                if (v > 0) {
+                    out.write(',');
+                }
+                newline(indent + INDENT);
+                writePoint(fig, v, indent + INDENT);
+            }
+            newline(indent);
+        }
+        out.write(']');
+    }
+
+    private void writePoint(ColoredPolygon fig, int v, int indent) throws IOException {
+        out.write('[');
+        newline(indent + INDENT);
+        out.write(Integer.toString(fig.getX(v)));
+        out.write(',');
+        newline(indent + INDENT);
+        out.write(Integer.toString(fig.getY(v)));
+        newline(indent);
+        out.write(']');
+    }
+
+    private void writeColor(int rgb) throws IOException {
+        out.write('"');
+        out.write(FigureColors.toHex(rgb));
+        out.write('"');
+    }
+
+    private void newline(int indent) throws IOException {
+        out.write('\n');
+        for (int i = 0; i < indent; i++) {
+            out.write(' ');
+        }
+    }
+}
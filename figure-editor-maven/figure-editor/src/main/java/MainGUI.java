@@ -1,24 +1,43 @@
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class MainGUI extends JFrame {
-    private JPanel figurePanel;
+    private JList<FigureItem> figureList;
+    private final FigureListModel figureListModel = new FigureListModel();
     private JScrollPane figureScrollPane;
     private DrawingPanel drawingPanel;
+    // Меняется только в EDT и под figuresLock; другие потоки читают список под тем же монитором
     private List<FigureItem> currentFigures = new ArrayList<>();
+    private final FigureIndex figureIndex = new FigureIndex();
+    private final SqliteFigureSync dbSync = new SqliteFigureSync();
+    // Сдвиги и видимость фигур сцены из БД записываются в фоне (figures.db.flushInterval / flushThreshold)
+    private final SqliteWriteBehind dbWriter = new SqliteWriteBehind(dbSync);
+
+    // Загрузка из БД: размер порции и номер текущей загрузки (меняется при смене сцены)
+    private static final int DB_LOAD_CHUNK = 10_000;
+    private volatile int loadGeneration = 0;
 
     // Поля для многопоточности
     volatile boolean running = false;
@@ -30,7 +49,13 @@ public class MainGUI extends JFrame {
 
     public MainGUI() {
         setTitle("Редактор фигур");
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                exitApplication();
+            }
+        });
         setSize(1000, 600);
         setLocationRelativeTo(null);
 
@@ -40,8 +65,8 @@ public class MainGUI extends JFrame {
         JPanel leftButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JButton openTextButton = new JButton("Открыть (текст)");
         JButton closeTextButton = new JButton("Закрыть");
-        JButton loadJsonButton = new JButton("Загрузить JSON");
-        JButton saveJsonButton = new JButton("Сохранить JSON");
+        JButton loadJsonButton = new JButton("Загрузить JSON/FIGB");
+        JButton saveJsonButton = new JButton("Сохранить JSON/FIGB");
         leftButtons.add(openTextButton);
         leftButtons.add(closeTextButton);
         leftButtons.add(loadJsonButton);
@@ -76,11 +101,28 @@ public class MainGUI extends JFrame {
         topPanel.add(centerButtons, BorderLayout.CENTER);
         topPanel.add(rightButtons, BorderLayout.EAST);
 
-        // === Левая панель: чекбоксы ===
-        figurePanel = new JPanel();
-        figurePanel.setLayout(new BoxLayout(figurePanel, BoxLayout.Y_AXIS));
-        figurePanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-        figureScrollPane = new JScrollPane(figurePanel);
+        // === Левая панель: список с флажками ===
+        // Ячейки фиксированного размера: отрисовываются (и декодируются) только видимые строки
+        figureList = new JList<>(figureListModel);
+        figureList.setCellRenderer(new FigureCellRenderer());
+        figureList.setFixedCellHeight(new JCheckBox("Фигура").getPreferredSize().height);
+        figureList.setFixedCellWidth(320);
+        figureList.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        figureList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = figureList.locationToIndex(e.getPoint());
+                if (row >= 0 && figureList.getCellBounds(row, row).contains(e.getPoint())) {
+                    FigureItem item = figureListModel.getElementAt(row);
+                    item.setVisible(!item.isVisible());
+                    dbSync.markChanged(item);
+                    dbWriter.changed();
+                    figureListModel.changed(row);
+                    drawingPanel.repaint();
+                }
+            }
+        });
+        figureScrollPane = new JScrollPane(figureList);
         figureScrollPane.setBorder(BorderFactory.createTitledBorder("Фигуры"));
 
         // === Правая панель: рисование ===
@@ -105,13 +147,30 @@ public class MainGUI extends JFrame {
         saveImageButton.addActionListener(e -> saveImage());
         startThreadsButton.addActionListener(e -> startThreads());
         stopThreadsButton.addActionListener(e -> stopThreads());
-        exitButton.addActionListener(e -> System.exit(0));
+        exitButton.addActionListener(e -> exitApplication());
+
+        dbWriter.start();
+    }
+
+    // Перед выходом дописать в БД изменения, ещё не отданные фоновой записи
+    private void exitApplication() {
+        try {
+            dbWriter.flush();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            int answer = JOptionPane.showConfirmDialog(this,
+                "Не удалось записать изменения в БД:\n" + ex.getMessage() + "\nВыйти без сохранения?",
+                "Ошибка", JOptionPane.YES_NO_OPTION, JOptionPane.ERROR_MESSAGE);
+            if (answer != JOptionPane.YES_OPTION) return;
+        }
+        System.exit(0);
     }
 
+	// Обмен с сервером — поток FigureWire: фигуры кодируются и отправляются по одной,
+	// фигуры, полученные с сервера, — со своими id
 	private void saveToWeb() {
-	    List<ColoredPolygon> visible = currentFigures.stream()
+	    List<FigureItem> visible = currentFigures.stream()
 	        .filter(FigureItem::isVisible)
-	        .map(FigureItem::getFigure)
 	        .collect(Collectors.toList());
 
 	    if (visible.isEmpty()) {
@@ -125,14 +184,28 @@ public class MainGUI extends JFrame {
         	    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
 	            conn.setRequestMethod("POST");
 	            conn.setDoOutput(true);
-	            conn.setRequestProperty("Content-Type", "application/octet-stream");
+	            conn.setChunkedStreamingMode(0); // без буферизации всего тела ради Content-Length
+	            conn.setRequestProperty("Content-Type", FigureWire.CONTENT_TYPE);
 
-	            try (ObjectOutputStream oos = new ObjectOutputStream(conn.getOutputStream())) {
-	                oos.writeObject(visible);
+	            try (OutputStream out = conn.getOutputStream()) {
+	                FigureWire.Writer writer = new FigureWire.Writer(out);
+	                for (FigureItem item : visible) {
+	                    writer.write(item.getWebId(), item.getFigure());
+	                }
+	                writer.finish();
 	            }
 
 	            int responseCode = conn.getResponseCode();
 	            if (responseCode == 200) {
+	                // OK и id фигур на сервере в порядке отправки: новые фигуры получают свои id
+	                try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.US_ASCII))) {
+	                    in.readLine();
+	                    for (FigureItem item : visible) {
+	                        String line = in.readLine();
+	                        if (line == null) break;
+	                        item.setWebId(Long.parseLong(line.trim()));
+	                    }
+	                }
 	                SwingUtilities.invokeLater(() ->
 	                    JOptionPane.showMessageDialog(this, "Фигуры сохранены на сервере!"));
 	            } else {
@@ -147,25 +220,82 @@ public class MainGUI extends JFrame {
 	    }).start();
 	}
 
+	// Последний ответ GET /figures для условного запроса. Хранится тело, а не список: загруженные
+	// фигуры редактор сдвигает на месте, а на 304 нужна копия в том виде, в каком её отдал сервер.
+	// Тело лежит во временном файле, чтобы большая сцена не занимала память дважды
+	private static final class WebCopy {
+	    final String etag;
+	    final long lastModified;
+	    final String contentType;
+	    final File body;
+
+	    WebCopy(String etag, long lastModified, String contentType, File body) {
+	        this.etag = etag;
+	        this.lastModified = lastModified;
+	        this.contentType = contentType;
+	        this.body = body;
+	    }
+	}
+
+	private volatile WebCopy webCopy;
+
 	private void loadFromWeb() {
 	    new Thread(() -> {
 	        try {
 	            URL url = new URL("http://localhost:8080/figures");
 	            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
 	            conn.setRequestMethod("GET");
+	            conn.setRequestProperty("Accept", FigureWire.CONTENT_TYPE + ", " + FigureWire.LEGACY_CONTENT_TYPE);
+	            WebCopy copy = webCopy;
+	            if (copy != null) {
+	                if (copy.etag != null) {
+	                    conn.setRequestProperty("If-None-Match", copy.etag);
+	                }
+	                if (copy.lastModified > 0) {
+	                    conn.setIfModifiedSince(copy.lastModified);
+	                }
+	            }
 
-	            if (conn.getResponseCode() == 200) {
-	                try (ObjectInputStream ois = new ObjectInputStream(conn.getInputStream())) {
-	                    @SuppressWarnings("unchecked")
-	                    List<ColoredPolygon> figures = (List<ColoredPolygon>) ois.readObject();
-	                    SwingUtilities.invokeLater(() -> {
-	                        loadFigures(figures);
-	                        JOptionPane.showMessageDialog(this, "Фигуры загружены с сервера!");
-	                    });
+	            int code = conn.getResponseCode();
+	            List<FigureItem> figures;
+	            String message;
+	            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && copy != null) {
+	                try (InputStream in = new BufferedInputStream(new FileInputStream(copy.body))) {
+	                    figures = decodeFigures(in, copy.contentType);
+	                }
+	                message = "Фигуры на сервере не изменились, загружена сохранённая копия";
+	            } else if (code == 200) {
+	                // тело декодируется по мере чтения и заодно сохраняется в файл для следующего запроса
+	                String contentType = conn.getContentType();
+	                File body = File.createTempFile("figures-web", ".bin");
+	                body.deleteOnExit();
+	                try (OutputStream copyOut = new BufferedOutputStream(new FileOutputStream(body));
+	                     InputStream in = new CopyingInputStream(conn.getInputStream(), copyOut)) {
+	                    figures = decodeFigures(in, contentType);
+	                } catch (Exception e) {
+	                    body.delete();
+	                    throw e;
+	                }
+	                String etag = conn.getHeaderField("ETag");
+	                long lastModified = conn.getLastModified();
+	                WebCopy previous = webCopy;
+	                if (etag != null || lastModified > 0) {
+	                    webCopy = new WebCopy(etag, lastModified, contentType, body);
+	                } else {
+	                    webCopy = null;
+	                    body.delete();
 	                }
+	                if (previous != null) {
+	                    previous.body.delete();
+	                }
+	                message = "Фигуры загружены с сервера!";
 	            } else {
-	                throw new IOException("Server returned: " + conn.getResponseCode());
+	                throw new IOException("Server returned: " + code);
 	            }
+	            SwingUtilities.invokeLater(() -> {
+	                showFigures(figures);
+	                JOptionPane.showMessageDialog(this, message);
+	            });
 	        } catch (Exception ex) {
 	            ex.printStackTrace();
 	            SwingUtilities.invokeLater(() ->
@@ -174,6 +304,61 @@ public class MainGUI extends JFrame {
 	    }).start();
 	}
 
+	// Фигуры из ответа /figures по его Content-Type: поток FigureWire (с id фигур на сервере) или,
+	// от прежнего сервера, сериализованный список без id
+	private static List<FigureItem> decodeFigures(InputStream in, String contentType)
+	        throws IOException, InvalidPolygonException {
+	    List<FigureItem> items = new ArrayList<>();
+	    if (FigureWire.accepts(contentType)) {
+	        FigureStore store = new FigureStore();
+	        FigureWire.Reader reader = new FigureWire.Reader(in);
+	        for (ColoredPolygon fig; (fig = reader.next(store)) != null; ) {
+	            FigureItem item = new FigureItem(fig);
+	            item.setWebId(reader.id());
+	            items.add(item);
+	        }
+	        return items;
+	    }
+	    for (ColoredPolygon fig : FigureWire.readLegacy(in)) {
+	        items.add(new FigureItem(fig));
+	    }
+	    return items;
+	}
+
+	// Поток, копирующий прочитанные байты в copy
+	private static final class CopyingInputStream extends FilterInputStream {
+	    private final OutputStream copy;
+
+	    CopyingInputStream(InputStream in, OutputStream copy) {
+	        super(in);
+	        this.copy = copy;
+	    }
+
+	    @Override
+	    public int read() throws IOException {
+	        int b = super.read();
+	        if (b >= 0) {
+	            copy.write(b);
+	        }
+	        return b;
+	    }
+
+	    @Override
+	    public int read(byte[] b, int off, int len) throws IOException {
+	        int n = super.read(b, off, len);
+	        if (n > 0) {
+	            copy.write(b, off, n);
+	        }
+	        return n;
+	    }
+
+	    @Override
+	    public long skip(long n) throws IOException {
+	        // пропущенное тоже копируется
+	        return n > 0 ? Math.max(read(new byte[(int) Math.min(n, 8192)]), 0) : 0;
+	    }
+	}
+
     // --- ТЕКСТОВЫЙ ФОРМАТ ---
     private void openTextFile() {
         JFileChooser fileChooser = new JFileChooser();
@@ -181,7 +366,7 @@ public class MainGUI extends JFrame {
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             try {
-                List<ColoredPolygon> figures = FigureFileParser.loadFiguresFromFile(
+                List<ColoredPolygon> figures = FigureFileParser.loadFiguresParallel(
                     fileChooser.getSelectedFile().getAbsolutePath()
                 );
                 loadFigures(figures);
@@ -193,20 +378,32 @@ public class MainGUI extends JFrame {
         }
     }
 
-    // --- JSON ---
+    // --- JSON и двоичный FIGB (формат выбирается по расширению) ---
+    private static final FileNameExtensionFilter JSON_FILTER = new FileNameExtensionFilter("JSON (*.json)", "json");
+    private static final FileNameExtensionFilter FIGB_FILTER = new FileNameExtensionFilter("Двоичный формат (*.figb)", "figb");
+
+    private static boolean isFigb(File file) {
+        return file.getName().toLowerCase().endsWith(FigbFigureIO.EXTENSION);
+    }
+
     private void loadJsonFile() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Загрузить фигуры из JSON");
+        fileChooser.setDialogTitle("Загрузить фигуры из JSON или FIGB");
+        fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Сцены (*.json, *.figb)", "json", "figb"));
+        fileChooser.addChoosableFileFilter(JSON_FILTER);
+        fileChooser.addChoosableFileFilter(FIGB_FILTER);
         fileChooser.setSelectedFile(new File("figures.json"));
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
             try {
-                List<ColoredPolygon> figures = JsonFigureIO.loadFiguresFromJson(
-                    fileChooser.getSelectedFile().getAbsolutePath()
-                );
-                loadFigures(figures);
+                if (isFigb(file)) {
+                    loadArchive(FigbArchive.open(file.getAbsolutePath()));
+                } else {
+                    loadFigures(JsonFigureIO.loadFiguresFromJson(file.getAbsolutePath()));
+                }
             } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Ошибка чтения JSON:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(this, "Ошибка чтения файла:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
             } catch (InvalidPolygonException ex) {
                 JOptionPane.showMessageDialog(this, "Некорректные данные:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
             }
@@ -225,92 +422,189 @@ public class MainGUI extends JFrame {
         }
 
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Сохранить фигуры в JSON");
+        fileChooser.setDialogTitle("Сохранить фигуры в JSON или FIGB");
+        fileChooser.addChoosableFileFilter(JSON_FILTER);
+        fileChooser.addChoosableFileFilter(FIGB_FILTER);
+        fileChooser.setFileFilter(JSON_FILTER);
         fileChooser.setSelectedFile(new File("figures.json"));
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            if (!file.getName().toLowerCase().endsWith(".json")) {
-                file = new File(file.getPath() + ".json");
+            String name = file.getName().toLowerCase();
+            if (!name.endsWith(".json") && !name.endsWith(FigbFigureIO.EXTENSION)) {
+                file = new File(file.getPath() + (fileChooser.getFileFilter() == FIGB_FILTER ? FigbFigureIO.EXTENSION : ".json"));
             }
             try {
-                JsonFigureIO.saveFiguresToJson(toSave, file.getAbsolutePath());
+                if (isFigb(file)) {
+                    FigbFigureIO.saveFiguresToFigb(toSave, file.getAbsolutePath());
+                } else {
+                    JsonFigureIO.saveFiguresToJson(toSave, file.getAbsolutePath());
+                }
                 JOptionPane.showMessageDialog(this, "Фигуры сохранены в:\n" + file.getAbsolutePath(), "Успех", JOptionPane.INFORMATION_MESSAGE);
             } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Ошибка записи JSON:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(this, "Ошибка записи файла:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
     // --- SQLite ---
+    // Сцена, загруженная из БД, сохраняется обратно в неё: записываются только фигуры, изменённые
+    // с прошлой записи (см. SqliteFigureSync), и изображение. Другая сцена сохраняется целиком
+    // в сцену БД с введённым именем. В потоке событий только копируется список фигур; поиск сцены,
+    // изображение и запись — в фоне, диалог имени сцены показывается из фонового потока.
     private void saveToDatabase() {
-        List<ColoredPolygon> visibleFigures = currentFigures.stream()
-            .filter(FigureItem::isVisible)
-            .map(FigureItem::getFigure)
-            .collect(Collectors.toList());
-
-        if (visibleFigures.isEmpty()) {
+        if (currentFigures.stream().noneMatch(FigureItem::isVisible)) {
             JOptionPane.showMessageDialog(this, "Нет видимых фигур для сохранения!", "Предупреждение", JOptionPane.WARNING_MESSAGE);
             return;
         }
 
-        try {
-            BufferedImage image = drawingPanel.createImage();
-            SqliteFigureIO.saveToDatabase(visibleFigures, image);
-            JOptionPane.showMessageDialog(this, "Фигуры и изображение сохранены в figures.db", "Успех", JOptionPane.INFORMATION_MESSAGE);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Ошибка сохранения в БД:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
-        }
+        List<FigureItem> items = new ArrayList<>(currentFigures);
+        int width = drawingPanel.getWidth(), height = drawingPanel.getHeight();
+        boolean mirrored = dbSync.isMirrored();
+        String knownName = dbSync.sceneName();
+        Thread saver = new Thread(() -> {
+            try {
+                SqliteScenes.Scene scene = null;
+                if (!mirrored) {
+                    String suggested = knownName != null ? knownName : "Сцена " + (SqliteFigureIO.listScenes().size() + 1);
+                    String[] answer = new String[1];
+                    SwingUtilities.invokeAndWait(() -> answer[0] = (String) JOptionPane.showInputDialog(this,
+                        "Имя сцены (сцена с тем же именем будет заменена):",
+                        "Сохранение в БД", JOptionPane.QUESTION_MESSAGE, null, null, suggested));
+                    if (answer[0] == null || answer[0].trim().isEmpty()) return;
+                    scene = SqliteFigureIO.findOrCreateScene(answer[0]);
+                }
+
+                BufferedImage image = drawingPanel.createImage(items, width, height);
+                int written;
+                String sceneName;
+                if (scene == null) {
+                    sceneName = knownName;
+                    written = dbSync.save(items, image);
+                } else {
+                    sceneName = scene.name;
+                    written = dbSync.saveAs(scene, items, image);
+                }
+                SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, "Фигуры и изображение сохранены в figures.db, сцена «" + sceneName
+                        + "»\nЗаписано фигур: " + written, "Успех", JOptionPane.INFORMATION_MESSAGE));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, "Ошибка сохранения в БД:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE));
+            }
+        }, "db-save");
+        saver.start();
     }
 
+    // Сцена выбирается из списка (если их несколько); чтение идёт курсором в фоновом потоке,
+    // первая порция заменяет сцену, остальные дополняют её
     private void loadFromDatabase() {
+        SqliteScenes.Scene scene;
         try {
-            List<ColoredPolygon> figures = SqliteFigureIO.loadFromDatabase();
-            if (figures.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "База данных пуста!", "Информация", JOptionPane.INFORMATION_MESSAGE);
-                return;
+            List<SqliteScenes.Scene> scenes = SqliteFigureIO.listScenes();
+            if (scenes.size() == 1) {
+                scene = scenes.get(0);
+            } else {
+                scene = (SqliteScenes.Scene) JOptionPane.showInputDialog(this, "Сцена:", "Загрузка из БД",
+                    JOptionPane.QUESTION_MESSAGE, null, scenes.toArray(), scenes.get(0));
+                if (scene == null) return;
             }
-            loadFigures(figures);
-            JOptionPane.showMessageDialog(this, "Фигуры загружены из figures.db", "Успех", JOptionPane.INFORMATION_MESSAGE);
         } catch (Exception ex) {
             ex.printStackTrace();
             JOptionPane.showMessageDialog(this, "Ошибка загрузки из БД:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        int generation = ++loadGeneration;
+        Thread loader = new Thread(() -> {
+            try {
+                int[] chunks = {0};
+                int total = SqliteFigureIO.forEachItemChunk(scene.id, DB_LOAD_CHUNK, chunk -> {
+                    boolean first = chunks[0]++ == 0;
+                    SwingUtilities.invokeLater(() -> appendFigures(generation, scene, chunk, first));
+                    return generation == loadGeneration;
+                });
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != loadGeneration) return;
+                    if (total == 0) {
+                        JOptionPane.showMessageDialog(this, "Сцена «" + scene.name + "» пуста!", "Информация", JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Фигуры загружены из figures.db, сцена «" + scene.name + "»: " + total,
+                            "Успех", JOptionPane.INFORMATION_MESSAGE);
+                    }
+                });
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, "Ошибка загрузки из БД:\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE));
+            }
+        }, "db-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // Порция из фоновой загрузки; порции от прерванной загрузки (открыта другая сцена) отбрасываются
+    private void appendFigures(int generation, SqliteScenes.Scene scene, List<FigureItem> chunk, boolean first) {
+        if (generation != loadGeneration) return;
+        if (first) {
+            setScene(chunk);
+            dbSync.attach(chunk, scene);
+            return;
         }
+        synchronized (figuresLock) {
+            currentFigures.addAll(chunk);
+        }
+        figureIndex.addAll(chunk);
+        dbSync.appended(chunk);
+        figureListModel.append(chunk);
+        drawingPanel.repaint();
     }
 
     // --- Общая загрузка фигур ---
     private void loadFigures(List<ColoredPolygon> figures) {
-        figurePanel.removeAll();
-        currentFigures.clear();
-
+        List<FigureItem> items = new ArrayList<>(figures.size());
         for (ColoredPolygon fig : figures) {
-            FigureItem item = new FigureItem(fig);
-            currentFigures.add(item);
-
-            JCheckBox checkBox = new JCheckBox(item.toString());
-            checkBox.setSelected(true);
-            // Лямбда-выражение
-            checkBox.addActionListener(e -> {
-                item.setVisible(checkBox.isSelected());
-                drawingPanel.repaint();
-            });
+            items.add(new FigureItem(fig));
+        }
+        showFigures(items);
+    }
 
-            checkBox.setAlignmentX(Component.LEFT_ALIGNMENT);
-            figurePanel.add(checkBox);
+    // Архив FIGB: элементы ссылаются на фигуры по номеру, декодирование — при обращении
+    private void loadArchive(FigbArchive archive) {
+        List<FigureItem> items = new ArrayList<>(archive.size());
+        for (int i = 0; i < archive.size(); i++) {
+            items.add(new FigureItem(archive, i));
         }
+        showFigures(items);
+    }
+
+    private void showFigures(List<FigureItem> items) {
+        loadGeneration++; // незавершённая загрузка из БД больше не дополняет сцену
+        setScene(items);
+        dbSync.attach(items);
+    }
 
-        figurePanel.revalidate();
-        figurePanel.repaint();
+    private void setScene(List<FigureItem> items) {
+        synchronized (figuresLock) {
+            currentFigures.clear();
+            currentFigures.addAll(items);
+        }
+        figureIndex.rebuildInBackground(items);
+        figureListModel.setItems(items);
         drawingPanel.repaint();
     }
 
     private void clearFigures() {
-        figurePanel.removeAll();
-        currentFigures.clear();
-        figurePanel.revalidate();
-        figurePanel.repaint();
-        drawingPanel.repaint();
+        showFigures(new ArrayList<>());
+    }
+
+    // Сдвинуть фигуру, обновить пространственный индекс и отметить её для фоновой записи в БД
+    private void moveFigure(FigureItem item, int dx, int dy) {
+        item.moveBy(dx, dy);
+        figureIndex.update(item);
+        dbSync.markChanged(item);
+        dbWriter.changed();
     }
 
     // --- Сохранение изображения ---
@@ -408,10 +702,13 @@ public class MainGUI extends JFrame {
 
     // === Внутренний класс: панель рисования ===
     private class DrawingPanel extends JPanel {
+        private static final int CLIP_MARGIN = FigureRenderer.OUTLINE_MARGIN;
         private FigureItem selectedFigure = null;
         private int dragOffsetX = 0;
         private int dragOffsetY = 0;
         private java.awt.Polygon dragPreview = null;
+        private int dragPreviewX = 0;
+        private int dragPreviewY = 0;
 
         public DrawingPanel() {
             setBorder(BorderFactory.createTitledBorder("Рисунок"));
@@ -439,23 +736,21 @@ public class MainGUI extends JFrame {
             int x = e.getX();
             int y = e.getY();
 
-            FigureItem clicked = null;
-            for (int i = currentFigures.size() - 1; i >= 0; i--) {
-                FigureItem item = currentFigures.get(i);
-                if (item.isVisible() && item.getFigure().contains(x, y)) {
-                    clicked = item;
-                    break;
-                }
-            }
+            FigureItem clicked = figureIndex.findTopmostAt(x, y);
 
             if (clicked != null) {
                 selectedFigure = clicked;
-                currentFigures.remove(selectedFigure);
-                currentFigures.add(selectedFigure);
+                synchronized (figuresLock) {
+                    currentFigures.remove(selectedFigure);
+                    currentFigures.add(selectedFigure);
+                }
+                figureIndex.bringToFront(selectedFigure);
+                dbSync.broughtToFront(selectedFigure);
+                dbWriter.changed();
 
-                java.awt.Polygon poly = selectedFigure.getFigure().getAWTPolygon();
-                dragOffsetX = x - poly.getBounds().x;
-                dragOffsetY = y - poly.getBounds().y;
+                Rectangle bounds = selectedFigure.getFigure().getBounds();
+                dragOffsetX = x - bounds.x;
+                dragOffsetY = y - bounds.y;
 
                 repaint();
             } else {
@@ -473,22 +768,20 @@ public class MainGUI extends JFrame {
                         g.drawPolygon(dragPreview);
                         g.dispose();
                     }
+                } else {
+                    // копия контура создаётся один раз за перетаскивание и дальше только сдвигается
+                    Rectangle bounds = selectedFigure.getFigure().getBounds();
+                    dragPreview = selectedFigure.getFigure().getAWTPolygon();
+                    dragPreviewX = bounds.x;
+                    dragPreviewY = bounds.y;
                 }
 
-                int mouseX = e.getX();
-                int mouseY = e.getY();
-                java.awt.Polygon original = selectedFigure.getFigure().getAWTPolygon();
-                Rectangle bounds = original.getBounds();
+                int newX = e.getX() - dragOffsetX;
+                int newY = e.getY() - dragOffsetY;
 
-                int newX = mouseX - dragOffsetX;
-                int newY = mouseY - dragOffsetY;
-
-                dragPreview = new java.awt.Polygon();
-                int dx = newX - bounds.x;
-                int dy = newY - bounds.y;
-                for (int i = 0; i < original.npoints; i++) {
-                    dragPreview.addPoint(original.xpoints[i] + dx, original.ypoints[i] + dy);
-                }
+                dragPreview.translate(newX - dragPreviewX, newY - dragPreviewY);
+                dragPreviewX = newX;
+                dragPreviewY = newY;
 
                 Graphics g = getGraphics();
                 if (g != null) {
@@ -508,11 +801,11 @@ public class MainGUI extends JFrame {
                     g.dispose();
                 }
 
-                java.awt.Polygon original = selectedFigure.getFigure().getAWTPolygon();
-                int dx = dragPreview.getBounds().x - original.getBounds().x;
-                int dy = dragPreview.getBounds().y - original.getBounds().y;
+                Rectangle bounds = selectedFigure.getFigure().getBounds();
+                int dx = dragPreviewX - bounds.x;
+                int dy = dragPreviewY - bounds.y;
 
-                selectedFigure.getFigure().moveBy(dx, dy);
+                moveFigure(selectedFigure, dx, dy);
                 dragPreview = null;
                 repaint();
             }
@@ -524,22 +817,19 @@ public class MainGUI extends JFrame {
             Graphics2D g2d = (Graphics2D) g;
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-            for (FigureItem item : currentFigures) {
-                if (item.isVisible()) {
-                    ColoredPolygon fig = item.getFigure();
-                    java.awt.Polygon poly = fig.getAWTPolygon();
-
-                    g2d.setColor(fig.getFillColor());
-                    g2d.fillPolygon(poly);
+            // фигуры вне области перерисовки не трогаем (и не декодируем из архива)
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            clip.grow(CLIP_MARGIN, CLIP_MARGIN);
 
-                    g2d.setColor(fig.getLineColor());
-                    g2d.setStroke(new BasicStroke(2));
-                    g2d.drawPolygon(poly);
+            for (FigureItem item : currentFigures) {
+                if (item.isVisible() && item.intersects(clip)) {
+                    FigureRenderer.paint(g2d, item.getFigure());
 
                     if (item == selectedFigure) {
-                        g2d.setColor(Color.BLUE);
-                        g2d.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5}, 0));
-                        g2d.draw(poly.getBounds());
+                        FigureRenderer.paintSelection(g2d, item.getFigure());
                     }
                 }
             }
@@ -547,29 +837,25 @@ public class MainGUI extends JFrame {
 
         public BufferedImage createImage() {
             synchronized (figuresLock) {
-                int w = getWidth();
-                int h = getHeight();
+                return createImage(currentFigures, getWidth(), getHeight());
+            }
+        }
+
+        // Изображение по снимку списка фигур; можно вызывать вне потока событий
+        public BufferedImage createImage(List<FigureItem> items, int w, int h) {
+            synchronized (figuresLock) {
                 if (w <= 0 || h <= 0) {
                     w = 800;
                     h = 600;
                 }
                 BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-                Graphics2D g2d = image.createGraphics();
-                g2d.setColor(Color.WHITE);
-                g2d.fillRect(0, 0, w, h);
-                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-                for (FigureItem item : currentFigures) {
-                    if (item.isVisible()) {
-                        ColoredPolygon fig = item.getFigure();
-                        java.awt.Polygon poly = fig.getAWTPolygon();
-
-                        g2d.setColor(fig.getFillColor());
-                        g2d.fillPolygon(poly);
-
-                        g2d.setColor(fig.getLineColor());
-                        g2d.setStroke(new BasicStroke(2));
-                        g2d.drawPolygon(poly);
+                Graphics2D g2d = FigureRenderer.createGraphics(image);
+
+                Rectangle clip = new Rectangle(0, 0, w, h);
+                clip.grow(CLIP_MARGIN, CLIP_MARGIN);
+                for (FigureItem item : items) {
+                    if (item.isVisible() && item.intersects(clip)) {
+                        FigureRenderer.paint(g2d, item.getFigure());
                     }
                 }
                 g2d.dispose();
@@ -578,6 +864,57 @@ public class MainGUI extends JFrame {
         }
     }
 
+    // === Модель списка фигур: строки создаются по запросу JList ===
+    private static class FigureListModel extends AbstractListModel<FigureItem> {
+        private List<FigureItem> items = new ArrayList<>();
+
+        void setItems(List<FigureItem> items) {
+            int old = this.items.size();
+            this.items = new ArrayList<>(items); // порядок списка не зависит от z-order на рисунке
+            if (old > 0) {
+                fireIntervalRemoved(this, 0, old - 1);
+            }
+            if (!items.isEmpty()) {
+                fireIntervalAdded(this, 0, items.size() - 1);
+            }
+        }
+
+        void append(List<FigureItem> more) {
+            if (!more.isEmpty()) {
+                int from = items.size();
+                items.addAll(more);
+                fireIntervalAdded(this, from, items.size() - 1);
+            }
+        }
+
+        void changed(int row) {
+            fireContentsChanged(this, row, row);
+        }
+
+        @Override
+        public int getSize() {
+            return items.size();
+        }
+
+        @Override
+        public FigureItem getElementAt(int index) {
+            return items.get(index);
+        }
+    }
+
+    // Строка списка — флажок видимости с подписью фигуры
+    private static class FigureCellRenderer extends JCheckBox implements ListCellRenderer<FigureItem> {
+        @Override
+        public Component getListCellRendererComponent(JList<? extends FigureItem> list, FigureItem item,
+                                                      int index, boolean isSelected, boolean cellHasFocus) {
+            setText(item.toString());
+            setSelected(item.isVisible());
+            setBackground(list.getBackground());
+            setForeground(list.getForeground());
+            return this;
+        }
+    }
+
     // === Внутренний класс: поток-двигатель ===
     private class FigureMover implements Runnable {
         private final int dx;
@@ -601,9 +938,12 @@ public class MainGUI extends JFrame {
                 while (running) {
                     Thread.sleep(delayMs);
 
-                    List<FigureItem> visible = currentFigures.stream()
-                        .filter(FigureItem::isVisible)
-                        .collect(Collectors.toList());
+                    List<FigureItem> visible;
+                    synchronized (figuresLock) {
+                        visible = currentFigures.stream()
+                            .filter(FigureItem::isVisible)
+                            .collect(Collectors.toList());
+                    }
 
                     if (visible.isEmpty()) continue;
 
@@ -611,8 +951,7 @@ public class MainGUI extends JFrame {
                     ColoredPolygon fig = item.getFigure();
 
                     synchronized (figuresLock) {
-                        java.awt.Polygon poly = fig.getAWTPolygon();
-                        Rectangle bounds = poly.getBounds();
+                        Rectangle bounds = fig.getBounds();
 
                         int newX = bounds.x + dx;
                         int newY = bounds.y + dy;
@@ -635,7 +974,7 @@ public class MainGUI extends JFrame {
                         int actualDy = newY - bounds.y;
 
                         if (actualDx != 0 || actualDy != 0) {
-                            fig.moveBy(actualDx, actualDy);
+                            moveFigure(item, actualDx, actualDy);
                         }
                     }
                 }
@@ -5,155 +5,401 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
+// Фигуры и изображения сцен в SQLite. Методы без номера сцены работают со сценой по умолчанию
+// (SqliteScenes.DEFAULT); чтение и запись сцены затрагивают только её строки (индексы по scene_id).
 public class SqliteFigureIO {
 
-    private static final String DB_URL = "jdbc:sqlite:figures.db";
-
-    static {
-        try {
-            Class.forName("org.sqlite.JDBC");
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("SQLite JDBC не найден", e);
-        }
-    }
-
-    // Инициализация таблиц
-    public static void initDatabase() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            // Таблица фигур
-            String sqlFigures = 
-                "CREATE TABLE IF NOT EXISTS figures (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "name TEXT NOT NULL, " +
-                "coordinates TEXT NOT NULL, " +
-                "line_color TEXT NOT NULL, " +
-                "fill_color TEXT NOT  NULL, " +
-                "opacity REAL NOT NULL" +
-                ");";
-
-            // Таблица изображений
-            String sqlImages = 
-                "CREATE TABLE IF NOT EXISTS images (" +
-                "id INTEGER PRIMARY KEY, " +
-                "raster_image BLOB NOT NULL, " +
-                "FOREIGN KEY(id) REFERENCES figures(id)" +
-                ");";
-
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute(sqlFigures);
-                stmt.execute(sqlImages);
+    private static final String DB_PATH = System.getProperty("figures.db.path", "figures.db");
+
+    // Сколько строк отправлять одним executeBatch (все пачки — в одной транзакции)
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("figures.db.batchSize", 1000);
+
+    // Общая база редактора: соединения и схема создаются при первом обращении (см. SqliteDatabase)
+    public static SqliteDatabase initDatabase() throws SQLException {
+        return SqliteDatabase.get(DB_PATH);
+    }
+
+    // --- Сцены ---
+    public static List<SqliteScenes.Scene> listScenes() throws SQLException {
+        try (SqliteDatabase.Session s = initDatabase().read()) {
+            return SqliteScenes.list(s);
+        }
+    }
+
+    // Новая пустая сцена; возвращает её номер
+    public static long createScene(String name) throws SQLException {
+        try (SqliteDatabase.Session s = initDatabase().write()) {
+            long id = SqliteScenes.create(s, name);
+            s.commit();
+            return id;
+        }
+    }
+
+    // Сцена с таким именем; если её нет — создаётся пустая
+    public static SqliteScenes.Scene findOrCreateScene(String name) throws SQLException {
+        try (SqliteDatabase.Session s = initDatabase().write()) {
+            SqliteScenes.Scene scene = SqliteScenes.findByName(s, name.trim());
+            if (scene == null) {
+                scene = SqliteScenes.find(s, SqliteScenes.create(s, name));
+                s.commit();
             }
+            return scene;
         }
     }
 
     // Сохранить фигуры + изображение
     public static void saveToDatabase(List<ColoredPolygon> figures, BufferedImage image) throws SQLException, IOException {
-        initDatabase();
+        saveToDatabase(SqliteScenes.DEFAULT, figures, image, DEFAULT_BATCH_SIZE);
+    }
 
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
+    public static void saveToDatabase(List<ColoredPolygon> figures, BufferedImage image, int batchSize) throws SQLException, IOException {
+        saveToDatabase(SqliteScenes.DEFAULT, figures, image, batchSize);
+    }
 
-            // Очистить старые данные
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute("DELETE FROM images");
-                stmt.execute("DELETE FROM figures");
-            }
+    // Заменить содержимое сцены фигурами + изображением
+    public static void saveToDatabase(long sceneId, List<ColoredPolygon> figures, BufferedImage image, int batchSize)
+            throws SQLException, IOException {
+        // хэш и PNG (если такой картинки ещё нет) — до начала транзакции, чтобы не держать блокировку записи
+        SqliteImages.Prepared picture = SqliteImages.prepare(initDatabase(), image);
+
+        try (SqliteDatabase.Session s = initDatabase().write()) {
+            SqliteScenes.require(s, sceneId);
+
+            // Очистить старые данные сцены
+            clearFigures(s, sceneId);
 
             // Сохранить фигуры
-            String insertFigure = 
-                "INSERT INTO figures (name, coordinates, line_color, fill_color, opacity) " +
-                "VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(insertFigure)) {
-                for (ColoredPolygon fig : figures) {
-                    pstmt.setString(1, fig.getName());
-                    pstmt.setString(2, coordinatesToJson(fig.getCoordinates()));
-                    pstmt.setString(3, String.format("#%06X", (0xFFFFFF & fig.getLineColor().getRGB())));
-                    pstmt.setString(4, String.format("#%06X", (0xFFFFFF & fig.getFillColor().getRGB())));
-                    pstmt.setDouble(5, fig.getOpacity());
-                    pstmt.executeUpdate();
+            insertFigures(s, sceneId, figures, batchSize);
+
+            // Сохранить изображение сцены
+            SqliteImages.attach(s, sceneId, picture);
+
+            SqliteScenes.touch(s, sceneId);
+            s.commit();
+        }
+    }
+
+    // Полная перезапись сцены редактора: элементы получают новые id и z по порядку списка,
+    // в таблицу попадают только видимые
+    static void replaceItems(long sceneId, List<FigureItem> items, BufferedImage image) throws SQLException, IOException {
+        SqliteImages.Prepared picture = SqliteImages.prepare(initDatabase(), image);
+        try (SqliteDatabase.Session s = initDatabase().write()) {
+            SqliteScenes.require(s, sceneId);
+            clearFigures(s, sceneId);
+            // DELETE уже заблокировал запись: новые id после наибольшего выданного не достанутся другим
+            long base = SqliteFigureRow.lastId(s);
+            PreparedStatement pstmt = s.prepare(UPSERT_SQL);
+            int pending = 0;
+            for (int i = 0; i < items.size(); i++) {
+                FigureItem item = items.get(i);
+                item.setId(base + i + 1);
+                item.setZ(i + 1);
+                if (item.isVisible()) {
+                    bindItem(pstmt, sceneId, item);
+                    pstmt.addBatch();
+                    if (++pending >= DEFAULT_BATCH_SIZE) {
+                        pstmt.executeBatch();
+                        pending = 0;
+                    }
                 }
             }
+            if (pending > 0) {
+                pstmt.executeBatch();
+            }
+            SqliteImages.attach(s, sceneId, picture);
+            SqliteScenes.touch(s, sceneId);
+            s.commit();
+        }
+    }
 
-            // Сохранить изображение (связываем с id=1)
-            String insertImage = "INSERT INTO images (id, raster_image) VALUES (1, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(insertImage)) {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ImageIO.write(image, "png", baos);
-                pstmt.setBytes(1, baos.toByteArray());
-                pstmt.executeUpdate();
+    // Запись только изменённых элементов: видимые — UPSERT по id, скрытые — DELETE.
+    // Без изображения (null) сохранённое ранее изображение сцены остаётся прежним
+    static void syncItems(long sceneId, List<FigureItem> changed, BufferedImage image) throws SQLException, IOException {
+        SqliteImages.Prepared picture = image != null ? SqliteImages.prepare(initDatabase(), image) : null;
+        try (SqliteDatabase.Session s = initDatabase().write()) {
+            SqliteScenes.require(s, sceneId);
+            PreparedStatement upsert = s.prepare(UPSERT_SQL);
+            PreparedStatement delete = s.prepare("DELETE FROM figures WHERE id = ? AND scene_id = ?");
+            List<FigureItem> upserted = new ArrayList<>();
+            int deletes = 0;
+            for (FigureItem item : changed) {
+                if (item.isVisible()) {
+                    bindItem(upsert, sceneId, item);
+                    upsert.addBatch();
+                    upserted.add(item);
+                } else {
+                    delete.setLong(1, item.getId());
+                    delete.setLong(2, sceneId);
+                    delete.addBatch();
+                    deletes++;
+                }
+            }
+            if (!upserted.isEmpty()) {
+                int[] counts = upsert.executeBatch();
+                // 0 строк: id занят фигурой другой сцены (её перезаписал другой процесс), UPSERT её не трогает.
+                // Такие элементы получают новые id, иначе изменение молча потерялось бы
+                long base = -1;
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        FigureItem item = upserted.get(i);
+                        if (base < 0) {
+                            base = SqliteFigureRow.lastId(s);
+                        }
+                        item.setId(++base);
+                        bindItem(upsert, sceneId, item);
+                        upsert.addBatch();
+                    }
+                }
+                if (base >= 0) {
+                    upsert.executeBatch();
+                }
+            }
+            if (deletes > 0) {
+                delete.executeBatch();
+            }
+            if (picture != null) {
+                SqliteImages.attach(s, sceneId, picture);
             }
+            SqliteScenes.touch(s, sceneId);
+            s.commit();
+        }
+    }
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO figures (id, scene_id, " + SqliteFigureRow.COLUMNS + ", z) VALUES (?, ?, " + SqliteFigureRow.PLACEHOLDERS + ", ?) " +
+        "ON CONFLICT(id) DO UPDATE SET name = excluded.name, vertices = excluded.vertices, " +
+        "line_color = excluded.line_color, fill_color = excluded.fill_color, opacity = excluded.opacity, " +
+        "min_x = excluded.min_x, min_y = excluded.min_y, max_x = excluded.max_x, max_y = excluded.max_y, " +
+        "area = excluded.area, perimeter = excluded.perimeter, z = excluded.z " +
+        "WHERE scene_id = excluded.scene_id";
 
-            conn.commit();
+    private static void bindItem(PreparedStatement pstmt, long sceneId, FigureItem item) throws SQLException {
+        pstmt.setLong(1, item.getId());
+        pstmt.setLong(2, sceneId);
+        SqliteFigureRow.bind(pstmt, 3, item.getFigure());
+        pstmt.setLong(3 + SqliteFigureRow.COLUMN_COUNT, item.getZ());
+    }
+
+    private static void clearFigures(SqliteDatabase.Session s, long sceneId) throws SQLException {
+        PreparedStatement pstmt = s.prepare("DELETE FROM figures WHERE scene_id = ?");
+        pstmt.setLong(1, sceneId);
+        pstmt.executeUpdate();
+    }
+
+    // Вставка фигур сцены пачками по batchSize строк в открытом сеансе записи
+    static void insertFigures(SqliteDatabase.Session s, long sceneId, List<ColoredPolygon> figures, int batchSize)
+            throws SQLException {
+        PreparedStatement pstmt = s.prepare(
+            "INSERT INTO figures (scene_id, " + SqliteFigureRow.COLUMNS + ") VALUES (?, " + SqliteFigureRow.PLACEHOLDERS + ")");
+        int pending = 0;
+        for (ColoredPolygon fig : figures) {
+            pstmt.setLong(1, sceneId);
+            SqliteFigureRow.bind(pstmt, 2, fig);
+            pstmt.addBatch();
+            if (++pending >= batchSize) {
+                pstmt.executeBatch();
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            pstmt.executeBatch();
         }
     }
 
+    static void insertFigures(SqliteDatabase.Session s, List<ColoredPolygon> figures, int batchSize) throws SQLException {
+        insertFigures(s, SqliteScenes.DEFAULT, figures, batchSize);
+    }
+
     // Загрузить фигуры
     public static List<ColoredPolygon> loadFromDatabase() throws SQLException, InvalidPolygonException {
-        initDatabase();
-        List<ColoredPolygon> figures = new ArrayList<>();
+        return loadFromDatabase(SqliteScenes.DEFAULT, new FigureStore());
+    }
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM figures ORDER BY id")) {
+    // Загрузить фигуры в переданное хранилище
+    public static List<ColoredPolygon> loadFromDatabase(FigureStore store) throws SQLException, InvalidPolygonException {
+        return loadFromDatabase(SqliteScenes.DEFAULT, store);
+    }
 
-            while (rs.next()) {
-                String name = rs.getString("name");
-                String coordsJson = rs.getString("coordinates");
-                String lineColor = rs.getString("line_color");
-                String fillColor = rs.getString("fill_color");
-                double opacity = rs.getDouble("opacity");
+    public static List<ColoredPolygon> loadFromDatabase(long sceneId, FigureStore store) throws SQLException, InvalidPolygonException {
+        List<ColoredPolygon> figures = new ArrayList<>();
 
-                int[][] coords = jsonToCoordinates(coordsJson);
-                ColoredPolygon fig = new ColoredPolygon(coords, name, lineColor, fillColor, opacity);
-                figures.add(fig);
+        try (SqliteDatabase.Session s = initDatabase().read()) {
+            PreparedStatement pstmt = s.prepare(
+                "SELECT " + SqliteFigureRow.COLUMNS + " FROM figures WHERE scene_id = ? ORDER BY z, id");
+            pstmt.setLong(1, sceneId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(store);
+                while (rs.next()) {
+                    figures.add(reader.read(rs));
+                }
             }
         }
 
         return figures;
     }
 
-    // Загрузить изображение (опционально)
-    public static BufferedImage loadImageFromDatabase() throws SQLException, IOException {
-        initDatabase();
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT raster_image FROM images WHERE id = 1")) {
-
-            if (rs.next()) {
-                byte[] imgBytes = rs.getBytes("raster_image");
-                ByteArrayInputStream bais = new ByteArrayInputStream(imgBytes);
-                return ImageIO.read(bais);
-            } else {
-                return null;
+    // Потоковое чтение в порядке отрисовки: фигуры передаются обработчику по мере продвижения курсора,
+    // каждая в собственном хранилище, и не накапливаются
+    public static void forEachFigure(FigureHandler handler) throws SQLException, InvalidPolygonException {
+        forEachFigure(SqliteScenes.DEFAULT, handler);
+    }
+
+    public static void forEachFigure(long sceneId, FigureHandler handler) throws SQLException, InvalidPolygonException {
+        try (SqliteDatabase.Session s = initDatabase().read()) {
+            PreparedStatement pstmt = s.prepare(
+                "SELECT " + SqliteFigureRow.COLUMNS + " FROM figures WHERE scene_id = ? ORDER BY z, id");
+            pstmt.setLong(1, sceneId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(null);
+                while (rs.next()) {
+                    handler.accept(reader.read(rs));
+                }
             }
         }
     }
 
-    // Вспомогательные методы
-    private static String coordinatesToJson(int[][] coords) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < coords.length; i++) {
-            if (i > 0) sb.append(",");
-            sb.append("[").append(coords[i][0]).append(",").append(coords[i][1]).append("]");
+    // Получатель порций элементов при потоковой загрузке; false — прекратить чтение
+    @FunctionalInterface
+    public interface ChunkHandler {
+        boolean accept(List<FigureItem> chunk);
+    }
+
+    // Потоковое чтение элементов редактора (с id и z) в порядке отрисовки порциями по chunkSize.
+    // У каждой порции своё хранилище, поэтому её можно сразу отдать другому потоку; возвращает число элементов
+    public static int forEachItemChunk(int chunkSize, ChunkHandler handler) throws SQLException, InvalidPolygonException {
+        return forEachItemChunk(SqliteScenes.DEFAULT, chunkSize, handler);
+    }
+
+    public static int forEachItemChunk(long sceneId, int chunkSize, ChunkHandler handler)
+            throws SQLException, InvalidPolygonException {
+        int total = 0;
+        try (SqliteDatabase.Session s = initDatabase().read()) {
+            PreparedStatement pstmt = s.prepare(
+                "SELECT id, " + SqliteFigureRow.COLUMNS + ", z FROM figures WHERE scene_id = ? ORDER BY z, id");
+            pstmt.setLong(1, sceneId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<FigureItem> chunk = new ArrayList<>(chunkSize);
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(new FigureStore(chunkSize, chunkSize * 8));
+                while (rs.next()) {
+                    FigureItem item = new FigureItem(reader.read(rs));
+                    item.setId(rs.getLong("id"));
+                    item.setZ(rs.getLong("z"));
+                    chunk.add(item);
+                    total++;
+                    if (chunk.size() == chunkSize) {
+                        if (!handler.accept(chunk)) {
+                            return total;
+                        }
+                        chunk = new ArrayList<>(chunkSize);
+                        reader = new SqliteFigureRow.Reader(new FigureStore(chunkSize, chunkSize * 8));
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    handler.accept(chunk);
+                }
+            }
         }
-        sb.append("]");
-        return sb.toString();
+        return total;
     }
 
-    private static int[][] jsonToCoordinates(String json) {
-        json = json.trim();
-        if (!json.startsWith("[") || !json.endsWith("]")) {
-            throw new IllegalArgumentException("Некорректный JSON координат");
+    // Страница выборки по ключу: фигуры с id > afterId в порядке id
+    public static final class Page {
+        public final List<ColoredPolygon> figures;
+        public final long lastId;  // передать как afterId для следующей страницы
+        public final boolean last; // дальше строк нет
+
+        Page(List<ColoredPolygon> figures, long lastId, boolean last) {
+            this.figures = figures;
+            this.lastId = lastId;
+            this.last = last;
         }
-        json = json.substring(1, json.length() - 1);
-        String[] points = json.split("\\],\\[");
-        int[][] coords = new int[points.length][2];
-        for (int i = 0; i < points.length; i++) {
-            String p = points[i].replace("[", "").replace("]", "");
-            String[] xy = p.split(",");
-            coords[i][0] = Integer.parseInt(xy[0].trim());
-            coords[i][1] = Integer.parseInt(xy[1].trim());
+    }
+
+    // До limit фигур после afterId (первая страница — afterId = 0); цена не зависит от номера страницы,
+    // в отличие от OFFSET
+    public static Page loadPage(long afterId, int limit) throws SQLException, InvalidPolygonException {
+        return loadPage(SqliteScenes.DEFAULT, afterId, limit, new FigureStore());
+    }
+
+    public static Page loadPage(long sceneId, long afterId, int limit, FigureStore store)
+            throws SQLException, InvalidPolygonException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Размер страницы должен быть положительным: " + limit);
+        }
+        List<ColoredPolygon> figures = new ArrayList<>();
+        long lastId = afterId;
+
+        try (SqliteDatabase.Session s = initDatabase().read()) {
+            PreparedStatement pstmt = s.prepare(
+                "SELECT id, " + SqliteFigureRow.COLUMNS + " FROM figures WHERE scene_id = ? AND id > ? ORDER BY id LIMIT ?");
+            pstmt.setLong(1, sceneId);
+            pstmt.setLong(2, afterId);
+            // на одну строку больше, чтобы знать, есть ли следующая страница
+            pstmt.setInt(3, limit + 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(store);
+                while (figures.size() < limit && rs.next()) {
+                    figures.add(reader.read(rs));
+                    lastId = rs.getLong("id");
+                }
+                return new Page(figures, lastId, !rs.next());
+            }
+        }
+    }
+
+    // Фигуры, чьи границы пересекают прямоугольник [x0, x1] × [y0, y1] (включительно), в порядке отрисовки;
+    // отбор по R*Tree figures_rtree, остальные строки не читаются
+    public static List<ColoredPolygon> loadFiguresInRect(int x0, int y0, int x1, int y1)
+            throws SQLException, InvalidPolygonException {
+        return loadFiguresInRect(SqliteScenes.DEFAULT, x0, y0, x1, y1, new FigureStore());
+    }
+
+    public static List<ColoredPolygon> loadFiguresInRect(long sceneId, int x0, int y0, int x1, int y1, FigureStore store)
+            throws SQLException, InvalidPolygonException {
+        List<ColoredPolygon> figures = new ArrayList<>();
+
+        try (SqliteDatabase.Session s = initDatabase().read()) {
+            PreparedStatement pstmt = s.prepare(
+                "SELECT " + SqliteFigureRow.COLUMNS + " FROM figures WHERE " + SqliteFigureRow.IN_RECT +
+                " ORDER BY z, id");
+            SqliteFigureRow.bindRect(pstmt, 1, sceneId, x0, y0, x1, y1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(store);
+                while (rs.next()) {
+                    figures.add(reader.read(rs));
+                }
+            }
+        }
+
+        return figures;
+    }
+
+    // Загрузить сцену редактора: элементы сохраняют id и z строк, чтобы следующее сохранение было частичным
+    public static List<FigureItem> loadItemsFromDatabase() throws SQLException, InvalidPolygonException {
+        return loadItemsFromDatabase(SqliteScenes.DEFAULT);
+    }
+
+    public static List<FigureItem> loadItemsFromDatabase(long sceneId) throws SQLException, InvalidPolygonException {
+        List<FigureItem> items = new ArrayList<>();
+        forEachItemChunk(sceneId, DEFAULT_BATCH_SIZE, chunk -> items.addAll(chunk));
+        return items;
+    }
+
+    // Загрузить изображение (опционально)
+    public static BufferedImage loadImageFromDatabase() throws SQLException, IOException {
+        return loadImageFromDatabase(SqliteScenes.DEFAULT);
+    }
+
+    public static BufferedImage loadImageFromDatabase(long sceneId) throws SQLException, IOException {
+        return loadImageFromDatabase(sceneId, SqliteImages.ORIGINAL);
+    }
+
+    // Уменьшенная копия: наибольшая сторона не меньше size (см. SqliteImages.THUMBNAIL_SIZES)
+    public static BufferedImage loadImageFromDatabase(long sceneId, int size) throws SQLException, IOException {
+        byte[] png;
+        try (SqliteDatabase.Session s = initDatabase().read()) {
+            png = SqliteImages.load(s, sceneId, size);
         }
-        return coords;
+        return png != null ? ImageIO.read(new ByteArrayInputStream(png)) : null;
     }
 }
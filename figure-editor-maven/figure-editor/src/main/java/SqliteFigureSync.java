@@ -0,0 +1,166 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Связь текущей сцены редактора со сценой в БД.
+// Пока сцена совпадает с содержимым сцены БД (загружена из неё или уже сохранена в неё целиком),
+// сохранение записывает только изменённые фигуры: видимые — UPSERT по id, скрытые — DELETE.
+// Новая сцена (файл, очистка) в первый раз сохраняется целиком в выбранную сцену БД.
+public class SqliteFigureSync {
+    private boolean mirrored = false; // БД отражает текущую сцену
+    private long sceneId = SqliteScenes.DEFAULT;
+    private String sceneName = null; // имя сцены БД; null — сцена не из БД
+    private final Set<FigureItem> changed = new LinkedHashSet<>();
+    private long maxZ = 0;
+
+    // Новая сцена не из БД
+    public synchronized void attach(List<FigureItem> items) {
+        changed.clear();
+        mirrored = false;
+        sceneName = null;
+        maxZ = 0;
+    }
+
+    // Элементы только что загружены из сцены БД и уже имеют id и z
+    public synchronized void attach(List<FigureItem> items, SqliteScenes.Scene scene) {
+        changed.clear();
+        mirrored = true;
+        sceneId = scene.id;
+        sceneName = scene.name;
+        maxZ = 0;
+        for (FigureItem item : items) {
+            maxZ = Math.max(maxZ, item.getZ());
+        }
+    }
+
+    // Порция элементов, дочитанная из БД после attach(items, scene)
+    public synchronized void appended(List<FigureItem> items) {
+        for (FigureItem item : items) {
+            maxZ = Math.max(maxZ, item.getZ());
+        }
+    }
+
+    // Фигура сдвинута или изменена её видимость
+    public synchronized void markChanged(FigureItem item) {
+        if (mirrored) {
+            changed.add(item);
+        }
+    }
+
+    // Фигура поднята на передний план: получает наибольший z
+    public synchronized void broughtToFront(FigureItem item) {
+        if (mirrored) {
+            item.setZ(++maxZ);
+            changed.add(item);
+        }
+    }
+
+    public synchronized int pendingCount() {
+        return mirrored ? changed.size() : -1;
+    }
+
+    // Сцена БД уже выбрана: сохранение не спрашивает, куда писать
+    public synchronized boolean isMirrored() {
+        return mirrored;
+    }
+
+    // Имя сцены БД, из которой загружена или в которую сохранялась текущая; null — не было
+    public synchronized String sceneName() {
+        return sceneName;
+    }
+
+    // Записать накопленные изменения без изображения (фоновая запись, см. SqliteWriteBehind);
+    // пока сцена не связана со сценой БД, изменения не копятся и писать нечего
+    public int flushChanges() throws SQLException, IOException {
+        List<FigureItem> toWrite;
+        long target;
+        synchronized (this) {
+            if (!mirrored || changed.isEmpty()) {
+                return 0;
+            }
+            target = sceneId;
+            toWrite = new ArrayList<>(changed);
+            changed.clear();
+        }
+        try {
+            SqliteFigureIO.syncItems(target, toWrite, null);
+        } catch (SQLException | IOException | RuntimeException e) {
+            synchronized (this) {
+                // изменения сцены, открытой за время записи, не смешиваются с прежними
+                if (mirrored && sceneId == target) {
+                    changed.addAll(toWrite);
+                }
+            }
+            throw e;
+        }
+        return toWrite.size();
+    }
+
+    // Сохранить сцену в ту сцену БД, которую она отражает; возвращает число записанных или удалённых строк
+    public int save(List<FigureItem> items, BufferedImage image) throws SQLException, IOException {
+        long target;
+        synchronized (this) {
+            if (!mirrored) {
+                throw new IllegalStateException("Сцена БД не выбрана");
+            }
+            target = sceneId;
+        }
+        return save(target, null, items, image);
+    }
+
+    // Сохранить сцену целиком в сцену БД scene (её прежние фигуры заменяются)
+    public int saveAs(SqliteScenes.Scene scene, List<FigureItem> items, BufferedImage image) throws SQLException, IOException {
+        synchronized (this) {
+            mirrored = false;
+        }
+        return save(scene.id, scene.name, items, image);
+    }
+
+    private int save(long target, String targetName, List<FigureItem> items, BufferedImage image) throws SQLException, IOException {
+        List<FigureItem> toWrite;
+        boolean full;
+        String previousName;
+        long previousId;
+        synchronized (this) {
+            full = !mirrored;
+            previousName = sceneName;
+            previousId = sceneId;
+            if (full) {
+                sceneId = target;
+                sceneName = targetName;
+                // id и z назначаются по порядку списка; изменения во время записи копятся как обычно
+                toWrite = new ArrayList<>(items);
+                mirrored = true;
+                maxZ = items.size();
+            } else {
+                // изменения, сделанные во время записи, попадут в следующее сохранение
+                toWrite = new ArrayList<>(changed);
+            }
+            changed.clear();
+        }
+        try {
+            if (full) {
+                SqliteFigureIO.replaceItems(target, toWrite, image);
+            } else {
+                SqliteFigureIO.syncItems(target, toWrite, image);
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            synchronized (this) {
+                if (full) {
+                    mirrored = false;
+                    sceneId = previousId;
+                    sceneName = previousName;
+                    changed.clear();
+                } else {
+                    changed.addAll(toWrite);
+                }
+            }
+            throw e;
+        }
+        return toWrite.size();
+    }
+}
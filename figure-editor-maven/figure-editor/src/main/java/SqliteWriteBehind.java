@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.sql.SQLException;
+
+// Фоновая запись изменений сцены в БД (write-behind). Сдвиги, перетаскивания и переключения
+// видимости копятся в SqliteFigureSync, повторные изменения одной фигуры схлопываются в одну строку.
+// Поток db-writer записывает накопленное одной транзакцией раз в interval мс или раньше,
+// когда изменено threshold фигур. Изображение сцены при этом не перерисовывается —
+// его обновляет явное сохранение. Перед выходом нужен flush().
+public class SqliteWriteBehind {
+    public static final long DEFAULT_INTERVAL_MS = Long.getLong("figures.db.flushInterval", 2000);
+    public static final int DEFAULT_THRESHOLD = Integer.getInteger("figures.db.flushThreshold", 1000);
+
+    private final SqliteFigureSync sync;
+    private final long intervalMs;
+    private final int threshold;
+    private final Object signal = new Object();
+    private final Object writeLock = new Object(); // одна запись за раз: фоновая или flush()
+    private boolean urgent = false;  // порог достигнут, писать не дожидаясь интервала
+    private boolean stopped = false;
+    private Thread writer;
+
+    public SqliteWriteBehind(SqliteFigureSync sync) {
+        this(sync, DEFAULT_INTERVAL_MS, DEFAULT_THRESHOLD);
+    }
+
+    public SqliteWriteBehind(SqliteFigureSync sync, long intervalMs, int threshold) {
+        if (intervalMs <= 0 || threshold <= 0) {
+            throw new IllegalArgumentException("Интервал и порог записи должны быть положительными");
+        }
+        this.sync = sync;
+        this.intervalMs = intervalMs;
+        this.threshold = threshold;
+    }
+
+    public synchronized void start() {
+        if (writer != null) return;
+        writer = new Thread(this::run, "db-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Вызывается после SqliteFigureSync.markChanged/broughtToFront; сама запись — в потоке db-writer
+    public void changed() {
+        if (sync.pendingCount() >= threshold) {
+            synchronized (signal) {
+                urgent = true;
+                signal.notify();
+            }
+        }
+    }
+
+    // Записать всё накопленное в вызывающем потоке и сбросить WAL на диск; возвращает число строк
+    public int flush() throws SQLException, IOException {
+        int written = write();
+        if (sync.isMirrored()) {
+            SqliteFigureIO.initDatabase().checkpoint();
+        }
+        return written;
+    }
+
+    // Остановить фоновый поток и записать остаток
+    public int close() throws SQLException, IOException {
+        synchronized (signal) {
+            stopped = true;
+            signal.notify();
+        }
+        return flush();
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (signal) {
+                long deadline = System.currentTimeMillis() + intervalMs;
+                long left;
+                while (!stopped && !urgent && (left = deadline - System.currentTimeMillis()) > 0) {
+                    try {
+                        signal.wait(left);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (stopped) return;
+                urgent = false;
+            }
+            try {
+                write();
+            } catch (SQLException | IOException | RuntimeException e) {
+                // изменения вернулись в очередь SqliteFigureSync, следующая попытка — через интервал
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Фигура, сдвинутая во время записи, снова отмечена изменённой и попадёт в следующую транзакцию
+    private int write() throws SQLException, IOException {
+        synchronized (writeLock) {
+            return sync.flushChanges();
+        }
+    }
+}
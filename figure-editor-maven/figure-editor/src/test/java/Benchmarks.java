@@ -0,0 +1,114 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Random;
+
+// Общее для замеров *Benchmark: синтетические сцены, разбор параметров, показания памяти и GC
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    static FigureStore fillStore(FigureStore store, int figures, int vertices) throws InvalidPolygonException {
+        Random rnd = new Random(1);
+        int[] xs = new int[vertices];
+        int[] ys = new int[vertices];
+        for (int i = 0; i < figures; i++) {
+            int[][] coords = randomFigure(rnd, vertices);
+            for (int v = 0; v < vertices; v++) {
+                xs[v] = coords[v][0];
+                ys[v] = coords[v][1];
+            }
+            store.add(xs, ys, 0, vertices, "f", "#000000", "#FFFFFF", 1.0);
+        }
+        return store;
+    }
+
+    static void writeSyntheticText(File file, int figures, int vertices) throws IOException {
+        Random rnd = new Random(7);
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (int i = 0; i < figures; i++) {
+                int[][] coords = randomFigure(rnd, vertices);
+                w.write("--- FIGURE ---\n");
+                w.write("class: ColoredPolygon\n");
+                w.write("name: Фигура " + i + "\n");
+                w.write("coordinates:");
+                for (int[] p : coords) {
+                    w.write(" (" + p[0] + "," + p[1] + ")");
+                }
+                w.write("\nlineColor: " + FigureColors.toHex(rnd.nextInt(0x1000000)) + "\n");
+                w.write("fillColor: " + FigureColors.toHex(rnd.nextInt(0x1000000)) + "\n");
+                w.write("opacity: 0." + rnd.nextInt(10) + "\n\n");
+            }
+        }
+    }
+
+    static int[][] randomFigure(Random rnd, int vertices) {
+        // выпуклый многоугольник: вершины на окружности
+        int cx = 100 + rnd.nextInt(10_000), cy = 100 + rnd.nextInt(10_000), r = 5 + rnd.nextInt(50);
+        int[][] coords = new int[vertices][2];
+        for (int v = 0; v < vertices; v++) {
+            double a = 2 * Math.PI * v / vertices;
+            coords[v][0] = cx + (int) Math.round(r * Math.cos(a));
+            coords[v][1] = cy + (int) Math.round(r * Math.sin(a));
+        }
+        return coords;
+    }
+
+    static int intArg(String[] args, int i, int def) {
+        return args.length > i ? Integer.parseInt(args[i].replace("_", "")) : def;
+    }
+
+    static void fullGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // Сумма пиков по пулам кучи (оценка сверху)
+    static long peakHeap() {
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Замеры двоичного формата FIGB и архива FigbArchive.
+// Лежит в тестовых исходниках и в jar не попадает. Запуск после mvn package (из каталога figure-editor):
+// java -cp target/test-classes:target/figure-editor-1.0-SNAPSHOT.jar FigbBenchmark <сценарий> [параметры]
+public class FigbBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "help";
+        switch (scenario) {
+            case "figb":
+                figb(Benchmarks.intArg(args, 1, 1_000_000));
+                break;
+            case "archive":
+                archive(Benchmarks.intArg(args, 1, 10_000_000));
+                break;
+            default:
+                System.out.println("Сценарии:");
+                System.out.println("  figb [фигур]              - размер файла и время загрузки: JSON vs FIGB");
+                System.out.println("  archive [фигур]           - открытие FigbArchive и ленивый доступ vs полная загрузка FIGB");
+        }
+    }
+
+    // --- FIGB: размер и скорость загрузки по сравнению с JSON ---
+    private static void figb(int figures) throws IOException, InvalidPolygonException {
+        File json = File.createTempFile("figures-bench", ".json");
+        File figb = File.createTempFile("figures-bench", FigbFigureIO.EXTENSION);
+        json.deleteOnExit();
+        figb.deleteOnExit();
+        List<ColoredPolygon> scene = Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6).figures();
+        JsonFigureIO.saveFiguresToJson(scene, json.getAbsolutePath());
+        FigbFigureIO.saveFiguresToFigb(scene, figb.getAbsolutePath());
+        System.out.printf("Файлы: JSON %.1f МБ, FIGB %.1f МБ (x%.1f)%n", json.length() / 1048576.0,
+            figb.length() / 1048576.0, (double) json.length() / figb.length());
+        scene = null;
+
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            int fromJson = JsonFigureIO.loadFiguresFromJson(json.getAbsolutePath()).size();
+            long t1 = System.nanoTime();
+            int fromFigb = FigbFigureIO.loadFiguresFromFigb(figb.getAbsolutePath()).size();
+            long t2 = System.nanoTime();
+            if (fromJson != fromFigb) {
+                throw new IllegalStateException("Разное число фигур: " + fromJson + " vs " + fromFigb);
+            }
+            System.out.printf("проход %d: JSON %7.0f мс, FIGB %7.0f мс (x%.1f)%n",
+                round + 1, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (double) (t1 - t0) / (t2 - t1));
+        }
+    }
+
+    // --- Архив FIGB: открытие без декодирования, фигуры по запросу ---
+    private static void archive(int figures) throws IOException, InvalidPolygonException, InterruptedException {
+        File file = File.createTempFile("figures-bench", FigbFigureIO.EXTENSION);
+        file.deleteOnExit();
+        String path = file.getAbsolutePath();
+        // сцена генерируется по мере записи и целиком в памяти не хранится
+        FigbFigureIO.saveFiguresToFigb(new AbstractList<ColoredPolygon>() {
+            @Override
+            public ColoredPolygon get(int i) {
+                try {
+                    return new ColoredPolygon(Benchmarks.randomFigure(new Random(i), 6), "Фигура " + i, "#000000", "#FFFFFF", 1.0);
+                } catch (InvalidPolygonException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public int size() {
+                return figures;
+            }
+        }, path);
+        System.out.printf("Файл: %,d фигур, %.1f МБ%n", figures, file.length() / 1048576.0);
+
+        long t0 = System.nanoTime();
+        FigbArchive archive = FigbArchive.open(path);
+        long t1 = System.nanoTime();
+        System.out.printf("Открытие архива: %.2f мс%n", (t1 - t0) / 1e6);
+
+        // то, что делает редактор при открытии: элементы списка и пространственный индекс по границам из файла
+        t0 = System.nanoTime();
+        List<FigureItem> items = new ArrayList<>(archive.size());
+        for (int i = 0; i < archive.size(); i++) {
+            items.add(new FigureItem(archive, i));
+        }
+        FigureIndex index = new FigureIndex();
+        index.rebuildInBackground(items);
+        t1 = System.nanoTime();
+        long hitStart = System.nanoTime();
+        index.findTopmostAt(2400, 2300);
+        long hitEnd = System.nanoTime();
+        while (index.size() < items.size()) {
+            Thread.sleep(10);
+        }
+        long t2 = System.nanoTime();
+        System.out.printf("Редактор: список готов за %.0f мс, поиск до готовности индекса %.0f мс, индекс в фоне %.0f мс, декодировано фигур: %d%n",
+            (t1 - t0) / 1e6, (hitEnd - hitStart) / 1e6, (t2 - t0) / 1e6, archive.cachedCount());
+
+        // окно просмотра 800x600: только пересекающиеся фигуры
+        java.awt.Rectangle viewport = new java.awt.Rectangle(2000, 2000, 800, 600);
+        t0 = System.nanoTime();
+        int visible = 0;
+        for (FigureItem item : items) {
+            if (item.intersects(viewport)) {
+                item.getFigure();
+                visible++;
+            }
+        }
+        t1 = System.nanoTime();
+        System.out.printf("Кадр 800x600: %,d фигур в окне, %.0f мс (проход по всем + декодирование)%n",
+            visible, (t1 - t0) / 1e6);
+
+        Random rnd = new Random(3);
+        t0 = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            archive.figure(rnd.nextInt(figures)).contains(0, 0);
+        }
+        t1 = System.nanoTime();
+        System.out.printf("100 000 случайных обращений: %.0f мс, в кэше %d%n", (t1 - t0) / 1e6, archive.cachedCount());
+
+        items = null;
+        index = null;
+        Benchmarks.fullGc();
+        t0 = System.nanoTime();
+        int loaded = FigbFigureIO.loadFiguresFromFigb(path).size();
+        t1 = System.nanoTime();
+        System.out.printf("Полная загрузка FIGB для сравнения: %,d фигур за %.0f мс%n", loaded, (t1 - t0) / 1e6);
+    }
+}
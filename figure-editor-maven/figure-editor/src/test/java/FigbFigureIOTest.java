@@ -0,0 +1,132 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FigbFigureIOTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<ColoredPolygon> sample() throws InvalidPolygonException {
+        return Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "треугольник", "#FF0000", "#00FF00", 1.0),
+            new ColoredPolygon(new int[][]{{-5, -5}, {5, -5}, {5, 5}, {-5, 5}}, "треугольник", "#123456", "#ABCDEF", 0.25),
+            new ColoredPolygon(new int[][]{{-1_000_000_000, 0}, {1_000_000_000, 7}, {0, -1_000_000_000}}, "огромный", "#000000", "#FFFFFF", 0.3));
+    }
+
+    @Test
+    void saveAndLoadRoundTrip() throws Exception {
+        String file = dir.resolve("figures.figb").toString();
+        List<ColoredPolygon> figures = sample();
+        FigbFigureIO.saveFiguresToFigb(figures, file);
+
+        List<ColoredPolygon> loaded = FigbFigureIO.loadFiguresFromFigb(file);
+        assertEquals(figures.size(), loaded.size());
+        for (int i = 0; i < figures.size(); i++) {
+            assertSameFigure(figures.get(i), loaded.get(i));
+        }
+
+        List<ColoredPolygon> streamed = new ArrayList<>();
+        FigbFigureIO.forEachFigure(file, streamed::add);
+        assertEquals(figures.size(), streamed.size());
+        for (int i = 0; i < figures.size(); i++) {
+            assertSameFigure(figures.get(i), streamed.get(i));
+        }
+    }
+
+    @Test
+    void emptyListRoundTrip() throws Exception {
+        String file = dir.resolve("empty.figb").toString();
+        FigbFigureIO.saveFiguresToFigb(new ArrayList<>(), file);
+        assertTrue(FigbFigureIO.loadFiguresFromFigb(file).isEmpty());
+        assertEquals(0, FigbArchive.open(file).size());
+    }
+
+    // Повреждённый файл даёт IOException, а не попытку выделить огромный массив
+    @Test
+    void rejectsCorruptedFile() throws Exception {
+        Path file = dir.resolve("broken.figb");
+        FigbFigureIO.saveFiguresToFigb(sample(), file.toString());
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+        assertThrows(IOException.class, () -> FigbFigureIO.loadFiguresFromFigb(file.toString()));
+
+        byte[] garbage = bytes.clone();
+        for (int i = garbage.length - 16; i < garbage.length; i++) {
+            garbage[i] = (byte) 0x7F;
+        }
+        Files.write(file, garbage);
+        assertThrows(IOException.class, () -> FigbFigureIO.loadFiguresFromFigb(file.toString()));
+
+        Files.write(file, "not a figb file".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IOException.class, () -> FigbFigureIO.loadFiguresFromFigb(file.toString()));
+    }
+
+    @Test
+    void archiveReadsIndexAndFiguresByNumber() throws Exception {
+        String file = dir.resolve("archive.figb").toString();
+        List<ColoredPolygon> figures = sample();
+        FigbFigureIO.saveFiguresToFigb(figures, file);
+
+        FigbArchive archive = FigbArchive.open(file);
+        assertEquals(figures.size(), archive.size());
+        // вразнобой: доступ по номеру не зависит от порядка чтения
+        for (int i = figures.size() - 1; i >= 0; i--) {
+            assertSameFigure(figures.get(i), archive.figure(i));
+        }
+        assertArrayEquals(new int[]{-5, -5, 5, 5},
+            new int[]{archive.minX(1), archive.minY(1), archive.maxX(1), archive.maxY(1)});
+        assertSame(archive.figure(2), archive.figure(2), "повторное обращение берёт фигуру из кэша");
+    }
+
+    // Сдвинутая фигура архива закрепляется и не теряется при вытеснении из кэша
+    @Test
+    void movedArchiveFigureSurvivesEviction() throws Exception {
+        String file = dir.resolve("pinned.figb").toString();
+        FigbFigureIO.saveFiguresToFigb(sample(), file);
+
+        FigbArchive archive = FigbArchive.open(file, 1);
+        FigureItem item = new FigureItem(archive, 0);
+        item.moveBy(100, 200);
+        for (int i = 0; i < archive.size(); i++) {
+            archive.figure(i);
+        }
+
+        assertArrayEquals(new int[][]{{100, 200}, {110, 200}, {100, 210}}, item.getFigure().getCoordinates());
+        assertEquals(new java.awt.Rectangle(100, 200, 10, 10), item.getBounds());
+        assertTrue(archive.cachedCount() <= 1);
+    }
+
+    // Сохранение поверх открытого архива не портит уже отображённый файл
+    @Test
+    void saveOverOpenArchive() throws Exception {
+        String file = dir.resolve("same.figb").toString();
+        List<ColoredPolygon> figures = sample();
+        FigbFigureIO.saveFiguresToFigb(figures, file);
+        FigbArchive archive = FigbArchive.open(file, 1);
+
+        FigbFigureIO.saveFiguresToFigb(figures.subList(0, 1), file);
+
+        assertEquals(figures.size(), archive.size());
+        assertSameFigure(figures.get(2), archive.figure(2));
+        assertEquals(1, FigbFigureIO.loadFiguresFromFigb(file).size());
+    }
+
+    private static void assertSameFigure(ColoredPolygon expected, ColoredPolygon actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLineRgb(), actual.getLineRgb());
+        assertEquals(expected.getFillRgb(), actual.getFillRgb());
+        assertEquals(expected.getOpacity(), actual.getOpacity(), 1e-6);
+        assertArrayEquals(expected.getCoordinates(), actual.getCoordinates());
+    }
+}
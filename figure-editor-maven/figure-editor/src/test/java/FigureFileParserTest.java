@@ -0,0 +1,164 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FigureFileParserTest {
+
+    static final String SAMPLE =
+            "header before the first block is ignored\n"
+            + "--- FIGURE ---\n"
+            + "class: ColoredPolygon\n"
+            + "name: Triangle\n"
+            + "lineColor: #FF0000\n"
+            + "fillColor: #00ff00\n"
+            + "opacity: 0.25\n"
+            + "coordinates: (0,0) (40, 0) (0,30)\n"
+            + "\n"
+            + "--- FIGURE ---\n"
+            + "class: Circle\n"
+            + "coordinates: (0,0) (1,1) (2,0)\n"
+            + "--- FIGURE ---\n"
+            + "  class: ColoredPolygon  \n"
+            + "lineColor: #000000\n"
+            + "fillColor: #FFFFFF\n"
+            + "coordinates: (10,10) (20,10) (20,20) (10,20)\n";
+
+    private static List<ColoredPolygon> parse(String text, FigureStore store) throws Exception {
+        List<ColoredPolygon> figures = new ArrayList<>();
+        FigureFileParser.parseFigures(new BufferedReader(new StringReader(text)), store, figures::add);
+        return figures;
+    }
+
+    static void assertSample(List<ColoredPolygon> figures) {
+        assertEquals(2, figures.size());
+        ColoredPolygon t = figures.get(0);
+        assertEquals("Triangle", t.getName());
+        assertEquals(0xFF0000, t.getLineColor().getRGB() & 0xFFFFFF);
+        assertEquals(0x00FF00, t.getFillColor().getRGB() & 0xFFFFFF);
+        assertEquals(0.25, t.getOpacity());
+        assertArrayEquals(new int[][]{{0, 0}, {40, 0}, {0, 30}}, t.getCoordinates());
+
+        ColoredPolygon s = figures.get(1);
+        assertEquals("Безымянный", s.getName());
+        assertEquals(1.0, s.getOpacity());
+        assertArrayEquals(new int[][]{{10, 10}, {20, 10}, {20, 20}, {10, 20}}, s.getCoordinates());
+    }
+
+    @Test
+    void parsesIntoSharedStore() throws Exception {
+        FigureStore store = new FigureStore();
+        assertSample(parse(SAMPLE, store));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void parsesIntoPerFigureStores() throws Exception {
+        assertSample(parse(SAMPLE, null));
+    }
+
+    @Test
+    void streamsFiguresFromFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("scene.txt");
+        Files.write(file, SAMPLE.getBytes(StandardCharsets.US_ASCII));
+
+        List<ColoredPolygon> streamed = new ArrayList<>();
+        FigureFileParser.forEachFigure(file.toString(), streamed::add);
+        assertSample(streamed);
+        assertSample(FigureFileParser.loadFiguresFromFile(file.toString()));
+    }
+
+    @Test
+    void rejectsBrokenBlocks() {
+        assertThrows(InvalidPolygonException.class,
+                () -> parse("--- FIGURE ---\nclass: ColoredPolygon\nname: x\n", null));
+        assertThrows(InvalidPolygonException.class,
+                () -> parse("--- FIGURE ---\nclass: ColoredPolygon\ncoordinates: (0,0) (1,1)\n", null));
+        assertThrows(InvalidPolygonException.class,
+                () -> parse("--- FIGURE ---\nclass: ColoredPolygon\nlineColor: #000000\nfillColor: #000000\n"
+                        + "opacity: много\ncoordinates: (0,0) (5,0) (0,5)\n", null));
+    }
+
+    // Файл в несколько мегабайт, чтобы параллельный загрузчик разбил его на фрагменты.
+    // Маркеры с пробелами и переводы строк \r\n проверяют поиск границ фрагментов.
+    static Path writeLargeFile(Path dir, int figures, String brokenTail) throws Exception {
+        Path file = dir.resolve("large.txt");
+        Random rnd = new Random(11);
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < figures; i++) {
+                String eol = i % 3 == 0 ? "\r\n" : "\n";
+                w.write((i % 5 == 0 ? "  --- FIGURE ---\t" : "--- FIGURE ---") + eol);
+                w.write("class: ColoredPolygon" + eol);
+                w.write("name: figure-" + i + eol);
+                w.write("lineColor: #" + String.format("%06X", rnd.nextInt(1 << 24)) + eol);
+                w.write("fillColor: #" + String.format("%06X", rnd.nextInt(1 << 24)) + eol);
+                w.write("opacity: " + (rnd.nextInt(101) / 100.0) + eol);
+                int x = rnd.nextInt(5000), y = rnd.nextInt(5000), n = 3 + rnd.nextInt(20);
+                StringBuilder coords = new StringBuilder("coordinates:");
+                for (int v = 0; v < n; v++) {
+                    double a = 2 * Math.PI * v / n;
+                    coords.append(" (").append(x + (int) (100 * Math.cos(a)) + 100).append(',')
+                          .append(y + (int) (100 * Math.sin(a)) + 100).append(')');
+                }
+                w.write(coords + eol + eol);
+            }
+            if (brokenTail != null) {
+                w.write(brokenTail);
+            }
+        }
+        return file;
+    }
+
+    static void assertSameFigures(List<ColoredPolygon> expected, List<ColoredPolygon> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ColoredPolygon e = expected.get(i), a = actual.get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getLineColor(), a.getLineColor());
+            assertEquals(e.getFillColor(), a.getFillColor());
+            assertEquals(e.getOpacity(), a.getOpacity());
+            assertArrayEquals(e.getCoordinates(), a.getCoordinates(), e.getName());
+        }
+    }
+
+    @Test
+    void parallelLoadMatchesSequential(@TempDir Path dir) throws Exception {
+        Path file = writeLargeFile(dir, 20000, null);
+        assertEquals(true, Files.size(file) > (4L << 20));
+
+        List<ColoredPolygon> sequential = FigureFileParser.loadFiguresFromFile(file.toString());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(20000, sequential.size());
+            assertSameFigures(sequential, FigureFileParser.loadFiguresParallel(file.toString(), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallelLoadReportsErrors(@TempDir Path dir) throws Exception {
+        Path file = writeLargeFile(dir, 20000, "--- FIGURE ---\nclass: ColoredPolygon\ncoordinates: (0,0) (1,1)\n");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            InvalidPolygonException e = assertThrows(InvalidPolygonException.class,
+                    () -> FigureFileParser.loadFiguresParallel(file.toString(), pool));
+            assertEquals("Недостаточно вершин: 2", e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FigureIndexTest {
+
+    private static FigureItem square(String name, int x, int y, int size) throws InvalidPolygonException {
+        int[][] coords = {{x, y}, {x + size, y}, {x + size, y + size}, {x, y + size}};
+        return new FigureItem(new ColoredPolygon(coords, name, "#000000", "#FFFFFF", 1.0));
+    }
+
+    @Test
+    void findsTopmostOfOverlappingFigures() throws Exception {
+        FigureItem bottom = square("bottom", 0, 0, 100);
+        FigureItem top = square("top", 50, 50, 100);
+        FigureIndex index = new FigureIndex();
+        index.rebuild(Arrays.asList(bottom, top));
+
+        assertSame(bottom, index.findTopmostAt(10, 10));
+        assertSame(top, index.findTopmostAt(75, 75));
+        assertSame(top, index.findTopmostAt(140, 140));
+        assertNull(index.findTopmostAt(500, 500));
+    }
+
+    @Test
+    void bringToFrontChangesOrder() throws Exception {
+        FigureItem bottom = square("bottom", 0, 0, 100);
+        FigureItem top = square("top", 50, 50, 100);
+        FigureIndex index = new FigureIndex();
+        index.rebuild(Arrays.asList(bottom, top));
+
+        index.bringToFront(bottom);
+        assertSame(bottom, index.findTopmostAt(75, 75));
+    }
+
+    @Test
+    void skipsHiddenAndRemovedFigures() throws Exception {
+        FigureItem bottom = square("bottom", 0, 0, 100);
+        FigureItem top = square("top", 50, 50, 100);
+        FigureIndex index = new FigureIndex();
+        index.rebuild(Arrays.asList(bottom, top));
+
+        top.setVisible(false);
+        assertSame(bottom, index.findTopmostAt(75, 75));
+
+        top.setVisible(true);
+        index.remove(top);
+        assertSame(bottom, index.findTopmostAt(75, 75));
+        assertNull(index.findTopmostAt(140, 140));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void updateFollowsMovedFigure() throws Exception {
+        FigureItem item = square("moving", 0, 0, 20);
+        FigureIndex index = new FigureIndex();
+        index.add(item);
+
+        item.getFigure().moveBy(3000, -2000);
+        index.update(item);
+
+        assertNull(index.findTopmostAt(10, 10));
+        assertSame(item, index.findTopmostAt(3010, -1990));
+    }
+
+    @Test
+    void growsRootInAllDirections() throws Exception {
+        FigureIndex index = new FigureIndex();
+        FigureItem a = square("a", 10, 10, 10);
+        FigureItem b = square("b", -5000, -5000, 10);
+        FigureItem c = square("c", 7000, -3000, 10);
+        index.add(a);
+        index.add(b);
+        index.add(c);
+
+        assertSame(a, index.findTopmostAt(15, 15));
+        assertSame(b, index.findTopmostAt(-4995, -4995));
+        assertSame(c, index.findTopmostAt(7005, -2995));
+    }
+
+    // Индекс должен отвечать так же, как полный перебор списка сверху вниз
+    @Test
+    void matchesLinearScan() throws Exception {
+        Random rnd = new Random(42);
+        List<FigureItem> items = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            items.add(square("f" + i, rnd.nextInt(2000) - 500, rnd.nextInt(2000) - 500, 5 + rnd.nextInt(200)));
+        }
+        FigureIndex index = new FigureIndex();
+        index.rebuild(items);
+
+        for (int i = 0; i < 2000; i++) {
+            int x = rnd.nextInt(2400) - 600, y = rnd.nextInt(2400) - 600;
+            FigureItem expected = null;
+            for (int j = items.size() - 1; j >= 0; j--) {
+                if (items.get(j).getFigure().contains(x, y)) {
+                    expected = items.get(j);
+                    break;
+                }
+            }
+            assertSame(expected, index.findTopmostAt(x, y), "точка " + x + "," + y);
+        }
+    }
+
+    // Пока индекс строится в фоне, поиск отвечает так же, как после построения
+    @Test
+    void answersWhileBuildingInBackground() throws Exception {
+        Random rnd = new Random(9);
+        List<FigureItem> items = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            items.add(square("f" + i, rnd.nextInt(3000), rnd.nextInt(3000), 5 + rnd.nextInt(100)));
+        }
+        FigureIndex index = new FigureIndex();
+        index.rebuildInBackground(items);
+        index.bringToFront(items.get(0));
+
+        for (int i = 0; i < 500; i++) {
+            int x = rnd.nextInt(3100), y = rnd.nextInt(3100);
+            FigureItem expected = items.get(0).getFigure().contains(x, y) ? items.get(0) : null;
+            for (int j = items.size() - 1; j > 0 && expected == null; j--) {
+                if (items.get(j).getFigure().contains(x, y)) {
+                    expected = items.get(j);
+                }
+            }
+            assertSame(expected, index.findTopmostAt(x, y), "точка " + x + "," + y);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FilterReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class FigureTextScannerTest {
+
+    private static List<ColoredPolygon> scan(Reader reader, FigureStore store) throws Exception {
+        List<ColoredPolygon> figures = new ArrayList<>();
+        new FigureTextScanner(reader).scan(store, figures::add);
+        return figures;
+    }
+
+    private static List<ColoredPolygon> scan(String text) throws Exception {
+        return scan(new StringReader(text), null);
+    }
+
+    private static ColoredPolygon single(String body) throws Exception {
+        List<ColoredPolygon> figures = scan("--- FIGURE ---\nclass: ColoredPolygon\n"
+                + "lineColor: #000000\nfillColor: #FFFFFF\n" + body);
+        assertEquals(1, figures.size());
+        return figures.get(0);
+    }
+
+    // Читатель по одному символу: границы буфера приходятся на любое место строки
+    private static Reader oneCharAtATime(String text) {
+        return new FilterReader(new StringReader(text)) {
+            @Override
+            public int read(char[] buf, int off, int len) throws java.io.IOException {
+                return super.read(buf, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @Test
+    void parsesSameAsFileParser() throws Exception {
+        FigureFileParserTest.assertSample(scan(new StringReader(FigureFileParserTest.SAMPLE), new FigureStore()));
+        FigureFileParserTest.assertSample(scan(oneCharAtATime(FigureFileParserTest.SAMPLE), null));
+        FigureFileParserTest.assertSample(scan(FigureFileParserTest.SAMPLE.replace("\n", "\r\n")));
+        FigureFileParserTest.assertSample(scan(FigureFileParserTest.SAMPLE.replace("\n", "\r")));
+    }
+
+    @Test
+    void lastDuplicateKeyWins() throws Exception {
+        ColoredPolygon p = single("name: first\nname:  second  \nopacity: 0.1\nopacity: 0.7\n"
+                + "coordinates: (0,0) (1,0) (0,1)\ncoordinates: (0,0) (9,0) (0,9)\nunknown: x\nno colon\n");
+        assertEquals("second", p.getName());
+        assertEquals(0.7, p.getOpacity());
+        assertArrayEquals(new int[][]{{0, 0}, {9, 0}, {0, 9}}, p.getCoordinates());
+    }
+
+    // Координаты читаются так же, как прежним выражением \((\d+),\s*(\d+)\)
+    @Test
+    void coordinatesMatchLegacyPattern() throws Exception {
+        Pattern legacy = Pattern.compile("\\((\\d+),\\s*(\\d+)\\)");
+        String[] inputs = {
+            "(0,0) (10,0) (10,10)",
+            "((1,2) x(30,\t4)(5,60)",
+            "(1 ,2) (3,4) (-5,6) (70,8) (9,100)",
+            "(1,2 ) (3,4)(50,6)(7,)(,8)(9,100)",
+            "[0,0] (100,200)(300, 400) (500,  100)",
+        };
+        for (String input : inputs) {
+            List<int[]> expected = new ArrayList<>();
+            Matcher m = legacy.matcher(input);
+            while (m.find()) {
+                expected.add(new int[]{Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))});
+            }
+            int[][] actual = single("coordinates: " + input + "\n").getCoordinates();
+            assertArrayEquals(expected.toArray(new int[0][]), actual, input);
+        }
+    }
+
+    @Test
+    void opacityMatchesParseDouble() throws Exception {
+        Random rnd = new Random(5);
+        List<String> values = new ArrayList<>(List.of("1", "0", "0.5", ".25", "1.", "1e-1", "0.1000000000000000055511151231257827"));
+        for (int i = 0; i < 200; i++) {
+            values.add(String.valueOf(rnd.nextInt(1000001) / 1e6));
+        }
+        for (String value : values) {
+            assertEquals(Double.parseDouble(value), single("opacity: " + value + "\ncoordinates: (0,0) (5,0) (0,5)\n").getOpacity(), value);
+        }
+    }
+
+    @Test
+    void keepsErrorMessages() {
+        InvalidPolygonException missing = assertThrows(InvalidPolygonException.class,
+                () -> single("name: x\n"));
+        assertEquals("Отсутствуют координаты", missing.getMessage());
+
+        InvalidPolygonException opacity = assertThrows(InvalidPolygonException.class,
+                () -> single("opacity: 0,5\ncoordinates: (0,0) (5,0) (0,5)\n"));
+        assertEquals("Некорректная прозрачность: 0,5", opacity.getMessage());
+
+        IllegalArgumentException color = assertThrows(IllegalArgumentException.class,
+                () -> scan("--- FIGURE ---\nclass: ColoredPolygon\nfillColor: #FFFFFF\ncoordinates: (0,0) (5,0) (0,5)\n"));
+        assertEquals("Некорректный формат цвета в lineColor: null (ожидается #RRGGBB)", color.getMessage());
+
+        IllegalArgumentException range = assertThrows(IllegalArgumentException.class,
+                () -> single("opacity: 2\ncoordinates: (0,0) (5,0) (0,5)\n"));
+        assertEquals("Прозрачность должна быть в диапазоне [0.0, 1.0]", range.getMessage());
+    }
+}
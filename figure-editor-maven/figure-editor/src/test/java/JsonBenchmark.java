@@ -0,0 +1,46 @@
+import java.io.File;
+import java.io.IOException;
+
+// Замеры потоковой записи и чтения JSON.
+// Лежит в тестовых исходниках и в jar не попадает. Запуск после mvn package (из каталога figure-editor):
+// java -cp target/test-classes:target/figure-editor-1.0-SNAPSHOT.jar JsonBenchmark <сценарий> [параметры]
+public class JsonBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "help";
+        switch (scenario) {
+            case "json":
+                json(Benchmarks.intArg(args, 1, 1_000_000));
+                break;
+            default:
+                System.out.println("Сценарии:");
+                System.out.println("  json [фигур]              - потоковая запись и чтение JSON, пиковая куча");
+        }
+    }
+
+    // --- JSON: потоковая запись и чтение; пик кучи не зависит от размера файла ---
+    private static void json(int figures) throws IOException, InvalidPolygonException {
+        File file = File.createTempFile("figures-bench", ".json");
+        file.deleteOnExit();
+        String path = file.getAbsolutePath();
+
+        FigureStore store = Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6);
+        Benchmarks.fullGc();
+        Benchmarks.resetPeakHeap();
+        long t0 = System.nanoTime();
+        JsonFigureIO.saveFiguresToJson(store.figures(), path);
+        long t1 = System.nanoTime();
+        System.out.printf("Запись: %,d фигур, %.1f МБ за %.0f мс, пик кучи %.1f МБ (сама сцена в хранилище)%n",
+            figures, file.length() / 1048576.0, (t1 - t0) / 1e6, Benchmarks.peakHeap() / 1048576.0);
+
+        store = null;
+        Benchmarks.fullGc();
+        Benchmarks.resetPeakHeap();
+        int[] count = {0};
+        t0 = System.nanoTime();
+        JsonFigureIO.forEachFigure(path, fig -> count[0]++);
+        t1 = System.nanoTime();
+        System.out.printf("Чтение: %,d фигур за %.0f мс, пик кучи %.1f МБ%n",
+            count[0], (t1 - t0) / 1e6, Benchmarks.peakHeap() / 1048576.0);
+    }
+}
@@ -0,0 +1,107 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonFigureIOTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void saveAndLoadRoundTrip() throws Exception {
+        String file = dir.resolve("figures.json").toString();
+        List<ColoredPolygon> figures = Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "простая", "#FF0000", "#00FF00", 1.0),
+            // имя с символами, которые JSON экранирует
+            new ColoredPolygon(new int[][]{{-5, -5}, {5, -5}, {5, 5}}, "кавычки \" слэш \\ / перенос\nтаб\t", "#123456", "#ABCDEF", 0.25),
+            new ColoredPolygon(new int[][]{{Integer.MIN_VALUE, 0}, {Integer.MAX_VALUE, 1}, {0, 2}, {3, 3}}, "\u0001 управляющий", "#000000", "#FFFFFF", 0.3));
+        JsonFigureIO.saveFiguresToJson(figures, file);
+
+        List<ColoredPolygon> loaded = JsonFigureIO.loadFiguresFromJson(file);
+        assertEquals(figures.size(), loaded.size());
+        for (int i = 0; i < figures.size(); i++) {
+            assertSameFigure(figures.get(i), loaded.get(i));
+        }
+
+        List<ColoredPolygon> streamed = new ArrayList<>();
+        JsonFigureIO.forEachFigure(file, streamed::add);
+        assertEquals(figures.size(), streamed.size());
+        assertSameFigure(figures.get(1), streamed.get(1));
+    }
+
+    @Test
+    void readsHandWrittenFile() throws Exception {
+        Path file = dir.resolve("hand.json");
+        Files.write(file, ("[\n  {\"name\": \"\\u0430\\u0431\", \"coordinates\": [[1, 2], [3, 4], [5, -6]],\n"
+            + "   \"lineColor\": \"#0000FF\", \"fillColor\": \"#FFFF00\", \"opacity\": 0.5}\n]\n")
+            .getBytes(StandardCharsets.UTF_8));
+
+        List<ColoredPolygon> loaded = JsonFigureIO.loadFiguresFromJson(file.toString());
+        assertEquals(1, loaded.size());
+        assertSameFigure(new ColoredPolygon(new int[][]{{1, 2}, {3, 4}, {5, -6}}, "аб", "#0000FF", "#FFFF00", 0.5), loaded.get(0));
+    }
+
+    @Test
+    void emptyListRoundTrip() throws Exception {
+        String file = dir.resolve("empty.json").toString();
+        JsonFigureIO.saveFiguresToJson(new ArrayList<>(), file);
+        assertTrue(JsonFigureIO.loadFiguresFromJson(file).isEmpty());
+    }
+
+    // Вывод JsonFigureWriter должен совпадать байт в байт с прежним JSONArray.toString(2)
+    @Test
+    void matchesLegacyOrgJsonOutput() throws Exception {
+        List<ColoredPolygon> figures = Arrays.asList(
+            new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "простая", "#FF0000", "#00FF00", 1.0),
+            new ColoredPolygon(new int[][]{{-5, -5}, {5, -5}, {5, 5}}, "кавычки \" слэш \\ / </script> перенос\nтаб\t", "#123456", "#abcdef", 0.25),
+            new ColoredPolygon(new int[][]{{Integer.MIN_VALUE, 0}, {Integer.MAX_VALUE, 1}, {0, 2}, {3, 3}}, "\u0001 \u2028", "#000000", "#FFFFFF", 0.3),
+            new ColoredPolygon(new int[][]{{1, 1}, {2, 5}, {7, 3}}, "x", "#010203", "#FFFFFF", 0.0));
+
+        for (int n = 0; n <= figures.size(); n++) {
+            List<ColoredPolygon> part = figures.subList(0, n);
+            Path file = dir.resolve("legacy" + n + ".json");
+            JsonFigureIO.saveFiguresToJson(part, file.toString());
+            assertEquals(legacyJson(part), new String(Files.readAllBytes(file), StandardCharsets.UTF_8), "фигур: " + n);
+        }
+    }
+
+    // Прежняя запись через org.json
+    private static String legacyJson(List<ColoredPolygon> figures) {
+        JSONArray array = new JSONArray();
+        for (ColoredPolygon fig : figures) {
+            JSONObject obj = new JSONObject();
+            obj.put("name", fig.getName());
+            obj.put("lineColor", FigureColors.toHex(fig.getLineRgb()));
+            obj.put("fillColor", FigureColors.toHex(fig.getFillRgb()));
+            obj.put("opacity", fig.getOpacity());
+            JSONArray coords = new JSONArray();
+            for (int v = 0; v < fig.getVertexCount(); v++) {
+                JSONArray point = new JSONArray();
+                point.put(fig.getX(v));
+                point.put(fig.getY(v));
+                coords.put(point);
+            }
+            obj.put("coordinates", coords);
+            array.put(obj);
+        }
+        return array.toString(2);
+    }
+
+    private static void assertSameFigure(ColoredPolygon expected, ColoredPolygon actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLineRgb(), actual.getLineRgb());
+        assertEquals(expected.getFillRgb(), actual.getFillRgb());
+        assertEquals(expected.getOpacity(), actual.getOpacity(), 1e-6);
+        assertArrayEquals(expected.getCoordinates(), actual.getCoordinates());
+    }
+}
@@ -0,0 +1,408 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Замеры хранения фигур в SQLite: запись, чтение, синхронизация и изображения сцены.
+// Лежит в тестовых исходниках и в jar не попадает. Запуск после mvn package (из каталога figure-editor):
+// java -cp target/test-classes:target/figure-editor-1.0-SNAPSHOT.jar SqliteBenchmark <сценарий> [параметры]
+public class SqliteBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "help";
+        switch (scenario) {
+            case "dbsave":
+                dbSave(Benchmarks.intArg(args, 1, 100_000));
+                break;
+            case "dbload":
+                dbLoad(Benchmarks.intArg(args, 1, 200_000));
+                break;
+            case "dbstream":
+                dbStream(Benchmarks.intArg(args, 1, 500_000));
+                break;
+            case "dbsync":
+                dbSync(Benchmarks.intArg(args, 1, 200_000));
+                break;
+            case "dbimage":
+                dbImage(Benchmarks.intArg(args, 1, 1600), Benchmarks.intArg(args, 2, 1200));
+                break;
+            case "dbbehind":
+                dbBehind(Benchmarks.intArg(args, 1, 200_000), Benchmarks.intArg(args, 2, 200_000));
+                break;
+            default:
+                System.out.println("Сценарии:");
+                System.out.println("  dbsave [фигур]            - SQLite: построчно vs пачками, соединение на вызов vs SqliteDatabase");
+                System.out.println("  dbload [фигур]            - загрузка из БД: TEXT (split) vs BLOB (SqliteFigureRow), окно по R*Tree");
+                System.out.println("  dbstream [фигур]          - чтение из БД: список vs курсор vs страницы по ключу, пиковая куча");
+                System.out.println("  dbsync [фигур]            - сохранение в БД: вся сцена vs только изменённые фигуры");
+                System.out.println("  dbimage [ширина] [высота] - изображение сцены: PNG при каждом сохранении vs хэш и копии (SqliteImages)");
+                System.out.println("  dbbehind [фигур] [сдвигов] - запись каждого сдвига vs фоновая запись (SqliteWriteBehind)");
+        }
+    }
+
+    // --- SQLite: построчный executeUpdate vs addBatch/executeBatch, соединение на вызов vs общее ---
+    private static void dbSave(int figures) throws IOException, InvalidPolygonException, SQLException {
+        File legacyDb = File.createTempFile("figures-bench", ".db");
+        File pooledDb = File.createTempFile("figures-bench", ".db");
+        legacyDb.deleteOnExit();
+        pooledDb.deleteOnExit();
+        String legacyUrl = "jdbc:sqlite:" + legacyDb.getAbsolutePath();
+        List<ColoredPolygon> scene = Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6).figures();
+        // автокоммит на каждую строку слишком медленный для всей сцены: меряем на части
+        List<ColoredPolygon> head = scene.subList(0, Math.min(scene.size(), 2_000));
+
+        System.out.printf("%-48s %10s %14s%n", "способ", "строк", "строк/с");
+        try (Connection conn = DriverManager.getConnection(legacyUrl)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE figures (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                    + "coordinates TEXT NOT NULL, line_color TEXT NOT NULL, fill_color TEXT NOT NULL, opacity REAL NOT NULL)");
+            }
+            measureDbSave(conn, "executeUpdate, автокоммит (прежний /figures)", head, true, () -> legacyInsert(conn, head));
+            measureDbSave(conn, "executeUpdate, одна транзакция (прежний)", scene, false, () -> legacyInsert(conn, scene));
+        }
+
+        SqliteDatabase db = SqliteDatabase.get(pooledDb.getAbsolutePath());
+        for (int batch : new int[]{100, 1_000, 10_000}) {
+            try (SqliteDatabase.Session s = db.write()) {
+                s.prepare("DELETE FROM figures").executeUpdate();
+                s.commit();
+            }
+            long t0 = System.nanoTime();
+            try (SqliteDatabase.Session s = db.write()) {
+                SqliteFigureIO.insertFigures(s, scene, batch);
+                s.commit();
+            }
+            long t1 = System.nanoTime();
+            System.out.printf("%-48s %,10d %,14.0f%n", "executeBatch по " + batch + ", SqliteDatabase (WAL)",
+                scene.size(), scene.size() / ((t1 - t0) / 1e9));
+        }
+
+        // Короткие запросы: новое соединение и DDL на каждый вызов vs общее соединение и кэш запросов
+        int queries = 1_000;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            try (Connection conn = DriverManager.getConnection(legacyUrl)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS figures (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                        + "coordinates TEXT NOT NULL, line_color TEXT NOT NULL, fill_color TEXT NOT NULL, opacity REAL NOT NULL)");
+                }
+                try (PreparedStatement ps = conn.prepareStatement("SELECT name FROM figures WHERE id = ?")) {
+                    ps.setInt(1, 1 + i);
+                    ps.executeQuery().close();
+                }
+            }
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            try (SqliteDatabase.Session s = db.read()) {
+                PreparedStatement ps = s.prepare("SELECT name FROM figures WHERE id = ?");
+                ps.setInt(1, 1 + i);
+                ps.executeQuery().close();
+            }
+        }
+        long t2 = System.nanoTime();
+        System.out.printf("%,d запросов по id: соединение на вызов %.0f мкс/запрос, SqliteDatabase %.0f мкс/запрос%n",
+            queries, (t1 - t0) / 1e3 / queries, (t2 - t1) / 1e3 / queries);
+    }
+
+    // --- SQLite: координаты текстом "[[x,y],...]" и разбор split-ами vs BLOB и SqliteFigureRow.Reader ---
+    private static void dbLoad(int figures) throws IOException, InvalidPolygonException, SQLException {
+        File textDb = File.createTempFile("figures-bench", ".db");
+        File blobDb = File.createTempFile("figures-bench", ".db");
+        textDb.deleteOnExit();
+        blobDb.deleteOnExit();
+        // путь БД читается SqliteFigureIO один раз: сценарий должен выполняться первым в процессе
+        System.setProperty("figures.db.path", blobDb.getAbsolutePath());
+        List<ColoredPolygon> scene = Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6).figures();
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + textDb.getAbsolutePath())) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE figures (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                    + "coordinates TEXT NOT NULL, line_color TEXT NOT NULL, fill_color TEXT NOT NULL, opacity REAL NOT NULL)");
+            }
+            conn.setAutoCommit(false);
+            legacyInsert(conn, scene);
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            Benchmarks.fullGc();
+            long t0 = System.nanoTime();
+            FigureStore store = new FigureStore(figures, figures * 6);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT * FROM figures ORDER BY id")) {
+                while (rs.next()) {
+                    store.add(legacyJsonToCoordinates(rs.getString("coordinates")), rs.getString("name"),
+                        rs.getString("line_color"), rs.getString("fill_color"), rs.getDouble("opacity"));
+                }
+            }
+            long t1 = System.nanoTime();
+            System.out.printf("%-26s %,12d байт %10.0f мс%n", "TEXT + split", textDb.length(), (t1 - t0) / 1e6);
+        }
+
+        SqliteFigureIO.saveToDatabase(scene, new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        Benchmarks.fullGc();
+        long t0 = System.nanoTime();
+        FigureStore store = new FigureStore(figures, figures * 6);
+        SqliteFigureIO.loadFromDatabase(store);
+        long t1 = System.nanoTime();
+        System.out.printf("%-26s %,12d байт %10.0f мс%n", "BLOB + Reader", blobDb.length(), (t1 - t0) / 1e6);
+
+        // окно 800×600 через R*Tree; число фигур сверяется с полным перебором
+        Random random = new Random(7);
+        int windows = 50, found = 0;
+        long rectNanos = 0;
+        for (int w = 0; w < windows; w++) {
+            int x = random.nextInt(10_000), y = random.nextInt(10_000);
+            long r0 = System.nanoTime();
+            int count = SqliteFigureIO.loadFiguresInRect(x, y, x + 800, y + 600).size();
+            rectNanos += System.nanoTime() - r0;
+            int expected = 0;
+            for (ColoredPolygon fig : scene) {
+                if (fig.intersects(new java.awt.Rectangle(x, y, 801, 601))) expected++;
+            }
+            if (count != expected) {
+                throw new IllegalStateException("loadFiguresInRect: " + count + " вместо " + expected);
+            }
+            found += count;
+        }
+        System.out.printf("%-26s %,12d фиг. %10.1f мс%n", "окно 800×600 (R*Tree)", found / windows, rectNanos / 1e6 / windows);
+    }
+
+    // Прежний разбор координат из SqliteFigureIO (до схемы версии 2)
+    private static int[][] legacyJsonToCoordinates(String json) {
+        json = json.trim();
+        json = json.substring(1, json.length() - 1);
+        String[] points = json.split("\\],\\[");
+        int[][] coords = new int[points.length][2];
+        for (int i = 0; i < points.length; i++) {
+            String p = points[i].replace("[", "").replace("]", "");
+            String[] xy = p.split(",");
+            coords[i][0] = Integer.parseInt(xy[0].trim());
+            coords[i][1] = Integer.parseInt(xy[1].trim());
+        }
+        return coords;
+    }
+
+    // --- SQLite: весь список в памяти vs потоковое чтение курсором vs страницы по ключу ---
+    private static void dbStream(int figures) throws IOException, InvalidPolygonException, SQLException {
+        File db = File.createTempFile("figures-bench", ".db");
+        db.deleteOnExit();
+        // путь БД читается SqliteFigureIO один раз: сценарий должен выполняться первым в процессе
+        System.setProperty("figures.db.path", db.getAbsolutePath());
+        SqliteFigureIO.saveToDatabase(Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6).figures(),
+            new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+
+        System.out.printf("%-30s %10s %10s %16s%n", "чтение", "фигур", "мс", "пик кучи, МБ");
+        long[] count = {0};
+        measureDbRead("loadFromDatabase (список)", count, () -> count[0] = SqliteFigureIO.loadFromDatabase().size());
+        measureDbRead("forEachFigure (курсор)", count, () -> SqliteFigureIO.forEachFigure(fig -> count[0]++));
+        measureDbRead("loadPage по 10000", count, () -> {
+            SqliteFigureIO.Page page = SqliteFigureIO.loadPage(0, 10_000);
+            count[0] += page.figures.size();
+            while (!page.last) {
+                page = SqliteFigureIO.loadPage(page.lastId, 10_000);
+                count[0] += page.figures.size();
+            }
+        });
+    }
+
+    private interface DbRead {
+        void run() throws SQLException, InvalidPolygonException;
+    }
+
+    private static void measureDbRead(String label, long[] count, DbRead read) throws SQLException, InvalidPolygonException {
+        count[0] = 0;
+        Benchmarks.fullGc();
+        long base = Benchmarks.usedHeap();
+        Benchmarks.resetPeakHeap();
+        long t0 = System.nanoTime();
+        read.run();
+        long t1 = System.nanoTime();
+        System.out.printf("%-30s %,10d %10.0f %16.1f%n", label, count[0], (t1 - t0) / 1e6, (Benchmarks.peakHeap() - base) / 1048576.0);
+    }
+
+    // --- SQLite: полная перезапись сцены vs запись только изменённых фигур (SqliteFigureSync) ---
+    private static void dbSync(int figures) throws IOException, InvalidPolygonException, SQLException {
+        File db = File.createTempFile("figures-bench", ".db");
+        db.deleteOnExit();
+        // путь БД читается SqliteFigureIO один раз: сценарий должен выполняться первым в процессе
+        System.setProperty("figures.db.path", db.getAbsolutePath());
+        List<FigureItem> items = new ArrayList<>(figures);
+        for (ColoredPolygon fig : Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6).figures()) {
+            items.add(new FigureItem(fig));
+        }
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        SqliteFigureSync sync = new SqliteFigureSync();
+        sync.attach(items);
+        SqliteScenes.Scene scene = SqliteFigureIO.listScenes().get(0);
+
+        System.out.printf("%-36s %12s %12s%n", "сохранение", "строк", "мс");
+        long t0 = System.nanoTime();
+        int written = sync.saveAs(scene, items, image);
+        System.out.printf("%-36s %,12d %12.1f%n", "вся сцена (как прежде)", written, (System.nanoTime() - t0) / 1e6);
+
+        Random random = new Random(42);
+        for (int edits : new int[]{1, 100, 10_000}) {
+            for (int i = 0; i < edits; i++) {
+                FigureItem item = items.get(random.nextInt(items.size()));
+                if (i % 10 == 9) {
+                    item.setVisible(!item.isVisible());
+                } else {
+                    item.moveBy(1, 1);
+                }
+                sync.markChanged(item);
+            }
+            t0 = System.nanoTime();
+            written = sync.save(items, image);
+            System.out.printf("%-36s %,12d %12.1f%n", "изменено " + edits + " фигур", written, (System.nanoTime() - t0) / 1e6);
+        }
+    }
+
+    // --- SQLite: запись каждого сдвига сразу vs фоновая запись с объединением (SqliteWriteBehind) ---
+    private static void dbBehind(int figures, int moves) throws IOException, InvalidPolygonException, SQLException {
+        File db = File.createTempFile("figures-bench", ".db");
+        db.deleteOnExit();
+        // путь БД читается SqliteFigureIO один раз: сценарий должен выполняться первым в процессе
+        System.setProperty("figures.db.path", db.getAbsolutePath());
+        List<FigureItem> items = new ArrayList<>(figures);
+        for (ColoredPolygon fig : Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6).figures()) {
+            items.add(new FigureItem(fig));
+        }
+        SqliteFigureSync sync = new SqliteFigureSync();
+        sync.attach(items);
+        sync.saveAs(SqliteFigureIO.listScenes().get(0), items, new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB));
+        // анимация двигает ограниченный набор фигур, повторные сдвиги одной фигуры объединяются
+        int hot = Math.min(items.size(), 1000);
+        Random random = new Random(42);
+
+        System.out.printf("%-32s %12s %16s %12s%n", "запись", "сдвигов", "мкс на сдвиг", "всего, мс");
+        int direct = Math.min(moves, 2000);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < direct; i++) {
+            FigureItem item = items.get(random.nextInt(hot));
+            item.moveBy(1, 1);
+            sync.markChanged(item);
+            sync.flushChanges();
+        }
+        long t1 = System.nanoTime();
+        System.out.printf("%-32s %,12d %16.1f %12.0f%n", "каждый сдвиг сразу", direct, (t1 - t0) / 1e3 / direct, (t1 - t0) / 1e6);
+
+        SqliteWriteBehind writer = new SqliteWriteBehind(sync, 200, 1000);
+        writer.start();
+        t0 = System.nanoTime();
+        for (int i = 0; i < moves; i++) {
+            FigureItem item = items.get(random.nextInt(hot));
+            item.moveBy(i % 2 == 0 ? 1 : -1, 1);
+            sync.markChanged(item);
+            writer.changed();
+        }
+        t1 = System.nanoTime();
+        writer.close();
+        long t2 = System.nanoTime();
+        System.out.printf("%-32s %,12d %16.2f %12.0f%n", "фоновая запись", moves, (t1 - t0) / 1e3 / moves, (t1 - t0) / 1e6);
+        System.out.printf("%-32s %12s %16s %12.0f%n", "  flush() при выходе", "", "", (t2 - t1) / 1e6);
+
+        Map<Long, Integer> stored = new HashMap<>();
+        for (FigureItem item : SqliteFigureIO.loadItemsFromDatabase()) {
+            stored.put(item.getId(), item.getFigure().getY(0));
+        }
+        int mismatched = 0;
+        for (FigureItem item : items) {
+            Integer y = stored.get(item.getId());
+            if (y == null || y != item.getFigure().getY(0)) mismatched++;
+        }
+        System.out.println("расхождений с БД после flush(): " + mismatched);
+    }
+
+    // --- Изображение сцены: прежнее кодирование PNG при каждом сохранении vs проверка хэша ---
+    private static void dbImage(int width, int height) throws IOException, InvalidPolygonException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D g = image.createGraphics();
+        g.setColor(java.awt.Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setRenderingHint(java.awt.RenderingHints.KEY_ANTIALIASING, java.awt.RenderingHints.VALUE_ANTIALIAS_ON);
+        for (ColoredPolygon fig : Benchmarks.fillStore(new FigureStore(2000, 2000 * 6), 2000, 6).figures()) {
+            FigureRenderer.paint(g, fig);
+        }
+        g.dispose();
+
+        int rounds = 10;
+        System.out.printf("Изображение %d×%d%n", width, height);
+        System.out.printf("%-40s %12s %14s%n", "сохранение", "мс", "байт");
+        long bytes = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            java.io.ByteArrayOutputStream png = new java.io.ByteArrayOutputStream();
+            javax.imageio.ImageIO.write(image, "png", png);
+            bytes = png.size();
+        }
+        System.out.printf("%-40s %12.1f %,14d%n", "PNG оригинала (прежде, каждый раз)", (System.nanoTime() - t0) / 1e6 / rounds, bytes);
+
+        t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            SqliteImages.hash(image);
+        }
+        System.out.printf("%-40s %12.1f %14s%n", "хэш пикселей (картинка не менялась)", (System.nanoTime() - t0) / 1e6 / rounds, "-");
+
+        List<SqliteImages.Variant> variants = null;
+        t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            variants = SqliteImages.encode(image);
+        }
+        System.out.printf("%-40s %12.1f %14s%n", "хэш не найден: оригинал и копии", (System.nanoTime() - t0) / 1e6 / rounds, "");
+        for (SqliteImages.Variant v : variants) {
+            System.out.printf("  %-38s %12s %,14d%n", v.size == SqliteImages.ORIGINAL ? "оригинал" : v.width + "×" + v.height, "", v.png.length);
+        }
+    }
+
+    private interface DbWork {
+        void run() throws SQLException;
+    }
+
+    private static void measureDbSave(Connection conn, String label, List<ColoredPolygon> rows, boolean autoCommit, DbWork work)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM figures");
+        }
+        conn.setAutoCommit(autoCommit);
+        long t0 = System.nanoTime();
+        work.run();
+        if (!autoCommit) {
+            conn.commit();
+        }
+        long t1 = System.nanoTime();
+        conn.setAutoCommit(true);
+        System.out.printf("%-48s %,10d %,14.0f%n", label, rows.size(), rows.size() / ((t1 - t0) / 1e9));
+    }
+
+    // Прежняя вставка: executeUpdate на каждую фигуру
+    private static void legacyInsert(Connection conn, List<ColoredPolygon> figures) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO figures (name, coordinates, line_color, fill_color, opacity) VALUES (?, ?, ?, ?, ?)")) {
+            for (ColoredPolygon fig : figures) {
+                StringBuilder coords = new StringBuilder("[");
+                for (int i = 0; i < fig.getVertexCount(); i++) {
+                    if (i > 0) coords.append(",");
+                    coords.append("[").append(fig.getX(i)).append(",").append(fig.getY(i)).append("]");
+                }
+                coords.append("]");
+                pstmt.setString(1, fig.getName());
+                pstmt.setString(2, coords.toString());
+                pstmt.setString(3, FigureColors.toHex(fig.getLineRgb()));
+                pstmt.setString(4, FigureColors.toHex(fig.getFillRgb()));
+                pstmt.setDouble(5, fig.getOpacity());
+                pstmt.executeUpdate();
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// База — figures.db в рабочем каталоге тестов (target)
+class SqliteFigureIOTest {
+
+    static List<ColoredPolygon> figures(int count) throws InvalidPolygonException {
+        FigureStore store = new FigureStore();
+        List<ColoredPolygon> figures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            figures.add(store.add(new int[][]{{i, 0}, {i + 10, 0}, {i + 10, 10 + i}, {i, 5}},
+                    "фигура " + i, "#" + String.format("%06X", i * 4099), "#ABCDEF", (i % 11) / 10.0));
+        }
+        return figures;
+    }
+
+    static void assertSameFigures(List<ColoredPolygon> expected, List<ColoredPolygon> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ColoredPolygon e = expected.get(i), a = actual.get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getLineRgb(), a.getLineRgb());
+            assertEquals(e.getFillRgb(), a.getFillRgb());
+            assertEquals(e.getOpacity(), a.getOpacity(), 1e-9);
+            assertArrayEquals(e.getCoordinates(), a.getCoordinates());
+        }
+    }
+
+    private static BufferedImage image() {
+        BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(1, 2, 0x123456);
+        return image;
+    }
+
+    // Число фигур не кратно размеру пачки: последняя неполная пачка тоже должна попасть в базу
+    @Test
+    void batchedSaveKeepsAllRowsInOrder() throws Exception {
+        List<ColoredPolygon> figures = figures(23);
+        SqliteFigureIO.saveToDatabase(figures, image(), 5);
+        assertSameFigures(figures, SqliteFigureIO.loadFromDatabase());
+
+        BufferedImage loaded = SqliteFigureIO.loadImageFromDatabase();
+        assertNotNull(loaded);
+        assertEquals(0x123456, loaded.getRGB(1, 2) & 0xFFFFFF);
+    }
+
+    @Test
+    void saveReplacesPreviousScene() throws Exception {
+        SqliteFigureIO.saveToDatabase(figures(40), image(), 1000);
+        List<ColoredPolygon> smaller = figures(3);
+        SqliteFigureIO.saveToDatabase(smaller, image(), 1);
+        assertSameFigures(smaller, SqliteFigureIO.loadFromDatabase());
+    }
+
+    // Отбор по R*Tree совпадает с перебором границ, порядок — порядок отрисовки
+    @Test
+    void loadsFiguresInRect() throws Exception {
+        List<ColoredPolygon> figures = figures(300);
+        SqliteFigureIO.saveToDatabase(figures, image(), 1000);
+
+        int[][] rects = {{50, 3, 120, 8}, {120, 8, 50, 3}, {-10, -10, -1, -1}, {299, 0, 299, 0}};
+        for (int[] r : rects) {
+            List<ColoredPolygon> expected = new ArrayList<>();
+            int x0 = Math.min(r[0], r[2]), x1 = Math.max(r[0], r[2]), y0 = Math.min(r[1], r[3]), y1 = Math.max(r[1], r[3]);
+            for (ColoredPolygon fig : figures) {
+                java.awt.Rectangle b = fig.getBounds();
+                if (b.x <= x1 && b.x + b.width >= x0 && b.y <= y1 && b.y + b.height >= y0) {
+                    expected.add(fig);
+                }
+            }
+            assertSameFigures(expected, SqliteFigureIO.loadFiguresInRect(r[0], r[1], r[2], r[3]));
+        }
+    }
+
+    @Test
+    void streamsFiguresWithCursor() throws Exception {
+        List<ColoredPolygon> figures = figures(57);
+        SqliteFigureIO.saveToDatabase(figures, image(), 1000);
+
+        List<ColoredPolygon> streamed = new ArrayList<>();
+        SqliteFigureIO.forEachFigure(streamed::add);
+        assertSameFigures(figures, streamed);
+    }
+
+    @Test
+    void streamsItemChunks() throws Exception {
+        List<ColoredPolygon> figures = figures(25);
+        SqliteFigureIO.saveToDatabase(figures, image(), 1000);
+
+        List<List<FigureItem>> chunks = new ArrayList<>();
+        assertEquals(25, SqliteFigureIO.forEachItemChunk(10, chunks::add));
+        assertEquals(List.of(10, 10, 5), List.of(chunks.get(0).size(), chunks.get(1).size(), chunks.get(2).size()));
+
+        List<ColoredPolygon> loaded = new ArrayList<>();
+        long previousZ = Long.MIN_VALUE;
+        for (List<FigureItem> chunk : chunks) {
+            for (FigureItem item : chunk) {
+                assertTrue(item.getId() > 0);
+                assertTrue(item.getZ() >= previousZ);
+                previousZ = item.getZ();
+                loaded.add(item.getFigure());
+            }
+        }
+        assertSameFigures(figures, loaded);
+
+        // false из обработчика прекращает чтение после первой порции
+        assertEquals(10, SqliteFigureIO.forEachItemChunk(10, chunk -> false));
+    }
+
+    @Test
+    void pagesByKey() throws Exception {
+        List<ColoredPolygon> figures = figures(23);
+        SqliteFigureIO.saveToDatabase(figures, image(), 1000);
+
+        List<ColoredPolygon> paged = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        SqliteFigureIO.Page page = null;
+        long after = 0;
+        do {
+            page = SqliteFigureIO.loadPage(after, 10);
+            assertTrue(page.lastId >= after);
+            sizes.add(page.figures.size());
+            paged.addAll(page.figures);
+            after = page.lastId;
+        } while (!page.last);
+        assertEquals(List.of(10, 10, 3), sizes);
+        assertSameFigures(figures, paged);
+
+        SqliteFigureIO.Page empty = SqliteFigureIO.loadPage(after, 10);
+        assertTrue(empty.last);
+        assertTrue(empty.figures.isEmpty());
+        assertEquals(after, empty.lastId);
+
+        // ровно на границе страницы: следующей нет
+        assertTrue(SqliteFigureIO.loadPage(0, 23).last);
+        assertFalse(SqliteFigureIO.loadPage(0, 22).last);
+        assertThrows(IllegalArgumentException.class, () -> SqliteFigureIO.loadPage(0, 0));
+    }
+
+    // Сцены в одной БД не видят фигур друг друга; число фигур сцены обновляется при сохранении
+    @Test
+    void scenesKeepTheirOwnFigures() throws Exception {
+        long first = SqliteFigureIO.createScene("Сцена " + System.nanoTime());
+        long second = SqliteFigureIO.createScene("Сцена " + System.nanoTime());
+        List<ColoredPolygon> a = figures(12), b = figures(5);
+        SqliteFigureIO.saveToDatabase(first, a, image(), 1000);
+        SqliteFigureIO.saveToDatabase(second, b, image(), 1000);
+        SqliteFigureIO.saveToDatabase(figures(3), image(), 1000);
+
+        assertSameFigures(a, SqliteFigureIO.loadFromDatabase(first, new FigureStore()));
+        assertSameFigures(b, SqliteFigureIO.loadFromDatabase(second, new FigureStore()));
+        assertSameFigures(b.subList(0, 2), SqliteFigureIO.loadFiguresInRect(second, 0, 0, 1, 1, new FigureStore()));
+        assertSameFigures(b, SqliteFigureIO.loadPage(second, 0, 100, new FigureStore()).figures);
+
+        long counted = 0;
+        for (SqliteScenes.Scene scene : SqliteFigureIO.listScenes()) {
+            if (scene.id == first) {
+                assertEquals(12, scene.figureCount);
+                assertTrue(scene.updatedAt > 0);
+                counted++;
+            } else if (scene.id == second) {
+                assertEquals(5, scene.figureCount);
+                counted++;
+            }
+        }
+        assertEquals(2, counted);
+
+        String name = "Именованная " + System.nanoTime();
+        SqliteScenes.Scene created = SqliteFigureIO.findOrCreateScene(name);
+        assertEquals(created.id, SqliteFigureIO.findOrCreateScene(" " + name + " ").id);
+        assertThrows(java.sql.SQLException.class,
+            () -> SqliteFigureIO.saveToDatabase(created.id + 1000, b, image(), 1000));
+        assertThrows(IllegalArgumentException.class, () -> SqliteFigureIO.createScene("  "));
+    }
+}
@@ -0,0 +1,121 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// Частичное сохранение сцены редактора в figures.db рабочего каталога тестов
+class SqliteFigureSyncTest {
+
+    private static final BufferedImage IMAGE = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+
+    private static List<FigureItem> items(int count) throws InvalidPolygonException {
+        List<FigureItem> items = new ArrayList<>();
+        for (ColoredPolygon fig : SqliteFigureIOTest.figures(count)) {
+            items.add(new FigureItem(fig));
+        }
+        return items;
+    }
+
+    private static List<String> names(List<FigureItem> items) {
+        List<String> names = new ArrayList<>();
+        for (FigureItem item : items) {
+            names.add(item.getFigure().getName());
+        }
+        return names;
+    }
+
+    private static SqliteScenes.Scene defaultScene() throws Exception {
+        for (SqliteScenes.Scene scene : SqliteFigureIO.listScenes()) {
+            if (scene.id == SqliteScenes.DEFAULT) {
+                return scene;
+            }
+        }
+        throw new AssertionError("нет сцены по умолчанию");
+    }
+
+    @Test
+    void firstSaveIsFullThenOnlyChanges() throws Exception {
+        List<FigureItem> items = items(5);
+        SqliteFigureSync sync = new SqliteFigureSync();
+        sync.attach(items);
+        assertEquals(-1, sync.pendingCount());
+        assertFalse(sync.isMirrored());
+        assertThrows(IllegalStateException.class, () -> sync.save(items, IMAGE));
+
+        assertEquals(5, sync.saveAs(defaultScene(), items, IMAGE));
+        assertEquals(0, sync.pendingCount());
+
+        items.get(1).moveBy(100, 0);
+        sync.markChanged(items.get(1));
+        items.get(3).setVisible(false);
+        sync.markChanged(items.get(3));
+        assertEquals(2, sync.save(items, IMAGE));
+
+        List<FigureItem> loaded = SqliteFigureIO.loadItemsFromDatabase();
+        assertEquals(List.of("фигура 0", "фигура 1", "фигура 2", "фигура 4"), names(loaded));
+        assertArrayEquals(items.get(1).getFigure().getCoordinates(), loaded.get(1).getFigure().getCoordinates());
+        assertEquals(items.get(4).getId(), loaded.get(3).getId());
+
+        assertEquals(0, sync.save(items, IMAGE));
+    }
+
+    // Загруженная из БД сцена сразу сохраняется частично, подъём на передний план меняет z
+    @Test
+    void loadedSceneKeepsIdsAndDrawOrder() throws Exception {
+        List<FigureItem> items = items(4);
+        SqliteFigureSync sync = new SqliteFigureSync();
+        sync.attach(items);
+        sync.saveAs(defaultScene(), items, IMAGE);
+
+        List<FigureItem> loaded = SqliteFigureIO.loadItemsFromDatabase();
+        sync.attach(loaded, defaultScene());
+        sync.broughtToFront(loaded.get(0));
+        assertEquals(1, sync.pendingCount());
+        assertEquals(1, sync.save(loaded, IMAGE));
+
+        assertEquals(List.of("фигура 1", "фигура 2", "фигура 3", "фигура 0"), names(SqliteFigureIO.loadItemsFromDatabase()));
+    }
+
+    // Новая сцена (не из БД) снова записывается целиком и вытесняет прежние строки
+    @Test
+    void newSceneReplacesRows() throws Exception {
+        SqliteFigureSync sync = new SqliteFigureSync();
+        List<FigureItem> first = items(6);
+        sync.attach(first);
+        sync.saveAs(defaultScene(), first, IMAGE);
+
+        List<FigureItem> second = items(2);
+        sync.attach(second);
+        sync.markChanged(second.get(0)); // до первого сохранения изменения не копятся
+        assertEquals(-1, sync.pendingCount());
+        assertNull(sync.sceneName());
+        assertEquals(2, sync.saveAs(defaultScene(), second, IMAGE));
+        assertEquals(List.of("фигура 0", "фигура 1"), names(SqliteFigureIO.loadItemsFromDatabase()));
+    }
+
+    // «Сохранить как» в другую сцену переключает связь: дальнейшие изменения пишутся туда
+    @Test
+    void saveAsSwitchesScene() throws Exception {
+        SqliteScenes.Scene other = SqliteFigureIO.findOrCreateScene("Копия " + System.nanoTime());
+        List<FigureItem> items = items(3);
+        SqliteFigureSync sync = new SqliteFigureSync();
+        sync.attach(SqliteFigureIO.loadItemsFromDatabase(), defaultScene());
+        List<String> before = names(SqliteFigureIO.loadItemsFromDatabase());
+
+        assertEquals(3, sync.saveAs(other, items, IMAGE));
+        assertEquals(other.name, sync.sceneName());
+        items.get(2).setVisible(false);
+        sync.markChanged(items.get(2));
+        assertEquals(1, sync.save(items, IMAGE));
+
+        assertEquals(List.of("фигура 0", "фигура 1"), names(SqliteFigureIO.loadItemsFromDatabase(other.id)));
+        assertEquals(before, names(SqliteFigureIO.loadItemsFromDatabase()));
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// Фоновая запись в отдельную сцену figures.db рабочего каталога тестов
+class SqliteWriteBehindTest {
+
+    private static final BufferedImage IMAGE = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+
+    private static List<FigureItem> savedScene(SqliteFigureSync sync, int count) throws Exception {
+        List<FigureItem> items = new ArrayList<>();
+        for (ColoredPolygon fig : SqliteFigureIOTest.figures(count)) {
+            items.add(new FigureItem(fig));
+        }
+        sync.attach(items);
+        sync.saveAs(SqliteFigureIO.findOrCreateScene("Фон " + System.nanoTime()), items, IMAGE);
+        return items;
+    }
+
+    private static SqliteScenes.Scene scene(long id) throws Exception {
+        for (SqliteScenes.Scene scene : SqliteFigureIO.listScenes()) {
+            if (scene.id == id) {
+                return scene;
+            }
+        }
+        throw new AssertionError("нет сцены " + id);
+    }
+
+    // Сколько бы раз фигура ни сдвигалась, в транзакцию попадает одна её строка с последним положением
+    @Test
+    void repeatedMovesCoalesceIntoOneRow() throws Exception {
+        SqliteFigureSync sync = new SqliteFigureSync();
+        List<FigureItem> items = savedScene(sync, 10);
+        SqliteWriteBehind behind = new SqliteWriteBehind(sync, 60_000, 1000);
+        for (int i = 0; i < 100; i++) {
+            items.get(4).moveBy(1, 2);
+            sync.markChanged(items.get(4));
+            behind.changed();
+        }
+        assertEquals(1, sync.pendingCount());
+        assertEquals(1, behind.flush());
+        assertEquals(0, sync.pendingCount());
+        assertEquals(0, behind.flush());
+
+        long sceneId = SqliteFigureIO.findOrCreateScene(sync.sceneName()).id;
+        List<FigureItem> loaded = SqliteFigureIO.loadItemsFromDatabase(sceneId);
+        assertArrayEquals(items.get(4).getFigure().getCoordinates(), loaded.get(4).getFigure().getCoordinates());
+    }
+
+    // Порог будит поток db-writer, не дожидаясь интервала; число фигур сцены ведут триггеры
+    @Test
+    void thresholdWakesWriter() throws Exception {
+        SqliteFigureSync sync = new SqliteFigureSync();
+        List<FigureItem> items = savedScene(sync, 6);
+        long sceneId = SqliteFigureIO.findOrCreateScene(sync.sceneName()).id;
+        assertEquals(6, scene(sceneId).figureCount);
+
+        SqliteWriteBehind behind = new SqliteWriteBehind(sync, 60_000, 3);
+        behind.start();
+        try {
+            items.get(0).moveBy(50, 0);
+            sync.markChanged(items.get(0));
+            behind.changed();
+            items.get(1).setVisible(false);
+            sync.markChanged(items.get(1));
+            behind.changed();
+            assertEquals(2, sync.pendingCount()); // порог не достигнут, поток ждёт интервала
+            items.get(2).setVisible(false);
+            sync.markChanged(items.get(2));
+            behind.changed();
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (sync.pendingCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, sync.pendingCount());
+        } finally {
+            behind.close();
+        }
+
+        List<FigureItem> loaded = SqliteFigureIO.loadItemsFromDatabase(sceneId);
+        assertEquals(4, loaded.size());
+        assertArrayEquals(items.get(0).getFigure().getCoordinates(), loaded.get(0).getFigure().getCoordinates());
+        assertEquals(4, scene(sceneId).figureCount);
+    }
+
+    @Test
+    void rejectsNonPositiveSettings() {
+        SqliteFigureSync sync = new SqliteFigureSync();
+        assertThrows(IllegalArgumentException.class, () -> new SqliteWriteBehind(sync, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new SqliteWriteBehind(sync, 10, 0));
+    }
+}
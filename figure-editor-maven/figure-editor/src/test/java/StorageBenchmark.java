@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Замеры хранилищ фигур: объём кучи и вне кучи, паузы GC при живой сцене.
+// Лежит в тестовых исходниках и в jar не попадает. Запуск после mvn package (из каталога figure-editor):
+// java -cp target/test-classes:target/figure-editor-1.0-SNAPSHOT.jar StorageBenchmark <сценарий> [параметры]
+public class StorageBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "help";
+        switch (scenario) {
+            case "storage":
+                storage(Benchmarks.intArg(args, 1, 1_000_000), Benchmarks.intArg(args, 2, 8));
+                break;
+            default:
+                System.out.println("Сценарии:");
+                System.out.println("  storage [фигур] [вершин]  - int[][] на фигуру vs FigureStore в куче vs вне кучи");
+        }
+    }
+
+    // --- Хранилища: объём кучи и паузы GC при живой сцене ---
+    private static void storage(int figures, int vertices) throws InvalidPolygonException {
+        System.out.printf("Сцена: %,d фигур по %d вершин%n", figures, vertices);
+        System.out.printf("%-22s %14s %14s %12s %12s%n", "хранилище", "куча, МБ", "вне кучи, МБ", "full GC, мс", "young GC, мс");
+
+        measureStorage("int[][] на фигуру", () -> {
+            List<Object> scene = new ArrayList<>(figures);
+            Random rnd = new Random(1);
+            for (int i = 0; i < figures; i++) {
+                int[][] coords = Benchmarks.randomFigure(rnd, vertices);
+                // прежняя раскладка: копия координат и массив сторон
+                double[] sides = new double[vertices];
+                scene.add(new Object[]{coords, sides});
+            }
+            return scene;
+        });
+        measureStorage("FigureStore (куча)", () -> Benchmarks.fillStore(new FigureStore(figures, figures * vertices, false), figures, vertices));
+        measureStorage("FigureStore (вне кучи)", () -> Benchmarks.fillStore(new FigureStore(figures, figures * vertices, true), figures, vertices));
+    }
+
+    private interface SceneBuilder {
+        Object build() throws InvalidPolygonException;
+    }
+
+    private static void measureStorage(String label, SceneBuilder builder) throws InvalidPolygonException {
+        Benchmarks.fullGc();
+        long heapBefore = Benchmarks.usedHeap();
+        long directBefore = Benchmarks.usedDirect();
+
+        Object scene = builder.build();
+        Benchmarks.fullGc();
+        long heap = Benchmarks.usedHeap() - heapBefore;
+        long direct = Benchmarks.usedDirect() - directBefore;
+
+        // Полная сборка при живой сцене: время растёт с объёмом объектов в куче
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        double fullGcMs = (System.nanoTime() - start) / 5 / 1e6;
+
+        // Молодые сборки под нагрузкой мусором
+        long youngBefore = Benchmarks.gcTime();
+        Object[] ring = new Object[4096];
+        for (int i = 0; i < 50_000_000; i++) {
+            ring[i & (ring.length - 1)] = new int[16];
+        }
+        long youngMs = Benchmarks.gcTime() - youngBefore;
+
+        System.out.printf("%-22s %14.1f %14.1f %12.1f %12d%n",
+            label, heap / 1048576.0, direct / 1048576.0, fullGcMs, youngMs);
+        if (scene.hashCode() == ring.hashCode()) {
+            System.out.println(); // удерживает сцену живой до конца замера
+        }
+    }
+}
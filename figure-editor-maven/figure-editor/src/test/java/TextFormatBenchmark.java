@@ -0,0 +1,119 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Замеры загрузки текстового формата фигур.
+// Лежит в тестовых исходниках и в jar не попадает. Запуск после mvn package (из каталога figure-editor):
+// java -cp target/test-classes:target/figure-editor-1.0-SNAPSHOT.jar TextFormatBenchmark <сценарий> [параметры]
+public class TextFormatBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "help";
+        switch (scenario) {
+            case "textparse":
+                textParse(Benchmarks.intArg(args, 1, 1_000_000));
+                break;
+            case "textscan":
+                textScan(Benchmarks.intArg(args, 1, 2_000_000));
+                break;
+            default:
+                System.out.println("Сценарии:");
+                System.out.println("  textparse [фигур]         - последовательная vs параллельная загрузка текстового файла");
+                System.out.println("  textscan [фигур]          - прежний разбор (regex + HashMap) vs FigureTextScanner");
+        }
+    }
+
+    // --- Текстовый формат: последовательный разбор vs параллельный с отображением в память ---
+    private static void textParse(int figures) throws IOException, InvalidPolygonException {
+        File file = File.createTempFile("figures-bench", ".txt");
+        file.deleteOnExit();
+        Benchmarks.writeSyntheticText(file, figures, 6);
+        System.out.printf("Файл: %,d фигур, %.1f МБ, ядер: %d%n",
+            figures, file.length() / 1048576.0, Runtime.getRuntime().availableProcessors());
+
+        String path = file.getAbsolutePath();
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            int sequential = FigureFileParser.loadFiguresFromFile(path).size();
+            long t1 = System.nanoTime();
+            int parallel = FigureFileParser.loadFiguresParallel(path).size();
+            long t2 = System.nanoTime();
+            if (sequential != parallel) {
+                throw new IllegalStateException("Разное число фигур: " + sequential + " vs " + parallel);
+            }
+            System.out.printf("проход %d: последовательно %7.0f мс, параллельно %7.0f мс (x%.1f)%n",
+                round + 1, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (double) (t1 - t0) / (t2 - t1));
+        }
+    }
+
+    // --- Текстовый формат: прежний построчный разбор vs однопроходный сканер ---
+    private static void textScan(int figures) throws IOException, InvalidPolygonException {
+        File file = File.createTempFile("figures-bench", ".txt");
+        file.deleteOnExit();
+        Benchmarks.writeSyntheticText(file, figures, 6);
+        System.out.printf("Файл: %,d фигур, %.1f МБ%n", figures, file.length() / 1048576.0);
+
+        String path = file.getAbsolutePath();
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            int[] legacy = {0};
+            legacyParse(path, fig -> legacy[0]++);
+            long t1 = System.nanoTime();
+            int[] scanned = {0};
+            FigureFileParser.forEachFigure(path, fig -> scanned[0]++);
+            long t2 = System.nanoTime();
+            if (legacy[0] != scanned[0]) {
+                throw new IllegalStateException("Разное число фигур: " + legacy[0] + " vs " + scanned[0]);
+            }
+            System.out.printf("проход %d: regex+HashMap %7.0f мс (%,.0f фигур/с), сканер %7.0f мс (%,.0f фигур/с), x%.1f%n",
+                round + 1, (t1 - t0) / 1e6, figures / ((t1 - t0) / 1e9),
+                (t2 - t1) / 1e6, figures / ((t2 - t1) / 1e9), (double) (t1 - t0) / (t2 - t1));
+        }
+    }
+
+    // Прежняя реализация FigureFileParser: строки, HashMap свойств и Pattern на каждый блок
+    private static void legacyParse(String filename, FigureHandler handler) throws IOException, InvalidPolygonException {
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            List<String> block = new ArrayList<>();
+            boolean inBlock = false;
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.equals("--- FIGURE ---")) {
+                    if (inBlock && !block.isEmpty()) legacyBlock(block, handler);
+                    block.clear();
+                    inBlock = true;
+                } else if (inBlock && !line.isEmpty()) {
+                    block.add(line);
+                }
+            }
+            if (inBlock && !block.isEmpty()) legacyBlock(block, handler);
+        }
+    }
+
+    private static void legacyBlock(List<String> block, FigureHandler handler) throws InvalidPolygonException {
+        Map<String, String> props = new HashMap<>();
+        for (String line : block) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                props.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        if (!"ColoredPolygon".equals(props.get("class"))) return;
+        List<int[]> coordList = new ArrayList<>();
+        Matcher m = Pattern.compile("\\((\\d+),\\s*(\\d+)\\)").matcher(props.get("coordinates"));
+        while (m.find()) {
+            coordList.add(new int[]{Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))});
+        }
+        String opacity = props.get("opacity");
+        handler.accept(new ColoredPolygon(coordList.toArray(new int[0][]), props.getOrDefault("name", "Безымянный"),
+            props.get("lineColor"), props.get("fillColor"), opacity == null ? 1.0 : Double.parseDouble(opacity)));
+    }
+}
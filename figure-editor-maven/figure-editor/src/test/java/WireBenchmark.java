@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Замеры протокола /figures: сериализация Java vs поток FigureWire.
+// Лежит в тестовых исходниках и в jar не попадает. Запуск после mvn package (из каталога figure-editor):
+// java -cp target/test-classes:target/figure-editor-1.0-SNAPSHOT.jar WireBenchmark <сценарий> [параметры]
+public class WireBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "help";
+        switch (scenario) {
+            case "wire":
+                wire(Benchmarks.intArg(args, 1, 200_000));
+                break;
+            default:
+                System.out.println("Сценарии:");
+                System.out.println("  wire [фигур]              - обмен с сервером: сериализация Java vs поток FigureWire");
+        }
+    }
+
+    // --- Протокол /figures: ObjectOutputStream со списком vs поток FigureWire ---
+    private static void wire(int figures) throws Exception {
+        List<ColoredPolygon> scene = Benchmarks.fillStore(new FigureStore(figures, figures * 6), figures, 6).figures();
+        System.out.printf("%-22s %14s %12s %12s %16s%n", "протокол", "байт", "запись, мс", "чтение, мс", "пик кучи чт., МБ");
+
+        java.io.ByteArrayOutputStream legacy = new java.io.ByteArrayOutputStream();
+        long t0 = System.nanoTime();
+        try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(legacy)) {
+            oos.writeObject(new ArrayList<>(scene));
+        }
+        long t1 = System.nanoTime();
+        Benchmarks.fullGc();
+        long base = Benchmarks.usedHeap();
+        Benchmarks.resetPeakHeap();
+        long t2 = System.nanoTime();
+        try (java.io.ObjectInputStream ois = new java.io.ObjectInputStream(new java.io.ByteArrayInputStream(legacy.toByteArray()))) {
+            ois.readObject();
+        }
+        long t3 = System.nanoTime();
+        System.out.printf("%-22s %,14d %12.0f %12.0f %16.1f%n", "сериализация Java", legacy.size(),
+            (t1 - t0) / 1e6, (t3 - t2) / 1e6, (Benchmarks.peakHeap() - base) / 1048576.0);
+
+        java.io.ByteArrayOutputStream compact = new java.io.ByteArrayOutputStream();
+        t0 = System.nanoTime();
+        FigureWire.Writer writer = new FigureWire.Writer(compact);
+        for (ColoredPolygon fig : scene) {
+            writer.write(fig);
+        }
+        writer.finish();
+        t1 = System.nanoTime();
+        Benchmarks.fullGc();
+        base = Benchmarks.usedHeap();
+        Benchmarks.resetPeakHeap();
+        t2 = System.nanoTime();
+        FigureWire.Reader reader = new FigureWire.Reader(new java.io.ByteArrayInputStream(compact.toByteArray()));
+        FigureStore store = new FigureStore(figures, figures * 6);
+        int read = 0;
+        while (reader.next(store) != null) {
+            read++;
+        }
+        t3 = System.nanoTime();
+        System.out.printf("%-22s %,14d %12.0f %12.0f %16.1f%n", "FigureWire", compact.size(),
+            (t1 - t0) / 1e6, (t3 - t2) / 1e6, (Benchmarks.peakHeap() - base) / 1048576.0);
+        if (read != figures) {
+            throw new IllegalStateException("Прочитано " + read + " из " + figures);
+        }
+    }
+}
@@ -6,51 +6,175 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+// Фигуры сцены: ?scene=N (по умолчанию — основная сцена).
+// GET ?scenes — список сцен, ?cache — счётчики кэша ответов (ResponseCache);
+// POST ?name=… — сохранить в сцену с этим именем (создаётся при отсутствии); фигуры с id из GET
+// обновляются на месте, без id — добавляются, отсутствующие в теле — удаляются. Ответ: OK и id фигур
+// по строке в порядке тела.
+// Тело — поток FigureWire (Content-Type/Accept: application/x-figures) или, для прежних клиентов,
+// сериализованный список ColoredPolygon (без id: фигуры сцены заменяются новыми). GET отвечает 304 на If-None-Match/If-Modified-Since,
+// пока сцена не менялась (см. SceneVersions).
 public class FigureServlet extends HttpServlet {
 
-    private String getDbPath(ServletContext context) {
-        String path = context.getInitParameter("db.path");
-        return path != null ? path : "figures.db";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 100_000;
+    // Шаг z при перенумерации сцены: промежутки оставляют место для следующих вставок
+    private static final long Z_STEP = 1024;
+    // Предел кэша ответов (context-param)
+    private static final String CACHE_MAX_BYTES = "cache.maxBytes";
+
+    // Размер пачки для executeBatch (context-param db.batchSize)
+    private int getBatchSize(ServletContext context) {
+        String value = context.getInitParameter("db.batchSize");
+        return value != null ? Math.max(1, Integer.parseInt(value.trim())) : DEFAULT_BATCH_SIZE;
     }
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        long sceneId;
+        try {
+            sceneId = WebDatabase.sceneId(req);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        String sceneName = req.getParameter("name");
+        long version;
         resp.setContentType("text/plain");
-        String dbPath = getDbPath(getServletContext());
 
         try {
-            // Десериализация фигур из тела запроса
-            List<ColoredPolygon> figures = (List<ColoredPolygon>) 
-                new ObjectInputStream(req.getInputStream()).readObject();
-
-            // Сохранение в БД (как в SqliteFigureIO, но упрощённо)
-            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath)) {
-                // Создание таблиц
-                try (Statement stmt = conn.createStatement()) {
-                    stmt.execute(
-                        "CREATE TABLE IF NOT EXISTS figures (" +
-                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                        "name TEXT, coordinates TEXT, line_color TEXT, fill_color TEXT, opacity REAL);"
-                    );
-                    stmt.execute("DELETE FROM figures");
-                }
-
-                String sql = "INSERT INTO figures (name, coordinates, line_color, fill_color, opacity) VALUES (?,?,?,?,?)";
-                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    for (ColoredPolygon fig : figures) {
-                        pstmt.setString(1, fig.getName());
-                        pstmt.setString(2, coordsToJson(fig.getCoordinates()));
-                        pstmt.setString(3, colorToHex(fig.getLineColor()));
-                        pstmt.setString(4, colorToHex(fig.getFillColor()));
-                        pstmt.setDouble(5, fig.getOpacity());
-                        pstmt.executeUpdate();
+            // Тело читается целиком до начала записи: медленный клиент не держит блокировку записи БД
+            Upload upload = new Upload();
+            if (FigureWire.accepts(req.getContentType())) {
+                FigureWire.Reader reader = new FigureWire.Reader(req.getInputStream());
+                for (ColoredPolygon fig; (fig = reader.next(upload.store)) != null; ) {
+                    upload.add(reader.id(), fig);
+                }
+            } else {
+                for (ColoredPolygon fig : FigureWire.readLegacy(req.getInputStream())) {
+                    upload.add(0, fig);
+                }
+            }
+
+            // Сохранение в БД одной транзакцией: присланная сцена сравнивается с хранимой по id фигур
+            // и хэшу содержимого (вершины под блокировкой не читаются), записываются только изменённые,
+            // новые и удалённые строки
+            int batchSize = getBatchSize(getServletContext());
+            // где сцена изменилась: плитки вне этих областей остаются в кэше
+            TileCache.Area changed = new TileCache.Area();
+            try (SqliteDatabase.Session s = WebDatabase.get(getServletContext()).write()) {
+                if (sceneName != null && !sceneName.trim().isEmpty()) {
+                    SqliteScenes.Scene scene = SqliteScenes.findByName(s, sceneName.trim());
+                    sceneId = scene != null ? scene.id : SqliteScenes.create(s, sceneName);
+                } else {
+                    SqliteScenes.require(s, sceneId);
+                }
+                Map<Long, StoredRow> stored = new HashMap<>();
+                PreparedStatement current = s.prepare(
+                    "SELECT id, content_hash, z, min_x, min_y, max_x, max_y FROM figures WHERE scene_id = ?");
+                current.setLong(1, sceneId);
+                try (ResultSet rs = current.executeQuery()) {
+                    while (rs.next()) {
+                        long hash = rs.getLong(2);
+                        stored.put(rs.getLong(1), new StoredRow(rs.wasNull() ? null : hash,
+                            rs.getLong(3), new int[]{rs.getInt(4), rs.getInt(5), rs.getInt(6), rs.getInt(7)}));
+                    }
+                }
+                // id не из этой сцены (удалённая фигура, чужая сцена, повтор в теле) — фигура новая и получит новый id
+                int n = upload.figures.size();
+                StoredRow[] matched = new StoredRow[n];
+                for (int i = 0; i < n; i++) {
+                    if (upload.ids[i] != 0) {
+                        matched[i] = stored.remove(upload.ids[i]);
+                    }
+                    if (matched[i] == null) {
+                        upload.ids[i] = 0;
                     }
                 }
+                long[] z = assignZ(matched);
+
+                Batch update = new Batch(s.prepare(
+                    "UPDATE figures SET (" + SqliteFigureRow.COLUMNS + ", z, content_hash) = (" + SqliteFigureRow.PLACEHOLDERS + ", ?, ?) WHERE id = ?"),
+                    batchSize);
+                Batch move = new Batch(s.prepare("UPDATE figures SET z = ? WHERE id = ?"), batchSize);
+                Batch insert = new Batch(s.prepare(
+                    "INSERT INTO figures (" + SqliteFigureRow.COLUMNS + ", z, content_hash, scene_id, id) VALUES (" + SqliteFigureRow.PLACEHOLDERS + ", ?, ?, ?, ?)"),
+                    batchSize);
+                Batch delete = new Batch(s.prepare("DELETE FROM figures WHERE id = ?"), batchSize);
+                int last = SqliteFigureRow.COLUMN_COUNT + 1;
+                long lastId = -1;
+                for (int i = 0; i < n; i++) {
+                    ColoredPolygon fig = upload.figures.get(i);
+                    StoredRow row = matched[i];
+                    if (row != null) {
+                        boolean same = row.hash != null && row.hash == upload.hashes[i];
+                        if (same && row.z == z[i]) {
+                            continue;
+                        }
+                        if (same) {
+                            // изменился только порядок отрисовки
+                            move.statement.setLong(1, z[i]);
+                            move.statement.setLong(2, upload.ids[i]);
+                            move.add();
+                            addBounds(changed, row.bounds);
+                            continue;
+                        }
+                        SqliteFigureRow.bind(update.statement, 1, fig, upload.vertices.get(i));
+                        update.statement.setLong(last, z[i]);
+                        update.statement.setLong(last + 1, upload.hashes[i]);
+                        update.statement.setLong(last + 2, upload.ids[i]);
+                        update.add();
+                        addBounds(changed, row.bounds);
+                        addBounds(changed, fig);
+                    } else {
+                        if (lastId < 0) {
+                            lastId = SqliteFigureRow.lastId(s);
+                        }
+                        upload.ids[i] = ++lastId;
+                        SqliteFigureRow.bind(insert.statement, 1, fig, upload.vertices.get(i));
+                        insert.statement.setLong(last, z[i]);
+                        insert.statement.setLong(last + 1, upload.hashes[i]);
+                        insert.statement.setLong(last + 2, sceneId);
+                        insert.statement.setLong(last + 3, upload.ids[i]);
+                        insert.add();
+                        addBounds(changed, fig);
+                    }
+                }
+                for (Map.Entry<Long, StoredRow> gone : stored.entrySet()) {
+                    delete.statement.setLong(1, gone.getKey());
+                    delete.add();
+                    addBounds(changed, gone.getValue().bounds);
+                }
+                update.flush();
+                move.flush();
+                insert.flush();
+                delete.flush();
+                SqliteScenes.touch(s, sceneId);
+                version = SqliteScenes.find(s, sceneId).version;
+                // без commit() сеанс откатит транзакцию при ошибке
+                s.commit();
             }
 
-            resp.getWriter().println("OK");
+            ResponseCache.get(getServletContext(), CACHE_MAX_BYTES).invalidate(sceneId, version);
+            ResponseCache.get(getServletContext(), RenderServlet.CACHE_MAX_BYTES).invalidate(sceneId, version);
+            // touch() увеличивает версию ровно на 1
+            TileCache.get(getServletContext()).changed(sceneId, version - 1, version, changed);
+            SceneVersions.get(getServletContext()).invalidate();
+            resp.setHeader("X-Scene", Long.toString(sceneId));
+            // OK и id присланных фигур по строке в порядке тела: клиент отправит их со следующим сохранением
+            PrintWriter out = resp.getWriter();
+            out.println("OK");
+            for (int i = 0; i < upload.figures.size(); i++) {
+                out.println(upload.ids[i]);
+            }
+        } catch (StreamCorruptedException | EOFException | InvalidPolygonException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Некорректные фигуры: " + e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -58,66 +182,337 @@ public class FigureServlet extends HttpServlet {
         }
     }
 
+    // Новые z по порядку тела. Сохранённые фигуры из наибольшей цепочки, где старые z уже растут по порядку,
+    // z не меняют; остальные (новые и переставленные) занимают промежутки между ними. Вставка или удаление
+    // одной фигуры не трогают z остальных; если в промежутке нет места, сцена нумеруется заново через Z_STEP.
+    static long[] assignZ(StoredRow[] matched) {
+        int n = matched.length;
+        boolean[] keep = new boolean[n];
+        // наибольшая возрастающая подпоследовательность старых z (O(n log n))
+        int[] tails = new int[n];
+        int[] prev = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            if (matched[i] == null) {
+                continue;
+            }
+            long zi = matched[i].z;
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (matched[tails[mid]].z < zi) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            prev[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = prev[i]) {
+            keep[i] = true;
+        }
+
+        long[] z = new long[n];
+        int runStart = 0;
+        boolean hasLow = false;
+        long low = 0;
+        for (int i = 0; i <= n; i++) {
+            if (i < n && !keep[i]) {
+                continue;
+            }
+            int count = i - runStart;
+            if (count > 0) {
+                if (i == n) {
+                    // после последней сохранённой (или сцена вся новая): z подряд, как у новых фигур редактора
+                    for (int j = 0; j < count; j++) {
+                        z[runStart + j] = low + 1 + j;
+                    }
+                } else {
+                    long high = matched[i].z;
+                    if (!hasLow) {
+                        for (int j = 0; j < count; j++) {
+                            z[runStart + j] = high - count + j;
+                        }
+                    } else if (high - low - 1 >= count) {
+                        for (int j = 0; j < count; j++) {
+                            z[runStart + j] = low + (j + 1) * (high - low) / (count + 1);
+                        }
+                    } else {
+                        for (int k = 0; k < n; k++) {
+                            z[k] = (k + 1) * Z_STEP;
+                        }
+                        return z;
+                    }
+                }
+            }
+            if (i < n) {
+                z[i] = matched[i].z;
+                low = z[i];
+                hasLow = true;
+            }
+            runStart = i + 1;
+        }
+        return z;
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        resp.setContentType("application/octet-stream");
-        String dbPath = getDbPath(getServletContext());
+        // ?bbox=x0,y0,x1,y1 — только фигуры, пересекающие прямоугольник (по R*Tree);
+        // ?limit=N[&after=id] — страница по ключу в порядке id, id для следующей страницы — в X-Next-After
+        if (req.getParameter("scenes") != null) {
+            listScenes(resp);
+            return;
+        }
+        if (req.getParameter("cache") != null) {
+            resp.setContentType("text/plain; charset=UTF-8");
+            resp.getWriter().print(ResponseCache.get(getServletContext(), CACHE_MAX_BYTES).stats());
+            return;
+        }
+        long sceneId;
+        int[] bbox;
+        long after;
+        int limit;
+        try {
+            sceneId = WebDatabase.sceneId(req);
+            bbox = parseBbox(req.getParameter("bbox"));
+            after = parseLong(req.getParameter("after"), 0, "after");
+            limit = (int) Math.min(parseLong(req.getParameter("limit"), 0, "limit"), MAX_PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        boolean wire = FigureWire.accepts(req.getHeader("Accept"));
+        // формат и параметры выборки — часть ключа кэша ответов
+        String params = (wire ? "w" : "j") + ":" + after + ":" + limit + ":" + (bbox != null ? Arrays.toString(bbox) : "");
 
         try {
-            List<ColoredPolygon> figures = new ArrayList<>();
-            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-                 Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT * FROM figures")) {
+            SceneVersions.Version version = SceneVersions.get(getServletContext()).find(sceneId);
+            resp.setHeader("Vary", "Accept");
+            if (version != null && SceneVersions.notModified(req, resp, etag(sceneId, version.version, wire), version.updatedAt)) {
+                return;
+            }
+            ResponseCache cache = ResponseCache.get(getServletContext(), CACHE_MAX_BYTES);
+            if (version != null) {
+                ResponseCache.Entry cached = cache.get(sceneId, version.version, params);
+                if (cached != null) {
+                    resp.setHeader("X-Cache", "HIT");
+                    cached.send(resp);
+                    return;
+                }
+            }
 
-                while (rs.next()) {
-                    String name = rs.getString("name");
-                    String coordsJson = rs.getString("coordinates");
-                    String lineColor = rs.getString("line_color");
-                    String fillColor = rs.getString("fill_color");
-                    double opacity = rs.getDouble("opacity");
-                    int[][] coords = jsonToCoords(coordsJson);
-                    figures.add(new ColoredPolygon(coords, name, lineColor, fillColor, opacity));
+            Map<String, String> headers = new LinkedHashMap<>();
+            List<ColoredPolygon> figures = new ArrayList<>();
+            ResponseCache.Recorder body;
+            SqliteScenes.Scene scene;
+            try (SqliteDatabase.Session s = WebDatabase.get(getServletContext()).readSnapshot()) {
+                // одна транзакция чтения: версия из того же снимка, что и фигуры, под ней ответ попадёт в кэш
+                scene = SqliteScenes.find(s, sceneId);
+                if (scene != null && (version == null || scene.version != version.version)) {
+                    headers.put("ETag", etag(sceneId, scene.version, wire));
+                    resp.setDateHeader("Last-Modified", scene.updatedAt);
+                }
+                String where = "WHERE scene_id = ? AND id > ?" + (bbox != null ? " AND " + SqliteFigureRow.IN_RECT : "");
+                if (limit > 0) {
+                    // заголовок нужен до тела: конец страницы узнаём заранее по индексу (scene_id, id)
+                    PreparedStatement next = s.prepare("SELECT id FROM figures " + where + " ORDER BY id LIMIT 2 OFFSET ?");
+                    int param = bindFilter(next, sceneId, after, bbox);
+                    next.setInt(param, limit - 1);
+                    try (ResultSet rs = next.executeQuery()) {
+                        if (rs.next()) {
+                            long lastId = rs.getLong(1);
+                            if (rs.next()) {
+                                headers.put("X-Next-After", Long.toString(lastId));
+                            }
+                        }
+                    }
+                }
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    resp.setHeader(header.getKey(), header.getValue());
+                }
+                resp.setHeader("X-Cache", "MISS");
+                resp.setContentType(wire ? FigureWire.CONTENT_TYPE : FigureWire.LEGACY_CONTENT_TYPE);
+                // тело уходит клиенту по мере кодирования и одновременно копируется для кэша
+                body = cache.record(resp.getOutputStream());
+                PreparedStatement ps = s.prepare("SELECT id, " + SqliteFigureRow.COLUMNS + " FROM figures " + where
+                    + (limit > 0 ? " ORDER BY id LIMIT ?" : " ORDER BY z, id"));
+                int param = bindFilter(ps, sceneId, after, bbox);
+                if (limit > 0) {
+                    ps.setInt(param, limit);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (wire) {
+                        // строки уходят клиенту по мере чтения; при ошибке поток обрывается без маркера конца
+                        SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(null);
+                        FigureWire.Writer out = new FigureWire.Writer(body);
+                        while (rs.next()) {
+                            out.write(rs.getLong(1), reader.read(rs));
+                        }
+                        out.finish();
+                    } else {
+                        SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(new FigureStore());
+                        while (rs.next()) {
+                            figures.add(reader.read(rs));
+                        }
+                    }
                 }
             }
 
-            // Сериализация в ответ
-            try (ObjectOutputStream oos = new ObjectOutputStream(resp.getOutputStream())) {
-                oos.writeObject(figures);
+            if (!wire) {
+                // Сериализация в ответ (прежний формат)
+                try (ObjectOutputStream oos = new ObjectOutputStream(body)) {
+                    oos.writeObject(figures);
+                }
+            }
+            if (scene != null) {
+                cache.put(sceneId, scene.version, params, resp.getContentType(), headers, body);
             }
         } catch (Exception e) {
             e.printStackTrace();
-            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            if (!resp.isCommitted()) {
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    private static String etag(long sceneId, long version, boolean wire) {
+        // ETag зависит и от формата ответа: версия сцены плюс w2 (FigureWire версии 2, с id фигур)
+        // или j (сериализация)
+        return "\"" + sceneId + "-" + version + (wire ? "-w2" : "-j") + "\"";
+    }
+
+    // Параметры условия выборки: сцена, id > after и, если задан, прямоугольник; возвращает номер следующего
+    private static int bindFilter(PreparedStatement ps, long sceneId, long after, int[] bbox) throws SQLException {
+        ps.setLong(1, sceneId);
+        ps.setLong(2, after);
+        if (bbox == null) {
+            return 3;
+        }
+        SqliteFigureRow.bindRect(ps, 3, sceneId, bbox[0], bbox[1], bbox[2], bbox[3]);
+        return 9;
+    }
+
+    private static void addBounds(TileCache.Area area, int[] bounds) {
+        area.add(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    private static void addBounds(TileCache.Area area, ColoredPolygon fig) {
+        java.awt.Rectangle r = fig.getBounds();
+        area.add(r.x, r.y, r.x + r.width, r.y + r.height);
+    }
+
+    // Присланная сцена, прочитанная до начала записи: фигуры в порядке отрисовки в общем хранилище,
+    // их id (0 — новая фигура), закодированные вершины и хэши содержимого
+    private static final class Upload {
+        final FigureStore store = new FigureStore();
+        final List<ColoredPolygon> figures = new ArrayList<>();
+        final List<byte[]> vertices = new ArrayList<>();
+        long[] ids = new long[64];
+        long[] hashes = new long[64];
+
+        void add(long id, ColoredPolygon fig) {
+            if (figures.size() == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            byte[] blob = SqliteFigureRow.encode(fig);
+            ids[figures.size()] = id;
+            hashes[figures.size()] = SqliteFigureRow.contentHash(fig, blob);
+            figures.add(fig);
+            vertices.add(blob);
+        }
+    }
+
+    // Хранимая строка сцены для сравнения с присланной фигурой
+    static final class StoredRow {
+        final Long hash; // null — хэш неизвестен (строку менял редактор)
+        final long z;
+        final int[] bounds;
+
+        StoredRow(Long hash, long z, int[] bounds) {
+            this.hash = hash;
+            this.z = z;
+            this.bounds = bounds;
         }
     }
 
-    // Вспомогательные методы (те же, что в SqliteFigureIO)
-    private String coordsToJson(int[][] coords) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < coords.length; i++) {
-            if (i > 0) sb.append(",");
-            sb.append("[").append(coords[i][0]).append(",").append(coords[i][1]).append("]");
+    // Список сцен, строка на сцену: id, имя, число фигур, время изменения (мс) через табуляцию
+    private void listScenes(HttpServletResponse resp) throws IOException {
+        try (SqliteDatabase.Session s = WebDatabase.get(getServletContext()).read()) {
+            List<SqliteScenes.Scene> scenes = SqliteScenes.list(s);
+            resp.setContentType("text/plain; charset=UTF-8");
+            PrintWriter out = resp.getWriter();
+            for (SqliteScenes.Scene scene : scenes) {
+                out.println(scene.id + "\t" + scene.name + "\t" + scene.figureCount + "\t" + scene.updatedAt);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Ошибка БД");
         }
-        sb.append("]");
-        return sb.toString();
     }
 
-    private int[][] jsonToCoords(String json) {
-        json = json.trim();
-        if (!json.startsWith("[") || !json.endsWith("]")) 
-            throw new IllegalArgumentException("Invalid coords");
-        json = json.substring(1, json.length() - 1);
-        String[] points = json.split("\\],\\[");
-        int[][] coords = new int[points.length][2];
-        for (int i = 0; i < points.length; i++) {
-            String p = points[i].replace("[", "").replace("]", "");
-            String[] xy = p.split(",");
-            coords[i][0] = Integer.parseInt(xy[0].trim());
-            coords[i][1] = Integer.parseInt(xy[1].trim());
-        }
-        return coords;
+    // "x0,y0,x1,y1" -> {x0, y0, x1, y1}; null, если параметр не задан
+    private static int[] parseBbox(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox: ожидается x0,y0,x1,y1");
+        }
+        int[] bbox = new int[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                bbox[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bbox: некорректное число '" + parts[i] + "'");
+            }
+        }
+        return bbox;
+    }
+
+    private static long parseLong(String value, long def, String name) {
+        if (value == null || value.isEmpty()) {
+            return def;
+        }
+        try {
+            long v = Long.parseLong(value.trim());
+            if (v < 0) {
+                throw new IllegalArgumentException(name + ": ожидается неотрицательное число");
+            }
+            return v;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": некорректное число '" + value + "'");
+        }
     }
 
-    private String colorToHex(java.awt.Color c) {
-        return String.format("#%06X", (0xFFFFFF & c.getRGB()));
+    // Пачка executeBatch: отправляется каждые batchSize строк и в конце
+    private static final class Batch {
+        final PreparedStatement statement;
+        private final int batchSize;
+        private int pending = 0;
+
+        Batch(PreparedStatement statement, int batchSize) {
+            this.statement = statement;
+            this.batchSize = batchSize;
+        }
+
+        void add() throws SQLException {
+            statement.addBatch();
+            if (++pending >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (pending > 0) {
+                statement.executeBatch();
+                pending = 0;
+            }
+        }
     }
 }
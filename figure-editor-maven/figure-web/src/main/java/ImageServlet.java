@@ -4,45 +4,60 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.sql.*;
 
+// Изображение сцены: ?scene=N (по умолчанию — основная сцена), ?size=N — уменьшенная копия,
+// у которой наибольшая сторона не меньше N (без size или больше копий — оригинал).
+// ETag — версия сцены: при If-None-Match/If-Modified-Since без изменений ответ 304 без чтения БД
 public class ImageServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        resp.setContentType("image/png");
-
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-
+        long sceneId;
+        int size;
         try {
-            Class.forName("org.sqlite.JDBC");
-            conn = DriverManager.getConnection("jdbc:sqlite:figures.db");
-
-            stmt = conn.prepareStatement("SELECT raster_image FROM images WHERE id = 1");
-            rs = stmt.executeQuery();
+            sceneId = WebDatabase.sceneId(req);
+            size = parseSize(req.getParameter("size"));
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
 
-            if (rs.next()) {
-                byte[] img = rs.getBytes("raster_image");
-                if (img != null) {
-                    try (OutputStream out = resp.getOutputStream()) {
-                        out.write(img);
-                    }
-                } else {
-                    resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Изображение отсутствует");
-                }
-            } else {
-                resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Нет данных");
+        try {
+            SceneVersions.Version version = SceneVersions.get(getServletContext()).find(sceneId);
+            if (version != null && SceneVersions.notModified(req, resp,
+                    "\"" + sceneId + "-" + version.version + "\"", version.updatedAt)) {
+                return;
+            }
+            byte[] img;
+            try (SqliteDatabase.Session s = WebDatabase.get(getServletContext()).read()) {
+                img = SqliteImages.load(s, sceneId, size);
+            }
+            if (img == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Изображение отсутствует");
+                return;
+            }
+            resp.setContentType("image/png");
+            resp.setContentLength(img.length);
+            try (OutputStream out = resp.getOutputStream()) {
+                out.write(img);
             }
         } catch (Exception e) {
             e.printStackTrace();
             resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Ошибка БД");
-        } finally {
-            try {
-                if (rs != null) rs.close();
-                if (stmt != null) stmt.close();
-                if (conn != null) conn.close();
-            } catch (SQLException ignored) {}
+        }
+    }
+
+    private static int parseSize(String value) {
+        if (value == null || value.isEmpty()) {
+            return SqliteImages.ORIGINAL;
+        }
+        try {
+            int size = Integer.parseInt(value.trim());
+            if (size < 0) {
+                throw new IllegalArgumentException("size: ожидается неотрицательное число");
+            }
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("size: некорректное число '" + value + "'");
         }
     }
 }
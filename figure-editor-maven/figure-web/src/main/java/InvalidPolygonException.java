@@ -1,5 +0,0 @@
-public class InvalidPolygonException extends Exception {
-    public InvalidPolygonException(String message) {
-        super(message);
-    }
-}
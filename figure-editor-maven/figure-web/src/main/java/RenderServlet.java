@@ -0,0 +1,117 @@
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+
+// Изображение текущих фигур сцены, нарисованное на сервере по правилам редактора (SceneRenderer):
+// ?scene=N, ?w=&h= — размер PNG (по умолчанию 800×600), ?bbox=x0,y0,x1,y1 — видимая область сцены
+// (по умолчанию 0,0,w,h — как изображение, сохраняемое редактором). Область вписывается в
+// изображение с сохранением пропорций и по центру. Готовые PNG кэшируются по версии сцены
+// и параметрам, одинаковые одновременные запросы рисуются один раз. ?cache — счётчики кэша.
+public class RenderServlet extends HttpServlet {
+    private static final int DEFAULT_WIDTH = 800;
+    private static final int DEFAULT_HEIGHT = 600;
+    private static final int MAX_SIZE = 4096;
+    // Предел кэша изображений (context-param)
+    static final String CACHE_MAX_BYTES = "render.cache.maxBytes";
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        ResponseCache cache = ResponseCache.get(getServletContext(), CACHE_MAX_BYTES);
+        if (req.getParameter("cache") != null) {
+            resp.setContentType("text/plain; charset=UTF-8");
+            resp.getWriter().print(cache.stats());
+            return;
+        }
+        long sceneId;
+        int w, h;
+        int[] bbox;
+        try {
+            sceneId = WebDatabase.sceneId(req);
+            w = parseSize(req.getParameter("w"), DEFAULT_WIDTH, "w");
+            h = parseSize(req.getParameter("h"), DEFAULT_HEIGHT, "h");
+            bbox = parseBbox(req.getParameter("bbox"), w, h);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        try {
+            SceneVersions.Version version = SceneVersions.get(getServletContext()).find(sceneId);
+            if (version == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Сцена " + sceneId + " не найдена");
+                return;
+            }
+            if (SceneVersions.notModified(req, resp, etag(sceneId, version.version), version.updatedAt)) {
+                return;
+            }
+            String params = w + ":" + h + ":" + bbox[0] + "," + bbox[1] + "," + bbox[2] + "," + bbox[3];
+            // фигуры читаются уже после проверки версии: если сцену записали между ними, изображение
+            // новее version и кэшируется и помечается ETag той версии, из которой нарисовано
+            ResponseCache.Entry png = cache.getOrLoad(sceneId, version.version, params, () -> {
+                SceneRenderer.Rendered rendered = render(sceneId, w, h, bbox);
+                return new ResponseCache.Entry(rendered.version, "image/png",
+                    Collections.singletonMap("ETag", etag(sceneId, rendered.version)), rendered.png);
+            });
+            png.send(resp);
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!resp.isCommitted()) {
+                resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Ошибка отрисовки");
+            }
+        }
+    }
+
+    private static String etag(long sceneId, long version) {
+        return "\"" + sceneId + "-" + version + "-r\"";
+    }
+
+    private SceneRenderer.Rendered render(long sceneId, int w, int h, int[] bbox) throws Exception {
+        SceneRenderer.Rendered rendered = SceneRenderer.render(WebDatabase.get(getServletContext()), sceneId, w, h, bbox);
+        if (rendered == null) {
+            throw new IllegalStateException("Сцена " + sceneId + " удалена");
+        }
+        return rendered;
+    }
+
+    private static int parseSize(String value, int def, String name) {
+        if (value == null || value.isEmpty()) {
+            return def;
+        }
+        try {
+            int size = Integer.parseInt(value.trim());
+            if (size <= 0 || size > MAX_SIZE) {
+                throw new IllegalArgumentException(name + ": ожидается число от 1 до " + MAX_SIZE);
+            }
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": некорректное число '" + value + "'");
+        }
+    }
+
+    // "x0,y0,x1,y1" -> {x0, y0, x1, y1} с x0 < x1, y0 < y1; без параметра — 0,0,w,h
+    static int[] parseBbox(String value, int w, int h) {
+        if (value == null || value.isEmpty()) {
+            return new int[]{0, 0, w, h};
+        }
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox: ожидается x0,y0,x1,y1");
+        }
+        int[] v = new int[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                v[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bbox: некорректное число '" + parts[i] + "'");
+            }
+        }
+        int[] bbox = {Math.min(v[0], v[2]), Math.min(v[1], v[3]), Math.max(v[0], v[2]), Math.max(v[1], v[3])};
+        if (bbox[2] == bbox[0] || bbox[3] == bbox[1]) {
+            throw new IllegalArgumentException("bbox: пустая область");
+        }
+        return bbox;
+    }
+}
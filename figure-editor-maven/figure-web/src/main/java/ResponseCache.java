@@ -0,0 +1,287 @@
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// Кэш готовых ответов в памяти: тело и заголовки по ключу (сцена, версия, параметры запроса).
+// Общий для всех сцен, вытеснение LRU по суммарному размеру тел (предел — context-param, своё
+// имя у каждого сервлета). Запись прежней версии сцены больше не запрашивается и уходит при
+// вытеснении; invalidate() после записи сцены убирает её записи сразу и не даёт запросу,
+// начатому до записи, вернуть их. getOrLoad() объединяет одновременные запросы одного ответа.
+final class ResponseCache {
+    private static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final String ATTRIBUTE = ResponseCache.class.getName();
+
+    // Построение ответа при промахе
+    interface Loader {
+        Entry load() throws Exception;
+    }
+
+    // Готовый ответ: отправка — копирование тела в сокет. version — версия сцены, из которой
+    // построено тело: под ней ответ и кэшируется
+    static final class Entry {
+        final long version;
+        final String contentType;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Entry(long version, String contentType, Map<String, String> headers, byte[] body) {
+            this.version = version;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        void send(HttpServletResponse resp) throws IOException {
+            resp.setContentType(contentType);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                resp.setHeader(header.getKey(), header.getValue());
+            }
+            resp.setContentLength(body.length);
+            try (OutputStream out = resp.getOutputStream()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static final class Key {
+        final long sceneId;
+        final long version;
+        final String params;
+
+        Key(long sceneId, long version, String params) {
+            this.sceneId = sceneId;
+            this.version = version;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return sceneId == other.sceneId && version == other.version && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sceneId, version, params);
+        }
+    }
+
+    private final long maxBytes;
+    private final int maxEntryBytes; // тело больше этого не кэшируется, а только отправляется
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Наименьшая допустимая версия сцены после invalidate: старые ответы не добавляются
+    private final Map<Long, Long> minVersions = new HashMap<>();
+    // Ответы, которые сейчас строятся: остальные запросы того же ключа ждут их
+    private final Map<Key, CompletableFuture<Entry>> loading = new HashMap<>();
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long coalesced = 0;
+
+    ResponseCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("cache.maxBytes должен быть положительным");
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(Integer.MAX_VALUE - 8, maxBytes / 4);
+    }
+
+    // Один экземпляр на приложение для каждого параметра с пределом размера
+    static ResponseCache get(ServletContext context, String maxBytesParam) {
+        synchronized (context) {
+            String attribute = ATTRIBUTE + ":" + maxBytesParam;
+            ResponseCache cache = (ResponseCache) context.getAttribute(attribute);
+            if (cache == null) {
+                String value = context.getInitParameter(maxBytesParam);
+                cache = new ResponseCache(value != null ? Long.parseLong(value.trim()) : DEFAULT_MAX_BYTES);
+                context.setAttribute(attribute, cache);
+            }
+            return cache;
+        }
+    }
+
+    synchronized Entry get(long sceneId, long version, String params) {
+        Entry entry = entries.get(new Key(sceneId, version, params));
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    // Ответ из кэша или построенный loader; пока он строится, те же запросы ждут его, а не строят
+    // заново. Построенный ответ кэшируется под своей версией: если сцену записали после проверки
+    // version, он новее ключа и под старой версией не окажется. Ответ больше допустимого отдаётся
+    // ожидавшим, но не кэшируется
+    Entry getOrLoad(long sceneId, long version, String params, Loader loader) throws Exception {
+        Key key = new Key(sceneId, version, params);
+        CompletableFuture<Entry> own = null;
+        CompletableFuture<Entry> pending;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+            pending = loading.get(key);
+            if (pending != null) {
+                coalesced++;
+            } else {
+                misses++;
+                own = new CompletableFuture<>();
+                loading.put(key, own);
+                pending = own;
+            }
+        }
+        if (own != null) {
+            try {
+                Entry entry = loader.load();
+                synchronized (this) {
+                    if (entry.body.length <= maxEntryBytes) {
+                        put(new Key(sceneId, entry.version, params), entry);
+                    }
+                    loading.remove(key);
+                }
+                own.complete(entry);
+            } catch (Exception | Error e) {
+                synchronized (this) {
+                    loading.remove(key);
+                }
+                own.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    // Поток ответа, копирующий тело для кэша, пока оно не больше допустимого
+    Recorder record(OutputStream out) {
+        return new Recorder(out, maxEntryBytes);
+    }
+
+    // Добавить полностью отправленный ответ; false — не поместился или версия уже устарела
+    synchronized boolean put(long sceneId, long version, String params, String contentType,
+                             Map<String, String> headers, Recorder recorded) {
+        byte[] body = recorded.body();
+        if (body == null) {
+            return false;
+        }
+        return put(new Key(sceneId, version, params),
+            new Entry(version, contentType, Collections.unmodifiableMap(new LinkedHashMap<>(headers)), body));
+    }
+
+    private boolean put(Key key, Entry entry) {
+        Long min = minVersions.get(key.sceneId);
+        if (min != null && key.version < min) {
+            return false;
+        }
+        Entry previous = entries.put(key, entry);
+        bytes += entry.body.length - (previous != null ? previous.body.length : 0);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().body.length;
+            eldest.remove();
+            evictions++;
+        }
+        return true;
+    }
+
+    // После записи сцены (version — её новая версия): старые ответы удаляются одним действием
+    synchronized void invalidate(long sceneId, long version) {
+        Long min = minVersions.get(sceneId);
+        if (min == null || min < version) {
+            minVersions.put(sceneId, version);
+        }
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().sceneId == sceneId && e.getKey().version < version) {
+                bytes -= e.getValue().body.length;
+                it.remove();
+            }
+        }
+    }
+
+    // Счётчики (GET /figures?cache, /render?cache): строка на значение, имя и число через табуляцию
+    synchronized String stats() {
+        return "hits\t" + hits + "\n" +
+            "misses\t" + misses + "\n" +
+            "coalesced\t" + coalesced + "\n" +
+            "evictions\t" + evictions + "\n" +
+            "entries\t" + entries.size() + "\n" +
+            "bytes\t" + bytes + "\n" +
+            "maxBytes\t" + maxBytes + "\n";
+    }
+
+    // Передаёт байты дальше и копирует их, пока копия не превысила limit
+    static final class Recorder extends OutputStream {
+        private final OutputStream out;
+        private final int limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private Recorder(OutputStream out, int limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        // Копия тела; null — тело оказалось больше допустимого
+        byte[] body() {
+            return copy != null ? copy.toByteArray() : null;
+        }
+
+        private void checkLimit() {
+            if (copy.size() > limit) {
+                copy = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+// Отрисовка области сцены из БД в PNG по правилам редактора (FigureRenderer): для /render и /tiles
+final class SceneRenderer {
+
+    // PNG и версия сцены, из снимка которой он нарисован; figures = 0 — область пуста
+    static final class Rendered {
+        final byte[] png;
+        final long version;
+        final int figures;
+
+        Rendered(byte[] png, long version, int figures) {
+            this.png = png;
+            this.version = version;
+            this.figures = figures;
+        }
+    }
+
+    private SceneRenderer() {
+    }
+
+    // Область bbox = {x0, y0, x1, y1} вписывается в w×h с сохранением пропорций и по центру.
+    // Читаются только фигуры, пересекающие видимую часть (по R*Tree), в порядке z. null — сцены нет
+    static Rendered render(SqliteDatabase db, long sceneId, int w, int h, int[] bbox) throws Exception {
+        long bw = (long) bbox[2] - bbox[0], bh = (long) bbox[3] - bbox[1];
+        double scale = Math.min((double) w / bw, (double) h / bh);
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = FigureRenderer.createGraphics(image);
+        g2d.translate((w - bw * scale) / 2, (h - bh * scale) / 2);
+        g2d.scale(scale, scale);
+        g2d.translate(-bbox[0], -bbox[1]);
+        long margin = margin(scale);
+        // за краем области видна полоса, равная видимой части изображения вне неё
+        long marginX = margin + (long) Math.ceil((w / scale - bw) / 2);
+        long marginY = margin + (long) Math.ceil((h / scale - bh) / 2);
+        long version;
+        int figures = 0;
+        // версия и фигуры из одного снимка БД: под этой версией PNG попадёт в кэш
+        try (SqliteDatabase.Session s = db.readSnapshot()) {
+            SqliteScenes.Scene scene = SqliteScenes.find(s, sceneId);
+            if (scene == null) {
+                return null;
+            }
+            version = scene.version;
+            PreparedStatement ps = s.prepare("SELECT " + SqliteFigureRow.COLUMNS + " FROM figures " +
+                "WHERE " + SqliteFigureRow.IN_RECT + " ORDER BY z, id");
+            SqliteFigureRow.bindRect(ps, 1, sceneId, clamp(bbox[0] - marginX), clamp(bbox[1] - marginY),
+                clamp(bbox[2] + marginX), clamp(bbox[3] + marginY));
+            try (ResultSet rs = ps.executeQuery()) {
+                SqliteFigureRow.Reader reader = new SqliteFigureRow.Reader(null);
+                while (rs.next()) {
+                    FigureRenderer.paint(g2d, reader.read(rs));
+                    figures++;
+                }
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return new Rendered(toPng(image), version, figures);
+    }
+
+    // На сколько единиц сцены фигура может выступать за вершины при масштабе scale:
+    // контур и пиксель сглаживания
+    static long margin(double scale) {
+        return FigureRenderer.OUTLINE_MARGIN + (long) Math.ceil(1 / scale);
+    }
+
+    static byte[] toPng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", baos);
+        return baos.toByteArray();
+    }
+
+    private static int clamp(long v) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, v));
+    }
+}
@@ -0,0 +1,190 @@
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Версии сцен в памяти для условных GET (ETag, Last-Modified): повторный запрос неизменившейся
+// сцены получает 304 без обращения к БД. Версия хранится в scenes.version и растёт при каждой
+// записи сцены — из этого сервлета или из редактора, работающего с тем же файлом. Чужие записи
+// замечаются по времени изменения и размеру файла БД и его WAL: изменились — кэш сбрасывается.
+final class SceneVersions {
+    // Отметка времени файла грубее наносекунд (до 2 с на FAT): версию, прочитанную вскоре после
+    // изменения файла, не кэшируем — следующая запись в тот же интервал может не изменить отметку
+    private static final long RACY_MS = 2000;
+    private static final String ATTRIBUTE = SceneVersions.class.getName();
+
+    static final class Version {
+        final long version;
+        final long updatedAt;
+
+        Version(long version, long updatedAt) {
+            this.version = version;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    // Кэш версий, действительный, пока файлы БД не изменились
+    private static final class Snapshot {
+        final FileStamp stamp;
+        final Map<Long, Version> versions = new ConcurrentHashMap<>();
+
+        Snapshot(FileStamp stamp) {
+            this.stamp = stamp;
+        }
+    }
+
+    private final ServletContext context;
+    private final Path database;
+    private final Path wal;
+    private volatile Snapshot snapshot = new Snapshot(null);
+
+    private SceneVersions(ServletContext context) {
+        String path = WebDatabase.path(context);
+        this.context = context;
+        this.database = Paths.get(path);
+        this.wal = Paths.get(path + "-wal");
+    }
+
+    // Один экземпляр на приложение
+    static SceneVersions get(ServletContext context) {
+        synchronized (context) {
+            SceneVersions versions = (SceneVersions) context.getAttribute(ATTRIBUTE);
+            if (versions == null) {
+                versions = new SceneVersions(context);
+                context.setAttribute(ATTRIBUTE, versions);
+            }
+            return versions;
+        }
+    }
+
+    // Версия сцены; null — сцены нет. БД читается только при промахе кэша.
+    // Версию берём до чтения данных: запись между ними даст клиенту новые данные со старым ETag,
+    // и следующий запрос просто получит их ещё раз
+    Version find(long sceneId) throws SQLException, IOException {
+        // отметка снимается до чтения: запись после неё изменит файл и сбросит прочитанное
+        FileStamp stamp = FileStamp.of(database, wal);
+        Snapshot current = snapshot;
+        if (!stamp.equals(current.stamp)) {
+            current = new Snapshot(stamp);
+            snapshot = current;
+        }
+        Version version = current.versions.get(sceneId);
+        if (version != null) {
+            return version;
+        }
+        SqliteScenes.Scene scene;
+        try (SqliteDatabase.Session s = WebDatabase.get(context).read()) {
+            scene = SqliteScenes.find(s, sceneId);
+        }
+        if (scene == null) {
+            return null;
+        }
+        version = new Version(scene.version, scene.updatedAt);
+        if (System.currentTimeMillis() - stamp.modified >= RACY_MS) {
+            current.versions.put(sceneId, version);
+        }
+        return version;
+    }
+
+    // Сбросить кэш после записи из этого процесса (после commit)
+    void invalidate() {
+        snapshot = new Snapshot(null);
+    }
+
+    // Заголовки ETag/Last-Modified и проверка If-None-Match/If-Modified-Since;
+    // true — отправлен ответ 304, тело не нужно
+    static boolean notModified(HttpServletRequest req, HttpServletResponse resp, String etag, long lastModified) {
+        resp.setHeader("ETag", etag);
+        if (lastModified > 0) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+        resp.setHeader("Cache-Control", "no-cache"); // кэшировать можно, но каждый раз с проверкой
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        boolean fresh;
+        if (ifNoneMatch != null) {
+            // при If-None-Match заголовок If-Modified-Since не учитывается (RFC 7232, 6)
+            fresh = matches(ifNoneMatch, etag);
+        } else {
+            long since;
+            try {
+                since = req.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                since = -1; // некорректная дата — как её отсутствие
+            }
+            // дата в заголовке с точностью до секунды
+            fresh = since >= 0 && lastModified > 0 && lastModified / 1000 <= since / 1000;
+        }
+        if (fresh) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return fresh;
+    }
+
+    // Слабое сравнение: "*" или один из перечисленных тегов, с W/ или без
+    private static boolean matches(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Время изменения и размер файла БД и WAL (в режиме WAL запись меняет только его)
+    private static final class FileStamp {
+        final long modified; // мс, наибольшее из двух
+        private final long databaseTime, databaseSize, walTime, walSize;
+
+        private FileStamp(long databaseTime, long databaseSize, long walTime, long walSize) {
+            this.databaseTime = databaseTime;
+            this.databaseSize = databaseSize;
+            this.walTime = walTime;
+            this.walSize = walSize;
+            this.modified = Math.max(databaseTime, walTime) / 1_000_000;
+        }
+
+        static FileStamp of(Path database, Path wal) throws IOException {
+            BasicFileAttributes db = attributes(database);
+            BasicFileAttributes log = attributes(wal);
+            return new FileStamp(nanos(db), db != null ? db.size() : -1, nanos(log), log != null ? log.size() : -1);
+        }
+
+        private static BasicFileAttributes attributes(Path path) throws IOException {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return null; // WAL нет после закрытия последнего соединения
+            }
+        }
+
+        private static long nanos(BasicFileAttributes attrs) {
+            return attrs != null ? attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileStamp)) return false;
+            FileStamp other = (FileStamp) o;
+            return databaseTime == other.databaseTime && databaseSize == other.databaseSize
+                && walTime == other.walTime && walSize == other.walSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(databaseTime ^ walTime ^ databaseSize ^ walSize);
+        }
+    }
+}
@@ -1,4 +0,0 @@
-public interface Shape {
-    double getArea();
-    double getPerimeter();
-}
@@ -0,0 +1,222 @@
+import jakarta.servlet.ServletContext;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Плитки /tiles в памяти, вытеснение LRU по суммарному размеру (context-param tiles.cache.maxBytes).
+// Плитка действительна для одной версии сцены. После записи сцены из FigureServlet changed()
+// получает прямоугольники изменённых фигур: плитки, которые они задевают, удаляются, остальные
+// остаются действительными и для новой версии. Запись из другого процесса (версия выросла без
+// changed()) делает недействительными все плитки сцены.
+final class TileCache {
+    static final int TILE_SIZE = 256;
+    static final int MIN_ZOOM = 0;
+    static final int MAX_ZOOM = 20;
+    // На уровне ZOOM_ONE единица сцены — один пиксель
+    static final int ZOOM_ONE = 16;
+    private static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final String ATTRIBUTE = TileCache.class.getName();
+
+    static final class Tile {
+        final byte[] png;
+        final long renderedVersion; // версия, из которой плитка нарисована (ETag)
+        long validVersion;          // последняя версия, для которой плитка верна
+
+        Tile(byte[] png, long renderedVersion) {
+            this.png = png;
+            this.renderedVersion = renderedVersion;
+            this.validVersion = renderedVersion;
+        }
+    }
+
+    // Изменённая область сцены: прямоугольники {minX, minY, maxX, maxY}; когда их становится
+    // больше MAX_RECTS, область огрубляется до общего прямоугольника
+    static final class Area {
+        private static final int MAX_RECTS = 1024;
+        private final List<int[]> rects = new ArrayList<>();
+        private int[] union;
+
+        void add(int minX, int minY, int maxX, int maxY) {
+            if (union == null) {
+                union = new int[]{minX, minY, maxX, maxY};
+            } else {
+                union[0] = Math.min(union[0], minX);
+                union[1] = Math.min(union[1], minY);
+                union[2] = Math.max(union[2], maxX);
+                union[3] = Math.max(union[3], maxY);
+            }
+            if (rects.size() <= MAX_RECTS) {
+                rects.add(new int[]{minX, minY, maxX, maxY});
+            }
+        }
+
+        boolean isEmpty() {
+            return union == null;
+        }
+
+        // Задевает ли область прямоугольник (границы включительно, как в R*Tree)
+        boolean intersects(long minX, long minY, long maxX, long maxY) {
+            if (union == null || !overlaps(union, minX, minY, maxX, maxY)) {
+                return false;
+            }
+            if (rects.size() > MAX_RECTS) {
+                return true;
+            }
+            for (int[] r : rects) {
+                if (overlaps(r, minX, minY, maxX, maxY)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean overlaps(int[] r, long minX, long minY, long maxX, long maxY) {
+            return r[2] >= minX && r[0] <= maxX && r[3] >= minY && r[1] <= maxY;
+        }
+    }
+
+    private static final class Key {
+        final long sceneId;
+        final int z;
+        final long x;
+        final long y;
+
+        Key(long sceneId, int z, long x, long y) {
+            this.sceneId = sceneId;
+            this.z = z;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return sceneId == other.sceneId && z == other.z && x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sceneId, z, x, y);
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidated = 0;
+    private long kept = 0;
+
+    TileCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("tiles.cache.maxBytes должен быть положительным");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    // Один экземпляр на приложение
+    static TileCache get(ServletContext context) {
+        synchronized (context) {
+            TileCache cache = (TileCache) context.getAttribute(ATTRIBUTE);
+            if (cache == null) {
+                String value = context.getInitParameter("tiles.cache.maxBytes");
+                cache = new TileCache(value != null ? Long.parseLong(value.trim()) : DEFAULT_MAX_BYTES);
+                context.setAttribute(ATTRIBUTE, cache);
+            }
+            return cache;
+        }
+    }
+
+    // Сторона плитки уровня z в единицах сцены
+    static long span(int z) {
+        return 1L << (ZOOM_ONE + 8 - z);
+    }
+
+    // Пикселей на единицу сцены на уровне z
+    static double scale(int z) {
+        return (double) TILE_SIZE / span(z);
+    }
+
+    // Область сцены плитки {x0, y0, x1, y1}; null — плитка выходит за пределы координат int
+    static int[] bounds(int z, long x, long y) {
+        long span = span(z);
+        long x0 = x * span, y0 = y * span;
+        if (x0 < Integer.MIN_VALUE || y0 < Integer.MIN_VALUE
+                || x0 + span > Integer.MAX_VALUE || y0 + span > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new int[]{(int) x0, (int) y0, (int) (x0 + span), (int) (y0 + span)};
+    }
+
+    // Плитка, действительная для версии сцены version, или null
+    synchronized Tile get(long sceneId, int z, long x, long y, long version) {
+        Tile tile = tiles.get(new Key(sceneId, z, x, y));
+        if (tile != null && tile.validVersion == version) {
+            hits++;
+            return tile;
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(long sceneId, int z, long x, long y, Tile tile) {
+        Tile previous = tiles.get(new Key(sceneId, z, x, y));
+        if (previous != null && previous.validVersion > tile.validVersion) {
+            return; // пока рисовали, плитку уже обновил другой запрос по более новой версии
+        }
+        tiles.put(new Key(sceneId, z, x, y), tile);
+        bytes += tile.png.length - (previous != null ? previous.png.length : 0);
+        Iterator<Tile> eldest = tiles.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().png.length;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    // Сцена записана: previous -> version, changed — области фигур до и после записи. Плитки,
+    // верные для previous и не задетые изменениями (с учётом контура при их масштабе),
+    // переходят на version, остальные плитки сцены удаляются
+    synchronized void changed(long sceneId, long previous, long version, Area changed) {
+        Iterator<Map.Entry<Key, Tile>> it = tiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Tile> e = it.next();
+            Key key = e.getKey();
+            Tile tile = e.getValue();
+            if (key.sceneId != sceneId || tile.validVersion >= version) {
+                continue;
+            }
+            if (tile.validVersion == previous) {
+                long span = span(key.z);
+                long margin = SceneRenderer.margin(scale(key.z));
+                long x0 = key.x * span, y0 = key.y * span;
+                if (!changed.intersects(x0 - margin, y0 - margin, x0 + span + margin, y0 + span + margin)) {
+                    tile.validVersion = version;
+                    kept++;
+                    continue;
+                }
+            }
+            bytes -= tile.png.length;
+            it.remove();
+            invalidated++;
+        }
+    }
+
+    // Счётчики для /tiles?cache: строка на значение, имя и число через табуляцию
+    synchronized String stats() {
+        return "hits\t" + hits + "\n" +
+            "misses\t" + misses + "\n" +
+            "evictions\t" + evictions + "\n" +
+            "invalidated\t" + invalidated + "\n" +
+            "kept\t" + kept + "\n" +
+            "entries\t" + tiles.size() + "\n" +
+            "bytes\t" + bytes + "\n" +
+            "maxBytes\t" + maxBytes + "\n";
+    }
+}
@@ -0,0 +1,92 @@
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Плитки сцены для просмотра по частям, как у карт: /tiles/{z}/{x}/{y}.png?scene=N.
+// Плитка — TILE_SIZE×TILE_SIZE пикселей, на уровне z она покрывает квадрат сцены со стороной
+// span = 2^(24 - z), начиная с (x·span, y·span); на уровне 16 единица сцены — один пиксель.
+// Рисуются только фигуры, пересекающие плитку (по R*Tree). Готовые плитки — в TileCache,
+// ETag плитки не меняется, пока запись сцены её не задела. ?cache — счётчики кэша.
+public class TileServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        TileCache cache = TileCache.get(getServletContext());
+        if (req.getParameter("cache") != null) {
+            resp.setContentType("text/plain; charset=UTF-8");
+            resp.getWriter().print(cache.stats());
+            return;
+        }
+        long sceneId;
+        int z;
+        long x, y;
+        try {
+            sceneId = WebDatabase.sceneId(req);
+            String[] parts = parsePath(req.getPathInfo());
+            z = Integer.parseInt(parts[0]);
+            x = Long.parseLong(parts[1]);
+            y = Long.parseLong(parts[2]);
+            if (z < TileCache.MIN_ZOOM || z > TileCache.MAX_ZOOM) {
+                throw new IllegalArgumentException("z: ожидается число от " + TileCache.MIN_ZOOM + " до " + TileCache.MAX_ZOOM);
+            }
+        } catch (NumberFormatException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Ожидается /tiles/{z}/{x}/{y}.png");
+            return;
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        int[] bounds = TileCache.bounds(z, x, y);
+        if (bounds == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Плитка вне координат сцены");
+            return;
+        }
+
+        try {
+            SceneVersions.Version version = SceneVersions.get(getServletContext()).find(sceneId);
+            if (version == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Сцена " + sceneId + " не найдена");
+                return;
+            }
+            TileCache.Tile tile = cache.get(sceneId, z, x, y, version.version);
+            if (tile == null) {
+                SceneRenderer.Rendered rendered = SceneRenderer.render(WebDatabase.get(getServletContext()),
+                    sceneId, TileCache.TILE_SIZE, TileCache.TILE_SIZE, bounds);
+                if (rendered == null) {
+                    resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Сцена " + sceneId + " не найдена");
+                    return;
+                }
+                tile = new TileCache.Tile(rendered.png, rendered.version);
+                cache.put(sceneId, z, x, y, tile);
+            }
+            if (SceneVersions.notModified(req, resp, "\"" + sceneId + "-" + tile.renderedVersion + "-t\"", 0)) {
+                return;
+            }
+            resp.setContentType("image/png");
+            resp.setContentLength(tile.png.length);
+            try (OutputStream out = resp.getOutputStream()) {
+                out.write(tile.png);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!resp.isCommitted()) {
+                resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Ошибка отрисовки");
+            }
+        }
+    }
+
+    // "/z/x/y.png" -> {z, x, y}
+    private static String[] parsePath(String path) {
+        if (path == null || !path.endsWith(".png")) {
+            throw new NumberFormatException();
+        }
+        String[] parts = path.substring(1, path.length() - ".png".length()).split("/");
+        if (parts.length != 3) {
+            throw new NumberFormatException();
+        }
+        return parts;
+    }
+}
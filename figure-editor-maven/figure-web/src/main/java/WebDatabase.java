@@ -0,0 +1,46 @@
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+
+// Общая база для всех сервлетов приложения: путь из context-param db.path,
+// PRAGMA из context-param db.pragma.<имя> (например db.pragma.synchronous)
+final class WebDatabase {
+    private static final String PRAGMA_PREFIX = "db.pragma.";
+
+    private WebDatabase() {
+    }
+
+    static SqliteDatabase get(ServletContext context) throws SQLException {
+        Properties params = new Properties();
+        for (String name : Collections.list(context.getInitParameterNames())) {
+            if (name.startsWith(PRAGMA_PREFIX)) {
+                params.setProperty(name, context.getInitParameter(name));
+            }
+        }
+        return SqliteDatabase.get(path(context), SqliteDatabase.pragmasFrom(params, PRAGMA_PREFIX));
+    }
+
+    static String path(ServletContext context) {
+        String path = context.getInitParameter("db.path");
+        return path != null ? path : "figures.db";
+    }
+
+    // Номер сцены из параметра scene; без него — сцена по умолчанию
+    static long sceneId(HttpServletRequest req) {
+        String value = req.getParameter("scene");
+        if (value == null || value.isEmpty()) {
+            return SqliteScenes.DEFAULT;
+        }
+        try {
+            long id = Long.parseLong(value.trim());
+            if (id <= 0) {
+                throw new IllegalArgumentException("scene: ожидается положительное число");
+            }
+            return id;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("scene: некорректное число '" + value + "'");
+        }
+    }
+}
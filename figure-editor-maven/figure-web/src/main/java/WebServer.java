@@ -3,6 +3,8 @@ import org.eclipse.jetty.webapp.WebAppContext;
 
 public class WebServer {
     public static void main(String[] args) throws Exception {
+        // /render рисует фигуры через Java2D без дисплея
+        System.setProperty("java.awt.headless", "true");
         Server server = new Server(8080);
 
         WebAppContext webapp = new WebAppContext();
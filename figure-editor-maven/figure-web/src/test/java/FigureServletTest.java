@@ -0,0 +1,186 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Сохранение сцены через POST /figures: фигуры сопоставляются по id, z меняются только у вставленных и переставленных
+class FigureServletTest {
+
+    @TempDir
+    Path dir;
+
+
+    private static FigureServlet.StoredRow row(long z) {
+        return new FigureServlet.StoredRow(z, z, new int[4]);
+    }
+
+    private static FigureServlet.StoredRow[] rows(Long... z) {
+        FigureServlet.StoredRow[] matched = new FigureServlet.StoredRow[z.length];
+        for (int i = 0; i < z.length; i++) {
+            matched[i] = z[i] == null ? null : row(z[i]);
+        }
+        return matched;
+    }
+
+    private static void assertIncreasing(long[] z) {
+        for (int i = 1; i < z.length; i++) {
+            assertTrue(z[i - 1] < z[i], "z должны расти по порядку тела");
+        }
+    }
+
+    @Test
+    void newSceneNumbersFromOne() {
+        assertArrayEquals(new long[]{1, 2, 3}, FigureServlet.assignZ(rows(null, null, null)));
+    }
+
+    @Test
+    void unchangedSceneKeepsZ() {
+        assertArrayEquals(new long[]{5, 10, 20}, FigureServlet.assignZ(rows(5L, 10L, 20L)));
+    }
+
+    @Test
+    void insertAndDeleteDoNotTouchOthers() {
+        long[] front = FigureServlet.assignZ(rows(null, 10L, 20L));
+        assertIncreasing(front);
+        assertEquals(10, front[1]);
+        assertEquals(20, front[2]);
+
+        long[] middle = FigureServlet.assignZ(rows(10L, null, 20L));
+        assertArrayEquals(new long[]{10, 15, 20}, middle);
+
+        long[] end = FigureServlet.assignZ(rows(10L, 20L, null, null));
+        assertArrayEquals(new long[]{10, 20, 21, 22}, end);
+
+        // удалённая строка просто отсутствует в теле
+        assertArrayEquals(new long[]{10, 30}, FigureServlet.assignZ(rows(10L, 30L)));
+    }
+
+    @Test
+    void moveChangesOnlyTheMovedFigure() {
+        long[] z = FigureServlet.assignZ(rows(30L, 10L, 20L, 40L));
+        assertIncreasing(z);
+        assertEquals(10, z[1]);
+        assertEquals(20, z[2]);
+        assertEquals(40, z[3]);
+    }
+
+    @Test
+    void renumbersWhenGapIsFull() {
+        long[] z = FigureServlet.assignZ(rows(1L, null, 2L));
+        assertArrayEquals(new long[]{1024, 2048, 3072}, z);
+    }
+
+    private static ColoredPolygon fig(String name, int x) throws InvalidPolygonException {
+        return new ColoredPolygon(new int[][]{{x, 0}, {x + 10, 0}, {x, 10}}, name, "#000000", "#FFFFFF", 1.0);
+    }
+
+    // id -> z фигур сцены
+    private static Map<Long, Long> zById(WebTestServer server, long sceneId) throws Exception {
+        Map<Long, Long> z = new HashMap<>();
+        try (SqliteDatabase.Session s = SqliteDatabase.get(server.dbPath).read()) {
+            PreparedStatement ps = s.prepare("SELECT id, z FROM figures WHERE scene_id = ?");
+            ps.setLong(1, sceneId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    z.put(rs.getLong(1), rs.getLong(2));
+                }
+            }
+        }
+        return z;
+    }
+
+    // Строку, изменённую в обход сервлета (редактор), сравнение по хэшу не пропускает
+    @Test
+    void externalEditResetsContentHash() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            List<ColoredPolygon> scene = List.of(fig("a", 0));
+            long[] ids = WebTestServer.ids(server.post("/figures", scene));
+            assertEquals(Long.valueOf(contentHash(server, ids[0])),
+                SqliteFigureRow.contentHash(scene.get(0), SqliteFigureRow.encode(scene.get(0))));
+
+            try (SqliteDatabase.Session s = SqliteDatabase.get(server.dbPath).write()) {
+                PreparedStatement ps = s.prepare("UPDATE figures SET name = 'правка' WHERE id = ?");
+                ps.setLong(1, ids[0]);
+                ps.executeUpdate();
+                s.commit();
+            }
+            assertNull(contentHash(server, ids[0]));
+
+            server.post("/figures", scene, ids);
+            try (SqliteDatabase.Session s = SqliteDatabase.get(server.dbPath).read()) {
+                PreparedStatement ps = s.prepare("SELECT name FROM figures WHERE id = ?");
+                ps.setLong(1, ids[0]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    assertEquals("a", rs.getString(1));
+                }
+            }
+            assertNotNull(contentHash(server, ids[0]));
+        }
+    }
+
+    private static Long contentHash(WebTestServer server, long id) throws Exception {
+        try (SqliteDatabase.Session s = SqliteDatabase.get(server.dbPath).read()) {
+            PreparedStatement ps = s.prepare("SELECT content_hash FROM figures WHERE id = ?");
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                long hash = rs.getLong(1);
+                return rs.wasNull() ? null : hash;
+            }
+        }
+    }
+
+    // Прежний формат: сериализованный список принимается, другие объекты — 400
+    @Test
+    void legacyBodyIsFiltered() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            HttpResponse<String> ok = server.postLegacy("/figures", new ArrayList<>(List.of(fig("a", 0))));
+            assertEquals(1, WebTestServer.ids(ok).length);
+            assertEquals(400, server.postLegacy("/figures", new HashMap<String, String>()).statusCode());
+            assertEquals(1, zById(server, SqliteScenes.DEFAULT).size());
+        }
+    }
+
+    @Test
+    void postMatchesFiguresById() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            long[] ids = WebTestServer.ids(server.post("/figures", List.of(fig("a", 0), fig("b", 100), fig("c", 200))));
+            assertEquals(3, ids.length);
+            Map<Long, Long> before = zById(server, SqliteScenes.DEFAULT);
+
+            // вставка в начало, правка b, удаление c
+            long[] next = WebTestServer.ids(server.post("/figures",
+                List.of(fig("new", 300), fig("a", 0), fig("b", 150)), new long[]{0, ids[0], ids[1]}));
+            assertEquals(ids[0], next[1]);
+            assertEquals(ids[1], next[2]);
+            assertNotEquals(ids[2], next[0], "id удалённой фигуры не переиспользуется");
+            Map<Long, Long> after = zById(server, SqliteScenes.DEFAULT);
+            assertEquals(3, after.size());
+            assertEquals(before.get(ids[0]), after.get(ids[0]));
+            assertEquals(before.get(ids[1]), after.get(ids[1]));
+            assertTrue(after.get(next[0]) < after.get(ids[0]));
+
+            // id чужой сцены не трогает её строку: в другой сцене фигура новая
+            long[] other = WebTestServer.ids(server.post("/figures?name=other", List.of(fig("a", 0)), new long[]{ids[0]}));
+            assertNotEquals(ids[0], other[0]);
+            assertEquals(after, zById(server, SqliteScenes.DEFAULT));
+
+            // тело без id заменяет все строки сцены
+            long[] replaced = WebTestServer.ids(server.post("/figures", List.of(fig("a", 0))));
+            assertEquals(Map.of(replaced[0], 1L), zById(server, SqliteScenes.DEFAULT));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RenderServletTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesBbox() {
+        assertArrayEquals(new int[]{0, 0, 800, 600}, RenderServlet.parseBbox(null, 800, 600));
+        assertArrayEquals(new int[]{0, 0, 30, 20}, RenderServlet.parseBbox("", 30, 20));
+        // углы в любом порядке
+        assertArrayEquals(new int[]{-10, 5, 40, 50}, RenderServlet.parseBbox(" 40, 50,-10 ,5", 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> RenderServlet.parseBbox("1,2,3", 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> RenderServlet.parseBbox("1,2,3,x", 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> RenderServlet.parseBbox("5,0,5,10", 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> RenderServlet.parseBbox("1,2,3,99999999999", 1, 1));
+    }
+
+    private static BufferedImage png(HttpResponse<byte[]> resp) throws Exception {
+        assertEquals(200, resp.statusCode());
+        assertEquals("image/png", resp.headers().firstValue("Content-Type").orElse(null));
+        return ImageIO.read(new ByteArrayInputStream(resp.body()));
+    }
+
+    // Область вписывается в изображение по центру; чужие сцены в выборку R*Tree не попадают
+    @Test
+    void rendersSceneArea() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            server.post("/figures", List.of(
+                new ColoredPolygon(new int[][]{{10, 10}, {40, 10}, {40, 40}, {10, 40}}, "красный", "#FF0000", "#FF0000", 1.0)));
+            server.post("/figures?name=other", List.of(
+                new ColoredPolygon(new int[][]{{60, 60}, {90, 60}, {90, 90}, {60, 90}}, "синий", "#0000FF", "#0000FF", 1.0)));
+
+            BufferedImage image = png(server.get("/render?w=100&h=100"));
+            assertEquals(100, image.getWidth());
+            assertEquals(0xFF0000, image.getRGB(25, 25) & 0xFFFFFF);
+            assertEquals(0xFFFFFF, image.getRGB(75, 75) & 0xFFFFFF);
+
+            // область 50×25 в 100×100: масштаб 2, сверху и снизу по 25 белых строк
+            BufferedImage zoomed = png(server.get("/render?w=100&h=100&bbox=0,0,50,25"));
+            assertEquals(0xFF0000, zoomed.getRGB(50, 60) & 0xFFFFFF);
+            assertEquals(0xFFFFFF, zoomed.getRGB(50, 10) & 0xFFFFFF);
+            assertEquals(0xFFFFFF, zoomed.getRGB(10, 40) & 0xFFFFFF);
+
+            assertEquals(404, server.get("/render?scene=99").statusCode());
+            assertEquals(400, server.get("/render?w=0").statusCode());
+            assertEquals(400, server.get("/render?h=5000").statusCode());
+        }
+    }
+
+    // ETag — версия, из которой нарисован PNG; после записи изображение новое
+    @Test
+    void cachesByVersionAndAnswers304() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            List<ColoredPolygon> scene = new ArrayList<>();
+            scene.add(new ColoredPolygon(new int[][]{{10, 10}, {40, 10}, {40, 40}}, "a", "#00FF00", "#00FF00", 1.0));
+            server.post("/figures", scene);
+
+            HttpResponse<byte[]> first = server.get("/render?w=50&h=50");
+            String etag = first.headers().firstValue("ETag").orElseThrow();
+            assertTrue(etag.endsWith("-r\""), etag);
+            assertEquals(304, server.get("/render?w=50&h=50", "If-None-Match", etag).statusCode());
+            assertArrayEquals(first.body(), server.get("/render?w=50&h=50").body());
+
+            scene.set(0, new ColoredPolygon(new int[][]{{10, 10}, {40, 10}, {40, 40}}, "a", "#0000FF", "#0000FF", 1.0));
+            server.post("/figures", scene);
+            HttpResponse<byte[]> changed = server.get("/render?w=50&h=50", "If-None-Match", etag);
+            assertTrue(!etag.equals(changed.headers().firstValue("ETag").orElseThrow()));
+            assertEquals(0x0000FF, png(changed).getRGB(35, 15) & 0xFFFFFF);
+
+            String stats = new String(server.get("/render?cache").body(), StandardCharsets.UTF_8);
+            assertTrue(stats.contains("hits\t1\n"), stats);
+            assertTrue(stats.contains("misses\t2\n"), stats);
+        }
+    }
+
+    // Одновременные одинаковые запросы рисуются один раз
+    @Test
+    void concurrentRequestsShareOneRender() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            List<ColoredPolygon> scene = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                scene.add(new ColoredPolygon(new int[][]{{i % 1000, i / 2}, {i % 1000 + 50, i / 2}, {i % 1000, i / 2 + 50}},
+                    "f" + i, "#123456", "#654321", 0.5));
+            }
+            server.post("/figures", scene);
+
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            try {
+                List<Callable<HttpResponse<byte[]>>> requests = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    requests.add(() -> server.get("/render?w=1600&h=1200&bbox=0,0,1000,1000"));
+                }
+                byte[] body = null;
+                for (Future<HttpResponse<byte[]>> f : pool.invokeAll(requests)) {
+                    HttpResponse<byte[]> resp = f.get();
+                    assertEquals(200, resp.statusCode());
+                    if (body != null) {
+                        assertArrayEquals(body, resp.body());
+                    }
+                    body = resp.body();
+                }
+            } finally {
+                pool.shutdown();
+            }
+            String stats = new String(server.get("/render?cache").body(), StandardCharsets.UTF_8);
+            assertTrue(stats.contains("misses\t1\n"), stats);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResponseCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static ResponseCache.Recorder recorded(ResponseCache cache, int size) throws Exception {
+        ResponseCache.Recorder recorder = cache.record(new ByteArrayOutputStream());
+        recorder.write(new byte[size], 0, size);
+        return recorder;
+    }
+
+    @Test
+    void recorderPassesBytesThroughAndKeepsCopy() throws Exception {
+        ResponseCache cache = new ResponseCache(400);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        ResponseCache.Recorder recorder = cache.record(sent);
+        recorder.write(1);
+        recorder.write(new byte[]{2, 3, 4}, 1, 2);
+        assertArrayEquals(new byte[]{1, 3, 4}, sent.toByteArray());
+        assertArrayEquals(new byte[]{1, 3, 4}, recorder.body());
+
+        // больше четверти бюджета: отправляется целиком, но в кэш не идёт
+        ResponseCache.Recorder large = cache.record(sent);
+        large.write(new byte[101], 0, 101);
+        assertNull(large.body());
+        assertFalse(cache.put(1, 1, "w", "application/x-figures", Map.of(), large));
+        assertEquals(104, sent.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByBytes() throws Exception {
+        ResponseCache cache = new ResponseCache(400);
+        assertTrue(cache.put(1, 1, "a", "t", Map.of("X-Next-After", "5"), recorded(cache, 100)));
+        assertTrue(cache.put(1, 1, "b", "t", Map.of(), recorded(cache, 100)));
+        assertTrue(cache.put(2, 1, "a", "t", Map.of(), recorded(cache, 100)));
+        assertTrue(cache.put(2, 1, "b", "t", Map.of(), recorded(cache, 100)));
+        ResponseCache.Entry first = cache.get(1, 1, "a"); // теперь самый свежий
+        assertEquals("5", first.headers.get("X-Next-After"));
+
+        assertTrue(cache.put(3, 1, "a", "t", Map.of(), recorded(cache, 100)));
+        assertNull(cache.get(1, 1, "b"), "вытеснен самый давний");
+        assertNotNull(cache.get(1, 1, "a"));
+        assertNull(cache.get(1, 2, "a"), "другая версия — другой ключ");
+        assertTrue(cache.stats().contains("evictions\t1\n"));
+        assertTrue(cache.stats().contains("bytes\t400\n"));
+        assertThrows(IllegalArgumentException.class, () -> new ResponseCache(0));
+    }
+
+    // После записи старые ответы сцены удаляются, а запрос, начатый до записи, не возвращает свой
+    @Test
+    void invalidateDropsOlderVersionsAndLatePuts() throws Exception {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        cache.put(1, 4, "a", "t", Map.of(), recorded(cache, 10));
+        cache.put(1, 5, "a", "t", Map.of(), recorded(cache, 10));
+        cache.put(2, 4, "a", "t", Map.of(), recorded(cache, 10));
+
+        cache.invalidate(1, 6);
+        assertNull(cache.get(1, 4, "a"));
+        assertNull(cache.get(1, 5, "a"));
+        assertNotNull(cache.get(2, 4, "a"), "другие сцены не затронуты");
+        assertFalse(cache.put(1, 5, "a", "t", Map.of(), recorded(cache, 10)));
+        assertTrue(cache.put(1, 6, "a", "t", Map.of(), recorded(cache, 10)));
+
+        // запоздавший invalidate с меньшей версией не отменяет более новый
+        cache.invalidate(1, 3);
+        assertFalse(cache.put(1, 5, "b", "t", Map.of(), recorded(cache, 10)));
+        assertNotNull(cache.get(1, 6, "a"));
+        assertTrue(cache.stats().contains("bytes\t20\n"));
+    }
+
+    // Пока ответ строится, те же запросы ждут его; ответ ложится в кэш под версией, из которой построен
+    @Test
+    void getOrLoadCoalescesConcurrentRequests() throws Exception {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ResponseCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await();
+            return new ResponseCache.Entry(8, "image/png", Map.of(), new byte[]{1, 2, 3});
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<ResponseCache.Entry>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.getOrLoad(1, 7, "p", loader)));
+            started.await();
+            for (int i = 0; i < 5; i++) {
+                results.add(pool.submit(() -> cache.getOrLoad(1, 7, "p", loader)));
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!cache.stats().contains("coalesced\t5\n") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<ResponseCache.Entry> f : results) {
+                assertEquals(8, f.get().version);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertTrue(cache.stats().contains("misses\t1\n"), cache.stats());
+        assertTrue(cache.stats().contains("coalesced\t5\n"), cache.stats());
+        assertNull(cache.get(1, 7, "p"), "сцену записали во время построения: ключ старой версии пуст");
+        assertNotNull(cache.get(1, 8, "p"));
+    }
+
+    @Test
+    void failedLoadIsNotCached() throws Exception {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        assertThrows(IllegalStateException.class, () -> cache.getOrLoad(1, 1, "p", () -> {
+            throw new IllegalStateException("сбой");
+        }));
+        ResponseCache.Entry entry = cache.getOrLoad(1, 1, "p",
+            () -> new ResponseCache.Entry(1, "t", Map.of(), new byte[4]));
+        assertEquals(4, entry.body.length);
+        assertSame(entry, cache.getOrLoad(1, 1, "p", () -> {
+            throw new AssertionError("должен быть ответ из кэша");
+        }));
+    }
+
+    @Test
+    void repeatedGetIsServedFromCache() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            List<ColoredPolygon> figures = List.of(
+                new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, "a", "#000000", "#FFFFFF", 1.0),
+                new ColoredPolygon(new int[][]{{50, 50}, {60, 50}, {50, 60}}, "b", "#000000", "#FFFFFF", 1.0));
+            server.post("/figures", figures);
+
+            HttpResponse<byte[]> miss = server.get("/figures?limit=1", "Accept", FigureWire.CONTENT_TYPE);
+            assertEquals(200, miss.statusCode());
+            assertEquals("MISS", miss.headers().firstValue("X-Cache").orElse(null));
+            HttpResponse<byte[]> hit = server.get("/figures?limit=1", "Accept", FigureWire.CONTENT_TYPE);
+            assertEquals("HIT", hit.headers().firstValue("X-Cache").orElse(null));
+            assertArrayEquals(miss.body(), hit.body());
+            assertEquals(miss.headers().firstValue("X-Next-After"), hit.headers().firstValue("X-Next-After"));
+            assertEquals(miss.headers().firstValue("ETag"), hit.headers().firstValue("ETag"));
+
+            // другая страница — другой ключ; после записи — новое содержимое
+            assertEquals("MISS", server.get("/figures?limit=2", "Accept", FigureWire.CONTENT_TYPE)
+                .headers().firstValue("X-Cache").orElse(null));
+            server.post("/figures", figures.subList(1, 2));
+            HttpResponse<byte[]> after = server.get("/figures?limit=1", "Accept", FigureWire.CONTENT_TYPE);
+            assertEquals("MISS", after.headers().firstValue("X-Cache").orElse(null));
+            assertNotEquals(miss.headers().firstValue("ETag"), after.headers().firstValue("ETag"));
+            FigureWire.Reader reader = new FigureWire.Reader(new ByteArrayInputStream(after.body()));
+            assertEquals("b", reader.next(null).getName());
+
+            String stats = new String(server.get("/figures?cache").body(), StandardCharsets.UTF_8);
+            assertTrue(stats.contains("hits\t1\n"), stats);
+        }
+    }
+}
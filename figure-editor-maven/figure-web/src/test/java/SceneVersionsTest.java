@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Условные GET /figures: 304, пока версия сцены не изменилась
+class SceneVersionsTest {
+    private static final String WIRE = FigureWire.CONTENT_TYPE;
+
+    @TempDir
+    Path dir;
+
+    private WebTestServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new WebTestServer(dir);
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        server.close();
+    }
+
+    private static List<ColoredPolygon> figures(String name) throws InvalidPolygonException {
+        return List.of(new ColoredPolygon(new int[][]{{0, 0}, {10, 0}, {0, 10}}, name, "#000000", "#FFFFFF", 1.0));
+    }
+
+    private static String etag(HttpResponse<?> resp) {
+        return resp.headers().firstValue("ETag").orElseThrow();
+    }
+
+    @Test
+    void unchangedSceneAnswers304() throws Exception {
+        assertEquals(200, server.post("/figures", figures("a")).statusCode());
+        HttpResponse<byte[]> first = server.get("/figures", "Accept", WIRE);
+        assertEquals(200, first.statusCode());
+        String etag = etag(first);
+        assertEquals("no-cache", first.headers().firstValue("Cache-Control").orElse(null));
+        String lastModified = first.headers().firstValue("Last-Modified").orElse(null);
+        assertNotNull(lastModified);
+
+        HttpResponse<byte[]> again = server.get("/figures", "Accept", WIRE, "If-None-Match", etag);
+        assertEquals(304, again.statusCode());
+        assertEquals(0, again.body().length);
+        assertEquals(304, server.get("/figures", "Accept", WIRE, "If-None-Match", "\"x\", W/" + etag).statusCode());
+        assertEquals(304, server.get("/figures", "Accept", WIRE, "If-None-Match", "*").statusCode());
+        assertEquals(304, server.get("/figures", "Accept", WIRE, "If-Modified-Since", lastModified).statusCode());
+
+        // If-None-Match важнее If-Modified-Since; другой формат — другой тег
+        assertEquals(200, server.get("/figures", "Accept", WIRE,
+            "If-None-Match", "\"x\"", "If-Modified-Since", lastModified).statusCode());
+        HttpResponse<byte[]> legacy = server.get("/figures", "If-None-Match", etag);
+        assertEquals(200, legacy.statusCode());
+        assertNotEquals(etag, etag(legacy));
+        assertEquals("Accept", legacy.headers().firstValue("Vary").orElse(null));
+    }
+
+    @Test
+    void writeChangesTag() throws Exception {
+        server.post("/figures", figures("a"));
+        String etag = etag(server.get("/figures", "Accept", WIRE));
+
+        server.post("/figures", figures("b"));
+        HttpResponse<byte[]> changed = server.get("/figures", "Accept", WIRE, "If-None-Match", etag);
+        assertEquals(200, changed.statusCode());
+        String next = etag(changed);
+        assertNotEquals(etag, next);
+
+        // запись в обход сервлета (редактор с тем же файлом) тоже меняет тег
+        try (SqliteDatabase.Session s = SqliteDatabase.get(server.dbPath).write()) {
+            SqliteScenes.touch(s, SqliteScenes.DEFAULT);
+            s.commit();
+        }
+        HttpResponse<byte[]> external = server.get("/figures", "Accept", WIRE, "If-None-Match", next);
+        assertEquals(200, external.statusCode());
+        assertNotEquals(next, etag(external));
+    }
+
+    @Test
+    void unknownSceneIsNeverNotModified() throws Exception {
+        assertNotEquals(304, server.get("/figures?scene=42", "Accept", WIRE, "If-None-Match", "*").statusCode());
+        assertEquals(400, server.get("/figures?scene=-1").statusCode());
+    }
+}
@@ -0,0 +1,144 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TileCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static TileCache.Tile tile(long version) {
+        return new TileCache.Tile(new byte[100], version);
+    }
+
+    private static TileCache.Area area(int minX, int minY, int maxX, int maxY) {
+        TileCache.Area area = new TileCache.Area();
+        area.add(minX, minY, maxX, maxY);
+        return area;
+    }
+
+    @Test
+    void tileBounds() {
+        assertEquals(256, TileCache.span(TileCache.ZOOM_ONE));
+        assertEquals(1L << 24, TileCache.span(0));
+        assertArrayEquals(new int[]{-256, 512, 0, 768}, TileCache.bounds(16, -1, 2));
+        assertNull(TileCache.bounds(0, 200, 0), "за пределами int");
+        assertNull(TileCache.bounds(0, 0, -129));
+    }
+
+    // Плитки, не задетые изменением (с учётом полосы контура), переходят на новую версию
+    @Test
+    void changedKeepsUntouchedTiles() {
+        TileCache cache = new TileCache(1 << 20);
+        long margin = SceneRenderer.margin(TileCache.scale(16));
+        cache.put(1, 16, 0, 0, tile(1));
+        cache.put(1, 16, 1, 0, tile(1));
+        cache.put(1, 16, 2, 0, tile(1));
+        cache.put(2, 16, 0, 0, tile(1));
+
+        TileCache.Area changed = area(10, 10, 20, 20);
+        // сразу за полосой контура под плиткой (1, 0)
+        changed.add(300, (int) (256 + margin) + 1, 305, (int) (256 + margin) + 5);
+        cache.changed(1, 1, 2, changed);
+
+        assertNull(cache.get(1, 16, 0, 0, 2));
+        TileCache.Tile kept = cache.get(1, 16, 1, 0, 2);
+        assertNotNull(kept);
+        assertEquals(1, kept.renderedVersion, "ETag прежний");
+        assertNotNull(cache.get(1, 16, 2, 0, 2));
+        assertNotNull(cache.get(2, 16, 0, 0, 1), "другая сцена не затронута");
+
+        cache.changed(1, 2, 3, area((int) (512 + margin), 100, (int) (512 + margin), 100));
+        assertNull(cache.get(1, 16, 1, 0, 3), "полоса контура соседней плитки");
+        assertNull(cache.get(1, 16, 2, 0, 3));
+        assertTrue(cache.stats().contains("kept\t2\n"), cache.stats());
+        assertTrue(cache.stats().contains("invalidated\t3\n"), cache.stats());
+    }
+
+    // Пропущенная запись (версия выросла не через changed) делает плитку недействительной
+    @Test
+    void skippedVersionDropsTile() {
+        TileCache cache = new TileCache(1 << 20);
+        cache.put(1, 10, 0, 0, tile(1));
+        cache.changed(1, 2, 3, new TileCache.Area());
+        assertNull(cache.get(1, 10, 0, 0, 3));
+        assertTrue(cache.stats().contains("entries\t0\n"));
+    }
+
+    @Test
+    void putKeepsNewerTileAndEvictsByBytes() {
+        TileCache cache = new TileCache(250);
+        cache.put(1, 16, 0, 0, tile(5));
+        cache.put(1, 16, 0, 0, tile(4));
+        assertNotNull(cache.get(1, 16, 0, 0, 5), "запоздавшая старая плитка не заменяет новую");
+
+        cache.put(1, 16, 1, 0, tile(5));
+        cache.get(1, 16, 0, 0, 5);
+        cache.put(1, 16, 2, 0, tile(5));
+        assertNull(cache.get(1, 16, 1, 0, 5), "вытеснена самая давняя");
+        assertNotNull(cache.get(1, 16, 0, 0, 5));
+        assertTrue(cache.stats().contains("evictions\t1\n"));
+    }
+
+    // Сверх MAX_RECTS прямоугольников область огрубляется до общего: плиток удаляется больше, но не меньше нужного
+    @Test
+    void areaCoarsensToUnion() {
+        TileCache.Area area = new TileCache.Area();
+        assertTrue(area.isEmpty());
+        for (int i = 0; i < 1000; i++) {
+            area.add(i % 2 == 0 ? 0 : 10_000, 0, i % 2 == 0 ? 1 : 10_001, 1);
+        }
+        assertFalse(area.intersects(5000, 0, 5100, 1));
+        assertTrue(area.intersects(10_001, 1, 10_005, 5), "границы включительно");
+        for (int i = 0; i < 100; i++) {
+            area.add(0, 0, 1, 1);
+        }
+        assertTrue(area.intersects(5000, 0, 5100, 1));
+        assertFalse(area.intersects(20_000, 0, 20_100, 1));
+    }
+
+    // Запись задевает только свои плитки: соседние отвечают 304 по прежнему ETag
+    @Test
+    void postInvalidatesOnlyTouchedTiles() throws Exception {
+        try (WebTestServer server = new WebTestServer(dir)) {
+            List<ColoredPolygon> scene = new ArrayList<>();
+            scene.add(new ColoredPolygon(new int[][]{{10, 10}, {40, 10}, {40, 40}}, "слева", "#FF0000", "#FF0000", 1.0));
+            scene.add(new ColoredPolygon(new int[][]{{1000, 1000}, {1030, 1000}, {1030, 1030}}, "справа", "#00FF00", "#00FF00", 1.0));
+            long[] ids = WebTestServer.ids(server.post("/figures", scene));
+
+            HttpResponse<byte[]> left = server.get("/tiles/16/0/0.png");
+            assertEquals(200, left.statusCode());
+            assertEquals("image/png", left.headers().firstValue("Content-Type").orElse(null));
+            String leftTag = left.headers().firstValue("ETag").orElseThrow();
+            String rightTag = server.get("/tiles/16/3/3.png").headers().firstValue("ETag").orElseThrow();
+            // на уровне 16 плитка совпадает с /render той же области
+            assertArrayEquals(server.get("/render?w=256&h=256&bbox=0,0,256,256").body(), left.body());
+
+            scene.set(1, new ColoredPolygon(new int[][]{{1100, 1000}, {1130, 1000}, {1130, 1030}}, "справа", "#00FF00", "#00FF00", 1.0));
+            server.post("/figures", scene, ids);
+
+            assertEquals(304, server.get("/tiles/16/0/0.png", "If-None-Match", leftTag).statusCode());
+            HttpResponse<byte[]> right = server.get("/tiles/16/3/3.png", "If-None-Match", rightTag);
+            assertEquals(200, right.statusCode());
+            assertNotEquals(rightTag, right.headers().firstValue("ETag").orElseThrow());
+
+            assertEquals(400, server.get("/tiles/21/0/0.png").statusCode());
+            assertEquals(400, server.get("/tiles/16/0/x.png").statusCode());
+            assertEquals(400, server.get("/tiles/16/0.png").statusCode());
+            assertEquals(404, server.get("/tiles/0/500/0.png").statusCode());
+            assertEquals(404, server.get("/tiles/16/0/0.png?scene=77").statusCode());
+        }
+    }
+}
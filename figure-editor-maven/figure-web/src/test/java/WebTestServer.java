@@ -0,0 +1,98 @@
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+
+// Сервлеты приложения во встроенном Jetty на свободном порту, БД — во временном каталоге теста
+final class WebTestServer implements AutoCloseable {
+    private final Server server = new Server(0);
+    private final HttpClient client = HttpClient.newHttpClient();
+    final String dbPath;
+
+    WebTestServer(Path dir) throws Exception {
+        dbPath = dir.resolve("web.db").toString();
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.setInitParameter("db.path", dbPath);
+        context.addServlet(FigureServlet.class, "/figures");
+        context.addServlet(ImageServlet.class, "/image.png");
+        context.addServlet(RenderServlet.class, "/render");
+        context.addServlet(TileServlet.class, "/tiles/*");
+        server.setHandler(context);
+        server.start();
+    }
+
+    URI uri(String pathAndQuery) {
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return URI.create("http://localhost:" + port + pathAndQuery);
+    }
+
+    // GET с заголовками: имя, значение, имя, значение...
+    HttpResponse<byte[]> get(String pathAndQuery, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(pathAndQuery)).GET();
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    // POST сцены в формате FigureWire, фигуры без id
+    HttpResponse<String> post(String pathAndQuery, List<ColoredPolygon> figures) throws Exception {
+        return post(pathAndQuery, figures, new long[figures.size()]);
+    }
+
+    // ids — id фигур из ответа на прошлое сохранение (0 — новая фигура)
+    HttpResponse<String> post(String pathAndQuery, List<ColoredPolygon> figures, long[] ids) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        FigureWire.Writer writer = new FigureWire.Writer(body);
+        for (int i = 0; i < figures.size(); i++) {
+            writer.write(ids[i], figures.get(i));
+        }
+        writer.finish();
+        HttpRequest request = HttpRequest.newBuilder(uri(pathAndQuery))
+            .header("Content-Type", FigureWire.CONTENT_TYPE)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // POST в прежнем формате: сериализованный объект (обычно ArrayList фигур)
+    HttpResponse<String> postLegacy(String pathAndQuery, Object body) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(body);
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri(pathAndQuery))
+            .header("Content-Type", FigureWire.LEGACY_CONTENT_TYPE)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(bytes.toByteArray()))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // id фигур из ответа POST: строка "OK", затем по id на строку в порядке тела
+    static long[] ids(HttpResponse<String> resp) {
+        String[] lines = resp.body().split("\n");
+        if (resp.statusCode() != 200 || !lines[0].trim().equals("OK")) {
+            throw new IllegalStateException("Сохранение не удалось: " + resp.statusCode() + " " + resp.body());
+        }
+        long[] ids = new long[lines.length - 1];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Long.parseLong(lines[i + 1].trim());
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() throws Exception {
+        server.stop();
+        SqliteDatabase.closeAll();
+    }
+}